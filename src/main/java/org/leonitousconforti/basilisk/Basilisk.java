@@ -1,7 +1,9 @@
 package org.leonitousconforti.basilisk;
 
 import java.awt.Desktop;
+import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -10,11 +12,21 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.capture.BoardCalibration;
+import org.leonitousconforti.basilisk.capture.BoardGeometry;
+import org.leonitousconforti.basilisk.capture.FrameSource;
+import org.leonitousconforti.basilisk.capture.ReplayFrameSource;
+import org.leonitousconforti.basilisk.capture.RobotFrameSource;
+import org.leonitousconforti.basilisk.capture.XShmFrameSource;
 import org.leonitousconforti.basilisk.core.*;
 import org.leonitousconforti.basilisk.detectors.Detector;
+import org.leonitousconforti.basilisk.detectors.ProbePattern;
 
 import de.milchreis.uibooster.UiBooster;
 import processing.core.PApplet;
@@ -31,96 +43,440 @@ public final class Basilisk {
     private final Algorithms algorithmsManager;
     private final UiSettingsForms uiSettingsForms;
     private final GameElementDetection gameElementDetection;
+    private final SessionRecorder sessionRecorder;
+    private final CaptureScheduler captureScheduler;
 
-    // Local variables
-    private BufferedImage gameImg;
-    private BufferedImage elementsImg;
+    // Every game being played, the first one is played with the components above
+    private final List<GameSession> gameSessions;
+
+    // Runs the stages on their own threads, null when running serially
+    private final FramePipeline framePipeline;
+
+    // Local variables, the frame for the gui is a copy because the frame source
+    // reuses its frames
+    private final DisplayFrame gameImg;
     private double fps;
     private double ms;
 
     // Constructor
-    private Basilisk() {
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private Basilisk(FrameSource frameSource, boolean headless, boolean pipelined, boolean phaseLocked,
+            ProbePattern probePattern, boolean multiBoard, File sessionFile, boolean recordFrames) {
         // Initialize components
-        screenCapture = new ScreenCapture();
+        screenCapture = new ScreenCapture(frameSource);
         algorithmsManager = new Algorithms();
         gameElementDetection = new GameElementDetection();
-        uiSettingsForms = new UiSettingsForms(this);
-        new UiBooster().showSplashscreen(loadResource("splash", ".png").getAbsolutePath(), Config.SplashScreenTime);
+        gameElementDetection.setProbePattern(probePattern);
+        gameImg = new DisplayFrame();
+
+        // The detection and algorithms play the first game together
+        List<GameSession> games = new ArrayList<GameSession>();
+        games.add(new GameSession(0, gameElementDetection, algorithmsManager));
+
+        // Only capture around the moves once the game speed is known
+        captureScheduler = new CaptureScheduler(gameElementDetection.getTickEstimator());
+        captureScheduler.setEnabled(phaseLocked);
+
+        if (headless) {
+            // No screen to draw on or press keys on, so no gui and the actions go to
+            // the websocket where they are harmless
+            uiSettingsForms = null;
+            gui = null;
+        } else {
+            uiSettingsForms = new UiSettingsForms(this);
+            new UiBooster().showSplashscreen(loadResource("splash", ".png").getAbsolutePath(),
+                    Config.SplashScreenTime);
+
+            // Sleep
+            try {
+                TimeUnit.MILLISECONDS.sleep(Config.SplashScreenTime);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
 
-        // Sleep
-        try {
-            TimeUnit.MILLISECONDS.sleep(Config.SplashScreenTime);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            // Run processing gui
+            gui = new Gui(this);
+            String[] processingArgs = { "Basilisk" };
+            PApplet.runSketch(processingArgs, gui);
         }
 
-        // Run processing gui
-        gui = new Gui(this);
-        String[] processingArgs = { "Basilisk" };
-        PApplet.runSketch(processingArgs, gui);
-
-        // Set recording area
-        screenCapture.setPositionFromCords(1,
-                Toolkit.getDefaultToolkit().getScreenSize().height - Config.GameBoardSizePixels - 1,
-                Config.GameBoardSizePixels, Config.GameBoardSizePixels);
+        // Find the board in the recorded frames when replaying, or on the screen,
+        // skipping calibration when it was calibrated on an earlier run. Every
+        // board on the screen is looked for when playing more than one game
+        BoardGeometry cachedGeometry = BoardGeometry.load(BoardGeometry.defaultCacheFile());
+        if (frameSource instanceof ReplayFrameSource) {
+            if ((cachedGeometry != null)
+                    && cachedGeometry.getCaptureArea().getSize().equals(frameSource.getCaptureArea().getSize())) {
+                gameElementDetection.setBoardGeometry(cachedGeometry);
+            }
+        } else if (multiBoard) {
+            List<BoardGeometry> geometries = calibrateBoards();
+            if (geometries.isEmpty()) {
+                useBoardGeometry(calibrateBoard());
+            } else {
+                useBoardGeometry(geometries.get(0));
+                for (int i = 1; i < geometries.size(); i++) {
+                    games.add(newGameSession(i, geometries.get(i), probePattern));
+                }
+            }
+        } else {
+            useBoardGeometry(cachedGeometry != null ? cachedGeometry : calibrateBoard());
+        }
+        gameSessions = Collections.unmodifiableList(games);
+
+        // Record frames the size they are captured at, now that it is known
+        sessionRecorder = sessionFile == null ? null
+                : openSessionRecorder(sessionFile, recordFrames, frameSource.getCaptureArea());
+
+        // Every game has its own browser, and key presses only go to the focused
+        // one, so the games have to be played through their websockets. Their
+        // moves do not line up either, so the captures can not be phase locked to
+        // just one of them
+        if (headless || (gameSessions.size() > 1)) {
+            for (GameSession game : gameSessions) {
+                game.getActionsManager().setDefaultExecutor("websocket");
+            }
+        }
+        if (gameSessions.size() > 1) {
+            System.out.println("playing " + gameSessions.size() + " games, capturing back to back");
+            captureScheduler.setEnabled(false);
+        }
 
-        // Start
-        while (true) {
-            if (!Config.paused) {
-                run();
+        // Start, until the frame source runs out of frames. The serial loop only
+        // plays the first game
+        if (pipelined || (gameSessions.size() > 1)) {
+            framePipeline = new FramePipeline(screenCapture, captureScheduler, gameSessions, sessionRecorder);
+            framePipeline.start();
+
+            // The stages do all the work, just keep the settings menu working and
+            // print how the stages are doing once a second
+            long lastStatistics = System.nanoTime();
+            while (framePipeline.isRunning()) {
+                if (Config.showSettingsMenu) {
+                    uiSettingsForms.getSettingsForm().run();
+                    Config.showSettingsMenu = false;
+                }
+                if (System.nanoTime() - lastStatistics >= TimeUnit.SECONDS.toNanos(1)) {
+                    lastStatistics = System.nanoTime();
+                    System.out.println(framePipeline.getStatistics());
+                }
+
+                try {
+                    TimeUnit.MILLISECONDS.sleep(10);
+                } catch (InterruptedException e) {
+                    break;
+                }
             }
-            if (Config.showSettingsMenu) {
-                uiSettingsForms.getSettingsForm().run();
-                Config.showSettingsMenu = false;
+            framePipeline.stop();
+        } else {
+            framePipeline = null;
+            while (true) {
+                if (!Config.paused && !run()) {
+                    break;
+                }
+                if (Config.showSettingsMenu) {
+                    uiSettingsForms.getSettingsForm().run();
+                    Config.showSettingsMenu = false;
+                }
             }
         }
+
+        // The algorithm threads never stop on their own
+        screenCapture.getFrameSource().close();
+        if (sessionRecorder != null) {
+            sessionRecorder.close();
+            System.out.println("session recording dropped " + sessionRecorder.getDroppedRecords() + " frames");
+        }
+        System.exit(0);
     }
 
     /**
-     * Entry point of program.
+     * Entry point of program. With no arguments, basilisk watches the screen. To
+     * profile without a screen, play back a recorded frame archive with
+     * {@code --replay <archive>}, adding {@code --max-speed} to ignore the
+     * recorded pace, {@code --loop} to play it forever, and {@code --headless}
+     * to skip the gui. To always have the last moments of a game on disk, add
+     * {@code --record-session <file>} to keep the last few thousand frames' tiles,
+     * state, and actions in a ring file, and {@code --record-frames} to keep the
+     * last few hundred whole frames as well. Capturing, detecting, deciding, and
+     * pressing keys run on their own threads, {@code --serial} runs them one
+     * after the other on one thread instead. Once the game speed is known, frames
+     * are only captured around the moves, {@code --free-run} captures back to
+     * back instead. Replaying with {@code --max-speed} always captures back to
+     * back. {@code --probes <1|5|9>} sets how many pixels of every tile are
+     * sampled and vote on what is on the tile. On Linux the screen is captured
+     * through X11 shared memory when the native library is built in,
+     * {@code --robot} uses the java Robot instead. {@code --boards} plays every
+     * game board found on the screen at once, each through the websocket on its
+     * own port, counting up from {@link Config#websocketServerPort}.
      *
      * @param args The arguments of the program
      */
     public static void main(String[] args) {
-        new Basilisk();
+        File replayArchive = null;
+        boolean maxSpeed = false;
+        boolean loop = false;
+        boolean headless = false;
+        File sessionFile = null;
+        boolean recordFrames = false;
+        boolean pipelined = true;
+        boolean phaseLocked = true;
+        ProbePattern probePattern = ProbePattern.CENTER;
+        boolean robot = false;
+        boolean multiBoard = false;
+
+        // Parse the arguments
+        for (int i = 0; i < args.length; i++) {
+            if ("--replay".equals(args[i]) && (i + 1 < args.length)) {
+                replayArchive = new File(args[++i]);
+            } else if ("--max-speed".equals(args[i])) {
+                maxSpeed = true;
+            } else if ("--loop".equals(args[i])) {
+                loop = true;
+            } else if ("--headless".equals(args[i])) {
+                headless = true;
+            } else if ("--record-session".equals(args[i]) && (i + 1 < args.length)) {
+                sessionFile = new File(args[++i]);
+            } else if ("--record-frames".equals(args[i])) {
+                recordFrames = true;
+            } else if ("--serial".equals(args[i])) {
+                pipelined = false;
+            } else if ("--free-run".equals(args[i])) {
+                phaseLocked = false;
+            } else if ("--robot".equals(args[i])) {
+                robot = true;
+            } else if ("--boards".equals(args[i])) {
+                multiBoard = true;
+            } else if ("--probes".equals(args[i]) && (i + 1 < args.length)) {
+                try {
+                    probePattern = ProbePattern.withProbes(Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    probePattern = null;
+                }
+                if (probePattern == null) {
+                    System.out.println("probes must be 1, 5, or 9");
+                    return;
+                }
+            } else {
+                System.out.println("unknown argument: " + args[i]);
+            }
+        }
+
+        // Pick the frame source
+        FrameSource frameSource;
+        if ((replayArchive == null) && !robot && XShmFrameSource.isAvailable()) {
+            // Enough frames for everything the pipeline holds on to and one to spare,
+            // more are made if they are all held
+            try {
+                frameSource = new XShmFrameSource(FramePipeline.MAX_HELD_FRAMES + 1);
+            } catch (IOException e) {
+                System.out.println("could not capture through shared memory, using the java robot");
+                frameSource = new RobotFrameSource();
+            }
+        } else if (replayArchive == null) {
+            frameSource = new RobotFrameSource();
+        } else {
+            try {
+                frameSource = new ReplayFrameSource(replayArchive, !maxSpeed, loop);
+            } catch (IOException e) {
+                System.out.println("could not open frame archive " + replayArchive);
+                e.printStackTrace();
+                return;
+            }
+        }
+
+        // Waiting for the game would defeat the point of replaying at max speed
+        if ((replayArchive != null) && maxSpeed) {
+            phaseLocked = false;
+        }
+
+        new Basilisk(frameSource, headless, pipelined, phaseLocked, probePattern, multiBoard, sessionFile,
+                recordFrames);
+    }
+
+    /**
+     * Starts the session recorder, recording whole frames the size of the
+     * capture area if asked to.
+     *
+     * @param sessionFile  the ring file to record to
+     * @param recordFrames if whole frames are recorded as well as the tiles
+     * @param captureArea  the area being captured, the size of every frame
+     * @return the recorder, or null if the ring file could not be opened
+     */
+    private static SessionRecorder openSessionRecorder(File sessionFile, boolean recordFrames,
+            Rectangle captureArea) {
+        try {
+            if (recordFrames) {
+                return new SessionRecorder(sessionFile, Config.SessionRecordingFrameSlots, captureArea.width,
+                        captureArea.height);
+            }
+            return new SessionRecorder(sessionFile, Config.SessionRecordingSlots, 0, 0);
+        } catch (IOException e) {
+            System.out.println("could not open session recording " + sessionFile + ", not recording");
+            e.printStackTrace();
+            return null;
+        }
     }
 
-    // Main run loop for the AI
+    // Main run loop for the AI, returns false once there are no more frames
     @SuppressWarnings("checkstyle:MagicNumber")
-    private void run() {
-        // Start timer for loop debugging
-        double startTime = System.nanoTime();
+    private boolean run() {
+        // Wait until it is time to capture
+        try {
+            captureScheduler.awaitNextCapture();
+        } catch (InterruptedException e) {
+            return false;
+        }
 
-        // Process the images
-        gameImg = screenCapture.getFrame();
-        elementsImg = gameElementDetection.shrinkProcess(gameImg);
-        gameElementDetection.detect(elementsImg);
+        // Start timer for loop debugging
+        long startTime = System.nanoTime();
 
-        // Give information to the current algorithm in control
-        algorithmsManager.run(gameElementDetection.getSnakeHead(), gameElementDetection.getSnakeParts(),
-                gameElementDetection.getApplePos());
+        // Process the images. Sampling reads the tiles straight out of the screen
+        // shot, so there is no need to build the shrunk image every frame
+        BufferedImage frame = screenCapture.getFrame();
+        if (frame == null) {
+            return false;
+        }
+        gameElementDetection.sample(frame);
+
+        // If the board looks the same as last frame, or the frame was too small to
+        // sample, then there is nothing new to detect or give to the algorithm, but
+        // an action may still be due
+        boolean changed = !gameElementDetection.isUnchanged() && !gameElementDetection.isSkipped();
+        if (changed) {
+            gameElementDetection.detect(startTime);
+
+            // Give information to the current algorithm in control
+            algorithmsManager.run(gameElementDetection.getGameState());
+        } else if (!gameElementDetection.isSkipped()) {
+            gameElementDetection.detectUnchanged(startTime);
+        }
 
         // Get the next desired action from the algorithm and check if it is ready to be
-        // executed
+        // executed, skipping actions for cells the snake went through while frames
+        // were missed
+        algorithmsManager.getActionsManager().reconcile(gameElementDetection.getGameState());
         Action act = algorithmsManager.getActionsManager().getNextAction();
-        boolean ready = algorithmsManager.getActionsManager().checkAction(act, gameElementDetection.getSnakeHead());
+        boolean ready = algorithmsManager.getActionsManager().checkAction(act, gameElementDetection.getGameState(),
+                startTime);
 
         // If the snake is in the position desired, then execute the action
         if (ready) {
             algorithmsManager.getActionsManager().go(act);
         }
 
+        // Save what happened this frame
+        if (sessionRecorder != null) {
+            sessionRecorder.record(startTime, gameElementDetection.getTilePixels(),
+                    gameElementDetection.getTileClasses(), gameElementDetection.getGameState(), ready ? act : null,
+                    frame);
+        }
+        if (changed) {
+            gameImg.offer(frame);
+        }
+        screenCapture.release(frame);
+
         // Calculate the loop timings
-        double endTime = System.nanoTime();
-        fps = 1 / ((endTime - startTime) / 1000000000.0);
-        ms = (endTime - startTime) / 1000000.0;
+        long elapsed = System.nanoTime() - startTime;
+        fps = 1 / (elapsed / 1000000000.0);
+        ms = elapsed / 1000000.0;
 
         // Format statistics to two decimal places to look prettier
         fps = (double) Math.round(fps * 100) / 100;
         ms = (double) Math.round(ms * 100) / 100;
 
         // Print debug logs
-        System.out.println("main control loop took: " + ms + " ms, processing at: " + fps + " frames per second");
+        System.out.println("main control loop took: " + ms + " ms, processing at: " + fps + " frames per second"
+                + (changed ? "" : " (unchanged)") + ", unchanged: "
+                + Math.round(gameElementDetection.getUnchangedRate() * 100) + "%, missed ticks: "
+                + gameElementDetection.getMissedTicks() + " ("
+                + Math.round(gameElementDetection.getMissedTickRate() * 100) + "%)");
+        return true;
+    }
+
+    /**
+     * Finds the game board on the screen and saves where it is for the next run.
+     * If the board can not be found, it is assumed to be in a 600x600 window in
+     * the bottom left corner of the screen.
+     *
+     * @return the geometry of the board
+     */
+    public BoardGeometry calibrateBoard() {
+        // Capture the whole screen
+        Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+        screenCapture.setPositionFromCords(0, 0, screenSize.width, screenSize.height);
+        BufferedImage screenshot = screenCapture.getFrame();
+
+        BoardGeometry geometry = screenshot == null ? null : BoardCalibration.calibrate(screenshot, new Point(0, 0));
+        screenCapture.release(screenshot);
+        if (geometry == null) {
+            System.out.println("could not find the game board, assuming it is in the bottom left corner");
+            return BoardGeometry.defaultWindow(1, screenSize.height - Config.GameBoardSizePixels - 1);
+        }
+
+        // Save it so the next run can skip calibrating
+        System.out.println("found the game " + geometry);
+        try {
+            geometry.save(BoardGeometry.defaultCacheFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return geometry;
+    }
+
+    /**
+     * Finds every game board on the screen, for playing them all at once. The
+     * boards are not saved for the next run, they are likely to have moved.
+     *
+     * @return the geometry of every board, all with the same capture area around
+     *         every board, or an empty list if no board could be found
+     */
+    public List<BoardGeometry> calibrateBoards() {
+        // Capture the whole screen
+        Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+        screenCapture.setPositionFromCords(0, 0, screenSize.width, screenSize.height);
+        BufferedImage screenshot = screenCapture.getFrame();
+        if (screenshot == null) {
+            return Collections.emptyList();
+        }
+
+        List<BoardGeometry> geometries = BoardCalibration.calibrateAll(screenshot, new Point(0, 0));
+        screenCapture.release(screenshot);
+        for (int i = 0; i < geometries.size(); i++) {
+            System.out.println("found game " + i + " " + geometries.get(i));
+        }
+        return geometries;
+    }
+
+    /**
+     * Sets up another game to play alongside the first one, with its own
+     * detection, algorithms, and websocket port. It plays with the same algorithm
+     * as the first game.
+     *
+     * @param index        which game this is, more than 0
+     * @param geometry     where its board is in the captured frames
+     * @param probePattern which pixels of every tile to sample
+     * @return the game
+     */
+    private GameSession newGameSession(int index, BoardGeometry geometry, ProbePattern probePattern) {
+        GameElementDetection detection = new GameElementDetection();
+        detection.setProbePattern(probePattern);
+        detection.setBoardGeometry(geometry);
+
+        Algorithms algorithms = new Algorithms(new ActionsManager(Config.websocketServerPort + index),
+                algorithmsManager.getRunningAlgorithm().getName());
+        return new GameSession(index, detection, algorithms);
+    }
+
+    /**
+     * Captures and samples just the board described by a board geometry.
+     *
+     * @param geometry where the board is
+     */
+    public void useBoardGeometry(BoardGeometry geometry) {
+        Rectangle area = geometry.getCaptureArea();
+        screenCapture.setPositionFromCords(area.x, area.y, area.width, area.height);
+        gameElementDetection.setBoardGeometry(geometry);
     }
 
     /**
@@ -156,6 +512,7 @@ public final class Basilisk {
         // Get a frame and shrink it down
         BufferedImage frame = screenCapture.getFrame();
         BufferedImage shrunkFrame = gameElementDetection.shrinkProcess(frame);
+        screenCapture.release(frame);
 
         // Create the detectors
         Detector d1 = Detector.newDetectorFromImage(snakeDetectorName, shrunkFrame, new Point(2, 7));
@@ -202,7 +559,32 @@ public final class Basilisk {
      * @return basilisk's final processed image
      */
     public BufferedImage getProcessedGameImage() {
-        return this.gameImg;
+        if (framePipeline != null) {
+            return framePipeline.getLastDetectedFrame();
+        }
+        return this.gameImg.get();
+    }
+
+    /**
+     * @return basilisk's screen capture
+     */
+    public ScreenCapture getScreenCapture() {
+        return this.screenCapture;
+    }
+
+    /**
+     * @return basilisk's frame pipeline, or null if running serially
+     */
+    public FramePipeline getFramePipeline() {
+        return this.framePipeline;
+    }
+
+    /**
+     * @return every game being played, the first one is played with the game
+     *         element detection engine and algorithm manager engine
+     */
+    public List<GameSession> getGameSessions() {
+        return gameSessions;
     }
 
     /**
@@ -43,6 +43,23 @@ public final class Config {
      */
     public static final int SplashScreenTime = 5 * 1000;
 
+    /**
+     * How many frames a session recording keeps when only recording the tiles,
+     * about a minute and a half at 45 frames per second.
+     */
+    public static final int SessionRecordingSlots = 4096;
+
+    /**
+     * How many frames a session recording keeps when recording whole frames as
+     * well, a few seconds at 45 frames per second.
+     */
+    public static final int SessionRecordingFrameSlots = 256;
+
+    /**
+     * How many items can wait between two stages of the frame pipeline.
+     */
+    public static final int PipelineQueueCapacity = 4;
+
     public static volatile boolean paused = false;
     public static volatile boolean showSettingsMenu = false;
     public static volatile int websocketServerPort = 61888;
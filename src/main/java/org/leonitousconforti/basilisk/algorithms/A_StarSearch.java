@@ -1,26 +1,252 @@
 package org.leonitousconforti.basilisk.algorithms;
 
+import java.util.Arrays;
+
+import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+
 /**
- * Path finds using the A* search algorithm.
+ * Path finds using the A* search algorithm. The search works on flat arrays
+ * indexed by cell and a binary heap of packed ints, all allocated once, so a
+ * whole path to the apple takes microseconds and is planned again every time
+ * the snake moves.
  *
  * @see https://en.wikipedia.org/wiki/A*_search_algorithm
  */
 @SuppressWarnings("checkstyle:TypeName")
 public class A_StarSearch extends AlgorithmBase {
+    /**
+     * The name of the algorithm.
+     */
+    public static final String NAME = "A* Search";
+
+    // A heap entry is the estimated path length, then how far from the goal it is
+    // so ties go to the cell closest to the goal, then the cell, packed into one
+    // int so comparing entries is comparing ints
+    private static final int CELL_BITS = 8;
+    private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+    private static final int H_BITS = 8;
+
+    // Moving to the cell at the same index changes x and y by these amounts,
+    // left, right, up, down
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+    private static final String[] DIRECTIONS = {"left", "right", "up", "down"};
+
+    // How far every cell is from the start, and where it was reached from
+    private final int[] gScore;
+    private final int[] parent;
+
+    // Cells whose shortest path is known, and cells that can not be walked on
+    private final BitBoard closed;
+    private final BitBoard blocked;
+
+    // The open set, a binary min heap. Cells are pushed again when a shorter path
+    // to them is found and the old entry is skipped when it comes out, so every
+    // cell can be in it once per neighbor
+    private final int[] heap;
+    private int heapSize;
+
+    // The last path found, from the first step to the goal
+    private final int[] path;
+    private int pathLength;
+
     /**
      * Path finds using A*, almost always ends up killing itself.
      */
     public A_StarSearch() {
-        super("A* Search");
+        super(NAME);
+
+        gScore = new int[BitBoard.CELLS];
+        parent = new int[BitBoard.CELLS];
+        closed = new BitBoard();
+        blocked = new BitBoard();
+        heap = new int[BitBoard.CELLS * DIRECTIONS.length + 1];
+        path = new int[BitBoard.CELLS];
+        pathLength = 0;
     }
 
     @Override
     public void init() {
-
+        setDelayBetweenLoops(0);
     }
 
     @Override
     public void calcPath() {
+        GameState state = getGameState();
+        int head = state.getHeadCell();
+        if (head == -1) {
+            runOnNextDataChange();
+            return;
+        }
+
+        // The tail moves out of the way before the head can get to it
+        blocked.copyFrom(state.getBody());
+        int tail = state.getTailCell();
+        if ((tail != -1) && (tail != head)) {
+            blocked.clear(tail);
+        }
+
+        // Plan again from scratch, the last plan was for where the snake was
+        clearActions();
+        int apple = state.getAppleCell();
+        if ((apple != -1) && (findPath(head, apple, blocked) > 0)) {
+            addPathActions(path, pathLength);
+        } else {
+            // No way to the apple, just stay alive
+            queueSafeMove(head, currentDirection(state));
+        }
+
+        runOnNextDataChange();
+    }
+
+    /**
+     * Finds the shortest path between two cells that does not go through any
+     * blocked cells. The start and goal are never blocked.
+     *
+     * @param start        the cell index to start from
+     * @param goal         the cell index to get to
+     * @param blockedCells the cells that can not be walked on
+     * @return how many moves the path takes, 0 if the start is the goal, or -1
+     *         if there is no path. The path is in {@link #getPath() getPath}
+     */
+    public int findPath(int start, int goal, BitBoard blockedCells) {
+        Arrays.fill(gScore, Integer.MAX_VALUE);
+        closed.clear();
+        heapSize = 0;
+        pathLength = 0;
+
+        gScore[start] = 0;
+        parent[start] = -1;
+        push(start, heuristic(start, goal));
+        while (heapSize > 0) {
+            int cell = pop() & CELL_MASK;
+            if (closed.get(cell)) {
+                continue;
+            }
+            if (cell == goal) {
+                return tracePath(goal);
+            }
+            closed.set(cell);
+
+            // Relax every neighbor on the board
+            int x = BitBoard.xOf(cell);
+            int y = BitBoard.yOf(cell);
+            int g = gScore[cell] + 1;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int next = BitBoard.cellOf(x + DX[d], y + DY[d]);
+                if ((next == -1) || closed.get(next) || ((next != goal) && blockedCells.get(next))) {
+                    continue;
+                }
+                if (g < gScore[next]) {
+                    gScore[next] = g;
+                    parent[next] = cell;
+                    push(next, heuristic(next, goal));
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Follows the parents back from the goal and stores the path in order.
+     */
+    private int tracePath(int goal) {
+        pathLength = gScore[goal];
+        int cell = goal;
+        for (int i = pathLength - 1; i >= 0; i--) {
+            path[i] = cell;
+            cell = parent[cell];
+        }
+        return pathLength;
+    }
 
+    /**
+     * The manhattan distance between two cells, which is never more than the
+     * real path length because the snake can not move diagonally.
+     */
+    private static int heuristic(int from, int to) {
+        return Math.abs(BitBoard.xOf(to) - BitBoard.xOf(from)) + Math.abs(BitBoard.yOf(to) - BitBoard.yOf(from));
+    }
+
+    /**
+     * Adds a cell to the heap, sifting it up into place.
+     */
+    private void push(int cell, int h) {
+        int key = ((gScore[cell] + h) << (H_BITS + CELL_BITS)) | (h << CELL_BITS) | cell;
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >> 1;
+            if (heap[up] <= key) {
+                break;
+            }
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = key;
+    }
+
+    /**
+     * Takes the smallest entry off the heap, sifting the last entry down into its
+     * place.
+     */
+    private int pop() {
+        int top = heap[0];
+        int key = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if ((child + 1 < heapSize) && (heap[child + 1] < heap[child])) {
+                child++;
+            }
+            if (heap[child] >= key) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+        return top;
+    }
+
+    /**
+     * Moves the safest way, going straight if that is safe.
+     */
+    private void queueSafeMove(int head, int direction) {
+        String straight = direction == -1 ? null : DIRECTIONS[direction];
+        String safe = safestDirection(straight);
+        if ((safe != null) && !safe.equals(straight)) {
+            addAction(new Action(safe, BitBoard.pointOf(head)));
+        }
+    }
+
+    /**
+     * The index of the direction the snake is going in, from its neck to its
+     * head, or -1 if it is too short to tell.
+     */
+    private static int currentDirection(GameState state) {
+        int[] body = state.getOrderedBody();
+        String direction = body.length < 2 ? null : Action.directionBetween(body[1], body[0]);
+        return Arrays.asList(DIRECTIONS).indexOf(direction);
+    }
+
+    /**
+     * @return the cells of the last path found, from the first move to the goal.
+     *         Only the first {@link #getPathLength() getPathLength} are part of
+     *         it. Do not modify it
+     */
+    public int[] getPath() {
+        return path;
+    }
+
+    /**
+     * @return how many moves the last path found takes
+     */
+    public int getPathLength() {
+        return pathLength;
     }
 }
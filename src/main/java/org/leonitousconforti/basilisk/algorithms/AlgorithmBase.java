@@ -5,20 +5,30 @@ import java.util.ArrayList;
 
 import org.leonitousconforti.basilisk.Config;
 import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEvent;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEventListener;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.SafetyOracle;
 import org.leonitousconforti.basilisk.core.ActionsManager;
 
 /**
  * Outline for the basis of an algorithm.
  */
-public abstract class AlgorithmBase implements Runnable {
+public abstract class AlgorithmBase implements Runnable, GameEventListener {
+    // How long a selected algorithm waits between checks while the game is paused
+    private static final long PAUSED_WAIT_MILLIS = 10;
+
     // The actions manager to handle the offloading of actions
     private ActionsManager actionsManager;
 
     // The name of this algorithm, used to identify it in the settings gui
     private final String name;
 
-    // When this algorithm is selected by the user, this flag is set
+    // When this algorithm is selected by the user, this flag is set. Its thread
+    // waits on the selection change until it is
     private volatile boolean selected;
+    private final Object selectionChange;
 
     // When this algorithm is set tun just run once, this flag is set
     private boolean runOnce;
@@ -26,10 +36,16 @@ public abstract class AlgorithmBase implements Runnable {
     // The delay to wait between loop runs
     private int delay;
 
-    // References for all the data the algorithm has access to
-    private Point snakeHead;
-    private Point applePos;
-    private ArrayList<Point> snakeParts;
+    // The most recent snapshot of the game the algorithm has access to
+    private volatile GameState gameState;
+
+    // Notified whenever the snake's head moves in a new snapshot
+    private final Object dataChange;
+
+    // Checks moves for the algorithm's thread, and if moves from where the head
+    // is now that would get the snake killed are thrown away instead of queued
+    private final SafetyOracle safetyOracle;
+    private volatile boolean vetoUnsafeMoves;
 
     /**
      * Creates the basics of an algorithm.
@@ -40,22 +56,31 @@ public abstract class AlgorithmBase implements Runnable {
         // Initialize variables
         name = algorithmName;
         selected = false;
+        selectionChange = new Object();
         runOnce = false;
         delay = 0;
 
-        // These can not be left null
-        snakeHead = new Point(-1, -1);
-        applePos = new Point(-1, -1);
-        snakeParts = new ArrayList<Point>();
+        // This can not be left null
+        gameState = GameState.empty();
+        dataChange = new Object();
+        safetyOracle = new SafetyOracle();
+        vetoUnsafeMoves = false;
     }
 
     // The run method from Runnable, runs in its own thread
     @Override
     public final void run() {
         while (true) {
-            // Make sure it is this algorithm's turn to run
-            if ((Config.paused) || (!selected)) {
-                continue;
+            // Wait until it is this algorithm's turn to run. Selecting it wakes the
+            // thread up, pausing does not, so check for that every so often
+            synchronized (selectionChange) {
+                while (Config.paused || !selected) {
+                    try {
+                        selectionChange.wait(selected ? PAUSED_WAIT_MILLIS : 0);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
             }
 
             // Runs the algorithm's code now
@@ -81,15 +106,34 @@ public abstract class AlgorithmBase implements Runnable {
      * the algorithms cade, making sure that the algorithm has the most recent
      * information before making computations
      *
-     * @param updatedSnakeHead  the position of the snake's head
-     * @param updatedSnakeParts the position of the snake's body parts
-     * @param updatedApplePos   the position of the apple/thing the snake is trying
-     *                          to eat
+     * @param updatedGameState the snapshot of the game from the game element
+     *                         detection
+     */
+    public final void update(GameState updatedGameState) {
+        GameState previousGameState = gameState;
+        gameState = updatedGameState;
+
+        // Wake up anything waiting for the snake to move
+        if (previousGameState.getHeadCell() != updatedGameState.getHeadCell()) {
+            synchronized (dataChange) {
+                dataChange.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Called for every {@link GameEvent event} in the game while this algorithm
+     * is the running algorithm, like the snake moving, turning, or eating the
+     * apple. Override this method to keep track of the game as it changes instead
+     * of comparing snapshots. It is called on the detection thread, so keep it
+     * quick and hand anything slow over to {@link #calcPath() calcPath}. The
+     * event carries the game state it was found in, which may be newer than
+     * {@link #getGameState() getGameState} for a moment.
+     *
+     * @param event what happened
      */
-    public final void update(Point updatedSnakeHead, ArrayList<Point> updatedSnakeParts, Point updatedApplePos) {
-        snakeHead = updatedSnakeHead;
-        snakeParts = updatedSnakeParts;
-        applePos = updatedApplePos;
+    @Override
+    public void onGameEvent(GameEvent event) {
     }
 
     /**
@@ -113,28 +157,124 @@ public abstract class AlgorithmBase implements Runnable {
     }
 
     /**
-     * Add an action to the action queue.
+     * Add an action to the action queue. If {@link #setVetoUnsafeMoves(boolean)
+     * vetoing} is on, an action to be taken right away that is not
+     * {@link #isSafeMove(String) safe} is thrown away instead.
      *
      * @param a the action to add
+     * @return if the action was queued
      */
-    public final void addAction(Action a) {
+    public final boolean addAction(Action a) {
+        if (vetoUnsafeMoves && isImmediate(a) && !isSafeMove(a.getDir())) {
+            return false;
+        }
         actionsManager.addAction(a);
+        return true;
+    }
+
+    /**
+     * Checks if an action is taken right away, with no execution point or the
+     * execution point where the head is now.
+     */
+    private boolean isImmediate(Action a) {
+        Point executionPoint = a.getExecutionPoint();
+        return ((executionPoint.x <= -1) && (executionPoint.y <= -1))
+                || (BitBoard.cellOf(executionPoint) == gameState.getHeadCell());
+    }
+
+    /**
+     * Set if actions to be taken right away that would get the snake killed, by
+     * running into something or into a pocket it can not get out of, are thrown
+     * away instead of queued.
+     *
+     * @param veto if unsafe actions are thrown away
+     */
+    public final void setVetoUnsafeMoves(boolean veto) {
+        vetoUnsafeMoves = veto;
+    }
+
+    /**
+     * Checks if moving the head one way from where it is now is safe, using the
+     * algorithm's {@link SafetyOracle}. Only call this from the algorithm's
+     * thread.
+     *
+     * @param direction "left", "right", "up", or "down"
+     * @return if the move is safe
+     */
+    public final boolean isSafeMove(String direction) {
+        return safetyOracle.isSafe(gameState, direction);
+    }
+
+    /**
+     * Picks the safest way to move the head from where it is now, using the
+     * algorithm's {@link SafetyOracle}. Only call this from the algorithm's
+     * thread.
+     *
+     * @param preferred the way the algorithm wants to go, or null
+     * @return the way to go, or null if every way runs into something
+     * @see SafetyOracle#safestDirection(GameState, String)
+     */
+    public final String safestDirection(String preferred) {
+        return safetyOracle.safestDirection(gameState, preferred);
     }
 
     /**
-     * Stalls the thread until the snake position has updated.
+     * @return the oracle the algorithm checks moves with, only use it from the
+     *         algorithm's thread
+     */
+    public final SafetyOracle getSafetyOracle() {
+        return safetyOracle;
+    }
+
+    /**
+     * Queues the actions to follow a path from the snake's head, one wherever the
+     * path turns. The first move only gets an action if it is not the way the
+     * snake is already going.
+     *
+     * @param pathCells the cell indexes of the path, starting with the cell next
+     *                  to the head, each one next to the one before
+     * @param moves     how many cells of the path to follow
+     */
+    public final void addPathActions(int[] pathCells, int moves) {
+        int[] body = gameState.getOrderedBody();
+        int from = gameState.getHeadCell();
+        String direction = body.length < 2 ? null : Action.directionBetween(body[1], body[0]);
+        for (int i = 0; i < moves; i++) {
+            String turn = Action.directionBetween(from, pathCells[i]);
+            if ((turn != null) && !turn.equals(direction)) {
+                addAction(new Action(turn, BitBoard.pointOf(from)));
+                direction = turn;
+            }
+            from = pathCells[i];
+        }
+    }
+
+    /**
+     * Removes every action this algorithm queued that has not been taken yet, for
+     * throwing away an old plan before queueing a new one.
+     */
+    public final void clearActions() {
+        actionsManager.clearQueue();
+    }
+
+    /**
+     * Stalls the thread until the snake position has updated. The thread sleeps
+     * until {@link #update(GameState) update} is given a snapshot with the head
+     * somewhere else.
      */
-    @SuppressWarnings("checkstyle:MagicNumber")
     public final void runOnNextDataChange() {
         // Get the snake's head position at the start of the loop
-        Point previousSnakeHead = getSnakeHead();
+        int previousHeadCell = gameState.getHeadCell();
 
-        // Compare the positions until they change
-        while ((previousSnakeHead.x == getSnakeHead().x) && (previousSnakeHead.y == getSnakeHead().y)) {
-            try {
-                Thread.sleep(5);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // Wait until it changes
+        synchronized (dataChange) {
+            while (gameState.getHeadCell() == previousHeadCell) {
+                try {
+                    dataChange.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
         }
     }
@@ -147,12 +287,16 @@ public abstract class AlgorithmBase implements Runnable {
     }
 
     /**
-     * Sets the algorithm as selected by the user.
+     * Sets the algorithm as selected by the user, and wakes its thread up to
+     * start running it.
      */
     public final void setSelected() {
-        selected = true;
         actionsManager.wipe();
         init();
+        selected = true;
+        synchronized (selectionChange) {
+            selectionChange.notifyAll();
+        }
     }
 
     /**
@@ -166,29 +310,45 @@ public abstract class AlgorithmBase implements Runnable {
      * Tells the algorithm to just run its code one time.
      */
     public final void runOnce() {
-        setSelected();
         runOnce = true;
+        setSelected();
+    }
+
+    /**
+     * @return Get the most recent snapshot of the game
+     */
+    public final GameState getGameState() {
+        return gameState;
     }
 
     /**
      * @return Get the position of the snake's head
      */
     public final Point getSnakeHead() {
-        return snakeHead;
+        return gameState.getSnakeHead();
+    }
+
+    /**
+     * @return Get the cells with the snake's body parts on them, including the
+     *         head
+     */
+    public final BitBoard getSnakeBoard() {
+        return gameState.getBody();
     }
 
     /**
-     * @return Get the locations of the snake's body parts
+     * @return Get the locations of the snake's body parts. This allocates a new
+     *         list every time, prefer {@link #getSnakeBoard() getSnakeBoard}
      */
     public final ArrayList<Point> getSnakeParts() {
-        return snakeParts;
+        return gameState.getBody().toPoints();
     }
 
     /**
      * @return Get the position of the apple
      */
     public final Point getApplePos() {
-        return applePos;
+        return gameState.getApplePos();
     }
 
     /**
@@ -0,0 +1,461 @@
+package org.leonitousconforti.basilisk.algorithms;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.leonitousconforti.basilisk.Config;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.SnakeSimulation;
+
+/**
+ * Looks ahead with an expectimax search that knows the next apple spawns on a
+ * random free cell. The snake picks the move with the best value, and after it
+ * eats, the value is the average over where the next apple could spawn: every
+ * free cell when there are only a few left, which is late in the game where
+ * runs die, or a random sample of them otherwise. Positions at the end of the
+ * search are scored by how much room the head has, if it can still get to the
+ * tail, and how close the apple is.
+ *
+ * <p>
+ * The search deepens one move at a time until it reaches the depth or runs out
+ * of time, and takes the best move of the deepest search that finished. The
+ * moves from the root, and the spawns of the apple near the root, are searched
+ * in parallel on a {@link ForkJoinPool}. Every position searched is kept in a
+ * memo shared by all the threads, so the deeper searches, and the searches
+ * for the next moves, do not search the same positions again. The memo is
+ * looked up by the position's fingerprint, and keeps the whole position to
+ * check against, so two positions with the same fingerprint are never mixed
+ * up.
+ * </p>
+ *
+ * @see https://en.wikipedia.org/wiki/Expectiminimax
+ */
+public class Expectimax extends AlgorithmBase {
+    /**
+     * The name of the algorithm.
+     */
+    public static final String NAME = "Expectimax";
+
+    // How deep and how long a search goes by default, the time a little less
+    // than the snake takes to move one cell
+    private static final int DEFAULT_DEPTH = 8;
+    private static final int DEFAULT_BUDGET_MILLIS = 40;
+
+    // What eating, dying, and filling the board are worth, and how much less a
+    // move later is worth than one now
+    private static final double APPLE_REWARD = 1;
+    private static final double DEATH_VALUE = -10;
+    private static final double WIN_VALUE = 10;
+    private static final double DISCOUNT = 0.95;
+
+    // How a position at the end of the search is scored, more room is better,
+    // not being able to get to the tail is very bad, worse the less room there
+    // is for how long the snake is, and being closer to the apple is a little
+    // better
+    private static final double AREA_WEIGHT = 0.5;
+    private static final double TRAPPED_PENALTY = 5;
+    private static final double MIN_TRAPPED_PENALTY = 0.5;
+    private static final double DISTANCE_WEIGHT = 0.3;
+    private static final double MAX_DISTANCE = Config.NumberOfColsOnGameBoard + Config.NumberOfRowsOnGameBoard;
+
+    // Every spawn of the apple is searched when there are at most this many free
+    // cells, otherwise this many random ones are
+    private static final int EXHAUSTIVE_SPAWNS = 8;
+    private static final int SAMPLED_SPAWNS = 6;
+
+    // The spawns of the apple are searched in parallel with at least this many
+    // moves left to search after them
+    private static final int FORK_DEPTH = 3;
+
+    // The memo is emptied when it gets this big
+    private static final int MAX_MEMO_ENTRIES = 1 << 18;
+
+    // Mixes how many moves are left to search into a position's fingerprint
+    private static final long KEY_MULTIPLIER = 31;
+
+    // The number of directions, and milliseconds to nanoseconds
+    private static final int MOVES = 4;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    // The threads to search on
+    private final ForkJoinPool pool;
+
+    // The value of every position searched, by its fingerprint mixed with how
+    // many moves were searched after it
+    private final ConcurrentHashMap<Long, Remembered> memo;
+
+    // The game as it is now
+    private final SnakeSimulation root;
+
+    // How deep and how long every search can go
+    private volatile int maxDepth;
+    private volatile long budgetNanos;
+
+    // When the search has to stop, and if it has had to
+    private volatile long deadline;
+    private volatile boolean outOfTime;
+
+    // For statistics
+    private volatile int lastDepth;
+    private final LongAdder memoHits;
+
+    /**
+     * Looks ahead with expectimax over where the apple spawns on every core.
+     */
+    public Expectimax() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Looks ahead with expectimax over where the apple spawns on the threads of a
+     * pool.
+     *
+     * @param forkJoinPool the pool to search on
+     */
+    public Expectimax(ForkJoinPool forkJoinPool) {
+        super(NAME);
+
+        pool = forkJoinPool;
+        memo = new ConcurrentHashMap<Long, Remembered>();
+        root = new SnakeSimulation();
+        maxDepth = DEFAULT_DEPTH;
+        budgetNanos = DEFAULT_BUDGET_MILLIS * NANOS_PER_MILLI;
+        memoHits = new LongAdder();
+    }
+
+    @Override
+    public void init() {
+        setDelayBetweenLoops(0);
+        memo.clear();
+    }
+
+    @Override
+    public void calcPath() {
+        GameState state = getGameState();
+        int head = state.getHeadCell();
+        if ((head == -1) || (state.getOrderedBody().length != state.getLength())) {
+            runOnNextDataChange();
+            return;
+        }
+
+        int best = search(state, maxDepth, budgetNanos);
+
+        // The snake moved while searching, search again from where it is now
+        if (getGameState().getHeadCell() != head) {
+            return;
+        }
+
+        // With nowhere safe to go, at least go where there is the most room
+        clearActions();
+        int next = best == -1 ? -1 : SnakeSimulation.neighbor(head, best);
+        if (next == -1) {
+            String direction = safestDirection(null);
+            for (int d = 0; (direction != null) && (d < MOVES); d++) {
+                if (SnakeSimulation.nameOf(d).equals(direction)) {
+                    next = SnakeSimulation.neighbor(head, d);
+                }
+            }
+        }
+        if (next != -1) {
+            int[] move = {next};
+            addPathActions(move, 1);
+        }
+
+        runOnNextDataChange();
+    }
+
+    /**
+     * Searches for the best move from a snapshot of the game, one move deeper at
+     * a time until the depth or the time runs out.
+     *
+     * @param state the snapshot, with the body in order
+     * @param depth the most moves to look ahead
+     * @param nanos how long to search for
+     * @return the best direction of the deepest search that finished,
+     *         {@link SnakeSimulation#LEFT}, {@link SnakeSimulation#RIGHT},
+     *         {@link SnakeSimulation#UP}, or {@link SnakeSimulation#DOWN}, or -1
+     *         if every move dies straight away
+     */
+    public int search(GameState state, int depth, long nanos) {
+        root.reset(state);
+        int safe = root.safeMoves();
+        if (safe == 0) {
+            return -1;
+        }
+        if (memo.size() > MAX_MEMO_ENTRIES) {
+            memo.clear();
+        }
+
+        deadline = System.nanoTime() + nanos;
+        outOfTime = false;
+        int best = Integer.numberOfTrailingZeros(safe);
+        lastDepth = 0;
+        final Subtree[] moves = new Subtree[MOVES];
+        for (int searchDepth = 1; searchDepth <= depth; searchDepth++) {
+            for (int d = 0; d < MOVES; d++) {
+                moves[d] = (safe & (1 << d)) == 0 ? null : new Subtree(root, d, searchDepth);
+            }
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    for (Subtree move : moves) {
+                        if (move != null) {
+                            move.fork();
+                        }
+                    }
+                    for (Subtree move : moves) {
+                        if (move != null) {
+                            move.join();
+                        }
+                    }
+                }
+            });
+            if (outOfTime) {
+                break;
+            }
+
+            // The best move of the deepest search that finished
+            for (int d = 0; d < MOVES; d++) {
+                if ((moves[d] != null) && (moves[d].getRawResult() > moves[best].getRawResult())) {
+                    best = d;
+                }
+            }
+            lastDepth = searchDepth;
+        }
+        return best;
+    }
+
+    /**
+     * Set how many moves ahead every search looks, at most.
+     *
+     * @param depth the number of moves
+     */
+    public void setDepth(int depth) {
+        maxDepth = depth;
+    }
+
+    /**
+     * Set how long every search can take. It should leave time to press the key
+     * before the snake moves again.
+     *
+     * @param millis the milliseconds to search for
+     */
+    public void setTimeBudgetMillis(int millis) {
+        budgetNanos = millis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return how many moves ahead the deepest search that finished in the last
+     *         move looked
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * @return how many times a position was found in the memo instead of being
+     *         searched
+     */
+    public long getMemoHits() {
+        return memoHits.sum();
+    }
+
+    /**
+     * Searches part of the tree on one thread of the pool, either the value of a
+     * move from a position, or the value of a position. Every subtree has games
+     * of its own to play forward, one for every move deeper it goes.
+     */
+    private final class Subtree extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        // The position to search from, the move to make or -1 for none, and how
+        // many moves to search
+        private final transient SnakeSimulation start;
+        private final int move;
+        private final int depth;
+
+        // A game for every move deeper, and scratch space for scoring positions
+        private final transient SnakeSimulation[] games;
+        private final transient BitBoard open;
+        private final transient BitBoard reached;
+        private final transient BitBoard scratch;
+        private final transient SplittableRandom random;
+
+        Subtree(SnakeSimulation position, int moveToMake, int movesToSearch) {
+            start = position;
+            move = moveToMake;
+            depth = movesToSearch;
+            games = new SnakeSimulation[movesToSearch + 1];
+            for (int i = 0; i < games.length; i++) {
+                games[i] = new SnakeSimulation();
+            }
+            open = new BitBoard();
+            reached = new BitBoard();
+            scratch = new BitBoard();
+            random = new SplittableRandom();
+        }
+
+        @Override
+        protected Double compute() {
+            games[0].copyFrom(start);
+            return move == -1 ? maxValue(0, depth) : moveValue(0, move, depth);
+        }
+
+        /**
+         * The value of the best move from a position, or the score of the position
+         * if there are no moves left to search.
+         */
+        private double maxValue(int level, int movesLeft) {
+            if (System.nanoTime() > deadline) {
+                outOfTime = true;
+            }
+            if (outOfTime) {
+                return 0;
+            }
+
+            SnakeSimulation game = games[level];
+            if (movesLeft == 0) {
+                return evaluate(game);
+            }
+            Long key = game.fingerprint() * KEY_MULTIPLIER + movesLeft;
+            long[] position = game.position();
+            Remembered known = memo.get(key);
+            if ((known != null) && Arrays.equals(known.position, position)) {
+                memoHits.increment();
+                return known.value;
+            }
+
+            int safe = game.safeMoves();
+            double best = DEATH_VALUE;
+            for (int d = 0; d < MOVES; d++) {
+                if ((safe & (1 << d)) != 0) {
+                    best = Math.max(best, moveValue(level, d, movesLeft));
+                }
+            }
+
+            // A search that ran out of time did not finish, so its value is wrong
+            if (!outOfTime) {
+                memo.put(key, new Remembered(position, best));
+            }
+            return best;
+        }
+
+        /**
+         * The value of making a move from a position, the apple if it eats it and
+         * the value of the position after.
+         */
+        private double moveValue(int level, int direction, int movesLeft) {
+            SnakeSimulation child = games[level + 1].copyFrom(games[level]);
+            child.move(direction);
+            if (!child.justAte()) {
+                return DISCOUNT * maxValue(level + 1, movesLeft - 1);
+            }
+            return APPLE_REWARD + DISCOUNT * chanceValue(level + 1, movesLeft - 1);
+        }
+
+        /**
+         * The average value of a position over where the apple could spawn, every
+         * free cell or a random sample of them.
+         */
+        private double chanceValue(int level, int movesLeft) {
+            SnakeSimulation game = games[level];
+            open.copyFrom(game.getBody()).invert();
+            int free = open.popCount();
+            if (free == 0) {
+                return WIN_VALUE;
+            }
+            if (movesLeft == 0) {
+                return evaluate(game);
+            }
+
+            // Where the apple could spawn
+            int spawns = free <= EXHAUSTIVE_SPAWNS ? free : SAMPLED_SPAWNS;
+            int[] cells = new int[spawns];
+            if (free <= EXHAUSTIVE_SPAWNS) {
+                for (int i = 0, cell = open.nextSetCell(0); i < spawns; i++, cell = open.nextSetCell(cell + 1)) {
+                    cells[i] = cell;
+                }
+            } else {
+                for (int i = 0; i < spawns; i++) {
+                    cells[i] = game.spawnApple(random);
+                }
+            }
+
+            // Search the spawns in parallel near the root, where there is a lot
+            // left to search after them
+            double total = 0;
+            if (movesLeft >= FORK_DEPTH) {
+                Subtree[] subtrees = new Subtree[spawns];
+                for (int i = 0; i < spawns; i++) {
+                    SnakeSimulation spawned = new SnakeSimulation().copyFrom(game);
+                    spawned.setApple(cells[i]);
+                    subtrees[i] = new Subtree(spawned, -1, movesLeft);
+                }
+                invokeAll(subtrees);
+                for (Subtree subtree : subtrees) {
+                    total += subtree.join();
+                }
+            } else {
+                for (int cell : cells) {
+                    game.setApple(cell);
+                    total += maxValue(level, movesLeft);
+                }
+            }
+            game.setApple(-1);
+            return total / spawns;
+        }
+
+        /**
+         * Scores a position at the end of the search by how much room the head has,
+         * if it can get to the tail, and how close the apple is.
+         */
+        private double evaluate(SnakeSimulation game) {
+            int head = game.getHeadCell();
+            int tail = game.getTailCell();
+            int length = game.getLength();
+
+            // The tail moves out of the way, so it counts as room
+            open.copyFrom(game.getBody()).invert();
+            open.set(tail);
+            reached.clear();
+            reached.set(head);
+            int area = reached.fill(open, scratch) - 1;
+
+            double value = AREA_WEIGHT * area / BitBoard.CELLS;
+            if (!reached.get(tail)) {
+                value -= TRAPPED_PENALTY * Math.max(MIN_TRAPPED_PENALTY, 1 - (double) area / length);
+            }
+
+            int apple = game.getApple();
+            if (apple != -1) {
+                int distance = Math.abs(BitBoard.xOf(apple) - BitBoard.xOf(head))
+                        + Math.abs(BitBoard.yOf(apple) - BitBoard.yOf(head));
+                value -= DISTANCE_WEIGHT * distance / MAX_DISTANCE;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The value of a position in the memo, with the position written down to
+     * check against when it is looked up.
+     */
+    private static final class Remembered {
+        // The position, and its value
+        private final long[] position;
+        private final double value;
+
+        Remembered(long[] position, double value) {
+            this.position = position;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package org.leonitousconforti.basilisk.algorithms;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.SnakeSimulation;
+
+/**
+ * Looks ahead with Monte Carlo tree search. Every move the game is copied into
+ * a {@link SnakeSimulation} and played forward many times, down a tree of moves
+ * picked with UCT and then randomly to the end of a playout, and the move the
+ * search tried most is taken. Playouts reward staying alive for longer, and a
+ * little for eating, so on crowded boards the snake stays out of places it can
+ * not get back out of.
+ *
+ * <p>
+ * The search is spread over every thread of a {@link ForkJoinPool} with root
+ * parallelism. Every worker grows a tree of its own from the same game until
+ * the time for the move is up, and the visits of the moves from the root are
+ * added up over all the trees. Trees only remember moves, not where the apple
+ * spawned, so the apples a node saw are averaged over. Trees and games are
+ * allocated by the first search and reused every move after it.
+ * </p>
+ *
+ * @see https://en.wikipedia.org/wiki/Monte_Carlo_tree_search
+ */
+public class MonteCarloTreeSearch extends AlgorithmBase {
+    /**
+     * The name of the algorithm.
+     */
+    public static final String NAME = "Monte Carlo Tree Search";
+
+    // How long a search takes by default, a little less than the snake takes to
+    // move one cell
+    private static final int DEFAULT_BUDGET_MILLIS = 40;
+
+    // How many moves from the root a playout goes before it counts as survived
+    private static final int HORIZON = 64;
+
+    // How much of the reward is for staying alive, the rest is for eating
+    private static final double SURVIVAL_WEIGHT = 0.8;
+
+    // How much UCT favors moves that have not been tried much
+    private static final double EXPLORATION = 0.7;
+
+    // The most nodes a worker's tree can have, after that playouts stop growing
+    // it
+    private static final int MAX_NODES = 1 << 15;
+
+    // How many playouts a worker runs between looking at the clock
+    private static final int PLAYOUTS_PER_CLOCK_CHECK = 8;
+
+    // The number of directions, and milliseconds to nanoseconds
+    private static final int MOVES = 4;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    // The threads to search on and a tree for each of them, the trees are only
+    // made once there is something to search
+    private final ForkJoinPool pool;
+    private Worker[] workers;
+
+    // The game as it is now, which every worker copies from
+    private final SnakeSimulation root;
+
+    // How long every search can take
+    private volatile long budgetNanos;
+
+    // For statistics
+    private volatile long lastPlayouts;
+
+    /**
+     * Looks ahead with Monte Carlo tree search on every core.
+     */
+    public MonteCarloTreeSearch() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Looks ahead with Monte Carlo tree search on the threads of a pool.
+     *
+     * @param forkJoinPool the pool to search on, with a tree for each of its
+     *                     threads
+     */
+    public MonteCarloTreeSearch(ForkJoinPool forkJoinPool) {
+        super(NAME);
+
+        pool = forkJoinPool;
+        root = new SnakeSimulation();
+        workers = null;
+        budgetNanos = DEFAULT_BUDGET_MILLIS * NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void init() {
+        setDelayBetweenLoops(0);
+    }
+
+    @Override
+    public void calcPath() {
+        GameState state = getGameState();
+        int head = state.getHeadCell();
+        if ((head == -1) || (state.getOrderedBody().length != state.getLength())) {
+            runOnNextDataChange();
+            return;
+        }
+
+        int best = search(state, budgetNanos);
+
+        // The snake moved while searching, search again from where it is now
+        if (getGameState().getHeadCell() != head) {
+            return;
+        }
+
+        // With nowhere safe to go, at least go where there is the most room
+        clearActions();
+        String direction = best == -1 ? safestDirection(null) : SnakeSimulation.nameOf(best);
+        if (direction != null) {
+            int[] move = {neighborOf(head, direction)};
+            addPathActions(move, 1);
+        }
+
+        runOnNextDataChange();
+    }
+
+    /**
+     * Searches for the best move from a snapshot of the game, taking as long as
+     * the budget allows.
+     *
+     * @param state the snapshot, with the body in order
+     * @param nanos how long to search for
+     * @return the direction the most playouts went, {@link SnakeSimulation#LEFT},
+     *         {@link SnakeSimulation#RIGHT}, {@link SnakeSimulation#UP}, or
+     *         {@link SnakeSimulation#DOWN}, or -1 if every move dies straight
+     *         away
+     */
+    public int search(GameState state, long nanos) {
+        root.reset(state);
+        if (root.safeMoves() == 0) {
+            return -1;
+        }
+
+        if (workers == null) {
+            workers = new Worker[pool.getParallelism()];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(root);
+            }
+        }
+
+        long deadline = System.nanoTime() + nanos;
+        for (Worker worker : workers) {
+            worker.reinitialize();
+            worker.setDeadline(deadline);
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(workers);
+            }
+        });
+
+        // The move tried the most over all the trees
+        long[] visits = new long[MOVES];
+        long playouts = 0;
+        for (Worker worker : workers) {
+            playouts += worker.getPlayouts();
+            for (int d = 0; d < MOVES; d++) {
+                visits[d] += worker.getRootVisits(d);
+            }
+        }
+        lastPlayouts = playouts;
+
+        int best = -1;
+        for (int d = 0; d < MOVES; d++) {
+            if ((visits[d] > 0) && ((best == -1) || (visits[d] > visits[best]))) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The cell next to a cell the way of a direction name.
+     */
+    private static int neighborOf(int cell, String direction) {
+        for (int d = 0; d < MOVES; d++) {
+            if (SnakeSimulation.nameOf(d).equals(direction)) {
+                return SnakeSimulation.neighbor(cell, d);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Set how long every search can take. It should leave time to press the key
+     * before the snake moves again.
+     *
+     * @param millis the milliseconds to search for
+     */
+    public void setTimeBudgetMillis(int millis) {
+        budgetNanos = millis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return how many playouts the last search ran over all the threads
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * Grows one tree on one thread of the pool. The tree is kept in flat arrays,
+     * with the child of every node for every direction at node * 4 + direction,
+     * or -1 if it has not been tried.
+     */
+    private static final class Worker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // The game to search from, and the game being played forward
+        private final transient SnakeSimulation root;
+        private final transient SnakeSimulation game;
+        private final transient SplittableRandom random;
+
+        // The tree
+        private final int[] children;
+        private final int[] visits;
+        private final double[] values;
+        private int nodeCount;
+
+        // The nodes the current playout went through
+        private final int[] path;
+
+        private long deadline;
+        private long playouts;
+
+        Worker(SnakeSimulation rootGame) {
+            root = rootGame;
+            game = new SnakeSimulation();
+            random = new SplittableRandom();
+            children = new int[MAX_NODES * MOVES];
+            visits = new int[MAX_NODES];
+            values = new double[MAX_NODES];
+            path = new int[HORIZON + 1];
+        }
+
+        void setDeadline(long nanoTime) {
+            deadline = nanoTime;
+        }
+
+        long getPlayouts() {
+            return playouts;
+        }
+
+        int getRootVisits(int direction) {
+            int child = children[direction];
+            return child == -1 ? 0 : visits[child];
+        }
+
+        @Override
+        protected void compute() {
+            nodeCount = 0;
+            newNode();
+            playouts = 0;
+            do {
+                for (int i = 0; i < PLAYOUTS_PER_CLOCK_CHECK; i++) {
+                    playout();
+                }
+            } while (System.nanoTime() < deadline);
+        }
+
+        /**
+         * Goes down the tree picking moves with UCT until it gets to a move that has
+         * not been tried, adds it to the tree, plays randomly from there, and adds
+         * the reward to every node on the way.
+         */
+        private void playout() {
+            game.copyFrom(root);
+            int node = 0;
+            int depth = 0;
+            path[depth++] = node;
+            while (game.getMoves() < HORIZON) {
+                int safe = game.safeMoves();
+                if (safe == 0) {
+                    break;
+                }
+
+                int d = select(node, safe);
+                int child = children[node * MOVES + d];
+                boolean expand = child == -1;
+                if (expand) {
+                    if (nodeCount == MAX_NODES) {
+                        break;
+                    }
+                    child = newNode();
+                    children[node * MOVES + d] = child;
+                }
+
+                step(d);
+                node = child;
+                path[depth++] = node;
+                if (expand) {
+                    break;
+                }
+            }
+
+            double reward = rollout();
+            for (int i = 0; i < depth; i++) {
+                visits[path[i]]++;
+                values[path[i]] += reward;
+            }
+            playouts++;
+        }
+
+        /**
+         * Picks a safe move that has not been tried yet, or the safe move with the
+         * best UCT score if they all have.
+         */
+        private int select(int node, int safe) {
+            int untried = 0;
+            for (int d = 0; d < MOVES; d++) {
+                if (((safe & (1 << d)) != 0) && (children[node * MOVES + d] == -1)) {
+                    untried |= 1 << d;
+                }
+            }
+            if (untried != 0) {
+                return randomBit(untried);
+            }
+
+            double logVisits = Math.log(visits[node]);
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int d = 0; d < MOVES; d++) {
+                if ((safe & (1 << d)) == 0) {
+                    continue;
+                }
+                int child = children[node * MOVES + d];
+                double score = values[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if (score > bestScore) {
+                    best = d;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Plays random safe moves until the horizon or until there are none left,
+         * and scores how long the snake lasted and if it ate.
+         */
+        private double rollout() {
+            boolean trapped = false;
+            while (game.getMoves() < HORIZON) {
+                int safe = game.safeMoves();
+                if (safe == 0) {
+                    trapped = true;
+                    break;
+                }
+                step(randomBit(safe));
+            }
+
+            double survival = trapped ? (double) game.getMoves() / HORIZON : 1;
+            return SURVIVAL_WEIGHT * survival + (game.getEaten() > 0 ? 1 - SURVIVAL_WEIGHT : 0);
+        }
+
+        /**
+         * Moves the game forward, spawning a new apple if the snake ate.
+         */
+        private void step(int direction) {
+            game.move(direction);
+            if (game.justAte()) {
+                game.spawnApple(random);
+            }
+        }
+
+        /**
+         * Picks one of the set bits of a mask at random.
+         */
+        private int randomBit(int mask) {
+            int skip = random.nextInt(Integer.bitCount(mask));
+            int bits = mask;
+            for (int i = 0; i < skip; i++) {
+                bits &= bits - 1;
+            }
+            return Integer.numberOfTrailingZeros(bits);
+        }
+
+        /**
+         * Adds a node with no children to the tree.
+         */
+        private int newNode() {
+            int node = nodeCount++;
+            for (int d = 0; d < MOVES; d++) {
+                children[node * MOVES + d] = -1;
+            }
+            visits[node] = 0;
+            values[node] = 0;
+            return node;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package org.leonitousconforti.basilisk.algorithms;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.leonitousconforti.basilisk.Config;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEvent;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.HamiltonianCycle;
+import org.leonitousconforti.basilisk.algorithms.shared.HamiltonianCycles;
+
+/**
+ * Follows a Hamiltonian cycle, but takes shortcuts to the apple when it is
+ * safe to. As long as every part of the body is on the stretch of the cycle
+ * between the tail and the head, the cells ahead of the head up to the tail are
+ * free. Jumping ahead to a cell on that stretch, as long as enough room is left
+ * before the tail for the snake to grow, keeps it that way, so the snake can
+ * never run into itself and still never dies. Checking a shortcut is comparing
+ * two ranks in the cycle's table. The shortcuts stop once the snake fills half
+ * of the cycle, from then on it just follows the cycle.
+ *
+ * <p>
+ * Cells the cycle does not go through are only gone onto to eat an apple on
+ * them, with a detour of at most two cells that gets back onto the cycle ahead
+ * of where it left.
+ * </p>
+ *
+ * <p>
+ * Every game is played on the next of a few different cycles, so the snake
+ * does not always take the same way around the board.
+ * </p>
+ *
+ * @see https://en.wikipedia.org/wiki/Hamiltonian_path
+ */
+public class PerturbedHamiltonian extends AlgorithmBase {
+    /**
+     * The name of the algorithm.
+     */
+    public static final String NAME = "Perturbed Hamiltonian";
+
+    // Cells of room kept between the head and the tail after a shortcut, for the
+    // snake growing after it eats
+    private static final int GROWTH_MARGIN = 4;
+
+    // Shortcuts are only taken while the snake takes up less than this much of
+    // the cycle
+    private static final double MAX_SHORTCUT_FILL = 0.5;
+
+    // The most cells off the cycle a detour to an apple goes through
+    private static final int MAX_DETOUR = 2;
+
+    // How many moves are queued after every decision, so the snake still has a
+    // plan if frames are missed
+    private static final int PLAN_AHEAD = 4;
+
+    // Moving to the cell at the same index changes x and y by these amounts,
+    // left, right, up, down
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+
+    // The cycles to pick from, the one being followed, and the one to switch to
+    // before the next move
+    private final List<HamiltonianCycle> cycles;
+    private HamiltonianCycle cycle;
+    private volatile int nextCycle;
+
+    // The moves to queue, and the last cell on the cycle the head was on, for
+    // getting back on after a detour
+    private final int[] plan;
+    private int lastCycleCell;
+
+    /**
+     * Follows the {@link HamiltonianCycles#forBoard(int, int) cached} Hamiltonian
+     * cycles for the board, taking safe shortcuts to the apple.
+     */
+    public PerturbedHamiltonian() {
+        this(HamiltonianCycles.forBoard(Config.NumberOfColsOnGameBoard, Config.NumberOfRowsOnGameBoard));
+    }
+
+    /**
+     * Follows a Hamiltonian cycle, taking safe shortcuts to the apple.
+     *
+     * @param hamiltonianCycle the cycle to follow
+     */
+    public PerturbedHamiltonian(HamiltonianCycle hamiltonianCycle) {
+        this(Collections.singletonList(hamiltonianCycle));
+    }
+
+    /**
+     * Follows Hamiltonian cycles, a different one every game, taking safe
+     * shortcuts to the apple.
+     *
+     * @param hamiltonianCycles the cycles to follow, at least one
+     */
+    public PerturbedHamiltonian(List<HamiltonianCycle> hamiltonianCycles) {
+        super(NAME);
+
+        cycles = hamiltonianCycles;
+        cycle = cycles.get(0);
+        nextCycle = 0;
+        plan = new int[PLAN_AHEAD];
+        lastCycleCell = -1;
+    }
+
+    @Override
+    public void init() {
+        setDelayBetweenLoops(0);
+        lastCycleCell = -1;
+    }
+
+    @Override
+    public void onGameEvent(GameEvent event) {
+        // Go around a different way next game
+        if (event.getType() == GameEvent.GAME_OVER) {
+            useCycle((nextCycle + 1) % cycles.size());
+        }
+    }
+
+    /**
+     * Switches to another cycle before the next move.
+     *
+     * @param index the index of the cycle in the list the planner was made with
+     */
+    public void useCycle(int index) {
+        nextCycle = index;
+    }
+
+    @Override
+    public void calcPath() {
+        if (cycle != cycles.get(nextCycle)) {
+            cycle = cycles.get(nextCycle);
+            lastCycleCell = -1;
+        }
+
+        GameState state = getGameState();
+        if (state.getHeadCell() == -1) {
+            runOnNextDataChange();
+            return;
+        }
+
+        // Decide on the next move, then keep following the cycle from there
+        clearActions();
+        int move = chooseMove(state);
+        if (move != -1) {
+            plan[0] = move;
+            int moves = 1;
+            while ((moves < plan.length) && cycle.contains(plan[moves - 1])) {
+                plan[moves] = cycle.getNext(plan[moves - 1]);
+                moves++;
+            }
+            addPathActions(plan, moves);
+        }
+
+        runOnNextDataChange();
+    }
+
+    /**
+     * Decides where the head goes next.
+     *
+     * @param state the snapshot of the game
+     * @return the cell index next to the head to move to, or -1 if there is
+     *         nowhere to go
+     */
+    public int chooseMove(GameState state) {
+        int head = state.getHeadCell();
+        BitBoard body = state.getBody();
+        if (!cycle.contains(head)) {
+            return rejoin(state);
+        }
+        lastCycleCell = head;
+
+        // Just follow the cycle unless the body is laid out so that the cells ahead
+        // of the head up to the tail are known to be free
+        int follow = cycle.getNext(head);
+        if (!isBodyInOrder(state)) {
+            return body.get(follow) ? anyFreeNeighbor(head, body) : follow;
+        }
+
+        // How many free cells are ahead of the head before the tail
+        int tail = state.getTailCell();
+        int room = tail == head ? cycle.size() : cycle.distance(head, tail);
+        int apple = state.getAppleCell();
+        if (apple == -1) {
+            return follow;
+        }
+
+        // An apple off the cycle is eaten with a detour from the cycle cell closest
+        // to it, as long as the detour gets back on the cycle with room to spare
+        int target = apple;
+        if (!cycle.contains(apple)) {
+            int detour = detourFirstMove(head, apple, body, room);
+            if (detour != -1) {
+                return detour;
+            }
+            target = closestGate(head, apple, body);
+        }
+        if ((target == -1) || (state.getLength() >= cycle.size() * MAX_SHORTCUT_FILL)) {
+            return follow;
+        }
+
+        // Jump as far ahead as possible without going past the apple or getting
+        // too close to the tail
+        int toTarget = cycle.distance(head, target);
+        int best = follow;
+        int bestDistance = 1;
+        int x = BitBoard.xOf(head);
+        int y = BitBoard.yOf(head);
+        for (int d = 0; d < DX.length; d++) {
+            int next = BitBoard.cellOf(x + DX[d], y + DY[d]);
+            if ((next == -1) || !cycle.contains(next) || body.get(next)) {
+                continue;
+            }
+            int distance = cycle.distance(head, next);
+            if ((distance > bestDistance) && (distance <= toTarget) && (distance < room - GROWTH_MARGIN)) {
+                best = next;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks that every part of the body is on the stretch of the cycle from the
+     * tail to the head. Only then are the cells ahead of the head up to the tail
+     * known to be free.
+     */
+    private boolean isBodyInOrder(GameState state) {
+        int[] ordered = state.getOrderedBody();
+        if (ordered.length != state.getLength()) {
+            return false;
+        }
+
+        int head = state.getHeadCell();
+        int tail = state.getTailCell();
+        if (!cycle.contains(tail)) {
+            return false;
+        }
+        int span = cycle.distance(tail, head);
+        for (int cell : ordered) {
+            if (!cycle.contains(cell) || (cycle.distance(tail, cell) > span)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds a detour from the head through at most {@value #MAX_DETOUR} cells off
+     * the cycle, one of them the apple, back onto the cycle ahead of the head.
+     * Of all of them, takes the one that gets back on soonest, as long as that
+     * leaves room for the detour and the snake growing before the tail.
+     *
+     * @return the first move of the detour, or -1 if there is no safe detour
+     */
+    private int detourFirstMove(int head, int apple, BitBoard body, int room) {
+        int bestMove = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        int x = BitBoard.xOf(head);
+        int y = BitBoard.yOf(head);
+        for (int d1 = 0; d1 < DX.length; d1++) {
+            int first = BitBoard.cellOf(x + DX[d1], y + DY[d1]);
+            if ((first == -1) || cycle.contains(first) || body.get(first)) {
+                continue;
+            }
+
+            int x1 = BitBoard.xOf(first);
+            int y1 = BitBoard.yOf(first);
+            for (int d2 = 0; d2 < DX.length; d2++) {
+                int second = BitBoard.cellOf(x1 + DX[d2], y1 + DY[d2]);
+                if ((second == -1) || (second == head) || body.get(second)) {
+                    continue;
+                }
+
+                // Straight back on after one cell, if that cell is the apple
+                if (cycle.contains(second)) {
+                    int distance = cycle.distance(head, second) + 1;
+                    if ((first == apple) && (distance < bestDistance)) {
+                        bestMove = first;
+                        bestDistance = distance;
+                    }
+                    continue;
+                }
+
+                // Or back on after two cells, if either is the apple
+                if ((first != apple) && (second != apple)) {
+                    continue;
+                }
+                int x2 = BitBoard.xOf(second);
+                int y2 = BitBoard.yOf(second);
+                for (int d3 = 0; d3 < DX.length; d3++) {
+                    int third = BitBoard.cellOf(x2 + DX[d3], y2 + DY[d3]);
+                    if ((third == -1) || (third == head) || !cycle.contains(third) || body.get(third)) {
+                        continue;
+                    }
+                    int distance = cycle.distance(head, third) + MAX_DETOUR;
+                    if (distance < bestDistance) {
+                        bestMove = first;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        }
+        return bestDistance < room - GROWTH_MARGIN ? bestMove : -1;
+    }
+
+    /**
+     * Finds the cell on the cycle that a detour to an apple off the cycle could
+     * start from, and that the head gets to first following the cycle.
+     *
+     * @return the cell index, or -1 if no detour could reach the apple
+     */
+    private int closestGate(int head, int apple, BitBoard body) {
+        int gate = -1;
+        int gateDistance = Integer.MAX_VALUE;
+        int x = BitBoard.xOf(apple);
+        int y = BitBoard.yOf(apple);
+        for (int d1 = 0; d1 < DX.length; d1++) {
+            int near = BitBoard.cellOf(x + DX[d1], y + DY[d1]);
+            if ((near == -1) || body.get(near)) {
+                continue;
+            }
+
+            // Next to the apple, or next to a cell off the cycle next to the apple
+            int x1 = BitBoard.xOf(near);
+            int y1 = BitBoard.yOf(near);
+            for (int d2 = -1; d2 < DX.length; d2++) {
+                int candidate = d2 == -1 ? near : BitBoard.cellOf(x1 + DX[d2], y1 + DY[d2]);
+                if ((candidate == -1) || !cycle.contains(candidate) || body.get(candidate)
+                        || ((d2 != -1) && cycle.contains(near))) {
+                    continue;
+                }
+                int distance = cycle.distance(head, candidate);
+                if (distance < gateDistance) {
+                    gate = candidate;
+                    gateDistance = distance;
+                }
+            }
+        }
+        return gate;
+    }
+
+    /**
+     * Picks where to go when the head is off the cycle, on a detour or before the
+     * snake has ever been on the cycle. The apple comes first if it is next to
+     * the head, then the cell that gets back on the cycle soonest after where the
+     * head left it.
+     */
+    private int rejoin(GameState state) {
+        int head = state.getHeadCell();
+        int apple = state.getAppleCell();
+        BitBoard body = state.getBody();
+        int x = BitBoard.xOf(head);
+        int y = BitBoard.yOf(head);
+
+        int best = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int d = 0; d < DX.length; d++) {
+            int next = BitBoard.cellOf(x + DX[d], y + DY[d]);
+            if ((next == -1) || body.get(next)) {
+                continue;
+            }
+
+            // Cells on the cycle score how far along they are, cells off it score
+            // how far along their way back on is, after every cell on the cycle
+            int score;
+            if (next == apple) {
+                score = -1;
+            } else if (cycle.contains(next)) {
+                score = lastCycleCell == -1 ? 0 : cycle.distance(lastCycleCell, next);
+            } else {
+                score = cycle.size() + wayBackOn(next, head, body);
+            }
+            if (score < bestScore) {
+                best = next;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * How far along the cycle, after where the head left it, the soonest way back
+     * onto the cycle from a cell off it is.
+     */
+    private int wayBackOn(int cell, int head, BitBoard body) {
+        int soonest = cycle.size();
+        int x = BitBoard.xOf(cell);
+        int y = BitBoard.yOf(cell);
+        for (int d = 0; d < DX.length; d++) {
+            int next = BitBoard.cellOf(x + DX[d], y + DY[d]);
+            if ((next == -1) || (next == head) || !cycle.contains(next) || body.get(next)) {
+                continue;
+            }
+            int distance = lastCycleCell == -1 ? 0 : cycle.distance(lastCycleCell, next);
+            soonest = Math.min(soonest, distance);
+        }
+        return soonest;
+    }
+
+    /**
+     * Any free cell next to the head, for when the body is in the way of the
+     * cycle.
+     */
+    private static int anyFreeNeighbor(int head, BitBoard body) {
+        int x = BitBoard.xOf(head);
+        int y = BitBoard.yOf(head);
+        for (int d = 0; d < DX.length; d++) {
+            int next = BitBoard.cellOf(x + DX[d], y + DY[d]);
+            if ((next != -1) && !body.get(next)) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the cycle being followed, which the planner switches to other
+     *         cycles between moves
+     */
+    public HamiltonianCycle getCycle() {
+        return cycle;
+    }
+}
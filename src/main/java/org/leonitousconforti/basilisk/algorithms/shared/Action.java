@@ -28,6 +28,27 @@ public final class Action {
         removeOnExecution = true;
     }
 
+    /**
+     * Works out the direction to move in to get from one cell to a cell next to
+     * it.
+     *
+     * @param fromCell the cell index to move from
+     * @param toCell   the cell index to move to
+     * @return the direction [left, right, up, down], or null if the cells are
+     *         not next to each other
+     */
+    public static String directionBetween(int fromCell, int toCell) {
+        int dx = BitBoard.xOf(toCell) - BitBoard.xOf(fromCell);
+        int dy = BitBoard.yOf(toCell) - BitBoard.yOf(fromCell);
+        if (Math.abs(dx) + Math.abs(dy) != 1) {
+            return null;
+        }
+        if (dy == 0) {
+            return dx < 0 ? "left" : "right";
+        }
+        return dy < 0 ? "up" : "down";
+    }
+
     /**
      * Determines where the snake would end up after performing this action.
      *
@@ -0,0 +1,411 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.leonitousconforti.basilisk.Config;
+
+/**
+ * A set of cells on the game board stored as one bit per cell. The 17x15 board
+ * fits in four longs, so occupancy tests are a single bit test, the number of
+ * cells is a popcount, and finding every neighbor of every cell at once is a
+ * handful of shifts. Cells are indexed the same way everywhere, y * columns +
+ * x.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public final class BitBoard {
+    /**
+     * The number of cells on the game board.
+     */
+    public static final int CELLS = Config.NumberOfColsOnGameBoard * Config.NumberOfRowsOnGameBoard;
+
+    /**
+     * The number of longs needed to store one bit per cell.
+     */
+    public static final int WORDS = (CELLS + 63) >> 6;
+
+    // Masks of every cell on the board, and every cell except the first and last
+    // columns. Used to stop shifts from wrapping around onto the next row
+    private static final long[] ALL_CELLS = new long[WORDS];
+    private static final long[] NOT_FIRST_COLUMN = new long[WORDS];
+    private static final long[] NOT_LAST_COLUMN = new long[WORDS];
+
+    static {
+        for (int cell = 0; cell < CELLS; cell++) {
+            ALL_CELLS[cell >> 6] |= 1L << cell;
+            if (xOf(cell) != 0) {
+                NOT_FIRST_COLUMN[cell >> 6] |= 1L << cell;
+            }
+            if (xOf(cell) != Config.NumberOfColsOnGameBoard - 1) {
+                NOT_LAST_COLUMN[cell >> 6] |= 1L << cell;
+            }
+        }
+    }
+
+    private final long[] words;
+
+    /**
+     * Creates an empty board.
+     */
+    public BitBoard() {
+        words = new long[WORDS];
+    }
+
+    /**
+     * Creates a copy of another board.
+     *
+     * @param other the board to copy
+     */
+    public BitBoard(BitBoard other) {
+        words = other.words.clone();
+    }
+
+    /**
+     * Creates a board with every cell set.
+     *
+     * @return the full board
+     */
+    public static BitBoard full() {
+        BitBoard board = new BitBoard();
+        System.arraycopy(ALL_CELLS, 0, board.words, 0, WORDS);
+        return board;
+    }
+
+    /**
+     * Converts a position on the board into a cell index.
+     *
+     * @param x the column
+     * @param y the row
+     * @return the cell index, or -1 if the position is off the board
+     */
+    public static int cellOf(int x, int y) {
+        if ((x < 0) || (y < 0) || (x >= Config.NumberOfColsOnGameBoard) || (y >= Config.NumberOfRowsOnGameBoard)) {
+            return -1;
+        }
+
+        return y * Config.NumberOfColsOnGameBoard + x;
+    }
+
+    /**
+     * Converts a position on the board into a cell index.
+     *
+     * @param p the position
+     * @return the cell index, or -1 if the position is off the board
+     */
+    public static int cellOf(Point p) {
+        return cellOf(p.x, p.y);
+    }
+
+    /**
+     * @param cell the cell index
+     * @return the column of the cell
+     */
+    public static int xOf(int cell) {
+        return cell % Config.NumberOfColsOnGameBoard;
+    }
+
+    /**
+     * @param cell the cell index
+     * @return the row of the cell
+     */
+    public static int yOf(int cell) {
+        return cell / Config.NumberOfColsOnGameBoard;
+    }
+
+    /**
+     * Converts a cell index into a new point, cells off the board become (-1, -1).
+     *
+     * @param cell the cell index
+     * @return the position of the cell
+     */
+    public static Point pointOf(int cell) {
+        if ((cell < 0) || (cell >= CELLS)) {
+            return new Point(-1, -1);
+        }
+
+        return new Point(xOf(cell), yOf(cell));
+    }
+
+    /**
+     * @param cell the cell index
+     * @return if the cell is set, cells off the board are never set
+     */
+    public boolean get(int cell) {
+        if ((cell < 0) || (cell >= CELLS)) {
+            return false;
+        }
+
+        return (words[cell >> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @return if the cell is set, cells off the board are never set
+     */
+    public boolean get(int x, int y) {
+        return get(cellOf(x, y));
+    }
+
+    /**
+     * Sets a cell.
+     *
+     * @param cell the cell index
+     */
+    public void set(int cell) {
+        words[cell >> 6] |= 1L << cell;
+    }
+
+    /**
+     * Clears a cell.
+     *
+     * @param cell the cell index
+     */
+    public void clear(int cell) {
+        words[cell >> 6] &= ~(1L << cell);
+    }
+
+    /**
+     * Clears every cell.
+     */
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    /**
+     * Makes this board the same as another board.
+     *
+     * @param other the board to copy
+     * @return this board
+     */
+    public BitBoard copyFrom(BitBoard other) {
+        System.arraycopy(other.words, 0, words, 0, WORDS);
+        return this;
+    }
+
+    /**
+     * @return the number of cells that are set
+     */
+    public int popCount() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return if no cells are set
+     */
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first set cell at or after a cell index, in scan order.
+     *
+     * @param fromCell the cell index to start at
+     * @return the index of the next set cell, or -1 if there is none
+     */
+    public int nextSetCell(int fromCell) {
+        if (fromCell >= CELLS) {
+            return -1;
+        }
+
+        int w = fromCell >> 6;
+        long word = words[w] & (-1L << fromCell);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == WORDS) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * Finds the set cell with a number of set cells before it, in scan order.
+     *
+     * @param n how many set cells come before it, from 0
+     * @return the cell index, or -1 if there are not more than n set cells
+     */
+    public int nthSetCell(int n) {
+        if (n < 0) {
+            return -1;
+        }
+
+        int remaining = n;
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+            int count = Long.bitCount(word);
+            if (remaining < count) {
+                // Clear the lowest set bits until the one we want is the lowest
+                for (int i = 0; i < remaining; i++) {
+                    word &= word - 1;
+                }
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            remaining -= count;
+        }
+        return -1;
+    }
+
+    /**
+     * Keeps only the cells that are also set in another board.
+     *
+     * @param other the other board
+     * @return this board
+     */
+    public BitBoard and(BitBoard other) {
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= other.words[i];
+        }
+        return this;
+    }
+
+    /**
+     * Sets every cell that is set in another board.
+     *
+     * @param other the other board
+     * @return this board
+     */
+    public BitBoard or(BitBoard other) {
+        for (int i = 0; i < WORDS; i++) {
+            words[i] |= other.words[i];
+        }
+        return this;
+    }
+
+    /**
+     * Clears every cell that is set in another board.
+     *
+     * @param other the other board
+     * @return this board
+     */
+    public BitBoard andNot(BitBoard other) {
+        for (int i = 0; i < WORDS; i++) {
+            words[i] &= ~other.words[i];
+        }
+        return this;
+    }
+
+    /**
+     * Flips every cell on the board.
+     *
+     * @return this board
+     */
+    public BitBoard invert() {
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = ~words[i] & ALL_CELLS[i];
+        }
+        return this;
+    }
+
+    /**
+     * @param other the other board
+     * @return if any cell is set in both boards
+     */
+    public boolean intersects(BitBoard other) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds every cell that is directly left, right, above, or below a set cell
+     * of this board, without wrapping around the edges of the board, and writes
+     * them to another board. The cells of this board are not included unless
+     * they neighbor another set cell.
+     *
+     * @param destination the board to write the neighbors to, may not be this
+     *                    board
+     * @return the destination board
+     */
+    public BitBoard neighborsInto(BitBoard destination) {
+        long[] out = destination.words;
+        int cols = Config.NumberOfColsOnGameBoard;
+
+        for (int i = 0; i < WORDS; i++) {
+            // The cell to the right of a cell is one bit up, and the cell below it is
+            // one row of bits up. Bits shifted out of the previous word carry in
+            long right = (words[i] << 1) | (i > 0 ? words[i - 1] >>> 63 : 0);
+            long down = (words[i] << cols) | (i > 0 ? words[i - 1] >>> (64 - cols) : 0);
+
+            // The cell to the left and above are the same but going down in bits
+            long left = (words[i] >>> 1) | (i < WORDS - 1 ? words[i + 1] << 63 : 0);
+            long up = (words[i] >>> cols) | (i < WORDS - 1 ? words[i + 1] << (64 - cols) : 0);
+
+            out[i] = ((right & NOT_FIRST_COLUMN[i]) | (left & NOT_LAST_COLUMN[i]) | down | up) & ALL_CELLS[i];
+        }
+
+        return destination;
+    }
+
+    /**
+     * Flood fills from the set cells into the cells of another board, growing
+     * every set cell into its neighbors at once until nothing more can be
+     * reached.
+     *
+     * @param open    the cells that can be filled into
+     * @param scratch a board to work in, not this board or the open board
+     * @return the number of cells set afterwards
+     */
+    public int fill(BitBoard open, BitBoard scratch) {
+        int count = popCount();
+        while (true) {
+            neighborsInto(scratch).and(open).or(this);
+            int grown = scratch.popCount();
+            if (grown == count) {
+                return count;
+            }
+            copyFrom(scratch);
+            count = grown;
+        }
+    }
+
+    /**
+     * Finds every cell that is directly left, right, above, or below a set cell
+     * of this board.
+     *
+     * @return a new board with the neighbors
+     * @see #neighborsInto(BitBoard)
+     */
+    public BitBoard neighbors() {
+        return neighborsInto(new BitBoard());
+    }
+
+    /**
+     * Converts the set cells into a list of points. This allocates a point per
+     * cell, so prefer testing cells directly.
+     *
+     * @return the positions of the set cells in scan order
+     */
+    public ArrayList<Point> toPoints() {
+        ArrayList<Point> points = new ArrayList<Point>(popCount());
+        for (int cell = nextSetCell(0); cell != -1; cell = nextSetCell(cell + 1)) {
+            points.add(pointOf(cell));
+        }
+        return points;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof BitBoard) && Arrays.equals(words, ((BitBoard) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+}
@@ -0,0 +1,143 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+import java.awt.Point;
+
+/**
+ * Something that happened in the game between two frames, like the snake moving
+ * or eating the apple. Events are worked out once by the game element detection
+ * from consecutive game states and handed to every
+ * {@link GameEventListener listener}, so algorithms can react to what changed
+ * instead of comparing snapshots themselves. Events are never modified after
+ * they are created.
+ */
+public final class GameEvent {
+    /**
+     * The snake's head moved, the cell is where it moved to and the value is how
+     * many cells it moved, more than one when frames were missed. The cells it
+     * went through are the {@link GameState#getPassedCells() passed cells} of the
+     * event's game state.
+     */
+    public static final int MOVED = 0;
+
+    /**
+     * The snake moved in a different direction than its last move, the cell is
+     * where the head is and the direction is the new direction.
+     */
+    public static final int TURNED = 1;
+
+    /**
+     * The snake ate the apple, the cell is where the apple was.
+     */
+    public static final int APPLE_EATEN = 2;
+
+    /**
+     * An apple showed up that was not there in the frame before, because a new
+     * one spawned or one that could not be seen is back, the cell is where it
+     * is.
+     */
+    public static final int APPLE_SPAWNED = 3;
+
+    /**
+     * The snake got longer or shorter, the value is its new length in cells.
+     */
+    public static final int LENGTH_CHANGED = 4;
+
+    /**
+     * The snake stopped moving or disappeared, the cell is where the head was.
+     */
+    public static final int GAME_OVER = 5;
+
+    // What the events are called, indexed by type
+    private static final String[] TYPE_NAMES = {"moved", "turned", "apple eaten", "apple spawned",
+        "length changed", "game over"};
+
+    // What happened, where, and any extra information
+    private final int type;
+    private final int cell;
+    private final int value;
+    private final String direction;
+
+    // When the frame it happened in was captured, and the game state after it
+    private final long timestampNanos;
+    private final GameState state;
+
+    /**
+     * Creates an event.
+     *
+     * @param eventType  what happened, one of the constants of this class
+     * @param eventCell  the cell index it happened at, or -1
+     * @param eventValue the extra number that goes with the event type, or 0
+     * @param dir        the direction the snake is moving in [left, right, up,
+     *                   down], or null if not known
+     * @param capturedAt when the frame it happened in was captured, from
+     *                   {@link System#nanoTime()}
+     * @param after      the game state the event was found in
+     */
+    public GameEvent(int eventType, int eventCell, int eventValue, String dir, long capturedAt, GameState after) {
+        type = eventType;
+        cell = eventCell;
+        value = eventValue;
+        direction = dir;
+        timestampNanos = capturedAt;
+        state = after;
+    }
+
+    /**
+     * @return what happened, one of the constants of this class
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return the cell index the event happened at, or -1
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    /**
+     * @return the position the event happened at, (-1, -1) if it has none
+     */
+    public Point getPosition() {
+        return BitBoard.pointOf(cell);
+    }
+
+    /**
+     * @return how many cells the head moved for {@link #MOVED}, or the new length
+     *         for {@link #LENGTH_CHANGED}, 0 for everything else
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * @return the direction the snake is moving in [left, right, up, down], or
+     *         null if not known
+     */
+    public String getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return when the frame the event happened in was captured, from
+     *         {@link System#nanoTime()}
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return the game state the event was found in
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        String name = (type >= 0) && (type < TYPE_NAMES.length) ? TYPE_NAMES[type] : "unknown";
+        return name + " at " + getPosition() + (value != 0 ? " value " + value : "")
+                + (direction != null ? " going " + direction : "");
+    }
+}
@@ -0,0 +1,15 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+/**
+ * Gets told about the {@link GameEvent events} in the game as the game element
+ * detection finds them.
+ */
+public interface GameEventListener {
+    /**
+     * Called on the detection thread for every event, in the order they happened.
+     * Keep it quick, the next frame is not detected until every listener returns.
+     *
+     * @param event what happened
+     */
+    void onGameEvent(GameEvent event);
+}
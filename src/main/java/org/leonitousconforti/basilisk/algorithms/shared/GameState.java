@@ -0,0 +1,176 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+import java.awt.Point;
+
+/**
+ * A snapshot of everything detected on the game board in one frame. Snapshots
+ * are never modified after they are created, so they can be handed to the
+ * algorithm threads and the gui without copying.
+ */
+public final class GameState {
+    // Shared by every snapshot the head went straight to from the last one
+    private static final int[] NO_CELLS = new int[0];
+
+    // Where the snake's head and the apple are, as cell indexes
+    private final int headCell;
+    private final int appleCell;
+
+    // The same positions as points
+    private final Point snakeHead;
+    private final Point applePos;
+
+    // The snake's body in order from head to tail, as cell indexes
+    private final int[] orderedBody;
+
+    // The cells the head went through since the last snapshot without being seen
+    // there, oldest first
+    private final int[] passedCells;
+
+    // Which cells have the snake's body, the apple, or nothing on them
+    private final BitBoard body;
+    private final BitBoard apple;
+    private final BitBoard free;
+
+    /**
+     * Creates a new snapshot of the game. The body board and the ordered body are
+     * owned by the snapshot after this, do not modify them.
+     *
+     * @param head         the cell index of the snake's head, or -1 if unknown
+     * @param food         the cell index of the apple, or -1 if unknown
+     * @param snakeBody    every cell with a part of the snake on it, including
+     *                     the head
+     * @param snakeInOrder the cells of the snake's body in order from head to
+     *                     tail, may be empty if the order is not known
+     */
+    public GameState(int head, int food, BitBoard snakeBody, int[] snakeInOrder) {
+        this(head, food, snakeBody, snakeInOrder, NO_CELLS);
+    }
+
+    /**
+     * Creates a new snapshot of the game where the head moved more than one cell
+     * since the last snapshot. The body board, the ordered body, and the passed
+     * cells are owned by the snapshot after this, do not modify them.
+     *
+     * @param head         the cell index of the snake's head, or -1 if unknown
+     * @param food         the cell index of the apple, or -1 if unknown
+     * @param snakeBody    every cell with a part of the snake on it, including
+     *                     the head
+     * @param snakeInOrder the cells of the snake's body in order from head to
+     *                     tail, may be empty if the order is not known
+     * @param passed       the cells the head went through since the last
+     *                     snapshot, oldest first, not including the head
+     */
+    public GameState(int head, int food, BitBoard snakeBody, int[] snakeInOrder, int[] passed) {
+        headCell = head;
+        appleCell = food;
+        snakeHead = BitBoard.pointOf(head);
+        applePos = BitBoard.pointOf(food);
+        body = snakeBody;
+        orderedBody = snakeInOrder;
+        passedCells = passed;
+
+        apple = new BitBoard();
+        if (food >= 0) {
+            apple.set(food);
+        }
+        free = new BitBoard(body).invert();
+    }
+
+    /**
+     * @return a snapshot of an empty board where nothing has been detected yet
+     */
+    public static GameState empty() {
+        return new GameState(-1, -1, new BitBoard(), new int[0]);
+    }
+
+    /**
+     * @return the cell index of the snake's head, or -1 if unknown
+     */
+    public int getHeadCell() {
+        return headCell;
+    }
+
+    /**
+     * @return the cell index of the apple, or -1 if there was no apple in the
+     *         frame, like when the head is on top of it
+     */
+    public int getAppleCell() {
+        return appleCell;
+    }
+
+    /**
+     * @return the position of the snake's head, (-1, -1) if unknown. Do not
+     *         modify it
+     */
+    public Point getSnakeHead() {
+        return snakeHead;
+    }
+
+    /**
+     * @return the position of the apple, (-1, -1) if unknown. Do not modify it
+     */
+    public Point getApplePos() {
+        return applePos;
+    }
+
+    /**
+     * @return every cell with a part of the snake on it. Do not modify it
+     */
+    public BitBoard getBody() {
+        return body;
+    }
+
+    /**
+     * @return the cell with the apple on it. Do not modify it
+     */
+    public BitBoard getApple() {
+        return apple;
+    }
+
+    /**
+     * @return every cell without a part of the snake on it, including the
+     *         apple. Do not modify it
+     */
+    public BitBoard getFree() {
+        return free;
+    }
+
+    /**
+     * @return the cells of the snake's body in order from head to tail. Do not
+     *         modify it
+     */
+    public int[] getOrderedBody() {
+        return orderedBody;
+    }
+
+    /**
+     * @return the cells the head went through since the last snapshot without
+     *         being seen there, oldest first and not including the head. Empty
+     *         unless frames were missed. Do not modify it
+     */
+    public int[] getPassedCells() {
+        return passedCells;
+    }
+
+    /**
+     * @return how many game ticks went by without a frame being detected in
+     *         between, the same as the number of passed cells
+     */
+    public int getMissedTicks() {
+        return passedCells.length;
+    }
+
+    /**
+     * @return the cell index of the snake's tail, or -1 if unknown
+     */
+    public int getTailCell() {
+        return orderedBody.length == 0 ? -1 : orderedBody[orderedBody.length - 1];
+    }
+
+    /**
+     * @return the number of cells the snake takes up
+     */
+    public int getLength() {
+        return body.popCount();
+    }
+}
@@ -0,0 +1,143 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+import java.util.Arrays;
+
+/**
+ * A cycle through cells of the board that visits every one of them once and
+ * ends next to where it started. The order is kept as a table of ranks, where
+ * every cell is in the cycle, and a table of the cell after every cell, so
+ * following the cycle or working out how far apart two cells are along it is
+ * one array load. Cells the cycle does not go through have a rank of -1.
+ * Cycles are never modified after they are created.
+ */
+public final class HamiltonianCycle {
+    // The cells in the order the cycle goes through them
+    private final int[] order;
+
+    // Where every cell is in the order and which cell comes after it, -1 for
+    // cells the cycle does not go through
+    private final int[] rank;
+    private final int[] next;
+
+    /**
+     * Creates a cycle from the cells in the order it goes through them. The last
+     * cell has to be next to the first.
+     *
+     * @param cycleOrder the cell indexes in order, the cycle owns the array after
+     *                   this
+     * @throws IllegalArgumentException if a cell is in the order twice or two
+     *                                  cells after each other are not next to
+     *                                  each other
+     */
+    public HamiltonianCycle(int[] cycleOrder) {
+        order = cycleOrder;
+        rank = new int[BitBoard.CELLS];
+        next = new int[BitBoard.CELLS];
+        Arrays.fill(rank, -1);
+        Arrays.fill(next, -1);
+
+        for (int i = 0; i < order.length; i++) {
+            int cell = order[i];
+            int after = order[(i + 1) % order.length];
+            if (rank[cell] != -1) {
+                throw new IllegalArgumentException("cell " + BitBoard.pointOf(cell) + " is in the cycle twice");
+            }
+            if ((order.length > 1) && (Action.directionBetween(cell, after) == null)) {
+                throw new IllegalArgumentException(
+                        BitBoard.pointOf(cell) + " and " + BitBoard.pointOf(after) + " are not next to each other");
+            }
+            rank[cell] = i;
+            next[cell] = after;
+        }
+    }
+
+    /**
+     * Builds the cycle that goes down the first column, up and down every column
+     * after it below the top row, and back along the top row. It only exists for
+     * an even number of columns, so on a board with an odd number of columns the
+     * last column is left out.
+     *
+     * @param cols how many columns from the left to go through, rounded down to
+     *             an even number
+     * @param rows how many rows from the top to go through, at least 2
+     * @return the cycle
+     */
+    public static HamiltonianCycle columns(int cols, int rows) {
+        int evenCols = cols & ~1;
+        int[] cycleOrder = new int[evenCols * rows];
+        int i = 0;
+
+        // Down the first column
+        for (int y = 0; y < rows; y++) {
+            cycleOrder[i++] = BitBoard.cellOf(0, y);
+        }
+
+        // Up and down the rest of the columns, below the top row
+        for (int x = 1; x < evenCols; x++) {
+            for (int j = 0; j < rows - 1; j++) {
+                int y = x % 2 == 1 ? rows - 1 - j : j + 1;
+                cycleOrder[i++] = BitBoard.cellOf(x, y);
+            }
+        }
+
+        // Back along the top row
+        for (int x = evenCols - 1; x >= 1; x--) {
+            cycleOrder[i++] = BitBoard.cellOf(x, 0);
+        }
+        return new HamiltonianCycle(cycleOrder);
+    }
+
+    /**
+     * @return how many cells the cycle goes through
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @param cell the cell index
+     * @return if the cycle goes through the cell
+     */
+    public boolean contains(int cell) {
+        return (cell >= 0) && (cell < rank.length) && (rank[cell] != -1);
+    }
+
+    /**
+     * @param cell the cell index
+     * @return where the cell is in the cycle, from 0, or -1 if the cycle does not
+     *         go through it
+     */
+    public int getRank(int cell) {
+        return rank[cell];
+    }
+
+    /**
+     * @param cell the cell index
+     * @return the cell after it in the cycle, or -1 if the cycle does not go
+     *         through it
+     */
+    public int getNext(int cell) {
+        return next[cell];
+    }
+
+    /**
+     * @param cellRank where the cell is in the cycle, from 0
+     * @return the cell index
+     */
+    public int getCell(int cellRank) {
+        return order[cellRank];
+    }
+
+    /**
+     * Works out how many moves it takes to get from one cell to another following
+     * the cycle forward.
+     *
+     * @param from the cell index to start from, which the cycle goes through
+     * @param to   the cell index to get to, which the cycle goes through
+     * @return the number of moves, from 0 to one less than the size
+     */
+    public int distance(int from, int to) {
+        int d = rank[to] - rank[from];
+        return d < 0 ? d + order.length : d;
+    }
+}
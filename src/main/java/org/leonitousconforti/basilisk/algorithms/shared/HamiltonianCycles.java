@@ -0,0 +1,378 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates {@link HamiltonianCycle Hamiltonian cycles} for boards of any size
+ * and caches them on disk, so planners can switch between cycles without
+ * building them again.
+ *
+ * <p>
+ * A cycle through every cell of a grid only exists when the grid has an even
+ * number of cells. On a grid with an odd number of cells, like the 17x15 game
+ * board, the cycle leaves out the bottom right corner and goes through every
+ * other cell. Cycles are made by starting from a path that goes back and forth
+ * along the rows, randomizing it with backbite moves, and carrying on until
+ * its ends are next to each other. Different seeds give cycles with different
+ * shapes.
+ * </p>
+ *
+ * <p>
+ * The cache file starts with a {@link #MAGIC magic number}, the version, the
+ * number of columns and rows, and the number of cycles. Every cycle is then
+ * one byte per cell of the grid in row order, the way to the next cell as 0
+ * for left, 1 for right, 2 for up, and 3 for down, or -1 for a cell the cycle
+ * does not go through.
+ * </p>
+ *
+ * @see https://arxiv.org/abs/cond-mat/0508094
+ */
+public final class HamiltonianCycles {
+    /**
+     * The first four bytes of every cache file, "HAMC".
+     */
+    public static final int MAGIC = 0x48414D43;
+
+    /**
+     * The version of the cache file format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * How many cycles are generated for a board when none are cached.
+     */
+    public static final int DEFAULT_COUNT = 8;
+
+    // The seed the cached cycles are generated with, so every cache is the same
+    private static final long DEFAULT_SEED = 0x5EED;
+
+    // Backbite moves made per cell before the path is closed into a cycle, and
+    // the most moves made per cell trying to close it
+    private static final int MIXING_MOVES_PER_CELL = 64;
+    private static final int MAX_MOVES_PER_CELL = 1 << 16;
+
+    // How many cycles are generated per cycle asked for before giving up on
+    // finding different ones, small boards only have a few
+    private static final int ATTEMPTS_PER_CYCLE = 16;
+
+    // Moving to the cell at the same index changes x and y by these amounts,
+    // left, right, up, down
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+    private static final String[] DIRECTIONS = {"left", "right", "up", "down"};
+
+    // Cycles already loaded or generated, by size
+    private static final Map<String, List<HamiltonianCycle>> LOADED = new HashMap<String, List<HamiltonianCycle>>();
+
+    /**
+     * Not constructable.
+     */
+    private HamiltonianCycles() {
+    }
+
+    /**
+     * @param cols the number of columns
+     * @param rows the number of rows
+     * @return if there is a cycle through every cell of a grid that size
+     */
+    public static boolean hasFullCycle(int cols, int rows) {
+        return (cols >= 2) && (rows >= 2) && ((cols * rows) % 2 == 0);
+    }
+
+    /**
+     * Gets cycles for the top left corner of the board, loading them from the
+     * {@link #defaultCacheFile(int, int) cache file} or generating and caching
+     * them the first time. Cycles are only loaded or generated once per run.
+     *
+     * @param cols the number of columns from the left, at most the number on the
+     *             board
+     * @param rows the number of rows from the top, at most the number on the board
+     * @return the cycles, {@value #DEFAULT_COUNT} of them unless the board is too
+     *         small to have that many
+     */
+    public static synchronized List<HamiltonianCycle> forBoard(int cols, int rows) {
+        String key = cols + "x" + rows;
+        List<HamiltonianCycle> cycles = LOADED.get(key);
+        if (cycles != null) {
+            return cycles;
+        }
+
+        File file = defaultCacheFile(cols, rows);
+        cycles = load(file, cols, rows);
+        if ((cycles == null) || cycles.isEmpty()) {
+            cycles = generate(cols, rows, DEFAULT_COUNT, DEFAULT_SEED);
+            try {
+                save(file, cols, rows, cycles);
+            } catch (IOException e) {
+                System.out.println("could not cache hamiltonian cycles in " + file);
+            }
+        }
+
+        cycles = Collections.unmodifiableList(cycles);
+        LOADED.put(key, cycles);
+        return cycles;
+    }
+
+    /**
+     * Generates different cycles for the top left corner of the board.
+     *
+     * @param cols  the number of columns from the left, at least 2
+     * @param rows  the number of rows from the top, at least 2
+     * @param count how many cycles to generate
+     * @param seed  the seed, the same seed always gives the same cycles
+     * @return the cycles, no two the same. There are fewer than asked for if the
+     *         board is too small to have that many
+     * @throws IllegalArgumentException if the size is not on the board
+     */
+    public static List<HamiltonianCycle> generate(int cols, int rows, int count, long seed) {
+        Random random = new Random(seed);
+        List<HamiltonianCycle> cycles = new ArrayList<HamiltonianCycle>(count);
+        for (int attempt = 0; (attempt < count * ATTEMPTS_PER_CYCLE) && (cycles.size() < count); attempt++) {
+            HamiltonianCycle cycle = generate(cols, rows, random);
+            if (!containsSame(cycles, cycle)) {
+                cycles.add(cycle);
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Generates one random cycle for the top left corner of the board.
+     *
+     * @param cols   the number of columns from the left, at least 2
+     * @param rows   the number of rows from the top, at least 2
+     * @param random where the randomness comes from
+     * @return the cycle
+     * @throws IllegalArgumentException if the size is not on the board
+     */
+    public static HamiltonianCycle generate(int cols, int rows, Random random) {
+        if ((cols < 2) || (rows < 2) || (BitBoard.cellOf(cols - 1, rows - 1) == -1)) {
+            throw new IllegalArgumentException("no hamiltonian cycles on a " + cols + "x" + rows + " board");
+        }
+
+        // Back and forth along the rows, leaving out the bottom right corner when
+        // there are an odd number of cells
+        int cells = cols * rows;
+        boolean skipCorner = cells % 2 == 1;
+        int[] path = new int[skipCorner ? cells - 1 : cells];
+        int[] position = new int[BitBoard.CELLS];
+        Arrays.fill(position, -1);
+        int n = 0;
+        for (int y = 0; y < rows; y++) {
+            for (int i = 0; i < cols; i++) {
+                int x = y % 2 == 0 ? i : cols - 1 - i;
+                if (!skipCorner || (x != cols - 1) || (y != rows - 1)) {
+                    path[n] = BitBoard.cellOf(x, y);
+                    position[path[n]] = n;
+                    n++;
+                }
+            }
+        }
+
+        // Randomize the path, then keep going until its ends are next to each other
+        int mixingMoves = MIXING_MOVES_PER_CELL * n;
+        long maxMoves = (long) MAX_MOVES_PER_CELL * n;
+        for (long move = 0; move < maxMoves; move++) {
+            if ((move >= mixingMoves) && (Action.directionBetween(path[n - 1], path[0]) != null)) {
+                return new HamiltonianCycle(path);
+            }
+            backbite(path, position, random);
+        }
+        throw new IllegalStateException("could not close a hamiltonian cycle on a " + cols + "x" + rows + " board");
+    }
+
+    /**
+     * Makes one backbite move. One end of the path is joined to a random cell next
+     * to it, and the part of the path between them is reversed, so the cell that
+     * used to come after the joined cell becomes the new end.
+     */
+    private static void backbite(int[] path, int[] position, Random random) {
+        boolean fromStart = random.nextBoolean();
+        int end = fromStart ? path[0] : path[path.length - 1];
+        int d = random.nextInt(DX.length);
+        int neighbor = BitBoard.cellOf(BitBoard.xOf(end) + DX[d], BitBoard.yOf(end) + DY[d]);
+        if ((neighbor == -1) || (position[neighbor] == -1)) {
+            return;
+        }
+
+        int i = position[neighbor];
+        if (fromStart) {
+            reverse(path, position, 0, i - 1);
+        } else {
+            reverse(path, position, i + 1, path.length - 1);
+        }
+    }
+
+    /**
+     * Reverses part of the path, keeping the positions up to date.
+     */
+    private static void reverse(int[] path, int[] position, int from, int to) {
+        for (int i = from, j = to; i < j; i++, j--) {
+            int cell = path[i];
+            path[i] = path[j];
+            path[j] = cell;
+            position[path[i]] = i;
+            position[path[j]] = j;
+        }
+    }
+
+    /**
+     * Checks if a cycle goes through the same cells in the same order as one in a
+     * list, in either direction and from any start.
+     */
+    private static boolean containsSame(List<HamiltonianCycle> cycles, HamiltonianCycle cycle) {
+        for (HamiltonianCycle other : cycles) {
+            if (other.size() != cycle.size()) {
+                continue;
+            }
+            boolean same = true;
+            for (int cell = 0; same && (cell < BitBoard.CELLS); cell++) {
+                if (cycle.contains(cell)) {
+                    int next = cycle.getNext(cell);
+                    same = (other.getNext(cell) == next) || (other.getNext(next) == cell);
+                }
+            }
+            if (same) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param cols the number of columns the cycles are for
+     * @param rows the number of rows the cycles are for
+     * @return where cycles for a board that size are cached between runs
+     */
+    public static File defaultCacheFile(int cols, int rows) {
+        return new File(new File(System.getProperty("user.home"), ".basilisk"),
+                "hamiltonian-cycles-" + cols + "x" + rows + ".bin");
+    }
+
+    /**
+     * Saves cycles so they can be {@link #load(File, int, int) loaded} the next
+     * time instead of generating them again.
+     *
+     * @param file   the file to save to, missing folders are created
+     * @param cols   the number of columns the cycles are for
+     * @param rows   the number of rows the cycles are for
+     * @param cycles the cycles
+     * @throws IOException if the file can not be written
+     */
+    public static void save(File file, int cols, int rows, List<HamiltonianCycle> cycles) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if ((parent != null) && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("could not create " + parent);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(cols);
+            out.writeInt(rows);
+            out.writeInt(cycles.size());
+            for (HamiltonianCycle cycle : cycles) {
+                for (int y = 0; y < rows; y++) {
+                    for (int x = 0; x < cols; x++) {
+                        int cell = BitBoard.cellOf(x, y);
+                        out.writeByte(cycle.contains(cell) ? directionIndex(cell, cycle.getNext(cell)) : -1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads cycles that were {@link #save(File, int, int, List) saved} earlier.
+     *
+     * @param file the file to load from
+     * @param cols the number of columns the cycles should be for
+     * @param rows the number of rows the cycles should be for
+     * @return the cycles, or null if there are no saved cycles or they are for a
+     *         different size
+     */
+    public static List<HamiltonianCycle> load(File file, int cols, int rows) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION) || (in.readInt() != cols)
+                    || (in.readInt() != rows)) {
+                return null;
+            }
+
+            int count = in.readInt();
+            byte[] directions = new byte[cols * rows];
+            List<HamiltonianCycle> cycles = new ArrayList<HamiltonianCycle>(count);
+            for (int i = 0; i < count; i++) {
+                in.readFully(directions);
+                cycles.add(fromDirections(directions, cols, rows));
+            }
+            return cycles;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("ignoring unreadable hamiltonian cycles " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Follows the way to the next cell from the first cell the cycle goes through
+     * until it gets back to it.
+     *
+     * @throws IllegalArgumentException if the directions do not make one cycle
+     */
+    private static HamiltonianCycle fromDirections(byte[] directions, int cols, int rows) {
+        int start = -1;
+        int cells = 0;
+        for (int i = 0; i < directions.length; i++) {
+            if (directions[i] != -1) {
+                start = start == -1 ? i : start;
+                cells++;
+            }
+        }
+        if (start == -1) {
+            throw new IllegalArgumentException("a cycle has no cells");
+        }
+
+        int[] order = new int[directions.length];
+        int n = 0;
+        int x = start % cols;
+        int y = start / cols;
+        do {
+            if ((n == order.length) || (x < 0) || (y < 0) || (x >= cols) || (y >= rows)
+                    || (directions[y * cols + x] < 0) || (directions[y * cols + x] >= DX.length)) {
+                throw new IllegalArgumentException("the directions do not make a cycle");
+            }
+            order[n++] = BitBoard.cellOf(x, y);
+            int d = directions[y * cols + x];
+            x += DX[d];
+            y += DY[d];
+        } while ((y * cols + x) != start);
+        if (n != cells) {
+            throw new IllegalArgumentException("the directions make more than one cycle");
+        }
+        return new HamiltonianCycle(Arrays.copyOf(order, n));
+    }
+
+    /**
+     * The index of the way from one cell to the cell next to it.
+     */
+    private static int directionIndex(int from, int to) {
+        return Arrays.asList(DIRECTIONS).indexOf(Action.directionBetween(from, to));
+    }
+}
@@ -0,0 +1,298 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+/**
+ * Works out if moving the snake's head one way is safe, by flood filling the
+ * board from where the head would end up. A move is safe when the head can
+ * still get to the tail afterwards, because then it can always follow its own
+ * tail around, or when there are at least as many free cells left to move
+ * into as the snake is long.
+ *
+ * <p>
+ * The flood fill grows the reached cells a whole {@link BitBoard} at a time,
+ * so every step of it is a few operations on each 64 bit word of the board.
+ * All four ways out of a snapshot are worked out together the first time one
+ * is asked for, and kept in a small table keyed by a fingerprint of the
+ * snapshot, so every algorithm asking about the same snapshot again gets the
+ * answer without any flood filling. An oracle keeps scratch boards between
+ * calls, so every thread needs its own.
+ * </p>
+ */
+public final class SafetyOracle {
+    /**
+     * The free area of a move that runs into a wall or the body.
+     */
+    public static final int DEAD = -1;
+
+    // How many snapshots are remembered, a power of two. Each one goes in the
+    // slot picked by the low bits of its fingerprint
+    private static final int SLOTS = 64;
+
+    // Moving one way changes x and y by these amounts, left, right, up, down
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+    private static final String[] DIRECTIONS = {"left", "right", "up", "down"};
+
+    // The snapshot in every slot, kept to check a matching fingerprint is really
+    // the same snapshot. The cell that becomes the tail after a move, and if the
+    // whole body is known in order, change the answers too
+    private final long[] fingerprints;
+    private final int[] heads;
+    private final int[] tails;
+    private final int[] newTails;
+    private final boolean[] knowsTails;
+    private final int[] apples;
+    private final BitBoard[] bodies;
+
+    // The free area and if the tail can be reached for every way out of the
+    // snapshot in every slot, slot * 4 + direction
+    private final int[] areas;
+    private final boolean[] tailReachable;
+
+    // Scratch boards for the flood fill
+    private final BitBoard free;
+    private final BitBoard reached;
+    private final BitBoard grown;
+
+    // For statistics
+    private long lookups;
+    private long hits;
+
+    /**
+     * Works out if moves are safe, remembering the last snapshots asked about.
+     */
+    public SafetyOracle() {
+        fingerprints = new long[SLOTS];
+        heads = new int[SLOTS];
+        tails = new int[SLOTS];
+        newTails = new int[SLOTS];
+        knowsTails = new boolean[SLOTS];
+        apples = new int[SLOTS];
+        bodies = new BitBoard[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            heads[i] = -1;
+            bodies[i] = new BitBoard();
+        }
+        areas = new int[SLOTS * DIRECTIONS.length];
+        tailReachable = new boolean[SLOTS * DIRECTIONS.length];
+
+        free = new BitBoard();
+        reached = new BitBoard();
+        grown = new BitBoard();
+    }
+
+    /**
+     * Works out how many free cells the head can get to after moving one way,
+     * not counting the cell it moves onto.
+     *
+     * @param state     the snapshot of the game
+     * @param direction "left", "right", "up", or "down"
+     * @return the number of cells, or {@link #DEAD} if the move runs into a wall
+     *         or the body
+     */
+    public int freeArea(GameState state, String direction) {
+        int index = lookup(state, direction);
+        return index == -1 ? DEAD : areas[index];
+    }
+
+    /**
+     * Works out if the head can still get to the tail after moving one way.
+     *
+     * @param state     the snapshot of the game
+     * @param direction "left", "right", "up", or "down"
+     * @return if the tail can be reached, false if the move runs into a wall or
+     *         the body
+     */
+    public boolean canReachTail(GameState state, String direction) {
+        int index = lookup(state, direction);
+        return (index != -1) && (areas[index] != DEAD) && tailReachable[index];
+    }
+
+    /**
+     * Works out if moving one way is safe, which it is if it does not run into
+     * anything and afterwards the head can get to the tail or has at least as
+     * much free space left as the snake is long.
+     *
+     * @param state     the snapshot of the game
+     * @param direction "left", "right", "up", or "down"
+     * @return if the move is safe
+     */
+    public boolean isSafe(GameState state, String direction) {
+        int index = lookup(state, direction);
+        return (index != -1) && (areas[index] != DEAD)
+                && (tailReachable[index] || (areas[index] >= state.getLength()));
+    }
+
+    /**
+     * Picks the best way to move. A safe preferred way comes first, then any
+     * other safe way, then whichever way leaves the most free space.
+     *
+     * @param state     the snapshot of the game
+     * @param preferred the way the algorithm wants to go, or null
+     * @return the way to go, or null if every way runs into something
+     */
+    public String safestDirection(GameState state, String preferred) {
+        if ((preferred != null) && isSafe(state, preferred)) {
+            return preferred;
+        }
+
+        String best = null;
+        int bestArea = DEAD;
+        for (String direction : DIRECTIONS) {
+            if (isSafe(state, direction)) {
+                return direction;
+            }
+            int area = freeArea(state, direction);
+            if (area > bestArea) {
+                best = direction;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return how many times a move has been asked about
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return how many times a move was asked about for a snapshot that was
+     *         already worked out
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Finds the slot and direction of the answer for a move, working out every
+     * way out of the snapshot if it is not remembered.
+     *
+     * @return the index into the answers, or -1 if the direction is not one of
+     *         the four or the snake is not on the board
+     */
+    private int lookup(GameState state, String direction) {
+        int d = indexOf(direction);
+        int head = state.getHeadCell();
+        if ((d == -1) || (head == -1)) {
+            return -1;
+        }
+
+        lookups++;
+        BitBoard body = state.getBody();
+        int tail = state.getTailCell();
+        int newTail = newTail(state);
+        boolean knowsTail = knowsTail(state);
+        int apple = state.getAppleCell();
+        long fingerprint = fingerprint(body, head, tail, newTail, knowsTail, apple);
+        int slot = (int) (fingerprint & (SLOTS - 1));
+        if ((fingerprints[slot] == fingerprint) && (heads[slot] == head) && (tails[slot] == tail)
+                && (newTails[slot] == newTail) && (knowsTails[slot] == knowsTail) && (apples[slot] == apple)
+                && bodies[slot].equals(body)) {
+            hits++;
+            return slot * DIRECTIONS.length + d;
+        }
+
+        fingerprints[slot] = fingerprint;
+        heads[slot] = head;
+        tails[slot] = tail;
+        newTails[slot] = newTail;
+        knowsTails[slot] = knowsTail;
+        apples[slot] = apple;
+        bodies[slot].copyFrom(body);
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            evaluate(state, i, slot * DIRECTIONS.length + i);
+        }
+        return slot * DIRECTIONS.length + d;
+    }
+
+    /**
+     * Moves the head one way and flood fills from where it ends up. Unless the
+     * head eats the apple, the tail moves off its cell at the same time, so the
+     * head may move onto it and the cell before it becomes the tail.
+     */
+    private void evaluate(GameState state, int d, int index) {
+        int head = state.getHeadCell();
+        int next = BitBoard.cellOf(BitBoard.xOf(head) + DX[d], BitBoard.yOf(head) + DY[d]);
+        int length = state.getLength();
+        boolean eats = next == state.getAppleCell();
+        boolean knowsTail = knowsTail(state);
+        int tail = state.getTailCell();
+        boolean tailMoves = !eats && knowsTail && (length > 1);
+
+        BitBoard body = state.getBody();
+        if ((next == -1) || (body.get(next) && !(tailMoves && (next == tail)))) {
+            areas[index] = DEAD;
+            tailReachable[index] = false;
+            return;
+        }
+
+        // Everything the body is not on after the move is free
+        free.copyFrom(body);
+        if (tailMoves) {
+            free.clear(tail);
+        }
+        free.set(next);
+        free.invert();
+
+        // Grow the reached cells one step in every direction at a time until they
+        // stop growing
+        reached.clear();
+        reached.set(next);
+        int count = reached.fill(free, grown);
+        areas[index] = count - 1;
+
+        // The head can get to the tail if the tail is next to a reached cell
+        if (!knowsTail) {
+            tailReachable[index] = false;
+        } else if (length == 1) {
+            tailReachable[index] = true;
+        } else {
+            int newTail = eats ? tail : newTail(state);
+            tailReachable[index] = reached.neighborsInto(grown).get(newTail);
+        }
+    }
+
+    /**
+     * If the whole body of a snapshot is known in order, so the tail is known.
+     */
+    private static boolean knowsTail(GameState state) {
+        return state.getOrderedBody().length == state.getLength();
+    }
+
+    /**
+     * The cell that becomes the tail when the tail moves off its cell, or -1 if
+     * it is not known or there is no cell before the tail.
+     */
+    private static int newTail(GameState state) {
+        int[] ordered = state.getOrderedBody();
+        return knowsTail(state) && (ordered.length > 1) ? ordered[ordered.length - 2] : -1;
+    }
+
+    /**
+     * Mixes everything that makes a snapshot different into 64 bits.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private static long fingerprint(BitBoard body, int head, int tail, int newTail, boolean knowsTail, int apple) {
+        long h = body.hashCode();
+        h = (h * 0x9E3779B97F4A7C15L) ^ head;
+        h = (h * 0x9E3779B97F4A7C15L) ^ ((long) tail << 16);
+        h = (h * 0x9E3779B97F4A7C15L) ^ ((long) newTail << 24);
+        h = (h * 0x9E3779B97F4A7C15L) ^ ((long) apple << 32);
+        h = (h * 0x9E3779B97F4A7C15L) ^ (knowsTail ? 1 : 0);
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * The index of a direction, or -1 if it is not one of the four.
+     */
+    private static int indexOf(String direction) {
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if (DIRECTIONS[i].equals(direction)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
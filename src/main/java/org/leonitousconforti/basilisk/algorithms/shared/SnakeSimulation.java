@@ -0,0 +1,346 @@
+package org.leonitousconforti.basilisk.algorithms.shared;
+
+import java.util.SplittableRandom;
+
+/**
+ * A small copy of the game that can be played forward without the real game,
+ * for algorithms that look ahead. The body is a ring of cell indexes with the
+ * cells it is on in a {@link BitBoard}, so a move is a few array writes and a
+ * copy of the whole game is one array copy as long as the snake. Copies are
+ * meant to be reused, {@link #copyFrom(SnakeSimulation) copying} over an old
+ * one instead of making a new one.
+ *
+ * <p>
+ * Directions are numbered {@link #LEFT}, {@link #RIGHT}, {@link #UP}, and
+ * {@link #DOWN}. When the snake eats the apple there is no apple until one is
+ * {@link #spawnApple(SplittableRandom) spawned} or {@link #setApple(int) set}.
+ * </p>
+ */
+public final class SnakeSimulation {
+    /**
+     * Moving left.
+     */
+    public static final int LEFT = 0;
+
+    /**
+     * Moving right.
+     */
+    public static final int RIGHT = 1;
+
+    /**
+     * Moving up.
+     */
+    public static final int UP = 2;
+
+    /**
+     * Moving down.
+     */
+    public static final int DOWN = 3;
+
+    // The names of the directions by number, as used by actions
+    private static final String[] DIRECTIONS = {"left", "right", "up", "down"};
+
+    // Moving one way changes x and y by these amounts, left, right, up, down
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+
+    // How many bits the way from one body cell to the next takes, and how many
+    // of them a long holds
+    private static final int DIRECTION_BITS = 2;
+    private static final int DIRECTIONS_PER_WORD = Long.SIZE / DIRECTION_BITS;
+
+    // The body as a ring, the head at headIndex and the tail length - 1 before it
+    private final int[] ring;
+    private int headIndex;
+    private int length;
+
+    // The cells the body is on, and scratch space for finding free cells
+    private final BitBoard occupied;
+    private final BitBoard free;
+
+    // The apple, and how the game has gone since it was set up
+    private int apple;
+    private boolean alive;
+    private boolean ate;
+    private int moves;
+    private int eaten;
+
+    /**
+     * Makes an empty game with no snake.
+     */
+    public SnakeSimulation() {
+        ring = new int[BitBoard.CELLS];
+        occupied = new BitBoard();
+        free = new BitBoard();
+        apple = -1;
+        alive = false;
+    }
+
+    /**
+     * Sets the game up to match a snapshot of the real game.
+     *
+     * @param state the snapshot, with the body in order
+     * @return this game, which is not {@link #isAlive() alive} if the snapshot
+     *         has no snake in it
+     */
+    public SnakeSimulation reset(GameState state) {
+        int[] ordered = state.getOrderedBody();
+        occupied.clear();
+        length = ordered.length;
+        headIndex = length == 0 ? 0 : length - 1;
+        for (int i = 0; i < length; i++) {
+            ring[headIndex - i] = ordered[i];
+            occupied.set(ordered[i]);
+        }
+
+        apple = state.getAppleCell();
+        alive = length > 0;
+        ate = false;
+        moves = 0;
+        eaten = 0;
+        return this;
+    }
+
+    /**
+     * Makes this game the same as another.
+     *
+     * @param other the game to copy
+     * @return this game
+     */
+    public SnakeSimulation copyFrom(SnakeSimulation other) {
+        length = other.length;
+        headIndex = other.headIndex;
+        for (int i = 0, j = headIndex; i < length; i++, j = j == 0 ? ring.length - 1 : j - 1) {
+            ring[j] = other.ring[j];
+        }
+        occupied.copyFrom(other.occupied);
+
+        apple = other.apple;
+        alive = other.alive;
+        ate = other.ate;
+        moves = other.moves;
+        eaten = other.eaten;
+        return this;
+    }
+
+    /**
+     * Moves the head one way. Unless the head eats the apple the tail moves off
+     * its cell at the same time, so the head can move onto where the tail was.
+     *
+     * @param direction {@link #LEFT}, {@link #RIGHT}, {@link #UP}, or
+     *                  {@link #DOWN}
+     * @return if the snake is still alive
+     */
+    public boolean move(int direction) {
+        if (!alive) {
+            return false;
+        }
+        int next = neighbor(getHeadCell(), direction);
+        if ((next == -1) || !isOpen(next)) {
+            alive = false;
+            return false;
+        }
+
+        ate = next == apple;
+        if (ate) {
+            length++;
+            eaten++;
+            apple = -1;
+        } else {
+            occupied.clear(getTailCell());
+        }
+
+        headIndex = headIndex == ring.length - 1 ? 0 : headIndex + 1;
+        ring[headIndex] = next;
+        occupied.set(next);
+        moves++;
+        return true;
+    }
+
+    /**
+     * Puts the apple on a random free cell, every free cell as likely as any
+     * other.
+     *
+     * @param random where the randomness comes from
+     * @return the cell index of the apple, or -1 if the board is full
+     */
+    public int spawnApple(SplittableRandom random) {
+        free.copyFrom(occupied).invert();
+        int count = free.popCount();
+        apple = count == 0 ? -1 : free.nthSetCell(random.nextInt(count));
+        return apple;
+    }
+
+    /**
+     * Works out which ways the head can move without dying straight away.
+     *
+     * @return a bit for every direction that is safe, 1 shifted left by the
+     *         direction
+     */
+    public int safeMoves() {
+        int mask = 0;
+        if (alive) {
+            int head = getHeadCell();
+            for (int d = 0; d < DX.length; d++) {
+                int next = neighbor(head, d);
+                if ((next != -1) && isOpen(next)) {
+                    mask |= 1 << d;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * A cell is open if the body is not on it, or the tail is and will have moved
+     * off it because the head is not eating.
+     */
+    private boolean isOpen(int cell) {
+        return !occupied.get(cell) || ((cell == getTailCell()) && (cell != apple) && (length > 1));
+    }
+
+    /**
+     * Mixes everything that makes one position different from another into 64
+     * bits: every cell of the body in order from the head to the tail, where the
+     * apple is, and how long the snake is. Two snakes on the same cells but
+     * winding through them differently mix to different values, and different
+     * positions almost never mix to the same value.
+     *
+     * @return the fingerprint
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public long fingerprint() {
+        long h = mix(length);
+        h = mix(h ^ apple);
+        for (int i = 0, j = headIndex; i < length; i++, j = j == 0 ? ring.length - 1 : j - 1) {
+            h = mix(h ^ ring[j]);
+        }
+        return h;
+    }
+
+    /**
+     * Writes the whole position down exactly, to check that a position found by
+     * its {@link #fingerprint() fingerprint} really is this one: the head, the
+     * apple, and the length, then which way each cell of the body is from the one
+     * before it, from the head to the tail.
+     *
+     * @return the position, with the same values as the position of another game
+     *         only if the two games are in the same position
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public long[] position() {
+        long[] position = new long[1 + (length + DIRECTIONS_PER_WORD - 1) / DIRECTIONS_PER_WORD];
+        int previous = getHeadCell();
+        position[0] = (previous & 0xFFFFL) | (long) (apple + 1) << 16 | (long) length << 32;
+        for (int i = 1, j = headIndex; i < length; i++) {
+            j = j == 0 ? ring.length - 1 : j - 1;
+            int step = ring[j] - previous;
+            long direction = step == -1 ? LEFT : step == 1 ? RIGHT : step < 0 ? UP : DOWN;
+            position[1 + i / DIRECTIONS_PER_WORD] |= direction << (DIRECTION_BITS * (i % DIRECTIONS_PER_WORD));
+            previous = ring[j];
+        }
+        return position;
+    }
+
+    /**
+     * The splitmix64 finalizer, every bit in depends on every bit out.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private static long mix(long h) {
+        h = (h + 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * @param cell      the cell index
+     * @param direction the direction
+     * @return the cell index next to a cell in a direction, or -1 if it is off
+     *         the board
+     */
+    public static int neighbor(int cell, int direction) {
+        return BitBoard.cellOf(BitBoard.xOf(cell) + DX[direction], BitBoard.yOf(cell) + DY[direction]);
+    }
+
+    /**
+     * @param direction the direction
+     * @return "left", "right", "up", or "down"
+     */
+    public static String nameOf(int direction) {
+        return DIRECTIONS[direction];
+    }
+
+    /**
+     * @return the cell index of the head, or -1 if there is no snake
+     */
+    public int getHeadCell() {
+        return length == 0 ? -1 : ring[headIndex];
+    }
+
+    /**
+     * @return the cell index of the tail, or -1 if there is no snake
+     */
+    public int getTailCell() {
+        if (length == 0) {
+            return -1;
+        }
+        int tailIndex = headIndex - length + 1;
+        return ring[tailIndex < 0 ? tailIndex + ring.length : tailIndex];
+    }
+
+    /**
+     * @return the cells the body is on. Do not modify it
+     */
+    public BitBoard getBody() {
+        return occupied;
+    }
+
+    /**
+     * @return the number of cells the snake takes up
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the cell index of the apple, or -1 if there is none
+     */
+    public int getApple() {
+        return apple;
+    }
+
+    /**
+     * @param cell the cell index of the apple, or -1 for none
+     */
+    public void setApple(int cell) {
+        apple = cell;
+    }
+
+    /**
+     * @return if the snake has not run into anything
+     */
+    public boolean isAlive() {
+        return alive;
+    }
+
+    /**
+     * @return if the last move ate the apple
+     */
+    public boolean justAte() {
+        return ate;
+    }
+
+    /**
+     * @return how many moves have been made since the game was set up
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * @return how many apples have been eaten since the game was set up
+     */
+    public int getEaten() {
+        return eaten;
+    }
+}
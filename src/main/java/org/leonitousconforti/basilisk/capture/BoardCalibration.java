@@ -0,0 +1,343 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.leonitousconforti.basilisk.Config;
+
+/**
+ * Finds the game board in a capture of the whole screen. The board is a
+ * checkerboard of two colors, so the board is the biggest rectangle made of
+ * those two colors, and the size of a tile is how far apart the edges between
+ * the two colors are.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public final class BoardCalibration {
+    /**
+     * The light tile color of the google snake board.
+     */
+    public static final Color GOOGLE_SNAKE_LIGHT_TILE = new Color(170, 215, 81);
+
+    /**
+     * The dark tile color of the google snake board.
+     */
+    public static final Color GOOGLE_SNAKE_DARK_TILE = new Color(162, 209, 73);
+
+    // How far away, in rgb space, a pixel can be from a tile color and still
+    // count as that tile color. The two google snake tile colors are only about
+    // 13 apart
+    private static final int TOLERANCE = 5;
+
+    // How much of a row under the longest row has to be tile colors to still be
+    // part of the board. Rows with the snake or apple in them have less, and the
+    // rows between boards stacked above each other have none
+    private static final double BLOCK_COVERAGE = 0.5;
+
+    // The most boards that are looked for on one screen
+    private static final int MAX_BOARDS = 64;
+
+    // What each pixel was classified as
+    private static final byte OTHER = 0;
+    private static final byte LIGHT = 1;
+    private static final byte DARK = 2;
+
+    private BoardCalibration() {
+    }
+
+    /**
+     * Finds the google snake board in a capture of the screen.
+     *
+     * @param screenshot   a capture of the area of the screen the board is in
+     * @param screenOrigin where the top left corner of the capture is on the
+     *                     screen
+     * @return the geometry of the board, or null if no board was found
+     * @see #calibrate(BufferedImage, Point, Color, Color)
+     */
+    public static BoardGeometry calibrate(BufferedImage screenshot, Point screenOrigin) {
+        return calibrate(screenshot, screenOrigin, GOOGLE_SNAKE_LIGHT_TILE, GOOGLE_SNAKE_DARK_TILE);
+    }
+
+    /**
+     * Finds a checkerboard of two colors in a capture of the screen. The
+     * returned geometry captures exactly the board and nothing around it.
+     *
+     * @param screenshot   a capture of the area of the screen the board is in
+     * @param screenOrigin where the top left corner of the capture is on the
+     *                     screen
+     * @param lightTile    the color of the light tiles
+     * @param darkTile     the color of the dark tiles
+     * @return the geometry of the board, or null if no board was found or it does
+     *         not have {@value Config#NumberOfColsOnGameBoard} columns and
+     *         {@value Config#NumberOfRowsOnGameBoard} rows
+     */
+    public static BoardGeometry calibrate(BufferedImage screenshot, Point screenOrigin, Color lightTile,
+            Color darkTile) {
+        int w = screenshot.getWidth();
+        int h = screenshot.getHeight();
+        byte[] pixels = classify(screenshot, lightTile.getRGB(), darkTile.getRGB());
+
+        Rectangle board = findBoard(pixels, w, h);
+        if (board == null) {
+            return null;
+        }
+        double[] tileSize = measureTiles(pixels, w, board);
+        if (tileSize == null) {
+            return null;
+        }
+
+        // Capture just the board
+        Rectangle captureArea = new Rectangle(screenOrigin.x + board.x, screenOrigin.y + board.y, board.width,
+                board.height);
+        return new BoardGeometry(captureArea, 0, 0, tileSize[0], tileSize[1]);
+    }
+
+    /**
+     * Finds every google snake board in a capture of the screen.
+     *
+     * @param screenshot   a capture of the area of the screen the boards are in
+     * @param screenOrigin where the top left corner of the capture is on the
+     *                     screen
+     * @return the geometry of every board, see
+     *         {@link #calibrateAll(BufferedImage, Point, Color, Color)}
+     */
+    public static List<BoardGeometry> calibrateAll(BufferedImage screenshot, Point screenOrigin) {
+        return calibrateAll(screenshot, screenOrigin, GOOGLE_SNAKE_LIGHT_TILE, GOOGLE_SNAKE_DARK_TILE);
+    }
+
+    /**
+     * Finds every checkerboard of two colors in a capture of the screen, for
+     * playing more than one game at once. The boards are found one at a time,
+     * biggest first, and blanked out so the next one can be found. Every
+     * returned geometry has the same capture area, the smallest rectangle around
+     * all the boards, so one captured frame can be sampled for every board.
+     *
+     * @param screenshot   a capture of the area of the screen the boards are in
+     * @param screenOrigin where the top left corner of the capture is on the
+     *                     screen
+     * @param lightTile    the color of the light tiles
+     * @param darkTile     the color of the dark tiles
+     * @return the geometry of every board, in reading order, top to bottom then
+     *         left to right. Empty if no board was found
+     */
+    public static List<BoardGeometry> calibrateAll(BufferedImage screenshot, Point screenOrigin, Color lightTile,
+            Color darkTile) {
+        int w = screenshot.getWidth();
+        int h = screenshot.getHeight();
+        byte[] pixels = classify(screenshot, lightTile.getRGB(), darkTile.getRGB());
+
+        // Keep finding the biggest board left, then blank it out. Areas that look
+        // like a board but do not have the right number of tiles are blanked too
+        List<Rectangle> boards = new ArrayList<Rectangle>();
+        List<double[]> tileSizes = new ArrayList<double[]>();
+        for (int attempt = 0; attempt < MAX_BOARDS; attempt++) {
+            Rectangle board = findBoard(pixels, w, h);
+            if (board == null) {
+                break;
+            }
+            double[] tileSize = measureTiles(pixels, w, board);
+            if (tileSize != null) {
+                boards.add(board);
+                tileSizes.add(tileSize);
+            }
+            for (int y = board.y; y < board.y + board.height; y++) {
+                Arrays.fill(pixels, y * w + board.x, y * w + board.x + board.width, OTHER);
+            }
+        }
+        if (boards.isEmpty()) {
+            return new ArrayList<BoardGeometry>();
+        }
+
+        // Reading order, rows of boards only have to line up roughly
+        Integer[] order = new Integer[boards.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            Rectangle r1 = boards.get(a);
+            Rectangle r2 = boards.get(b);
+            if (Math.abs(r1.y - r2.y) > Math.min(r1.height, r2.height) / 2) {
+                return Integer.compare(r1.y, r2.y);
+            }
+            return Integer.compare(r1.x, r2.x);
+        });
+
+        // Capture the smallest area around every board
+        Rectangle union = new Rectangle(boards.get(0));
+        for (Rectangle board : boards) {
+            union.add(board);
+        }
+        Rectangle captureArea = new Rectangle(screenOrigin.x + union.x, screenOrigin.y + union.y, union.width,
+                union.height);
+
+        List<BoardGeometry> geometries = new ArrayList<BoardGeometry>();
+        for (int i : order) {
+            Rectangle board = boards.get(i);
+            double[] tileSize = tileSizes.get(i);
+            geometries.add(new BoardGeometry(captureArea, board.x - union.x, board.y - union.y, tileSize[0],
+                    tileSize[1]));
+        }
+        return geometries;
+    }
+
+    /**
+     * Finds the biggest rectangle of tile colors.
+     *
+     * @return the rectangle, or null if there are no tile colors at all
+     */
+    private static Rectangle findBoard(byte[] pixels, int w, int h) {
+        // Find the longest run of tile colors in every row
+        int[] runStart = new int[h];
+        int[] runLength = new int[h];
+        int longest = 0;
+        int longestRow = -1;
+        for (int y = 0; y < h; y++) {
+            int start = 0;
+            for (int x = 0; x <= w; x++) {
+                if ((x < w) && (pixels[y * w + x] != OTHER)) {
+                    continue;
+                }
+                if (x - start > runLength[y]) {
+                    runStart[y] = start;
+                    runLength[y] = x - start;
+                }
+                start = x + 1;
+            }
+            if (runLength[y] > longest) {
+                longest = runLength[y];
+                longestRow = y;
+            }
+        }
+        if (longestRow == -1) {
+            return null;
+        }
+
+        // The board is every row under the longest run that is mostly tile colors.
+        // The snake or apple can cover part of a row, even the ends of it along an
+        // edge of the board, but never most of it. Where the rows stop being mostly
+        // tile colors is the edge of the board, or where another board above or
+        // below it starts. Another board beside this one does not count, the
+        // longest run stops where this board does
+        int left = runStart[longestRow];
+        int top = longestRow;
+        int bottom = longestRow;
+        while ((top > 0) && (coverage(pixels, w, top - 1, left, longest) >= BLOCK_COVERAGE)) {
+            top--;
+        }
+        while ((bottom < h - 1) && (coverage(pixels, w, bottom + 1, left, longest) >= BLOCK_COVERAGE)) {
+            bottom++;
+        }
+        return new Rectangle(left, top, longest, bottom - top + 1);
+    }
+
+    /**
+     * @return how much of part of a row is tile colors, from 0 to 1
+     */
+    private static double coverage(byte[] pixels, int w, int y, int x, int length) {
+        int count = 0;
+        for (int i = y * w + x; i < y * w + x + length; i++) {
+            if (pixels[i] != OTHER) {
+                count++;
+            }
+        }
+        return (double) count / length;
+    }
+
+    /**
+     * Works out how big the tiles are from how far apart the edges between light
+     * and dark tiles are.
+     *
+     * @return the width and height of a tile, or null if the board does not have
+     *         {@value Config#NumberOfColsOnGameBoard} columns and
+     *         {@value Config#NumberOfRowsOnGameBoard} rows
+     */
+    private static double[] measureTiles(byte[] pixels, int w, Rectangle board) {
+        double pitchX = edgeSpacing(pixels, w, board, true);
+        double pitchY = edgeSpacing(pixels, w, board, false);
+        if ((pitchX <= 0) || (pitchY <= 0)) {
+            return null;
+        }
+
+        // The board has to have the right number of tiles
+        long columns = Math.round(board.width / pitchX);
+        long rows = Math.round(board.height / pitchY);
+        if ((columns != Config.NumberOfColsOnGameBoard) || (rows != Config.NumberOfRowsOnGameBoard)) {
+            return null;
+        }
+        return new double[] {(double) board.width / columns, (double) board.height / rows};
+    }
+
+    /**
+     * Classifies every pixel as a light tile, a dark tile, or something else.
+     */
+    private static byte[] classify(BufferedImage screenshot, int lightRgb, int darkRgb) {
+        int w = screenshot.getWidth();
+        int h = screenshot.getHeight();
+        int[] rgb = screenshot.getRGB(0, 0, w, h, null, 0, w);
+
+        byte[] pixels = new byte[rgb.length];
+        for (int i = 0; i < rgb.length; i++) {
+            if (isClose(rgb[i], lightRgb)) {
+                pixels[i] = LIGHT;
+            } else if (isClose(rgb[i], darkRgb)) {
+                pixels[i] = DARK;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Checks if two packed rgb colors are within the tolerance of each other.
+     */
+    private static boolean isClose(int rgb1, int rgb2) {
+        int dr = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+        int dg = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+        int db = (rgb1 & 0xFF) - (rgb2 & 0xFF);
+        return dr * dr + dg * dg + db * db <= TOLERANCE * TOLERANCE;
+    }
+
+    /**
+     * Finds the typical distance between edges from a light tile to a dark tile
+     * or back, along every row or every column of the board. Only edges with
+     * tile colors on both sides count, so a snake or apple in the way makes a gap
+     * instead of a short spacing.
+     *
+     * @return the median spacing, or 0 if there are no edges
+     */
+    private static double edgeSpacing(byte[] pixels, int w, Rectangle board, boolean alongRows) {
+        int lines = alongRows ? board.height : board.width;
+        int length = alongRows ? board.width : board.height;
+        int[] spacings = new int[lines * length / 2 + 1];
+        int count = 0;
+
+        for (int line = 0; line < lines; line++) {
+            int lastEdge = -1;
+            byte last = OTHER;
+            for (int i = 0; i < length; i++) {
+                int x = alongRows ? board.x + i : board.x + line;
+                int y = alongRows ? board.y + line : board.y + i;
+                byte pixel = pixels[y * w + x];
+
+                if (pixel == OTHER) {
+                    lastEdge = -1;
+                } else if ((last != OTHER) && (pixel != last)) {
+                    if ((lastEdge != -1) && (count < spacings.length)) {
+                        spacings[count++] = i - lastEdge;
+                    }
+                    lastEdge = i;
+                }
+                last = pixel;
+            }
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(spacings, 0, count);
+        return spacings[count / 2];
+    }
+}
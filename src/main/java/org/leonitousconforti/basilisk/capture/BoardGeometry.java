@@ -0,0 +1,289 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.leonitousconforti.basilisk.Config;
+
+/**
+ * Where the game board is on the screen and where to sample every tile in a
+ * captured frame. The sample coordinates are worked out once, when the geometry
+ * is created or loaded, and are shared by everything that samples frames. A
+ * geometry never changes after it is created.
+ */
+public final class BoardGeometry {
+    // Keys in the saved properties file
+    private static final String CAPTURE_X = "capture.x";
+    private static final String CAPTURE_Y = "capture.y";
+    private static final String CAPTURE_WIDTH = "capture.width";
+    private static final String CAPTURE_HEIGHT = "capture.height";
+    private static final String BOARD_X = "board.x";
+    private static final String BOARD_Y = "board.y";
+    private static final String TILE_WIDTH = "tile.width";
+    private static final String TILE_HEIGHT = "tile.height";
+    private static final String SAMPLE_X = "sample.x";
+    private static final String SAMPLE_Y = "sample.y";
+
+    // The area of the screen to capture
+    private final Rectangle captureArea;
+
+    // Where the top left corner of the first tile is in a captured frame, and
+    // the size of a tile. Tiles are not always a whole number of pixels wide
+    private final int boardX;
+    private final int boardY;
+    private final double tileWidth;
+    private final double tileHeight;
+
+    // The pixel coordinates, in a captured frame, of the center of every tile.
+    // Indexed by tile, which is y * columns + x
+    private final int[] sampleX;
+    private final int[] sampleY;
+
+    // How big a captured frame has to be to sample every tile
+    private final int requiredWidth;
+    private final int requiredHeight;
+
+    /**
+     * Creates a board geometry.
+     *
+     * @param area   the area of the screen to capture, in screen coordinates
+     * @param x      the x coordinate of the left edge of the board in a captured
+     *               frame
+     * @param y      the y coordinate of the top edge of the board in a captured
+     *               frame
+     * @param width  the width of a tile in pixels
+     * @param height the height of a tile in pixels
+     */
+    public BoardGeometry(Rectangle area, int x, int y, double width, double height) {
+        this(area, x, y, width, height, null, null);
+    }
+
+    /**
+     * Creates a board geometry, using the sample coordinates given instead of
+     * working them out if there are any.
+     */
+    private BoardGeometry(Rectangle area, int x, int y, double width, double height, int[] xs, int[] ys) {
+        captureArea = new Rectangle(area);
+        boardX = x;
+        boardY = y;
+        tileWidth = width;
+        tileHeight = height;
+
+        if ((xs != null) && (ys != null)) {
+            sampleX = xs;
+            sampleY = ys;
+        } else {
+            // Sample the pixel in the middle of every tile
+            sampleX = new int[Config.NumberOfColsOnGameBoard * Config.NumberOfRowsOnGameBoard];
+            sampleY = new int[sampleX.length];
+            for (int tile = 0; tile < sampleX.length; tile++) {
+                sampleX[tile] = getTileLeft(tile % Config.NumberOfColsOnGameBoard) + (int) (tileWidth / 2);
+                sampleY[tile] = getTileTop(tile / Config.NumberOfColsOnGameBoard) + (int) (tileHeight / 2);
+            }
+        }
+
+        int maxX = 0;
+        int maxY = 0;
+        for (int tile = 0; tile < sampleX.length; tile++) {
+            maxX = Math.max(maxX, sampleX[tile]);
+            maxY = Math.max(maxY, sampleY[tile]);
+        }
+        requiredWidth = maxX + 1;
+        requiredHeight = maxY + 1;
+    }
+
+    /**
+     * The geometry basilisk has always assumed: a 600x600 pixel game window with
+     * a {@value Config#GameBoardBoarderWidthPixels} pixel border, a
+     * {@value Config#GameBoardHeaderHeightPixels} pixel header, and
+     * {@value Config#GameBoardQuadrantSizePixels} pixel tiles.
+     *
+     * @param windowX the x coordinate of the game window on the screen
+     * @param windowY the y coordinate of the game window on the screen
+     * @return the geometry
+     */
+    public static BoardGeometry defaultWindow(int windowX, int windowY) {
+        return new BoardGeometry(
+                new Rectangle(windowX, windowY, Config.GameBoardSizePixels, Config.GameBoardSizePixels),
+                Config.GameBoardBoarderWidthPixels, Config.GameBoardHeaderHeightPixels,
+                Config.GameBoardQuadrantSizePixels, Config.GameBoardQuadrantSizePixels);
+    }
+
+    /**
+     * @return where calibrated geometries are saved between runs
+     */
+    public static File defaultCacheFile() {
+        return new File(new File(System.getProperty("user.home"), ".basilisk"), "board-geometry.properties");
+    }
+
+    /**
+     * Saves the geometry, including the sample coordinates, so it can be
+     * {@link #load(File) loaded} the next time instead of calibrating again.
+     *
+     * @param file the file to save to, missing folders are created
+     * @throws IOException if the file can not be written
+     */
+    public void save(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(CAPTURE_X, Integer.toString(captureArea.x));
+        properties.setProperty(CAPTURE_Y, Integer.toString(captureArea.y));
+        properties.setProperty(CAPTURE_WIDTH, Integer.toString(captureArea.width));
+        properties.setProperty(CAPTURE_HEIGHT, Integer.toString(captureArea.height));
+        properties.setProperty(BOARD_X, Integer.toString(boardX));
+        properties.setProperty(BOARD_Y, Integer.toString(boardY));
+        properties.setProperty(TILE_WIDTH, Double.toString(tileWidth));
+        properties.setProperty(TILE_HEIGHT, Double.toString(tileHeight));
+        properties.setProperty(SAMPLE_X, join(sampleX));
+        properties.setProperty(SAMPLE_Y, join(sampleY));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if ((parent != null) && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("could not create " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "Basilisk board geometry");
+        }
+    }
+
+    /**
+     * Loads a geometry that was {@link #save(File) saved} earlier.
+     *
+     * @param file the file to load from
+     * @return the geometry, or null if there is no saved geometry or it does not
+     *         match the size of the game board
+     */
+    public static BoardGeometry load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+
+            Rectangle area = new Rectangle(Integer.parseInt(properties.getProperty(CAPTURE_X)),
+                    Integer.parseInt(properties.getProperty(CAPTURE_Y)),
+                    Integer.parseInt(properties.getProperty(CAPTURE_WIDTH)),
+                    Integer.parseInt(properties.getProperty(CAPTURE_HEIGHT)));
+            int[] xs = split(properties.getProperty(SAMPLE_X));
+            int[] ys = split(properties.getProperty(SAMPLE_Y));
+            int numberOfTiles = Config.NumberOfColsOnGameBoard * Config.NumberOfRowsOnGameBoard;
+            if ((xs.length != numberOfTiles) || (ys.length != numberOfTiles)) {
+                return null;
+            }
+
+            return new BoardGeometry(area, Integer.parseInt(properties.getProperty(BOARD_X)),
+                    Integer.parseInt(properties.getProperty(BOARD_Y)),
+                    Double.parseDouble(properties.getProperty(TILE_WIDTH)),
+                    Double.parseDouble(properties.getProperty(TILE_HEIGHT)), xs, ys);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("ignoring unreadable board geometry " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Joins ints into a comma separated list.
+     */
+    private static String join(int[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Splits a comma separated list of ints.
+     */
+    private static int[] split(String values) {
+        String[] parts = values.split(",");
+        int[] ints = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ints[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ints;
+    }
+
+    /**
+     * @return the area of the screen to capture, in screen coordinates
+     */
+    public Rectangle getCaptureArea() {
+        return new Rectangle(captureArea);
+    }
+
+    /**
+     * @param column the column of the tile
+     * @return the x coordinate of the left edge of the tile in a captured frame
+     */
+    public int getTileLeft(int column) {
+        return boardX + (int) Math.round(column * tileWidth);
+    }
+
+    /**
+     * @param row the row of the tile
+     * @return the y coordinate of the top edge of the tile in a captured frame
+     */
+    public int getTileTop(int row) {
+        return boardY + (int) Math.round(row * tileHeight);
+    }
+
+    /**
+     * @return the width of a tile in pixels
+     */
+    public double getTileWidth() {
+        return tileWidth;
+    }
+
+    /**
+     * @return the height of a tile in pixels
+     */
+    public double getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * @return the x coordinate of the center of every tile in a captured frame,
+     *         indexed by y * columns + x. This is shared, do not modify it
+     */
+    public int[] getSampleX() {
+        return sampleX;
+    }
+
+    /**
+     * @return the y coordinate of the center of every tile in a captured frame,
+     *         indexed by y * columns + x. This is shared, do not modify it
+     */
+    public int[] getSampleY() {
+        return sampleY;
+    }
+
+    /**
+     * @return the smallest width a captured frame can be to sample every tile
+     */
+    public int getRequiredWidth() {
+        return requiredWidth;
+    }
+
+    /**
+     * @return the smallest height a captured frame can be to sample every tile
+     */
+    public int getRequiredHeight() {
+        return requiredHeight;
+    }
+
+    @Override
+    public String toString() {
+        return "board at " + captureArea + " offset (" + boardX + ", " + boardY + ") with " + tileWidth + "x"
+                + tileHeight + " pixel tiles";
+    }
+}
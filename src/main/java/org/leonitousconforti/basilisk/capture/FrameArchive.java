@@ -0,0 +1,73 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+
+/**
+ * The layout of a recorded frame archive. An archive is a header of four ints,
+ * the magic number, the version, the frame width and the frame height, followed
+ * by one record per frame. Each record is the time the frame was captured in
+ * nanoseconds as a long, followed by width * height packed rgb ints in row
+ * order. Everything is big endian.
+ *
+ * @see FrameArchiveWriter
+ * @see ReplayFrameSource
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public final class FrameArchive {
+    /**
+     * The first four bytes of every archive, "BSLK".
+     */
+    public static final int MAGIC = 0x42534C4B;
+
+    /**
+     * The version of the archive layout.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header in bytes.
+     */
+    public static final int HEADER_BYTES = 16;
+
+    /**
+     * The size of the timestamp at the start of every frame record in bytes.
+     */
+    public static final int TIMESTAMP_BYTES = 8;
+
+    private FrameArchive() {
+    }
+
+    /**
+     * @param width  the width of the frames
+     * @param height the height of the frames
+     * @return the size of one frame record in bytes
+     */
+    public static long recordBytes(int width, int height) {
+        return TIMESTAMP_BYTES + 4L * width * height;
+    }
+
+    /**
+     * Builds an image on top of a buffer of packed rgb pixels without copying
+     * them. The image is laid out the same way as the ones the java Robot makes,
+     * so the game element detection can read it directly.
+     *
+     * @param pixels the pixels in row order, starting at the buffer's position
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the image
+     */
+    public static BufferedImage wrap(IntBuffer pixels, int width, int height) {
+        int[] masks = {0xFF0000, 0xFF00, 0xFF};
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width,
+                height, masks);
+        WritableRaster raster = Raster.createWritableRaster(sampleModel,
+                new IntBufferDataBuffer(pixels, width * height), null);
+        return new BufferedImage(new DirectColorModel(24, masks[0], masks[1], masks[2]), raster, false, null);
+    }
+}
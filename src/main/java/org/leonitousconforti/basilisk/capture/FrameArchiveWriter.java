@@ -0,0 +1,85 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records frames into a frame archive that can be played back with the
+ * {@link ReplayFrameSource}. Frames are written on the calling thread, so this
+ * is meant for capturing sessions to profile with, not for leaving on.
+ *
+ * @see FrameArchive
+ */
+public class FrameArchiveWriter implements Closeable {
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+
+    // Reused for every frame
+    private final int[] pixels;
+    private final ByteBuffer record;
+
+    /**
+     * Creates a new archive, replacing any file that is already there.
+     *
+     * @param archive     the file to write to
+     * @param frameWidth  the width of every frame
+     * @param frameHeight the height of every frame
+     * @throws IOException if the file can not be written
+     */
+    public FrameArchiveWriter(File archive, int frameWidth, int frameHeight) throws IOException {
+        width = frameWidth;
+        height = frameHeight;
+        pixels = new int[width * height];
+        record = ByteBuffer.allocateDirect((int) FrameArchive.recordBytes(width, height));
+
+        // Start the file over and write the header, closing it again if that fails
+        RandomAccessFile file = new RandomAccessFile(archive, "rw");
+        channel = file.getChannel();
+        try {
+            file.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(FrameArchive.HEADER_BYTES);
+            header.putInt(FrameArchive.MAGIC).putInt(FrameArchive.VERSION).putInt(width).putInt(height).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a frame to the archive.
+     *
+     * @param frame          the frame, must be the same size as the archive
+     * @param timestampNanos when the frame was captured, from
+     *                       {@link System#nanoTime()}
+     * @throws IOException if the frame can not be written
+     */
+    public void write(BufferedImage frame, long timestampNanos) throws IOException {
+        if ((frame.getWidth() != width) || (frame.getHeight() != height)) {
+            throw new IllegalArgumentException("frame is " + frame.getWidth() + "x" + frame.getHeight()
+                    + " but the archive is " + width + "x" + height);
+        }
+
+        frame.getRGB(0, 0, width, height, pixels, 0, width);
+        record.clear();
+        record.putLong(timestampNanos);
+        record.asIntBuffer().put(pixels);
+        record.position(record.capacity()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
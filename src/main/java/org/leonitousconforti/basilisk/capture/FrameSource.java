@@ -0,0 +1,50 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Somewhere frames of the game come from. The java Robot grabbing the user's
+ * screen is one source, a recorded frame archive being played back is another.
+ *
+ * @see org.leonitousconforti.basilisk.core.ScreenCapture
+ */
+public interface FrameSource {
+    /**
+     * Gets the next frame. Sources are allowed to hand out the same image again
+     * or reuse its pixels for a later frame once it is {@link #release(BufferedImage)
+     * released}, so release it as soon as it has been processed.
+     *
+     * @return the next frame, or null if there are no more frames
+     */
+    BufferedImage getFrame();
+
+    /**
+     * Hands a frame from {@link #getFrame()} back, it is not used after this.
+     * Sources that reuse their images only capture into an image again once it
+     * has been released. Frames that did not come from this source are ignored.
+     *
+     * @param frame the frame to hand back
+     */
+    default void release(BufferedImage frame) {
+    }
+
+    /**
+     * Changes the area of the screen frames are captured from. Sources that do
+     * not capture the screen ignore this.
+     *
+     * @param area the area to capture, in screen coordinates
+     */
+    void setCaptureArea(Rectangle area);
+
+    /**
+     * @return the area of the screen frames are captured from
+     */
+    Rectangle getCaptureArea();
+
+    /**
+     * Releases anything the source is holding on to. No more frames can be
+     * gotten after this.
+     */
+    void close();
+}
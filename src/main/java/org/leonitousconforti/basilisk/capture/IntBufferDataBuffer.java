@@ -0,0 +1,45 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.image.DataBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A data buffer that reads its pixels out of an int buffer instead of an int
+ * array. This lets an image be built right on top of memory mapped files or
+ * shared memory without copying the pixels.
+ */
+public class IntBufferDataBuffer extends DataBuffer {
+    private final IntBuffer pixels;
+
+    /**
+     * Wraps an int buffer as a data buffer with one bank.
+     *
+     * @param buffer the pixels, indexed from the buffer's position
+     * @param size   the number of pixels
+     */
+    public IntBufferDataBuffer(IntBuffer buffer, int size) {
+        super(DataBuffer.TYPE_INT, size);
+        pixels = buffer.slice();
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        return pixels.get(i);
+    }
+
+    /**
+     * Writes a pixel. Throws a {@link java.nio.ReadOnlyBufferException} if the
+     * buffer is read only, like a played back archive.
+     */
+    @Override
+    public void setElem(int bank, int i, int val) {
+        pixels.put(i, val);
+    }
+
+    /**
+     * @return the buffer the pixels are read from
+     */
+    public IntBuffer getIntBuffer() {
+        return pixels;
+    }
+}
@@ -0,0 +1,187 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays back a recorded frame archive. The archive is memory mapped and every
+ * frame handed out is an image built right on top of the mapped pixels, so
+ * nothing is copied. The images are built once and handed out again every time
+ * the frame is played. Frames can be played back at the pace they were recorded
+ * at or as fast as they are asked for.
+ *
+ * @see FrameArchive
+ */
+public class ReplayFrameSource implements FrameSource {
+    private final RandomAccessFile file;
+    private final int width;
+    private final int height;
+    private final long recordBytes;
+    private final int frameCount;
+
+    // The archive is mapped in chunks of whole frames because a single mapping
+    // can not be bigger than 2GB
+    private final MappedByteBuffer[] chunks;
+    private final int framesPerChunk;
+
+    // An image on top of every frame of a chunk, built the first time the chunk
+    // is played so playing it again does not allocate anything
+    private final BufferedImage[][] chunkFrames;
+
+    private final boolean realTime;
+    private final boolean loop;
+
+    // Where the replay is at and when it started, for keeping the recorded pace
+    private int nextFrame;
+    private long firstTimestamp;
+    private long replayStart;
+
+    /**
+     * Opens a frame archive for playback.
+     *
+     * @param archive      the archive to play back
+     * @param recordedPace true to hand out frames at the pace they were recorded
+     *                     at, false to go as fast as possible
+     * @param loopAtEnd    true to start over at the end of the archive, false to
+     *                     stop handing out frames
+     * @throws IOException if the archive can not be read or is not an archive
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public ReplayFrameSource(File archive, boolean recordedPace, boolean loopAtEnd) throws IOException {
+        realTime = recordedPace;
+        loop = loopAtEnd;
+        file = new RandomAccessFile(archive, "r");
+
+        // Check the header
+        if ((file.length() < FrameArchive.HEADER_BYTES) || (file.readInt() != FrameArchive.MAGIC)) {
+            file.close();
+            throw new IOException(archive + " is not a frame archive");
+        }
+        int version = file.readInt();
+        if (version != FrameArchive.VERSION) {
+            file.close();
+            throw new IOException(archive + " is a version " + version + " frame archive, expected version "
+                    + FrameArchive.VERSION);
+        }
+        width = file.readInt();
+        height = file.readInt();
+        recordBytes = FrameArchive.recordBytes(width, height);
+        frameCount = (int) ((file.length() - FrameArchive.HEADER_BYTES) / recordBytes);
+
+        // Map the frames
+        framesPerChunk = (int) Math.max(1, Integer.MAX_VALUE / recordBytes);
+        chunks = new MappedByteBuffer[(frameCount + framesPerChunk - 1) / framesPerChunk];
+        chunkFrames = new BufferedImage[chunks.length][];
+        FileChannel channel = file.getChannel();
+        try {
+            for (int i = 0; i < chunks.length; i++) {
+                int framesInChunk = Math.min(framesPerChunk, frameCount - i * framesPerChunk);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        FrameArchive.HEADER_BYTES + i * framesPerChunk * recordBytes, framesInChunk * recordBytes);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        nextFrame = 0;
+        firstTimestamp = frameCount > 0 ? timestampOf(0) : 0;
+        replayStart = -1;
+    }
+
+    /**
+     * Gets the next frame from the archive, waiting until it is due if playing
+     * back at the recorded pace.
+     *
+     * @return the next frame, or null at the end of the archive when not looping
+     */
+    @Override
+    public BufferedImage getFrame() {
+        if (nextFrame >= frameCount) {
+            if (!loop || (frameCount == 0)) {
+                return null;
+            }
+            nextFrame = 0;
+            replayStart = -1;
+        }
+
+        // Wait until the frame is due
+        long timestamp = timestampOf(nextFrame);
+        if (replayStart == -1) {
+            replayStart = System.nanoTime();
+        } else if (realTime) {
+            long wait = (timestamp - firstTimestamp) - (System.nanoTime() - replayStart);
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        // The image on top of the mapped pixels
+        int chunk = nextFrame / framesPerChunk;
+        if (chunkFrames[chunk] == null) {
+            chunkFrames[chunk] = wrapChunk(chunk);
+        }
+        BufferedImage frame = chunkFrames[chunk][nextFrame % framesPerChunk];
+        nextFrame++;
+        return frame;
+    }
+
+    /**
+     * Builds an image on top of every frame of a chunk.
+     */
+    private BufferedImage[] wrapChunk(int chunk) {
+        BufferedImage[] frames = new BufferedImage[Math.min(framesPerChunk, frameCount - chunk * framesPerChunk)];
+        for (int i = 0; i < frames.length; i++) {
+            ByteBuffer record = chunks[chunk].duplicate();
+            record.position((int) (i * recordBytes + FrameArchive.TIMESTAMP_BYTES));
+            frames[i] = FrameArchive.wrap(record.asIntBuffer(), width, height);
+        }
+        return frames;
+    }
+
+    /**
+     * Reads when a frame was recorded.
+     */
+    private long timestampOf(int frame) {
+        return chunks[frame / framesPerChunk].getLong((int) ((frame % framesPerChunk) * recordBytes));
+    }
+
+    /**
+     * Replays do not capture the screen, so the capture area can not be changed.
+     */
+    @Override
+    public void setCaptureArea(Rectangle area) {
+    }
+
+    @Override
+    public Rectangle getCaptureArea() {
+        return new Rectangle(0, 0, width, height);
+    }
+
+    @Override
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of frames in the archive
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+}
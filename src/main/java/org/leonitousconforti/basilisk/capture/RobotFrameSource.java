@@ -0,0 +1,59 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.AWTException;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+
+/**
+ * Captures frames from the user's screen with the java Robot.
+ */
+public class RobotFrameSource implements FrameSource {
+    // Java robot handles interactions with user's screen
+    private Robot screenCapture;
+
+    // Rectangle where to record the screen
+    private Rectangle screenRect;
+
+    /**
+     * Captures the screen.
+     */
+    public RobotFrameSource() {
+        // Attempt to initialize the java Robot
+        try {
+            screenCapture = new Robot();
+            screenRect = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+        } catch (AWTException e) {
+            System.out.println("critical error when initializing screen capture");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets a new frame from the user's screen in the capture area. Every call
+     * allocates a new image.
+     *
+     * @return the captured frame
+     *
+     * @see https://stackoverflow.com/questions/11514929/current-state-of-bufferedimage-vs-volatileimage
+     */
+    @Override
+    public BufferedImage getFrame() {
+        return screenCapture.createScreenCapture(screenRect);
+    }
+
+    @Override
+    public void setCaptureArea(Rectangle area) {
+        screenRect = new Rectangle(area);
+    }
+
+    @Override
+    public Rectangle getCaptureArea() {
+        return new Rectangle(screenRect);
+    }
+
+    @Override
+    public void close() {
+    }
+}
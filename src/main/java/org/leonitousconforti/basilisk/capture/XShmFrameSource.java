@@ -0,0 +1,351 @@
+package org.leonitousconforti.basilisk.capture;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Captures frames from an X11 screen through the MIT shared memory extension.
+ * The X server writes the capture area straight into shared memory that is
+ * wrapped as an image once, so capturing a frame allocates nothing and copies
+ * the pixels only once, unlike the java Robot which makes a new image and
+ * copies it through AWT every frame. Only works on Linux with the native
+ * library, which is built by the {@code xshm} maven profile, check
+ * {@link #isAvailable()} before using it. Works on Xvfb, which makes it useful
+ * on headless machines too.
+ *
+ * <p>
+ * The images are reused. A frame is only captured into again once it has been
+ * {@link #release(BufferedImage) released}, and if every image is still held
+ * another one is made, so holding on to frames costs memory instead of having
+ * them overwritten. The shared memory behind a frame is only freed once it is
+ * released too, even if the capture area changed or the source was closed in
+ * the meantime.
+ */
+public class XShmFrameSource implements FrameSource {
+    // Where the native library is inside the jar, and where it can be loaded
+    // from instead
+    private static final String LIBRARY_RESOURCE = "native/libbasilisk-xshm.so";
+    private static final String LIBRARY_NAME = "basilisk-xshm";
+    private static final String LIBRARY_PROPERTY = "basilisk.xshm.library";
+
+    // If the native library loaded, only tried once
+    private static Boolean libraryLoaded;
+
+    // The connection to the X server, 0 once closed
+    private long display;
+
+    // If the source is closed, the connection is closed once every retired image
+    // is freed
+    private boolean closed;
+
+    // The shared memory images, the images wrapped around them, which of them are
+    // handed out and not released yet, and which one to try capturing into next
+    private long[] shmImages;
+    private BufferedImage[] frames;
+    private boolean[] held;
+    private int nextFrame;
+
+    // Shared images that were handed out before the capture area changed or the
+    // source was closed, they are freed once they are released
+    private final Map<BufferedImage, Long> retired;
+
+    // Rectangle where to record the screen
+    private Rectangle screenRect;
+
+    /**
+     * Connects to the X server in the DISPLAY environment variable.
+     *
+     * @param buffers how many frames to cycle through to begin with, one more
+     *                than the number of frames that are usually held on to at
+     *                once
+     * @throws IOException if the native library is not available or the X server
+     *                     does not support shared memory
+     */
+    public XShmFrameSource(int buffers) throws IOException {
+        if (!isAvailable()) {
+            throw new IOException("the xshm native library is not available");
+        }
+
+        display = nativeOpen(null);
+        if (display == 0) {
+            throw new IOException("could not open the display or it does not support shared memory");
+        }
+
+        closed = false;
+        shmImages = new long[Math.max(1, buffers)];
+        frames = new BufferedImage[shmImages.length];
+        held = new boolean[shmImages.length];
+        nextFrame = 0;
+        retired = new IdentityHashMap<BufferedImage, Long>();
+        screenRect = new Rectangle(nativeScreenWidth(display), nativeScreenHeight(display));
+    }
+
+    /**
+     * Checks if frames can be captured through shared memory, which needs Linux,
+     * a display, and the native library. The library is loaded from the path in
+     * the {@value #LIBRARY_PROPERTY} system property, from inside the jar, or
+     * from the java library path, in that order.
+     *
+     * @return if the native library is loaded
+     */
+    public static synchronized boolean isAvailable() {
+        if (libraryLoaded != null) {
+            return libraryLoaded;
+        }
+
+        libraryLoaded = false;
+        if (!System.getProperty("os.name", "").startsWith("Linux") || (System.getenv("DISPLAY") == null)) {
+            return false;
+        }
+
+        try {
+            String path = System.getProperty(LIBRARY_PROPERTY);
+            File extracted = path == null ? extractLibrary() : null;
+            if (path != null) {
+                System.load(path);
+            } else if (extracted != null) {
+                System.load(extracted.getAbsolutePath());
+            } else {
+                System.loadLibrary(LIBRARY_NAME);
+            }
+            libraryLoaded = true;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            libraryLoaded = false;
+        }
+        return libraryLoaded;
+    }
+
+    /**
+     * Libraries inside the jar can not be loaded directly, so copy it to a temp
+     * file that deletes itself when the program closes.
+     *
+     * @return the temp file, or null if the library is not in the jar
+     */
+    private static File extractLibrary() {
+        try (InputStream in = XShmFrameSource.class.getClassLoader().getResourceAsStream(LIBRARY_RESOURCE)) {
+            if (in == null) {
+                return null;
+            }
+
+            File temp = File.createTempFile(LIBRARY_NAME, ".so", null);
+            temp.deleteOnExit();
+            Files.copy(in, temp.getAbsoluteFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return temp.getAbsoluteFile();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Captures the capture area into the next shared image that is not held.
+     * Nothing is allocated unless the capture area changed or every image is
+     * held.
+     *
+     * @return the captured frame, or null if the capture failed or the source is
+     *         closed
+     */
+    @Override
+    public synchronized BufferedImage getFrame() {
+        if (closed) {
+            return null;
+        }
+
+        // Make the shared images the first time they are used, or after the
+        // capture area changed
+        int i = nextFreeFrame();
+        if (frames[i] == null) {
+            shmImages[i] = nativeCreateImage(display, screenRect.width, screenRect.height);
+            if (shmImages[i] == 0) {
+                System.out.println("could not create a shared memory image");
+                return null;
+            }
+            ByteBuffer pixels = nativeImageBuffer(shmImages[i]).order(ByteOrder.nativeOrder());
+            frames[i] = FrameArchive.wrap(pixels.asIntBuffer(), screenRect.width, screenRect.height);
+        }
+
+        if (!nativeCapture(display, shmImages[i], screenRect.x, screenRect.y)) {
+            System.out.println("could not capture " + screenRect + " through shared memory");
+            return null;
+        }
+
+        held[i] = true;
+        nextFrame = (i + 1) % frames.length;
+        return frames[i];
+    }
+
+    /**
+     * Finds the next image that is not held, starting from the one after the
+     * last frame captured, making room for another one if they are all held.
+     *
+     * @return the index of the image
+     */
+    private int nextFreeFrame() {
+        for (int n = 0; n < frames.length; n++) {
+            int i = (nextFrame + n) % frames.length;
+            if (!held[i]) {
+                return i;
+            }
+        }
+
+        int i = frames.length;
+        shmImages = Arrays.copyOf(shmImages, i + 1);
+        frames = Arrays.copyOf(frames, i + 1);
+        held = Arrays.copyOf(held, i + 1);
+        return i;
+    }
+
+    /**
+     * Hands a frame back so it can be captured into again, or frees it if it was
+     * made before the capture area changed or the source was closed.
+     *
+     * @param frame the frame to hand back
+     */
+    @Override
+    public synchronized void release(BufferedImage frame) {
+        if (frame == null) {
+            return;
+        }
+
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] == frame) {
+                held[i] = false;
+                return;
+            }
+        }
+
+        Long image = retired.remove(frame);
+        if (image != null) {
+            nativeDestroyImage(display, image);
+            if (closed && retired.isEmpty()) {
+                nativeClose(display);
+                display = 0;
+            }
+        }
+    }
+
+    /**
+     * Changes the area of the screen frames are captured from, clipped to the
+     * screen. The shared images are made again at the new size. Frames handed
+     * out before this keep their old size and can still be used until they are
+     * released.
+     *
+     * @param area the area to capture, in screen coordinates
+     */
+    @Override
+    public synchronized void setCaptureArea(Rectangle area) {
+        if (closed) {
+            return;
+        }
+
+        Rectangle clipped = area.intersection(new Rectangle(nativeScreenWidth(display), nativeScreenHeight(display)));
+        if (clipped.isEmpty() || clipped.equals(screenRect)) {
+            return;
+        }
+
+        freeImages();
+        screenRect = clipped;
+    }
+
+    @Override
+    public synchronized Rectangle getCaptureArea() {
+        return new Rectangle(screenRect);
+    }
+
+    /**
+     * Frees every shared image that is not held. The connection to the X server
+     * is closed once the frames still held are released.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        freeImages();
+        if (retired.isEmpty()) {
+            nativeClose(display);
+            display = 0;
+        }
+    }
+
+    /**
+     * Frees every shared image that is not held, and retires the ones that are
+     * so they are freed once they are released.
+     */
+    private void freeImages() {
+        for (int i = 0; i < frames.length; i++) {
+            if (held[i]) {
+                retired.put(frames[i], shmImages[i]);
+            } else if (shmImages[i] != 0) {
+                nativeDestroyImage(display, shmImages[i]);
+            }
+            shmImages[i] = 0;
+            frames[i] = null;
+            held[i] = false;
+        }
+        nextFrame = 0;
+    }
+
+    /**
+     * Connects to an X server that supports shared memory images.
+     *
+     * @param displayName the display to connect to, or null for the DISPLAY
+     *                    environment variable
+     * @return the connection, or 0 if it failed
+     */
+    private static native long nativeOpen(String displayName);
+
+    /**
+     * @return the width of the default screen in pixels
+     */
+    private static native int nativeScreenWidth(long connection);
+
+    /**
+     * @return the height of the default screen in pixels
+     */
+    private static native int nativeScreenHeight(long connection);
+
+    /**
+     * Makes a shared memory image with 32 bit packed rgb pixels and no padding
+     * at the end of rows.
+     *
+     * @return the image, or 0 if it failed or the screen has a different pixel
+     *         format
+     */
+    private static native long nativeCreateImage(long connection, int width, int height);
+
+    /**
+     * @return a direct buffer over the pixels of a shared memory image
+     */
+    private static native ByteBuffer nativeImageBuffer(long image);
+
+    /**
+     * Captures an area of the root window, the size of the image, into a shared
+     * memory image.
+     *
+     * @return if the capture worked
+     */
+    private static native boolean nativeCapture(long connection, long image, int x, int y);
+
+    /**
+     * Frees a shared memory image.
+     */
+    private static native void nativeDestroyImage(long connection, long image);
+
+    /**
+     * Closes the connection to the X server.
+     */
+    private static native void nativeClose(long connection);
+}
@@ -5,6 +5,7 @@ import java.awt.Point;
 import java.awt.Robot;
 import java.awt.event.KeyEvent;
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 
@@ -14,6 +15,8 @@ import org.java_websocket.server.WebSocketServer;
 
 import org.leonitousconforti.basilisk.Config;
 import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
 
 /**
  * Helps inject/simulate key presses so the snake actually moves.
@@ -26,10 +29,23 @@ public class ActionsManager {
     // The list of actions from the algorithm
     private final ArrayList<Action> actionsQueue;
 
-    private String executorMethod;
+    private volatile String executorMethod;
+
+    // Predicts where the head will be when a key press lands, null to only ever
+    // press keys when the head is exactly at the execution point
+    private volatile TickEstimator tickEstimator;
+
+    // When each action waiting to be pressed was decided on, and a moving
+    // average of how long it takes from deciding to pressing the key
+    private final ArrayDeque<Long> decisionTimes;
+    private double dispatchLatencyNanos;
+
+    // The last game state the queue was caught up with
+    private GameState reconciledState;
 
     // For statistics
     private int webSocketNumConnectedClients;
+    private volatile long missedActions;
 
     /**
      * Injects/simulates key presses so the snake actually moves. Can run in two
@@ -37,8 +53,19 @@ public class ActionsManager {
      * via web sockets and keyer mode where basilisk simulates real keyboard key
      * presses
      */
-    @SuppressWarnings("checkstyle:MagicNumber")
     public ActionsManager() {
+        this(Config.websocketServerPort);
+    }
+
+    /**
+     * Injects/simulates key presses, with the websocket server on a different
+     * port. Every game being played at once needs its own port so its browser
+     * only gets its own key presses.
+     *
+     * @param websocketPort the port for the websocket server to listen on
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public ActionsManager(int websocketPort) {
         // Attempt to initialize the keyer
         try {
             keyer = new Robot();
@@ -48,7 +75,7 @@ public class ActionsManager {
         }
 
         // Attempt to initialize a simple websocket server
-        wsServer = new WebSocketServer(new InetSocketAddress(Config.websocketServerPort)) {
+        wsServer = new WebSocketServer(new InetSocketAddress(websocketPort)) {
             // All these methods have to be here because they are abstract and need an
             // implementation
             @Override
@@ -79,6 +106,10 @@ public class ActionsManager {
         actionsQueue = new ArrayList<Action>();
         executorMethod = "keyer";
         webSocketNumConnectedClients = 0;
+        decisionTimes = new ArrayDeque<Long>();
+        dispatchLatencyNanos = 0;
+        reconciledState = null;
+        missedActions = 0;
     }
 
     /**
@@ -86,7 +117,7 @@ public class ActionsManager {
      *
      * @return the next action in the queue
      */
-    public Action getNextAction() {
+    public synchronized Action getNextAction() {
         // Prevent index out of bounds exceptions
         if (actionsQueue.size() == 0) {
             return null;
@@ -120,14 +151,160 @@ public class ActionsManager {
         return false;
     }
 
+    /**
+     * Checks that the provided action is ready to be executed, taking into
+     * account that the snake keeps moving while the frame is processed and the
+     * key is pressed. Once the {@link TickEstimator tick estimator} has locked on
+     * to the game, an action is ready as soon as the head is predicted to be at
+     * or past the execution point when the key lands, going straight, which can
+     * be a move or two before the head gets there in the frame. Pressing the key
+     * any later would be too late to turn there. Otherwise, or if the head is already at
+     * the execution point, this is the same as {@link #checkAction(Action, Point)
+     * checkAction}.
+     *
+     * @param action          the action to be checked
+     * @param state           the snapshot of the game
+     * @param capturedAtNanos when the frame the snapshot came from was captured,
+     *                        from {@link System#nanoTime()}
+     * @return if this action is ready to be executed
+     */
+    public boolean checkAction(Action action, GameState state, long capturedAtNanos) {
+        if (action == null) {
+            return false;
+        }
+        if (checkAction(action, state.getSnakeHead())) {
+            return true;
+        }
+
+        // Need a good estimate of the game speed to predict anything
+        TickEstimator estimator = tickEstimator;
+        if ((estimator == null) || !estimator.isLocked()) {
+            return false;
+        }
+
+        // How many times the snake moves between the capture and the key landing
+        long landsAt = System.nanoTime() + (long) getDispatchLatencyNanos();
+        int moves = estimator.movesBetween(capturedAtNanos, landsAt);
+        if (moves <= 0) {
+            return false;
+        }
+
+        // The direction the snake is moving in, from the neck to the head
+        int[] body = state.getOrderedBody();
+        if (body.length < 2) {
+            return false;
+        }
+        int dx = BitBoard.xOf(body[0]) - BitBoard.xOf(body[1]);
+        int dy = BitBoard.yOf(body[0]) - BitBoard.yOf(body[1]);
+        if (Math.abs(dx) + Math.abs(dy) != 1) {
+            return false;
+        }
+
+        // The head goes through the execution point before the key lands if it is
+        // straight ahead within that many moves
+        Point head = state.getSnakeHead();
+        Point executionPoint = action.getExecutionPoint();
+        for (int ahead = 1; ahead <= moves; ahead++) {
+            if ((head.x + dx * ahead == executionPoint.x) && (head.y + dy * ahead == executionPoint.y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Catches the queue up with a snake that moved more than one cell between
+     * two frames. The head went through the {@link GameState#getPassedCells()
+     * passed cells} without ever being seen on them, so an action waiting for
+     * the head to be on one of them would wait until the snake came all the way
+     * back around. Going through the passed cells in order, an action waiting
+     * for the cell is taken off the queue, or moved to the back if it repeats,
+     * just like it would have been if the head had been seen there. If the snake
+     * did not go the way the action wanted, the action was missed. Every game
+     * state is only caught up with once.
+     *
+     * @param state the snapshot of the game
+     * @return how many actions were taken off the queue
+     */
+    public synchronized int reconcile(GameState state) {
+        if (state == reconciledState) {
+            return 0;
+        }
+        reconciledState = state;
+
+        int[] passed = state.getPassedCells();
+        int skipped = 0;
+        for (int i = 0; i < passed.length; i++) {
+            Action action = getNextAction();
+            if (action == null) {
+                break;
+            }
+            Point executionPoint = action.getExecutionPoint();
+            if ((executionPoint.x != BitBoard.xOf(passed[i])) || (executionPoint.y != BitBoard.yOf(passed[i]))) {
+                continue;
+            }
+
+            // Which way the head went out of the cell
+            int next = i + 1 < passed.length ? passed[i + 1] : state.getHeadCell();
+            if (!action.getDir().equals(Action.directionBetween(passed[i], next))) {
+                missedActions++;
+            }
+            consume(action);
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Takes the next action off the queue if it is ready to be executed, after
+     * {@link #reconcile(GameState) catching the queue up} with the game state.
+     * Checking and taking happen together, so an action can not be taken twice
+     * when the action is pressed on a different thread than the one deciding.
+     *
+     * @param state           the snapshot of the game
+     * @param capturedAtNanos when the frame the snapshot came from was captured,
+     *                        from {@link System#nanoTime()}
+     * @return the action to execute, or null if the next action is not ready
+     * @see #checkAction(Action, GameState, long)
+     */
+    public synchronized Action takeReadyAction(GameState state, long capturedAtNanos) {
+        reconcile(state);
+        Action action = getNextAction();
+        if (!checkAction(action, state, capturedAtNanos)) {
+            return null;
+        }
+
+        consume(action);
+        decisionTimes.add(System.nanoTime());
+        return action;
+    }
+
     /**
      * Executes a desired action with the provided method.
      *
      * @param actionToExecute the desired action to execute
      * @param methodToExecute either 'websocket' or 'keyer'
      */
-    @SuppressWarnings("checkstyle:RightCurly")
     public void go(Action actionToExecute, String methodToExecute) {
+        execute(actionToExecute, methodToExecute);
+        consume(actionToExecute);
+    }
+
+    /**
+     * Presses the key for an action with the provided method, without touching
+     * the queue.
+     *
+     * @param actionToExecute the desired action to execute
+     * @param methodToExecute either 'websocket' or 'keyer'
+     */
+    @SuppressWarnings("checkstyle:RightCurly")
+    public void execute(Action actionToExecute, String methodToExecute) {
+        // Work out how long it took from deciding on the action until now, for
+        // predicting when the next key press will land
+        long start = System.nanoTime();
+        Long decidedAt = pollDecisionTime();
+        long decided = decidedAt == null ? start : decidedAt;
+
         // If the execution method is for the java keyer
         if ("keyer".equals(methodToExecute)) {
             int event = -1;
@@ -152,6 +329,7 @@ public class ActionsManager {
 
             // Wait for the keyer to wake
             keyer.waitForIdle();
+            recordDispatchLatency(System.nanoTime() - decided);
 
             // Dispatch the keyboard event
             keyer.keyPress(event);
@@ -160,9 +338,65 @@ public class ActionsManager {
         // If the execution method is for the javascript websocket
         else if ("websocket".equals(methodToExecute)) {
             // Broadcast the direction to the client
+            recordDispatchLatency(System.nanoTime() - decided);
             wsServer.broadcast(actionToExecute.getDir());
         }
+    }
+
+    /**
+     * Takes the time the oldest action waiting to be pressed was decided on.
+     */
+    private synchronized Long pollDecisionTime() {
+        return decisionTimes.poll();
+    }
+
+    /**
+     * Adds a measurement of how long it took from deciding on an action to
+     * pressing its key to the moving average.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private synchronized void recordDispatchLatency(long nanos) {
+        if (dispatchLatencyNanos == 0) {
+            dispatchLatencyNanos = nanos;
+        } else {
+            dispatchLatencyNanos += 0.2 * (nanos - dispatchLatencyNanos);
+        }
+    }
 
+    /**
+     * @return the moving average of how long it takes from deciding on an
+     *         action to pressing its key, in nanoseconds
+     */
+    public synchronized double getDispatchLatencyNanos() {
+        return dispatchLatencyNanos;
+    }
+
+    /**
+     * Lets the actions manager predict where the head will be when a key press
+     * lands, see {@link #checkAction(Action, GameState, long) checkAction}.
+     *
+     * @param estimator the tick estimator, or null to turn predicting off
+     */
+    public void setTickEstimator(TickEstimator estimator) {
+        tickEstimator = estimator;
+    }
+
+    /**
+     * Presses the key for an action with the default method set from the
+     * {@link #setDefaultExecutor(String) setDefaultExecutor} method, without
+     * touching the queue.
+     *
+     * @param actionToExecute the desired action to execute
+     */
+    public void execute(Action actionToExecute) {
+        execute(actionToExecute, executorMethod);
+    }
+
+    /**
+     * Removes an executed action from the queue, or moves it to the back if it
+     * should be repeated.
+     */
+    private synchronized void consume(Action actionToExecute) {
         // Remove the action from the queue
         if (actionToExecute.getDeleteOnExecution()) {
             actionsQueue.remove(actionToExecute);
@@ -201,19 +435,37 @@ public class ActionsManager {
         return webSocketNumConnectedClients;
     }
 
+    /**
+     * @return how many actions were never pressed because the head went through
+     *         their execution point while frames were missed, and went a
+     *         different way than the action wanted
+     */
+    public long getMissedActions() {
+        return missedActions;
+    }
+
     /**
      * Adds an action to the actions queue.
      *
      * @param a the action to add
      */
-    public void addAction(Action a) {
+    public synchronized void addAction(Action a) {
         actionsQueue.add(a);
     }
 
+    /**
+     * Clears the actions waiting in the queue, but keeps track of the ones that
+     * were already taken and are waiting to be pressed.
+     */
+    public synchronized void clearQueue() {
+        actionsQueue.clear();
+    }
+
     /**
      * Clears all previous actions in the queue.
      */
-    public void wipe() {
+    public synchronized void wipe() {
         actionsQueue.clear();
+        decisionTimes.clear();
     }
 }
@@ -1,38 +1,47 @@
 package org.leonitousconforti.basilisk.core;
 
-import java.awt.Point;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.Supplier;
 
 import org.leonitousconforti.basilisk.algorithms.A_StarSearch;
 import org.leonitousconforti.basilisk.algorithms.AlgorithmBase;
+import org.leonitousconforti.basilisk.algorithms.Expectimax;
 import org.leonitousconforti.basilisk.algorithms.HamiltonianPath;
+import org.leonitousconforti.basilisk.algorithms.MonteCarloTreeSearch;
+import org.leonitousconforti.basilisk.algorithms.PerturbedHamiltonian;
 import org.leonitousconforti.basilisk.algorithms.RandomMovement;
+import org.leonitousconforti.basilisk.algorithms.SpaceTimeSearch;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEvent;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEventListener;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
 
 /**
  * Handles managing the different algorithm types, running them, and executing
- * their desired actions.
+ * their desired actions. Listen to the game element detection with this to
+ * pass the {@link GameEvent game events} on to the running algorithm. An
+ * algorithm is only made, and its thread started, the first time it is used,
+ * so every game played at once does not carry every algorithm around.
  */
 @SuppressWarnings("checkstyle:MemberName")
-public class Algorithms {
+public class Algorithms implements GameEventListener {
     // The name of the current algorithm running
-    private AlgorithmBase algorithmRunning;
+    private volatile AlgorithmBase algorithmRunning;
     // Action manager for the algorithm
     private final ActionsManager actionsManager;
 
-    // All the programed algorithms
-    private final AlgorithmBase randomMovement;
-    private final AlgorithmBase a_starSearch;
-    private final AlgorithmBase hamiltonianPath;
+    // How to make every algorithm that can be run, by name, in the order they
+    // were added
+    private final Map<String, Supplier<AlgorithmBase>> algorithmFactories;
 
-    // Mapping the algorithms to threads
+    // The algorithms that have been made, by name, and their threads
+    private final Map<String, AlgorithmBase> loadedAlgorithms;
     private final Map<AlgorithmBase, Thread> algorithmThreadMap;
 
     /**
@@ -40,21 +49,48 @@ public class Algorithms {
      * their desired actions.
      */
     public Algorithms() {
+        this(new ActionsManager());
+    }
+
+    /**
+     * Handles managing the different algorithm types, with the actions going to
+     * an actions manager of your own, like one for each game being played at
+     * once.
+     *
+     * @param actions the actions manager for the algorithms
+     */
+    public Algorithms(ActionsManager actions) {
+        this(actions, null);
+    }
+
+    /**
+     * Handles managing the different algorithm types, with the actions going to
+     * an actions manager of your own and an algorithm to start running with.
+     *
+     * @param actions          the actions manager for the algorithms
+     * @param runningAlgorithm the name of the algorithm to run, or null for a
+     *                         random one
+     */
+    public Algorithms(ActionsManager actions, String runningAlgorithm) {
         // Initialize components
-        actionsManager = new ActionsManager();
+        actionsManager = actions;
+        algorithmFactories = new LinkedHashMap<String, Supplier<AlgorithmBase>>();
+        loadedAlgorithms = new HashMap<String, AlgorithmBase>();
         algorithmThreadMap = new HashMap<AlgorithmBase, Thread>();
 
-        // Construct algorithms
-        randomMovement = new RandomMovement();
-        a_starSearch = new A_StarSearch();
-        hamiltonianPath = new HamiltonianPath();
-
-        // Initialize ALgorithms
-        initializeAlgorithm(randomMovement);
-        initializeAlgorithm(a_starSearch);
-        initializeAlgorithm(hamiltonianPath);
+        // All the programed algorithms
+        algorithmFactories.put(RandomMovement.NAME, RandomMovement::new);
+        algorithmFactories.put(A_StarSearch.NAME, A_StarSearch::new);
+        algorithmFactories.put(HamiltonianPath.NAME, HamiltonianPath::new);
+        algorithmFactories.put(SpaceTimeSearch.NAME, SpaceTimeSearch::new);
+        algorithmFactories.put(PerturbedHamiltonian.NAME, PerturbedHamiltonian::new);
+        algorithmFactories.put(MonteCarloTreeSearch.NAME, MonteCarloTreeSearch::new);
+        algorithmFactories.put(Expectimax.NAME, Expectimax::new);
 
         // Setup an algorithm if there isn't one running
+        if (runningAlgorithm != null) {
+            setRunningAlgorithm(runningAlgorithm);
+        }
         if (getRunningAlgorithm() == null) {
             int rnd = new Random().nextInt(getAllLoadedAlgorithms().length);
             setRunningAlgorithm(getAllLoadedAlgorithms()[rnd]);
@@ -82,19 +118,14 @@ public class Algorithms {
 
     /**
      * Get the names of all the loaded algorithms. Just returns a list of the names,
-     * not the algorithms themselves. To get a particular algorithm that has been
-     * loaded and initialized, use the {@link #getAlgorithm(String) getAlgorithm}
+     * not the algorithms themselves, which may not have been made yet. To get a
+     * particular algorithm, use the {@link #getAlgorithm(String) getAlgorithm}
      * method with the name of the algorithm
      *
      * @return an array of all the loaded algorithms by name
      */
-    public String[] getAllLoadedAlgorithms() {
-        // Get all the keys, which are the algorithms themselves, of the hashmap and
-        // convert it to an array
-        AlgorithmBase[] keySet = algorithmThreadMap.keySet().toArray(new AlgorithmBase[algorithmThreadMap.size()]);
-
-        // Get all the names of the algorithms from the key set
-        return Arrays.stream(keySet).map(AlgorithmBase::getName).toArray(size -> new String[keySet.length]);
+    public synchronized String[] getAllLoadedAlgorithms() {
+        return algorithmFactories.keySet().toArray(new String[algorithmFactories.size()]);
     }
 
     /**
@@ -103,46 +134,48 @@ public class Algorithms {
      * ran gets that new information to make decisions. This method will prevent all
      * other algorithms form running in the background when they are not selected.
      * To run a specific algorithm just once, use the
-     * {@link #run(AlgorithmBase, Point, ArrayList, Point) run} method and provide
-     * the specific algorithm
+     * {@link #run(AlgorithmBase, GameState) run} method and provide the specific
+     * algorithm
      *
      * @param algorithmName the name of the algorithm to set as selected
      */
-    public void setRunningAlgorithm(String algorithmName) {
-        // Get the loaded algorithms
-        String[] loadedAlgorithms = getAllLoadedAlgorithms();
-
+    public synchronized void setRunningAlgorithm(String algorithmName) {
         // check if it is loaded. If it is loaded, set it as selected
-        if (Arrays.asList(loadedAlgorithms).contains(algorithmName)) {
-            algorithmRunning = getAlgorithm(algorithmName);
+        AlgorithmBase algorithm = getAlgorithm(algorithmName);
+        if (algorithm != null) {
+            algorithmRunning = algorithm;
             algorithmRunning.setSelected();
         }
 
-        // Get all the keys, which are the algorithms themselves, of the hashmap and
-        // convert it to an array
-        AlgorithmBase[] keySet = algorithmThreadMap.keySet().toArray(new AlgorithmBase[algorithmThreadMap.size()]);
-
-        // Unselect all other loaded algorithms from running in the background
-        Arrays.stream(keySet).filter(a -> a.getName() != algorithmName).forEach(a -> a.unSelect());
+        // Unselect all other algorithms that have been made from running in the
+        // background
+        loadedAlgorithms.values().stream().filter(a -> a != algorithm).forEach(a -> a.unSelect());
     }
 
     /**
-     * Get the algorithm with the specified name. If the algorithm has not been
-     * loaded with the {@link #loadOutSourcedAlgorithm(String)
-     * loadOutSourcedAlgorithm} method or has not been initialized with the
-     * {@link #initializeAlgorithm(AlgorithmBase) initializeAlgorithm} method, then
-     * null will be returned.
+     * Get the algorithm with the specified name, making it and starting its thread
+     * with the {@link #initializeAlgorithm(AlgorithmBase) initializeAlgorithm}
+     * method the first time. If the algorithm is not one of the programed ones
+     * and has not been loaded with the {@link #loadOutSourcedAlgorithm(String)
+     * loadOutSourcedAlgorithm} method, then null will be returned.
      *
      * @param algorithmName the name of the desired algorithm
      * @return the algorithm if found or null if not loaded or not found
      */
-    public AlgorithmBase getAlgorithm(String algorithmName) {
-        // Get all the keys, which are the algorithms themselves, of the hashmap and
-        // convert it to an array
-        AlgorithmBase[] keySet = algorithmThreadMap.keySet().toArray(new AlgorithmBase[algorithmThreadMap.size()]);
+    public synchronized AlgorithmBase getAlgorithm(String algorithmName) {
+        AlgorithmBase algorithm = loadedAlgorithms.get(algorithmName);
+        if (algorithm != null) {
+            return algorithm;
+        }
 
-        // Get the algorithm with the name
-        return Arrays.stream(keySet).filter(a -> a.getName() == algorithmName).findAny().orElse(null);
+        Supplier<AlgorithmBase> factory = algorithmFactories.get(algorithmName);
+        if (factory == null) {
+            return null;
+        }
+        algorithm = factory.get();
+        initializeAlgorithm(algorithm);
+        loadedAlgorithms.put(algorithmName, algorithm);
+        return algorithm;
     }
 
     /**
@@ -150,14 +183,12 @@ public class Algorithms {
      * algorithm. The information about the snake and apple will be passed to the
      * algorithm and then the algorithm's code will be ran once
      *
-     * @param algorithm  the algorithm to run
-     * @param snakeHead  the position of the snake head
-     * @param snakeParts the positions of the snake parts
-     * @param applePos   the position of the apple
+     * @param algorithm the algorithm to run
+     * @param state     the snapshot of the game
      */
-    public void run(AlgorithmBase algorithm, Point snakeHead, ArrayList<Point> snakeParts, Point applePos) {
+    public void run(AlgorithmBase algorithm, GameState state) {
         // Send information to the algorithm if it want to use it
-        algorithm.update(snakeHead, snakeParts, applePos);
+        algorithm.update(state);
 
         // Check to see if it needs this
         if (!algorithm.getName().equals(getRunningAlgorithm().getName())) {
@@ -169,27 +200,38 @@ public class Algorithms {
      * Runs the running algorithm set by calling {@link #setRunningAlgorithm(String)
      * setRunningAlgorithm}. If there is not current algorithm running, then this
      * method can not be used because it does not know what algorithm to run.
-     * Instead, use {@link #run(AlgorithmBase, Point, ArrayList, Point) run} and
-     * provided a specific algorithm name
+     * Instead, use {@link #run(AlgorithmBase, GameState) run} and provided a
+     * specific algorithm name
      *
-     * @param snakeHead  the position of the snake head
-     * @param snakeParts the positions of the snake parts
-     * @param applePos   the position of the apple
+     * @param state the snapshot of the game
      */
-    public void run(Point snakeHead, ArrayList<Point> snakeParts, Point applePos) {
+    public void run(GameState state) {
         // If there is no current algorithm running, then this method can not be used
         if (getRunningAlgorithm() == null) {
             return;
         }
 
-        run(algorithmRunning, snakeHead, snakeParts, applePos);
+        run(algorithmRunning, state);
+    }
+
+    /**
+     * Passes a game event on to the running algorithm.
+     *
+     * @param event what happened
+     */
+    @Override
+    public void onGameEvent(GameEvent event) {
+        AlgorithmBase algorithm = algorithmRunning;
+        if (algorithm != null) {
+            algorithm.onGameEvent(event);
+        }
     }
 
     /**
      * Returns the the current running algorithm set by the
      * {@link #setRunningAlgorithm(String) setRunningAlgorithm} method. This is the
      * algorithm that will be ran when using the
-     * {@link #run(Point, ArrayList, Point) run} while not specific algorithm name
+     * {@link #run(GameState) run} while not specific algorithm name
      *
      * @return the name of the running algorithm
      */
@@ -234,9 +276,12 @@ public class Algorithms {
         // Instantiate the new class
         Object instance = cls.newInstance();
 
-        // Cast the object and initialize the algorithm with the others
+        // Cast the object and add it to the others, it is initialized the first
+        // time it is used
         AlgorithmBase algorithm = (AlgorithmBase) instance;
-        initializeAlgorithm(algorithm);
+        synchronized (this) {
+            algorithmFactories.put(algorithm.getName(), () -> algorithm);
+        }
     }
 
     /**
@@ -0,0 +1,110 @@
+package org.leonitousconforti.basilisk.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when to capture the next frame. Until the {@link TickEstimator tick
+ * estimator} has locked on to the game, frames are captured back to back so
+ * the estimator sees every move. After that, frames are only captured in a
+ * short burst around each predicted move, and the capture thread sleeps the
+ * rest of the time. The burst starts a little before the move so the frame
+ * before the move is seen too, which keeps the estimator's phase honest.
+ */
+public class CaptureScheduler {
+    // When the burst around a predicted move starts and ends, as fractions of
+    // the period before and after the move
+    private static final double BURST_LEAD = 0.1;
+    private static final double BURST_LAG = 0.3;
+
+    // Sleeps shorter than this are not worth it
+    private static final long MIN_SLEEP_NANOS = 1000000;
+
+    // Where the move predictions come from
+    private final TickEstimator tickEstimator;
+
+    // Can be turned off to capture back to back
+    private volatile boolean enabled;
+
+    // For statistics
+    private volatile long sleptNanos;
+
+    /**
+     * Schedules captures around the moves predicted by a tick estimator.
+     *
+     * @param estimator the tick estimator
+     */
+    public CaptureScheduler(TickEstimator estimator) {
+        tickEstimator = estimator;
+        enabled = true;
+        sleptNanos = 0;
+    }
+
+    /**
+     * Waits until it is time to capture the next frame. Returns right away if the
+     * scheduler is turned off, the estimator has not locked on yet, or a burst
+     * is in progress.
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void awaitNextCapture() throws InterruptedException {
+        long wakeAt = nextCaptureAfter(System.nanoTime());
+        long sleep = wakeAt - System.nanoTime();
+        if (sleep < MIN_SLEEP_NANOS) {
+            return;
+        }
+
+        LockSupport.parkNanos(this, sleep);
+        sleptNanos += sleep;
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Works out when the next frame should be captured.
+     *
+     * @param nowNanos the time now, from {@link System#nanoTime()}
+     * @return when to capture, now if a capture should happen right away
+     */
+    public long nextCaptureAfter(long nowNanos) {
+        if (!enabled || !tickEstimator.isLocked()) {
+            return nowNanos;
+        }
+
+        // In the burst around the move that just happened or the one coming up
+        double period = tickEstimator.getPeriodNanos();
+        long nextMove = tickEstimator.nextMoveAfter(nowNanos);
+        long previousMove = nextMove - (long) period;
+        if ((nowNanos <= previousMove + (long) (period * BURST_LAG))
+                || (nowNanos >= nextMove - (long) (period * BURST_LEAD))) {
+            return nowNanos;
+        }
+
+        // Sleep until the next burst
+        return nextMove - (long) (period * BURST_LEAD);
+    }
+
+    /**
+     * Turns scheduling on or off, when off frames are captured back to back.
+     *
+     * @param enable if captures should be scheduled around moves
+     */
+    public void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * @return if captures are scheduled around moves
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return how long the capture thread has spent waiting for the next burst,
+     *         in nanoseconds
+     */
+    public long getSleptNanos() {
+        return sleptNanos;
+    }
+}
@@ -0,0 +1,65 @@
+package org.leonitousconforti.basilisk.core;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * A copy of the last frame for the gui to draw. Frame sources reuse their
+ * images and may free them once they are released, so the gui can not draw the
+ * captured frames themselves. Copying every frame would slow down detecting, so
+ * a frame is only copied after the gui has taken the last copy. There are two
+ * copies, the one the gui has and the one the next frame is copied into, so the
+ * gui never sees a frame half way through being copied.
+ */
+public class DisplayFrame {
+    // The copy the gui has, and the one the next frame is copied into
+    private volatile BufferedImage front;
+    private BufferedImage back;
+
+    // If the gui has taken the last copy, so the next frame should be copied
+    private volatile boolean wanted;
+
+    /**
+     * Starts with no frame.
+     */
+    public DisplayFrame() {
+        front = null;
+        back = null;
+        wanted = true;
+    }
+
+    /**
+     * Copies a frame if the gui has taken the last copy, only call this from one
+     * thread.
+     *
+     * @param frame the frame, it is not held on to
+     */
+    public void offer(BufferedImage frame) {
+        if (!wanted || (frame == null)) {
+            return;
+        }
+
+        if ((back == null) || (back.getWidth() != frame.getWidth()) || (back.getHeight() != frame.getHeight())) {
+            back = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g = back.createGraphics();
+        g.drawImage(frame, 0, 0, null);
+        g.dispose();
+
+        BufferedImage copied = back;
+        back = front;
+        front = copied;
+        wanted = false;
+    }
+
+    /**
+     * Takes the newest copy, the next frame offered is copied into the other one.
+     *
+     * @return the newest copy, or null if no frame has been copied yet
+     */
+    public BufferedImage get() {
+        BufferedImage copy = front;
+        wanted = true;
+        return copy;
+    }
+}
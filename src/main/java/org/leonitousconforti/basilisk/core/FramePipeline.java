@@ -0,0 +1,481 @@
+package org.leonitousconforti.basilisk.core;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.leonitousconforti.basilisk.Config;
+import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+
+/**
+ * Runs capturing, detecting, deciding, and pressing keys on their own threads,
+ * so capturing the next frame overlaps detecting the last one and a slow key
+ * press never holds up a capture. The stages hand work to each other through
+ * {@link SpscRingBuffer single producer single consumer ring buffers}. Detecting
+ * and deciding only ever work on the newest frame, anything older that piled up
+ * is skipped, and a full queue throws away its oldest frame to make room for
+ * the newest. Key presses are never skipped. A frame whose tiles are the same
+ * as the frame before is not detected again and the algorithm is not given the
+ * same game state again, but it still goes to the decide stage so actions can
+ * be pressed on time. When more than one {@link GameSession game} is being
+ * played, every captured frame is detected and decided on for every game, and
+ * each game's keys are pressed by its own actions manager. Every frame is
+ * {@link ScreenCapture#release(BufferedImage) released} back to the frame source
+ * once it has been decided on, skipped, or dropped, and the gui only ever sees
+ * a copy of it.
+ */
+public class FramePipeline {
+    /**
+     * The most frames the pipeline holds on to at once, full queues between the
+     * capture, detect, and decide stages, the frames being detected and decided
+     * on, and the one being captured.
+     */
+    public static final int MAX_HELD_FRAMES = 2 * Config.PipelineQueueCapacity + 3;
+
+    // How long a paused capture stage sleeps for between checks
+    private static final long PAUSED_SLEEP_MILLIS = 10;
+
+    // How long the decide stage parks for while the act stage is backed up
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // The components the stages run
+    private final ScreenCapture screenCapture;
+    private final CaptureScheduler captureScheduler;
+    private final GameSession[] sessions;
+    private final SessionRecorder sessionRecorder;
+
+    // The hand-offs between stages
+    private final SpscRingBuffer<Frame> captured;
+    private final SpscRingBuffer<Detection> detected;
+    private final SpscRingBuffer<Decision> decided;
+
+    // The stages
+    private final Thread captureStage;
+    private final Thread detectStage;
+    private final Thread decideStage;
+    private final Thread actStage;
+    private volatile boolean running;
+
+    // A copy of the last frame that was detected, for the gui
+    private final DisplayFrame lastDetectedFrame;
+
+    // For statistics, how long each stage last took in nanoseconds and how many
+    // items each stage has processed
+    private volatile long captureNanos;
+    private volatile long detectNanos;
+    private volatile long decideNanos;
+    private volatile long actNanos;
+    private volatile long framesCaptured;
+    private volatile long framesDetected;
+    private volatile long actionsExecuted;
+
+    /**
+     * A captured frame on its way to detection.
+     */
+    private static final class Frame {
+        private final BufferedImage image;
+        private final long capturedAt;
+
+        private Frame(BufferedImage img, long capturedAtNanos) {
+            image = img;
+            capturedAt = capturedAtNanos;
+        }
+    }
+
+    /**
+     * A detected frame on its way to the decide stage, with the game state of
+     * every game. The tiles are copies of the first game's, and only when a
+     * session is being recorded.
+     */
+    private static final class Detection {
+        private final Frame frame;
+        private final GameState[] states;
+        private final boolean[] changed;
+        private final int[] tilePixels;
+        private final byte[] tileClasses;
+
+        private Detection(Frame detectedFrame, GameState[] detectedStates, boolean[] statesChanged, int[] pixels,
+                byte[] classes) {
+            frame = detectedFrame;
+            states = detectedStates;
+            changed = statesChanged;
+            tilePixels = pixels;
+            tileClasses = classes;
+        }
+    }
+
+    /**
+     * An action on its way to be pressed in one of the games.
+     */
+    private static final class Decision {
+        private final GameSession session;
+        private final Action action;
+
+        private Decision(GameSession decidedFor, Action decidedAction) {
+            session = decidedFor;
+            action = decidedAction;
+        }
+    }
+
+    /**
+     * Creates the pipeline, {@link #start() start} it to start playing.
+     *
+     * @param capture   where frames come from
+     * @param scheduler decides when to capture frames
+     * @param games     the games to play, each one looking at its own board in
+     *                  the same frames
+     * @param recorder  the session recorder for the first game, or null if the
+     *                  session is not being recorded
+     */
+    public FramePipeline(ScreenCapture capture, CaptureScheduler scheduler, List<GameSession> games,
+            SessionRecorder recorder) {
+        screenCapture = capture;
+        captureScheduler = scheduler;
+        sessions = games.toArray(new GameSession[games.size()]);
+        sessionRecorder = recorder;
+
+        // Every game can have a few actions waiting to be pressed
+        captured = new SpscRingBuffer<Frame>(Config.PipelineQueueCapacity);
+        detected = new SpscRingBuffer<Detection>(Config.PipelineQueueCapacity);
+        decided = new SpscRingBuffer<Decision>(Config.PipelineQueueCapacity * sessions.length);
+        lastDetectedFrame = new DisplayFrame();
+
+        captureStage = new Thread(this::capture, "Pipeline Capture");
+        detectStage = new Thread(this::detect, "Pipeline Detect");
+        decideStage = new Thread(this::decide, "Pipeline Decide");
+        actStage = new Thread(this::act, "Pipeline Act");
+    }
+
+    /**
+     * Starts every stage.
+     */
+    public void start() {
+        running = true;
+        captureStage.start();
+        detectStage.start();
+        decideStage.start();
+        actStage.start();
+    }
+
+    /**
+     * Stops every stage and waits for them to finish, then releases the frames
+     * that were still waiting between them.
+     */
+    public void stop() {
+        running = false;
+        for (Thread stage : new Thread[] {captureStage, detectStage, decideStage, actStage}) {
+            stage.interrupt();
+            try {
+                stage.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (Frame frame = captured.poll(); frame != null; frame = captured.poll()) {
+            release(frame);
+        }
+        for (Detection detection = detected.poll(); detection != null; detection = detected.poll()) {
+            release(detection.frame);
+        }
+    }
+
+    /**
+     * @return if the pipeline is running, it stops on its own once the frame
+     *         source runs out of frames
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Captures frames when the capture scheduler says to, which is as fast as the
+     * frame source gives them until the game speed is known.
+     */
+    private void capture() {
+        while (running) {
+            if (Config.paused) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(PAUSED_SLEEP_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                captureScheduler.awaitNextCapture();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            BufferedImage image = screenCapture.getFrame();
+            if (image == null) {
+                running = false;
+                return;
+            }
+            captured.offerReplacing(new Frame(image, start), this::release);
+
+            captureNanos = System.nanoTime() - start;
+            framesCaptured++;
+        }
+    }
+
+    /**
+     * Detects every game in the newest captured frame.
+     */
+    private void detect() {
+        while (running) {
+            Frame frame = captured.take(true, this::release);
+            if (frame == null) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            GameState[] states = new GameState[sessions.length];
+            boolean[] changed = new boolean[sessions.length];
+            for (int i = 0; i < sessions.length; i++) {
+                // Nothing to detect if the board looks the same as last frame, or if
+                // the frame was too small to sample
+                GameElementDetection gameElementDetection = sessions[i].getGameElementDetection();
+                gameElementDetection.sample(frame.image);
+                changed[i] = !gameElementDetection.isUnchanged() && !gameElementDetection.isSkipped();
+                if (changed[i]) {
+                    gameElementDetection.detect(frame.capturedAt);
+                } else if (!gameElementDetection.isSkipped()) {
+                    gameElementDetection.detectUnchanged(frame.capturedAt);
+                }
+                states[i] = gameElementDetection.getGameState();
+            }
+
+            // The tiles are live buffers that the next frame overwrites, so the
+            // recorder needs its own copy
+            int[] pixels = null;
+            byte[] classes = null;
+            if (sessionRecorder != null) {
+                pixels = sessions[0].getGameElementDetection().getTilePixels().clone();
+                classes = sessions[0].getGameElementDetection().getTileClasses().clone();
+            }
+            detected.offerReplacing(new Detection(frame, states, changed, pixels, classes),
+                    replaced -> release(replaced.frame));
+
+            detectNanos = System.nanoTime() - start;
+            framesDetected++;
+        }
+    }
+
+    /**
+     * Hands the newest game state of every game to its algorithm and passes on
+     * the next action once it is ready.
+     */
+    private void decide() {
+        while (running) {
+            Detection detection = detected.take(true, skipped -> release(skipped.frame));
+            if (detection == null) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            Action firstAct = null;
+            boolean anyChanged = false;
+            for (int i = 0; i < sessions.length; i++) {
+                anyChanged |= detection.changed[i];
+
+                // The algorithm has already seen this game state, but whether the
+                // next action is ready depends on when the frame was captured too
+                if (detection.changed[i]) {
+                    sessions[i].getAlgorithms().run(detection.states[i]);
+                }
+                Action act = sessions[i].getActionsManager().takeReadyAction(detection.states[i],
+                        detection.frame.capturedAt);
+                if (act == null) {
+                    continue;
+                }
+                if (i == 0) {
+                    firstAct = act;
+                }
+
+                // The action is already off the actions queue, so wait for room
+                // instead of dropping it
+                while (decided.size() >= decided.capacity()) {
+                    if (!running) {
+                        release(detection.frame);
+                        return;
+                    }
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                }
+                decided.offer(new Decision(sessions[i], act));
+            }
+
+            if (sessionRecorder != null) {
+                sessionRecorder.record(detection.frame.capturedAt, detection.tilePixels, detection.tileClasses,
+                        detection.states[0], firstAct, detection.frame.image);
+            }
+            if (anyChanged) {
+                lastDetectedFrame.offer(detection.frame.image);
+            }
+            release(detection.frame);
+            decideNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Presses the keys for the actions in the order they were decided, in the
+     * game each one was decided for.
+     */
+    private void act() {
+        while (running) {
+            Decision decision = decided.take(false);
+            if (decision == null) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            decision.session.getActionsManager().execute(decision.action);
+            actNanos = System.nanoTime() - start;
+            actionsExecuted++;
+        }
+    }
+
+    /**
+     * Hands a frame back to the frame source, it is not used after this.
+     */
+    private void release(Frame frame) {
+        screenCapture.release(frame.image);
+    }
+
+    /**
+     * @return a copy of the last frame that was detected, or null if no frame
+     *         has been detected yet
+     */
+    public BufferedImage getLastDetectedFrame() {
+        return lastDetectedFrame.get();
+    }
+
+    /**
+     * @return how many frames are waiting between capture and detect
+     */
+    public int getCapturedQueueDepth() {
+        return captured.size();
+    }
+
+    /**
+     * @return how many game states are waiting between detect and decide
+     */
+    public int getDetectedQueueDepth() {
+        return detected.size();
+    }
+
+    /**
+     * @return how many actions are waiting to be pressed
+     */
+    public int getDecidedQueueDepth() {
+        return decided.size();
+    }
+
+    /**
+     * @return how many frames the detect stage skipped because a newer frame
+     *         was waiting, or that were thrown away to make room for a newer
+     *         frame
+     */
+    public long getFramesSkipped() {
+        return captured.getSkipped() + captured.getDropped();
+    }
+
+    /**
+     * @return how many of the boards were the same as the frame before, averaged
+     *         over every game, from 0 to 1
+     */
+    public double getUnchangedRate() {
+        double total = 0;
+        for (GameSession session : sessions) {
+            total += session.getGameElementDetection().getUnchangedRate();
+        }
+        return total / sessions.length;
+    }
+
+    /**
+     * @return how many game ticks went by without the head being seen, over
+     *         every game. Missed ticks mean the pipeline is slower than the game
+     */
+    public long getMissedTicks() {
+        long total = 0;
+        for (GameSession session : sessions) {
+            total += session.getGameElementDetection().getMissedTicks();
+        }
+        return total;
+    }
+
+    /**
+     * @return how many of the game ticks were missed, averaged over every game,
+     *         from 0 to 1
+     */
+    public double getMissedTickRate() {
+        double total = 0;
+        for (GameSession session : sessions) {
+            total += session.getGameElementDetection().getMissedTickRate();
+        }
+        return total / sessions.length;
+    }
+
+    /**
+     * @return how many actions were never pressed because of missed ticks, over
+     *         every game
+     */
+    public long getMissedActions() {
+        long total = 0;
+        for (GameSession session : sessions) {
+            total += session.getActionsManager().getMissedActions();
+        }
+        return total;
+    }
+
+    /**
+     * @return the games being played
+     */
+    public List<GameSession> getSessions() {
+        return Collections.unmodifiableList(Arrays.asList(sessions));
+    }
+
+    /**
+     * @return how many frames have been captured
+     */
+    public long getFramesCaptured() {
+        return framesCaptured;
+    }
+
+    /**
+     * @return how many frames have been detected
+     */
+    public long getFramesDetected() {
+        return framesDetected;
+    }
+
+    /**
+     * @return how many actions have been pressed
+     */
+    public long getActionsExecuted() {
+        return actionsExecuted;
+    }
+
+    /**
+     * @return a one line summary of how long each stage is taking and how deep
+     *         the queues between them are
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public String getStatistics() {
+        return String.format(
+                "pipeline capture: %.2f ms, detect: %.2f ms, decide: %.2f ms, act: %.2f ms, queues: %d/%d/%d, "
+                        + "frames captured: %d, detected: %d, skipped: %d, unchanged: %.1f%%, actions: %d, "
+                        + "capture slept: %d ms, missed ticks: %d (%.1f%%), missed actions: %d, games: %d",
+                captureNanos / 1e6, detectNanos / 1e6, decideNanos / 1e6, actNanos / 1e6, getCapturedQueueDepth(),
+                getDetectedQueueDepth(), getDecidedQueueDepth(), framesCaptured, framesDetected, getFramesSkipped(),
+                getUnchangedRate() * 100, actionsExecuted, captureScheduler.getSleptNanos() / 1000000,
+                getMissedTicks(), getMissedTickRate() * 100, getMissedActions(), sessions.length);
+    }
+}
@@ -3,17 +3,44 @@ package org.leonitousconforti.basilisk.core;
 import java.awt.Color;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.IntStream;
 
 import org.leonitousconforti.basilisk.Config;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEvent;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEventListener;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.capture.BoardCalibration;
+import org.leonitousconforti.basilisk.capture.BoardGeometry;
+import org.leonitousconforti.basilisk.detectors.ColorLookupTable;
 import org.leonitousconforti.basilisk.detectors.Detector;
+import org.leonitousconforti.basilisk.detectors.ProbePattern;
+import org.leonitousconforti.basilisk.detectors.TileClass;
+import org.leonitousconforti.basilisk.detectors.TileKernel;
 
 /**
  * Handles everything for looking at the game and parsing the game elements out
  * of it.
  */
 public class GameElementDetection {
+    // The 64 bit FNV-1a hash constants, for fingerprinting the sampled tiles
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    // How many moves the snake can miss, once the game speed is known, before
+    // the game is over
+    private static final int GAME_OVER_MISSED_MOVES = 4;
+
+    // The cells the head went through when it moved straight to the next cell
+    private static final int[] NO_PASSED_CELLS = new int[0];
+
     // The colors used to identify snake parts
     private final ArrayList<Detector> snakeDetectors;
     private Detector selectedSnakeDetector;
@@ -22,43 +49,172 @@ public class GameElementDetection {
     private final ArrayList<Detector> thingsToEatDetectors;
     private Detector selectedThingToEatDetector;
 
-    // Difference between the two frames (current vs previous) shows some result
-    // where there is a new snake part, then we know it is the snake head and not a
-    // snake part
-    private ArrayList<Point> snakeParts;
-    private ArrayList<Point> lastSnakeParts;
+    // The colors of the empty tiles on the board, only used by the palette
+    // classifier
+    private final ArrayList<Detector> backgroundDetectors;
+
+    // The selected detectors, or every loaded detector when palette
+    // classification is on, compiled into a single table. Rebuilt whenever the
+    // detectors change
+    private volatile ColorLookupTable lookupTable;
+    private volatile boolean paletteClassification;
+
+    // All the tiles with a snake part on them, for this frame and the previous
+    // frame. The difference between the two shows where the snake head moved to
+    private BitBoard snakeBoard;
+    private BitBoard lastSnakeBoard;
+    private final BitBoard newSnakeParts;
+
+    // Save the final determined positions for each object, as cell indexes
+    private int appleCell;
+    private int headCell;
+
+    // Keeps the snake's body in order from head to tail
+    private final SnakeBodyTracker bodyTracker;
+
+    // Learns how often the game moves the snake
+    private final TickEstimator tickEstimator;
+    private int[] orderedBody;
+
+    // For statistics, how many game ticks the head has moved for, and how many of
+    // them were never seen because the head moved more than one cell between two
+    // frames
+    private volatile long ticksMoved;
+    private volatile long missedTicks;
 
-    // Save the final determined positions for each object
-    private Point applePos;
-    private Point snakeHead;
+    // The snapshot of everything detected in the last frame
+    private volatile GameState gameState;
+
+    // Who gets told about what happens in the game, and what is needed to work
+    // out what happened: the direction of the last move, when it was, and if the
+    // game over has been announced yet
+    private final CopyOnWriteArrayList<GameEventListener> eventListeners;
+    private String lastMoveDirection;
+    private long lastMoveNanos;
+    private boolean gameOver;
 
     // A raster buffer to write data to when performing the shrink process
     private BufferedImage gameShrinkImage;
 
+    // Where the board is in the screen shot, which has the pixel coordinates of
+    // the center of every tile on the game board
+    private volatile BoardGeometry boardGeometry;
+
+    // Which pixels of every tile are sampled and vote on what is on the tile
+    private volatile ProbePattern probePattern;
+
+    // The pixel coordinates of every probe, tile by tile so the probes of a tile
+    // are next to each other, and how big a screen shot has to be to sample them
+    // all. Only rebuilt when the board geometry or the probe pattern changes
+    private final int[] probeX;
+    private final int[] probeY;
+    private int probesRequiredWidth;
+    private int probesRequiredHeight;
+    private BoardGeometry probesGeometry;
+    private ProbePattern probesPattern;
+
+    // The probe coordinates converted to indexes into the backing array of the
+    // screen shot, in the same order. Only rebuilt when the layout of the screen
+    // shot or the probe coordinates change
+    private final int[] sampleOffsets;
+    private int sampleOffsetsScanlineStride;
+    private int sampleOffsetsBase;
+    private boolean sampleOffsetsStale;
+
+    // The color sampled by every probe, how many probes per tile were sampled,
+    // and the lookup table entry of every probe
+    private final int[] probePixels;
+    private int sampledProbes;
+    private final int[] probeEntries;
+
+    // A hash of every sampled probe, and if it was the same as the frame before,
+    // which means there is nothing new to detect. A skipped frame was too small
+    // to sample, so the tiles are still the ones from the frame before it. The
+    // fingerprint is stale once the detectors, board geometry, or probe pattern
+    // change, the same pixels may not be the same game state anymore
+    private volatile long fingerprint;
+    private final AtomicBoolean fingerprintStale;
+    private boolean unchanged;
+    private boolean skipped;
+
+    // For statistics, how many frames were sampled and how many of them were the
+    // same as the frame before
+    private volatile long framesSampled;
+    private volatile long framesUnchanged;
+
+    // The color sampled from the middle of every tile and what every tile was
+    // classified as, for this frame and the previous frame
+    private final int[] tilePixels;
+    private byte[] tileClasses;
+    private byte[] lastTileClasses;
+    private final byte[] tileConfidences;
+
+    // Looks up the classification of every probe
+    private final TileKernel tileKernel;
+
     /**
      * Look at a screen shot of the game in any state and detect the positions of
      * the snake and apple reliably.
      */
     @SuppressWarnings("checkstyle:MagicNumber")
     public GameElementDetection() {
-        // Initialize arrayLists
-        snakeParts = new ArrayList<Point>();
-        lastSnakeParts = new ArrayList<Point>();
+        // Initialize boards
+        snakeBoard = new BitBoard();
+        lastSnakeBoard = new BitBoard();
+        newSnakeParts = new BitBoard();
 
-        // Initialize points
-        applePos = new Point(-1, -1);
-        snakeHead = new Point(-1, -1);
+        // Initialize positions
+        appleCell = -1;
+        headCell = -1;
+        bodyTracker = new SnakeBodyTracker();
+        tickEstimator = new TickEstimator();
+        orderedBody = new int[0];
+        gameState = GameState.empty();
+        eventListeners = new CopyOnWriteArrayList<GameEventListener>();
+        lastMoveDirection = null;
+        lastMoveNanos = -1;
+        gameOver = false;
 
         // Initialize detectors
         snakeDetectors = new ArrayList<Detector>();
         thingsToEatDetectors = new ArrayList<Detector>();
         selectedSnakeDetector = null;
         selectedThingToEatDetector = null;
+        backgroundDetectors = new ArrayList<Detector>();
+        lookupTable = new ColorLookupTable();
+        paletteClassification = false;
 
         // Setup image capture data
         gameShrinkImage = new BufferedImage(Config.NumberOfColsOnGameBoard, Config.NumberOfRowsOnGameBoard,
                 BufferedImage.TYPE_INT_RGB);
 
+        // Setup the tile buffers
+        int numberOfTiles = Config.NumberOfColsOnGameBoard * Config.NumberOfRowsOnGameBoard;
+        int numberOfProbes = numberOfTiles * ProbePattern.MAX_PROBES;
+        probePattern = ProbePattern.CENTER;
+        probeX = new int[numberOfProbes];
+        probeY = new int[numberOfProbes];
+        sampleOffsets = new int[numberOfProbes];
+        sampleOffsetsScanlineStride = -1;
+        sampleOffsetsBase = -1;
+        sampleOffsetsStale = true;
+        probePixels = new int[numberOfProbes];
+        sampledProbes = 1;
+        probeEntries = new int[numberOfProbes];
+        fingerprint = 0;
+        fingerprintStale = new AtomicBoolean(true);
+        unchanged = false;
+        skipped = false;
+        tilePixels = new int[numberOfTiles];
+        tileClasses = new byte[numberOfTiles];
+        lastTileClasses = new byte[numberOfTiles];
+        tileConfidences = new byte[numberOfTiles];
+        tileKernel = TileKernel.create();
+
+        // Until the board is calibrated, assume the screen shot is of the whole
+        // 600x600 game window
+        boardGeometry = BoardGeometry.defaultWindow(0, 0);
+
         // Check the snake detectors and make sure there is a selected key
         if (selectedSnakeDetector == null) {
             addSnakeDetector("Random Detector Because None Others Existed", new Color(0, 0, 0));
@@ -69,6 +225,10 @@ public class GameElementDetection {
             addThingToEatDetector("Random Detector Because None Others Existed", new Color(255, 255, 255));
             setSelectedThingToEatDetector("Random Detector Because None Others Existed");
         }
+
+        // The checkered background of the google snake board
+        addBackgroundDetector(new Detector("Google Snake Light Tile", BoardCalibration.GOOGLE_SNAKE_LIGHT_TILE));
+        addBackgroundDetector(new Detector("Google Snake Dark Tile", BoardCalibration.GOOGLE_SNAKE_DARK_TILE));
     }
 
     /**
@@ -83,32 +243,184 @@ public class GameElementDetection {
      * @return shrunkImage
      */
     public BufferedImage shrinkProcess(BufferedImage img) {
-        int xToQuadrant;
-        int yToQuadrant;
-
-        // Loop over every pixel square/quadrant on the game board. Use the
-        // y-coordinates as the outer loop because that is how the image data is stored
-        // in memory
-        for (int y = 0; y < gameShrinkImage.getHeight(); y++) {
-            for (int x = 0; x < gameShrinkImage.getWidth(); x++) {
-                // Converting from grid/quadrant space to pixel space for the input image.
-                // To get the middle pixel of any particular square on the game board use
-                // x column or y row * 32 + (32 / 2) + borderOffsets = pixel location in screen
-                // shot
-                xToQuadrant = x * Config.GameBoardQuadrantSizePixels + (Config.GameBoardQuadrantSizePixels / 2)
-                        + Config.GameBoardBoarderWidthPixels;
-                yToQuadrant = y * Config.GameBoardQuadrantSizePixels + (Config.GameBoardQuadrantSizePixels / 2)
-                        + Config.GameBoardHeaderHeightPixels;
-
-                // Detect the color in the raster buffer
-                Color colorInQuadrant = new Color(img.getRGB(xToQuadrant, yToQuadrant));
-
-                // Set the color in the BufferedImage
-                gameShrinkImage.setRGB(x, y, colorInQuadrant.getRGB());
+        // Sample the center of every tile and copy the colors into the image
+        sample(img);
+        gameShrinkImage.setRGB(0, 0, gameShrinkImage.getWidth(), gameShrinkImage.getHeight(), tilePixels, 0,
+                gameShrinkImage.getWidth());
+
+        return gameShrinkImage;
+    }
+
+    /**
+     * Samples every square of the game grid into the tile buffer, the same way
+     * {@link #shrinkProcess(BufferedImage) shrinkProcess} does, but without
+     * building an image. Every probe of the {@link #setProbePattern(ProbePattern)
+     * probe pattern} is sampled, and the middle of every tile is kept in the tile
+     * buffer. When the screen shot is backed by an int array of packed rgb
+     * pixels, which is what the java Robot produces, the pixels are read straight
+     * out of that array using a table of precomputed offsets so nothing is
+     * allocated per frame. The probes are hashed while they are read, and if the
+     * hash is the same as last frame's then {@link #isUnchanged() isUnchanged}
+     * is true and there is no need to call {@link #detect() detect}. If the
+     * screen shot is too small for the board geometry then nothing is sampled
+     * and {@link #isSkipped() isSkipped} is true, there is nothing to detect
+     * either. Otherwise, call {@link #detect() detect} afterwards to find the
+     * game elements.
+     *
+     * @param img the screen shot of the game window
+     */
+    public void sample(BufferedImage img) {
+        Raster raster = img.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+
+        // Make sure the probe coordinates match the board geometry and pattern
+        updateProbeCoordinates(boardGeometry, probePattern);
+        int probes = probesPattern.getProbes();
+        int count = tilePixels.length * probes;
+
+        // A frame captured before the board geometry changed may be too small
+        skipped = (img.getWidth() < probesRequiredWidth) || (img.getHeight() < probesRequiredHeight);
+        if (skipped) {
+            unchanged = false;
+            return;
+        }
+
+        // Hash the probes as they are read with 64 bit FNV-1a, one pixel at a
+        // time. Two different boards hashing the same is too unlikely to matter
+        long hash = FNV_OFFSET_BASIS ^ probes;
+        if (!isPackedRgb(raster)) {
+            // Slow path for any image that is not laid out as packed rgb ints
+            for (int i = 0; i < count; i++) {
+                int pixel = img.getRGB(probeX[i], probeY[i]);
+                probePixels[i] = pixel;
+                hash = (hash ^ (pixel & 0xFFFFFF)) * FNV_PRIME;
+            }
+        } else {
+            // Make sure the offsets table matches the layout of this image
+            updateSampleOffsets(raster);
+
+            // Read the pixels directly out of the backing array
+            if (dataBuffer instanceof DataBufferInt) {
+                int[] data = ((DataBufferInt) dataBuffer).getData();
+                for (int i = 0; i < count; i++) {
+                    int pixel = data[sampleOffsets[i]];
+                    probePixels[i] = pixel;
+                    hash = (hash ^ (pixel & 0xFFFFFF)) * FNV_PRIME;
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    int pixel = dataBuffer.getElem(sampleOffsets[i]);
+                    probePixels[i] = pixel;
+                    hash = (hash ^ (pixel & 0xFFFFFF)) * FNV_PRIME;
+                }
             }
         }
 
-        return gameShrinkImage;
+        // Anything that changes how the pixels are classified means they have to be
+        // detected again, even if they are the same
+        boolean stale = fingerprintStale.getAndSet(false);
+        unchanged = (hash == fingerprint) && !stale;
+        fingerprint = hash;
+        framesSampled++;
+        if (unchanged) {
+            framesUnchanged++;
+        }
+
+        // The first probe of every tile is its middle
+        for (int tile = 0; tile < tilePixels.length; tile++) {
+            tilePixels[tile] = probePixels[tile * probes];
+        }
+        sampledProbes = probes;
+    }
+
+    /**
+     * Works out the pixel coordinates of every probe, offset from the sample
+     * coordinates of the board geometry. This only does work when the board
+     * geometry or the probe pattern is different from the last time it was
+     * called.
+     *
+     * @param geometry where the tiles are
+     * @param pattern  where in every tile to sample
+     */
+    private void updateProbeCoordinates(BoardGeometry geometry, ProbePattern pattern) {
+        if ((geometry == probesGeometry) && (pattern == probesPattern)) {
+            return;
+        }
+
+        // Keep every probe inside its tile, even on tiny tiles
+        int[] sampleX = geometry.getSampleX();
+        int[] sampleY = geometry.getSampleY();
+        int probes = pattern.getProbes();
+        int maxX = 0;
+        int maxY = 0;
+        for (int tile = 0; tile < tilePixels.length; tile++) {
+            int left = geometry.getTileLeft(tile % Config.NumberOfColsOnGameBoard);
+            int top = geometry.getTileTop(tile / Config.NumberOfColsOnGameBoard);
+            int right = Math.max(left, geometry.getTileLeft(tile % Config.NumberOfColsOnGameBoard + 1) - 1);
+            int bottom = Math.max(top, geometry.getTileTop(tile / Config.NumberOfColsOnGameBoard + 1) - 1);
+
+            for (int probe = 0; probe < probes; probe++) {
+                int i = tile * probes + probe;
+                int x = sampleX[tile] + pattern.getOffsetX(probe, geometry.getTileWidth());
+                int y = sampleY[tile] + pattern.getOffsetY(probe, geometry.getTileHeight());
+                probeX[i] = probe == 0 ? sampleX[tile] : Math.max(0, Math.min(Math.max(x, left), right));
+                probeY[i] = probe == 0 ? sampleY[tile] : Math.max(0, Math.min(Math.max(y, top), bottom));
+                maxX = Math.max(maxX, probeX[i]);
+                maxY = Math.max(maxY, probeY[i]);
+            }
+        }
+
+        probesRequiredWidth = maxX + 1;
+        probesRequiredHeight = maxY + 1;
+        probesGeometry = geometry;
+        probesPattern = pattern;
+        sampleOffsetsStale = true;
+    }
+
+    /**
+     * Checks if an image raster stores each pixel as a single int with the red,
+     * green, and blue channels packed in that order.
+     *
+     * @param raster the raster to check
+     * @return if the pixels can be read directly from the data buffer
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private static boolean isPackedRgb(Raster raster) {
+        if ((raster.getDataBuffer().getDataType() != DataBuffer.TYPE_INT)
+                || (raster.getDataBuffer().getNumBanks() != 1)
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return false;
+        }
+
+        // The first three masks have to be red, green, and blue
+        int[] masks = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getBitMasks();
+        return (masks.length >= 3) && (masks[0] == 0xFF0000) && (masks[1] == 0xFF00) && (masks[2] == 0xFF);
+    }
+
+    /**
+     * Converts the probe coordinates into indexes of the raster's data buffer.
+     * This only does work when the layout of the raster or the probe coordinates
+     * are different from the last time it was called.
+     *
+     * @param raster the raster that is going to be sampled
+     */
+    private void updateSampleOffsets(Raster raster) {
+        int scanlineStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int base = raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+                - raster.getSampleModelTranslateX();
+
+        // Nothing to do if the layout is the same
+        if ((scanlineStride == sampleOffsetsScanlineStride) && (base == sampleOffsetsBase) && !sampleOffsetsStale) {
+            return;
+        }
+
+        int count = tilePixels.length * probesPattern.getProbes();
+        for (int i = 0; i < count; i++) {
+            sampleOffsets[i] = base + probeY[i] * scanlineStride + probeX[i];
+        }
+        sampleOffsetsScanlineStride = scanlineStride;
+        sampleOffsetsBase = base;
+        sampleOffsetsStale = false;
     }
 
     /**
@@ -123,37 +435,81 @@ public class GameElementDetection {
      *
      * @see org.leonitousconforti.basilisk.detectors.Detector
      */
-    @SuppressWarnings("unchecked")
     public void detect(BufferedImage img) {
-        // Clear the last snake parts list
-        lastSnakeParts.clear();
-
-        // Create a shallow copy of the snakeParts list and store it in lastSnakeParts.
-        // Later, this loop iteration will write data to snakeParts again. What we end
-        // up with is a backup of the previous loop iteration data in lastSnakeParts and
-        // this loop iteration in snakeParts. At the end of this method, compare the two
-        // lists and if there is new data in snakeParts that does not match
-        // lastSnakeParts then we can conclude that that is where the snakes head is
-        lastSnakeParts = (ArrayList<Point>) snakeParts.clone();
-        snakeParts.clear();
-
-        // Loop over every pixel of the input image. Use the y-coordinate as the outer
-        // loop because that is how the image data is stored im memory
-        for (int y = 0; y < img.getHeight(); y++) {
-            for (int x = 0; x < img.getWidth(); x++) {
-                // Get the color at the current pixel and map it to a hue value.
-                Color colorAtPixel = new Color(img.getRGB(x, y));
-                float hueAtPixel = getHueOfColor(colorAtPixel);
-
-                // Compare what the expected apple color to be to the color of the current pixel
-                if (colorAtPixel.getRGB() == selectedThingToEatDetector.getColor().getRGB()) {
-                    // If true then we found the apple
-                    applePos.x = x;
-                    applePos.y = y;
-                } else if (Math.abs(hueAtPixel - selectedSnakeDetector.getHue()) < 2) {
-                    // If true then we have a snake part.
-                    snakeParts.add(new Point(x, y));
-                }
+        // Copy the image into the tile buffer and detect from there
+        img.getRGB(0, 0, Config.NumberOfColsOnGameBoard, Config.NumberOfRowsOnGameBoard, tilePixels, 0,
+                Config.NumberOfColsOnGameBoard);
+        System.arraycopy(tilePixels, 0, probePixels, 0, tilePixels.length);
+        sampledProbes = 1;
+        unchanged = false;
+        skipped = false;
+        detect();
+    }
+
+    /**
+     * Parses all the important elements of the game out of the tiles sampled by
+     * the last call to {@link #sample(BufferedImage) sample}. Every tile is
+     * classified into a reusable array without allocating anything. The
+     * {@link GameState} snapshot published at the end is new every frame that is
+     * detected, with its own copy of the snake board and the boards it works out
+     * from it, and a new ordered body when the snake moved. Snapshots are handed
+     * to other threads and never change, so they can not be reused.
+     *
+     * @see org.leonitousconforti.basilisk.detectors.Detector
+     */
+    public void detect() {
+        detect(System.nanoTime());
+    }
+
+    /**
+     * Parses all the important elements of the game out of the tiles sampled by
+     * the last call to {@link #sample(BufferedImage) sample}, the same as
+     * {@link #detect() detect}, but with when the frame was captured so the
+     * {@link TickEstimator tick estimator} knows when the head really moved.
+     *
+     * @param capturedAtNanos when the sampled frame was captured, from
+     *                        {@link System#nanoTime()}
+     */
+    public void detect(long capturedAtNanos) {
+        // Keep the classifications from the last loop iteration around by swapping
+        // the buffers. What we end up with is a backup of the previous loop iteration
+        // data in the last buffers and this loop iteration in the current buffers. At
+        // the end of this method, compare the two and if there is a new snake part
+        // that was not a snake part before then we can conclude that that is where
+        // the snakes head is
+        byte[] swap = lastTileClasses;
+        lastTileClasses = tileClasses;
+        tileClasses = swap;
+        BitBoard swapBoard = lastSnakeBoard;
+        lastSnakeBoard = snakeBoard;
+        snakeBoard = swapBoard;
+        snakeBoard.clear();
+
+        // Loop over every tile, they are stored in the same order as the image data.
+        // The lookup table already knows what every color is, so classifying a probe
+        // is just one array load, which the kernel does for every probe at once. The
+        // probes of a tile then vote on what is on it. With more than one thing to
+        // eat detector there can be more than one match, so keep the one we are most
+        // sure about. If there is no match then there is no apple in this frame,
+        // it is not where it was last seen anymore
+        appleCell = -1;
+        int probes = sampledProbes;
+        tileKernel.lookup(probePixels, tilePixels.length * probes, lookupTable.getEntries(), probeEntries);
+        int appleConfidence = -1;
+        for (int tile = 0; tile < tilePixels.length; tile++) {
+            int entry = probes == 1 ? probeEntries[tile] : vote(tile * probes, probes);
+            byte tileClass = ColorLookupTable.classOfEntry(entry);
+            int confidence = ColorLookupTable.confidenceOfEntry(entry);
+            tileClasses[tile] = tileClass;
+            tileConfidences[tile] = (byte) confidence;
+
+            if ((tileClass == TileClass.THING_TO_EAT) && (confidence > appleConfidence)) {
+                // If true then we found the apple
+                appleCell = tile;
+                appleConfidence = confidence;
+            } else if (tileClass == TileClass.SNAKE) {
+                // If true then we have a snake part.
+                snakeBoard.set(tile);
             }
         }
 
@@ -161,14 +517,284 @@ public class GameElementDetection {
         // just found, then we have found the snake head. If all the snake parts found
         // this iteration match the previous snake parts, then the loop was processing
         // faster than the snake game runs and the snake just hasn't moved enough since
-        // the last iteration
-        for (Point snakePart : snakeParts) {
-            if (!lastSnakeParts.contains(snakePart)) {
-                snakeHead = snakePart.getLocation();
-                // we found the snake head so we can stop checking now!
-                break;
+        // the last iteration. Clearing the previous parts out of a copy leaves just
+        // the new parts, the first of which is the head
+        int newHead = newSnakeParts.copyFrom(snakeBoard).andNot(lastSnakeBoard).nextSetCell(0);
+        if (newHead != -1) {
+            headCell = newHead;
+        }
+
+        // Put the body in order. The tracker knows which end is the head better than
+        // the scan order does, so trust it once it has found the body. A snake
+        // chasing its own tail is on the same cells after it moves, so when a move
+        // is due and nothing changed it must have moved onto its tail
+        if (bodyTracker.update(snakeBoard, headCell)
+                || ((newHead == -1) && isTailChaseDue(capturedAtNanos) && bodyTracker.chaseTail())) {
+            orderedBody = bodyTracker.toArray();
+        }
+        if (bodyTracker.getLength() > 0) {
+            headCell = bodyTracker.getHeadCell();
+        }
+
+        // Work out the cells the head went through if frames were missed, one game
+        // tick for each, and learn how fast the game is going from when the head
+        // moves. A snake showing up again is a new game, which may be at a new speed
+        if (lastSnakeBoard.isEmpty() && !snakeBoard.isEmpty()) {
+            tickEstimator.reset();
+        }
+        int lastHeadCell = gameState.getHeadCell();
+        int[] passed = NO_PASSED_CELLS;
+        if ((headCell != lastHeadCell) && (headCell != -1) && (lastHeadCell != -1)) {
+            passed = findPassedCells(lastHeadCell, headCell);
+            int ticks = Math.max(passed.length + 1, distance(lastHeadCell, headCell));
+            ticksMoved += ticks;
+            missedTicks += ticks - 1;
+            tickEstimator.onHeadMoved(capturedAtNanos, ticks);
+        }
+
+        // Publish the snapshot for everyone else, then tell everyone what changed
+        GameState previous = gameState;
+        gameState = new GameState(headCell, appleCell, new BitBoard(snakeBoard), orderedBody, passed);
+        findEvents(previous, gameState, capturedAtNanos);
+    }
+
+    /**
+     * Works out which cells the head went through to get from one cell to
+     * another, not counting either of them. The ordered body has them in order
+     * as long as the old head is still part of it. Otherwise the snake is assumed
+     * to have kept going straight, which it can only have done if the two cells
+     * line up.
+     *
+     * @param from where the head was in the last frame
+     * @param to   where the head is now
+     * @return the cells in between, oldest first
+     */
+    private int[] findPassedCells(int from, int to) {
+        for (int i = 1; i < orderedBody.length; i++) {
+            if (orderedBody[i] != from) {
+                continue;
+            }
+            if (i == 1) {
+                return NO_PASSED_CELLS;
+            }
+
+            int[] passed = new int[i - 1];
+            for (int j = 0; j < passed.length; j++) {
+                passed[j] = orderedBody[i - 1 - j];
+            }
+            return passed;
+        }
+
+        // Not in the body, so it went straight or we can not know
+        int dx = Integer.signum(BitBoard.xOf(to) - BitBoard.xOf(from));
+        int dy = Integer.signum(BitBoard.yOf(to) - BitBoard.yOf(from));
+        if ((dx != 0) && (dy != 0)) {
+            return NO_PASSED_CELLS;
+        }
+        int[] passed = new int[distance(from, to) - 1];
+        for (int j = 0; j < passed.length; j++) {
+            passed[j] = BitBoard.cellOf(BitBoard.xOf(from) + dx * (j + 1), BitBoard.yOf(from) + dy * (j + 1));
+        }
+        return passed;
+    }
+
+    /**
+     * How many moves it takes to get from one cell to another without turning
+     * back.
+     */
+    private static int distance(int from, int to) {
+        return Math.abs(BitBoard.xOf(to) - BitBoard.xOf(from)) + Math.abs(BitBoard.yOf(to) - BitBoard.yOf(from));
+    }
+
+    /**
+     * Checks if the game is over when {@link #sample(BufferedImage) sample} found
+     * the board {@link #isUnchanged() unchanged}, instead of calling
+     * {@link #detect(long) detect}. A snake that stops moving looks the same
+     * frame after frame, so this is the only way to notice it stopped. A snake
+     * chasing its tail also looks the same after every move, so when a move is
+     * due for it the frame is detected anyway.
+     *
+     * @param capturedAtNanos when the sampled frame was captured, from
+     *                        {@link System#nanoTime()}
+     */
+    public void detectUnchanged(long capturedAtNanos) {
+        // The same board can still be a move, onto the cell the tail moved off of
+        if (isTailChaseDue(capturedAtNanos)) {
+            detect(capturedAtNanos);
+            return;
+        }
+        checkGameOver(gameState, capturedAtNanos);
+    }
+
+    /**
+     * Checks if the snake could be chasing its tail and the {@link TickEstimator
+     * tick estimator} says it has moved since it was last seen moving.
+     */
+    private boolean isTailChaseDue(long capturedAtNanos) {
+        return bodyTracker.isChasingTail() && tickEstimator.isLocked()
+                && (tickEstimator.movesBetween(tickEstimator.getLastMoveNanos(), capturedAtNanos) > 0);
+    }
+
+    /**
+     * Works out what happened between two consecutive game states and tells the
+     * listeners.
+     *
+     * @param previous   the game state of the frame before
+     * @param current    the game state of this frame
+     * @param capturedAt when this frame was captured
+     */
+    private void findEvents(GameState previous, GameState current, long capturedAt) {
+        int previousHead = previous.getHeadCell();
+        int head = current.getHeadCell();
+        int previousLength = previous.getBody().popCount();
+        int length = current.getBody().popCount();
+
+        // The head moved, and maybe turned. The direction is the way it went into
+        // its new cell, from the last of the cells it passed if it skipped any
+        if ((head != previousHead) && (head != -1) && (previousHead != -1)) {
+            int[] passed = current.getPassedCells();
+            int from = passed.length > 0 ? passed[passed.length - 1] : previousHead;
+            int dx = BitBoard.xOf(head) - BitBoard.xOf(from);
+            int dy = BitBoard.yOf(head) - BitBoard.yOf(from);
+            String direction = null;
+            if (dy == 0) {
+                direction = dx < 0 ? "left" : "right";
+            } else if (dx == 0) {
+                direction = dy < 0 ? "up" : "down";
+            }
+
+            int ticks = Math.max(passed.length + 1, distance(previousHead, head));
+            fire(GameEvent.MOVED, head, ticks, direction, capturedAt, current);
+            if ((direction != null) && (lastMoveDirection != null) && !direction.equals(lastMoveDirection)) {
+                fire(GameEvent.TURNED, head, 0, direction, capturedAt, current);
+            }
+            lastMoveDirection = direction != null ? direction : lastMoveDirection;
+            lastMoveNanos = capturedAt;
+            gameOver = false;
+        }
+
+        // The apple moved, because it was eaten or just showed up
+        int previousApple = previous.getAppleCell();
+        int apple = current.getAppleCell();
+        if (apple != previousApple) {
+            if ((previousApple != -1) && ((head == previousApple) || current.getBody().get(previousApple))) {
+                fire(GameEvent.APPLE_EATEN, previousApple, 0, lastMoveDirection, capturedAt, current);
+            }
+            if (apple != -1) {
+                fire(GameEvent.APPLE_SPAWNED, apple, 0, lastMoveDirection, capturedAt, current);
+            }
+        }
+
+        if ((length != previousLength) && (length > 0)) {
+            fire(GameEvent.LENGTH_CHANGED, head, length, lastMoveDirection, capturedAt, current);
+        }
+
+        // The snake disappearing is the end of the game too, the next game may be
+        // at a different speed
+        if ((length == 0) && (previousLength > 0) && !gameOver) {
+            gameOver = true;
+            tickEstimator.reset();
+            fire(GameEvent.GAME_OVER, previousHead, 0, lastMoveDirection, capturedAt, current);
+        }
+        checkGameOver(current, capturedAt);
+    }
+
+    /**
+     * Announces the game is over if the snake has missed too many moves, which
+     * can only be known once the {@link TickEstimator tick estimator} knows the
+     * game speed.
+     */
+    private void checkGameOver(GameState current, long capturedAt) {
+        if (gameOver || (lastMoveNanos == -1) || !tickEstimator.isLocked()) {
+            return;
+        }
+
+        if (capturedAt - lastMoveNanos > GAME_OVER_MISSED_MOVES * tickEstimator.getPeriodNanos()) {
+            gameOver = true;
+            tickEstimator.reset();
+            fire(GameEvent.GAME_OVER, current.getHeadCell(), 0, lastMoveDirection, capturedAt, current);
+        }
+    }
+
+    /**
+     * Tells every listener about an event, if anyone is listening.
+     */
+    private void fire(int type, int cell, int value, String direction, long capturedAt, GameState state) {
+        if (eventListeners.isEmpty()) {
+            return;
+        }
+
+        GameEvent event = new GameEvent(type, cell, value, direction, capturedAt, state);
+        for (GameEventListener listener : eventListeners) {
+            listener.onGameEvent(event);
+        }
+    }
+
+    /**
+     * Starts telling a listener about the {@link GameEvent events} in the game.
+     * Listeners are called on the thread that calls {@link #detect(long) detect}.
+     *
+     * @param listener the listener to add
+     */
+    public void addGameEventListener(GameEventListener listener) {
+        eventListeners.add(listener);
+    }
+
+    /**
+     * Stops telling a listener about the events in the game.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeGameEventListener(GameEventListener listener) {
+        eventListeners.remove(listener);
+    }
+
+    /**
+     * Lets the probes of a tile vote on what is on it. Every probe votes for its
+     * class with its confidence, plus one so a probe with no confidence still
+     * counts, which makes it a plain majority vote when every probe is sure. The
+     * confidence in the result is the winning votes spread over every probe, so
+     * a tile the probes disagree on is less certain.
+     *
+     * @param first  the index of the first probe of the tile
+     * @param probes how many probes the tile has
+     * @return the lookup table entry of the winning class
+     */
+    private int vote(int first, int probes) {
+        int emptyVotes = 0;
+        int snakeVotes = 0;
+        int thingToEatVotes = 0;
+        for (int i = first; i < first + probes; i++) {
+            int votes = ColorLookupTable.confidenceOfEntry(probeEntries[i]) + 1;
+            byte probeClass = ColorLookupTable.classOfEntry(probeEntries[i]);
+            if (probeClass == TileClass.SNAKE) {
+                snakeVotes += votes;
+            } else if (probeClass == TileClass.THING_TO_EAT) {
+                thingToEatVotes += votes;
+            } else {
+                emptyVotes += votes;
             }
         }
+
+        // Ties go to the first probe, the middle of the tile
+        byte winner = ColorLookupTable.classOfEntry(probeEntries[first]);
+        int best = winner == TileClass.SNAKE ? snakeVotes
+                : winner == TileClass.THING_TO_EAT ? thingToEatVotes : emptyVotes;
+        if (snakeVotes > best) {
+            winner = TileClass.SNAKE;
+            best = snakeVotes;
+        }
+        if (thingToEatVotes > best) {
+            winner = TileClass.THING_TO_EAT;
+            best = thingToEatVotes;
+        }
+        if (emptyVotes > best) {
+            winner = TileClass.EMPTY;
+            best = emptyVotes;
+        }
+
+        int confidence = Math.min(ColorLookupTable.MAX_CONFIDENCE, Math.max(0, best / probes - 1));
+        return ColorLookupTable.entryOf(winner, confidence);
     }
 
     /**
@@ -178,35 +804,246 @@ public class GameElementDetection {
      */
     @SuppressWarnings("checkstyle:MagicNumber")
     private float getHueOfColor(Color color) {
-        // float[] hsbValues = new float[3];
-        // hsbValues = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(),
-        // hsbValues);
-        // float hueAtPixel = hsbValues[0] * 255;
         return Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), (float[]) null)[0] * 255;
     }
 
+    /**
+     * Compiles the detectors into a new lookup table and swaps it in. With palette
+     * classification on, every loaded detector is part of the palette. Otherwise,
+     * the selected snake detector is matched by hue and the selected thing to eat
+     * detector is matched by color, the thing to eat wins when both match.
+     */
+    private synchronized void compileLookupTable() {
+        fingerprintStale.set(true);
+        if (paletteClassification) {
+            lookupTable = compilePalette();
+            return;
+        }
+
+        // Wait until both detectors have been selected
+        if ((selectedSnakeDetector == null) || (selectedThingToEatDetector == null)) {
+            return;
+        }
+
+        ColorLookupTable table = new ColorLookupTable();
+        table.mark(selectedSnakeDetector.getHueKeys(), TileClass.SNAKE);
+        table.mark(selectedThingToEatDetector.getColorKeys(), TileClass.THING_TO_EAT);
+        lookupTable = table;
+    }
+
+    /**
+     * Builds a palette lookup table out of every loaded detector.
+     */
+    private ColorLookupTable compilePalette() {
+        int size = snakeDetectors.size() + thingsToEatDetectors.size() + backgroundDetectors.size();
+        Detector[] palette = new Detector[size];
+        byte[] paletteClasses = new byte[size];
+
+        int i = 0;
+        for (Detector d : snakeDetectors) {
+            palette[i] = d;
+            paletteClasses[i++] = TileClass.SNAKE;
+        }
+        for (Detector d : thingsToEatDetectors) {
+            palette[i] = d;
+            paletteClasses[i++] = TileClass.THING_TO_EAT;
+        }
+        for (Detector d : backgroundDetectors) {
+            palette[i] = d;
+            paletteClasses[i++] = TileClass.EMPTY;
+        }
+
+        return ColorLookupTable.palette(palette, paletteClasses);
+    }
+
+    /**
+     * Turns palette classification on or off. With it on, every loaded snake,
+     * thing to eat, and background detector is used at the same time and each
+     * tile is labeled with the class of the closest detector color, so mixed
+     * skins and food types are detected without selecting detectors. It costs
+     * the same per frame as using the selected detectors, only compiling the
+     * lookup table is more work.
+     *
+     * @param enabled if palette classification should be used
+     */
+    public void setPaletteClassification(boolean enabled) {
+        paletteClassification = enabled;
+        compileLookupTable();
+    }
+
+    /**
+     * @return if palette classification is on
+     */
+    public boolean isPaletteClassification() {
+        return paletteClassification;
+    }
+
+    /**
+     * @return the snapshot of everything detected in the last frame
+     */
+    public GameState getGameState() {
+        return gameState;
+    }
+
     /**
      * @return the position of the snake head
      */
     public Point getSnakeHead() {
-        return snakeHead;
+        return gameState.getSnakeHead();
     }
 
     /**
      * @return the position of the item the snake is trying to eat
      */
     public Point getApplePos() {
-        return applePos;
+        return gameState.getApplePos();
+    }
+
+    /**
+     * @return the estimate of how often the game moves the snake
+     */
+    public TickEstimator getTickEstimator() {
+        return tickEstimator;
     }
 
     /**
-     * @return the positions of all the parts of the snake, not including the snake
-     *         head
+     * @return if the tiles sampled by the last call to
+     *         {@link #sample(BufferedImage) sample} are the same as the frame
+     *         before, in which case detecting them again would find the same
+     *         game state
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return if the screen shot given to the last call to
+     *         {@link #sample(BufferedImage) sample} was too small for the board
+     *         geometry, in which case nothing was sampled and the tiles are
+     *         still the ones from the frame before, so there is nothing to
+     *         detect
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return the 64 bit hash of the tiles sampled by the last call to
+     *         {@link #sample(BufferedImage) sample}, the same board always
+     *         hashes the same
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return how many of the sampled frames were the same as the frame before,
+     *         from 0 to 1
+     */
+    public double getUnchangedRate() {
+        long sampled = framesSampled;
+        return sampled == 0 ? 0 : (double) framesUnchanged / sampled;
+    }
+
+    /**
+     * @return how many game ticks went by without the head being seen, because
+     *         it moved more than one cell between two detected frames
+     */
+    public long getMissedTicks() {
+        return missedTicks;
+    }
+
+    /**
+     * @return how many of the game ticks the head moved for were missed, from 0
+     *         to 1. Anything much above 0 means frames are not being detected as
+     *         fast as the game is going
+     */
+    public double getMissedTickRate() {
+        long ticks = ticksMoved;
+        return ticks == 0 ? 0 : (double) missedTicks / ticks;
+    }
+
+    /**
+     * Changes which pixels of every tile are sampled. More probes make detection
+     * steadier while the snake is moving between tiles, at the cost of looking
+     * up more pixels every frame. Safe to call while another thread is sampling,
+     * it takes effect on the next frame.
+     *
+     * @param pattern the probe pattern to use
+     */
+    public void setProbePattern(ProbePattern pattern) {
+        probePattern = pattern;
+        fingerprintStale.set(true);
+    }
+
+    /**
+     * @return which pixels of every tile are sampled
+     */
+    public ProbePattern getProbePattern() {
+        return probePattern;
+    }
+
+    /**
+     * @return the kernel that looks up the classification of every tile
+     */
+    public TileKernel getTileKernel() {
+        return tileKernel;
+    }
+
+    /**
+     * Changes where the board is in the screen shots, for example after the board
+     * was {@link BoardCalibration calibrated} and only the board is being
+     * captured. Safe to call while another thread is sampling.
+     *
+     * @param geometry the new board geometry
+     */
+    public void setBoardGeometry(BoardGeometry geometry) {
+        boardGeometry = geometry;
+        fingerprintStale.set(true);
+    }
+
+    /**
+     * @return where the board is in the screen shots
+     */
+    public BoardGeometry getBoardGeometry() {
+        return boardGeometry;
+    }
+
+    /**
+     * @return the sampled color of every tile on the board from the last call to
+     *         {@link #sample(BufferedImage) sample}, indexed by y * columns + x.
+     *         This is the live buffer, do not modify it
+     */
+    public int[] getTilePixels() {
+        return tilePixels;
+    }
+
+    /**
+     * @return what every tile on the board was classified as by the last call to
+     *         {@link #detect() detect}, indexed by y * columns + x. This is the
+     *         live buffer, do not modify it
+     */
+    public byte[] getTileClasses() {
+        return tileClasses;
+    }
+
+    /**
+     * @return how confident the classification of every tile was, from 0 to
+     *         {@link ColorLookupTable#MAX_CONFIDENCE}, as unsigned bytes in the
+     *         same order as {@link #getTileClasses() getTileClasses}. This is the
+     *         live buffer, do not modify it
+     */
+    public byte[] getTileConfidences() {
+        return tileConfidences;
+    }
+
+    /**
+     * @return the positions of all the parts of the snake, including the snake
+     *         head. This allocates a new list every time, prefer
+     *         {@link #getGameState() getGameState}
      */
-    @SuppressWarnings("unchecked")
     public ArrayList<Point> getSnakeParts() {
-        // return snakeParts;
-        return (ArrayList<Point>) snakeParts.clone();
+        return gameState.getBody().toPoints();
     }
 
     /**
@@ -223,6 +1060,13 @@ public class GameElementDetection {
         return thingsToEatDetectors;
     }
 
+    /**
+     * @return all of the loaded background detector profiles
+     */
+    public ArrayList<Detector> getLoadedBackgroundDetectors() {
+        return backgroundDetectors;
+    }
+
     /**
      * Loads a new snake detector to be used by the {@link #detect(BufferedImage)
      * detect} method.
@@ -239,7 +1083,7 @@ public class GameElementDetection {
         // Otherwise, load the new detector
         float hueToDetect = getHueOfColor(colorToDetect);
         Detector d = new Detector(name, colorToDetect, hueToDetect);
-        snakeDetectors.add(d);
+        addSnakeDetector(d);
     }
 
     /**
@@ -249,7 +1093,12 @@ public class GameElementDetection {
      * @param detectorToAdd the detector to add
      */
     public void addSnakeDetector(Detector detectorToAdd) {
+        // Compile it now so selecting it later is cheap
+        detectorToAdd.getHueKeys();
         snakeDetectors.add(detectorToAdd);
+        if (paletteClassification) {
+            compileLookupTable();
+        }
     }
 
     /**
@@ -268,7 +1117,7 @@ public class GameElementDetection {
         // Otherwise, load the new detector
         float hueToDetect = getHueOfColor(colorToDetect);
         Detector d = new Detector(name, colorToDetect, hueToDetect);
-        thingsToEatDetectors.add(d);
+        addThingToEatDetector(d);
     }
 
     /**
@@ -278,7 +1127,26 @@ public class GameElementDetection {
      * @param detectorToAdd the detector to add
      */
     public void addThingToEatDetector(Detector detectorToAdd) {
+        // Compile it now so selecting it later is cheap
+        detectorToAdd.getColorKeys();
         thingsToEatDetectors.add(detectorToAdd);
+        if (paletteClassification) {
+            compileLookupTable();
+        }
+    }
+
+    /**
+     * Loads a new background detector, the color of an empty tile. Background
+     * detectors are only used with
+     * {@link #setPaletteClassification(boolean) palette classification}.
+     *
+     * @param detectorToAdd the detector to add
+     */
+    public void addBackgroundDetector(Detector detectorToAdd) {
+        backgroundDetectors.add(detectorToAdd);
+        if (paletteClassification) {
+            compileLookupTable();
+        }
     }
 
     /**
@@ -303,6 +1171,7 @@ public class GameElementDetection {
         int index = IntStream.range(0, snakeDetectors.size())
                 .filter(i -> nameOfDetector.equals(snakeDetectors.get(i).getName())).findFirst().orElse(-1);
         selectedSnakeDetector = snakeDetectors.get(index);
+        compileLookupTable();
     }
 
     /**
@@ -327,5 +1196,6 @@ public class GameElementDetection {
         int index = IntStream.range(0, thingsToEatDetectors.size())
                 .filter(i -> nameOfDetector.equals(thingsToEatDetectors.get(i).getName())).findFirst().orElse(-1);
         selectedThingToEatDetector = thingsToEatDetectors.get(index);
+        compileLookupTable();
     }
 }
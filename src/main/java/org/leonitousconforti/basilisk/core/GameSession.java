@@ -0,0 +1,71 @@
+package org.leonitousconforti.basilisk.core;
+
+/**
+ * One game being played, with its own detection, algorithms, and actions
+ * manager. Normally there is just one, but several games can be played at once
+ * from one captured frame, each session looking at its own board in the frame
+ * and pressing keys in its own game.
+ */
+public class GameSession {
+    // Which game this is, 0 for the first
+    private final int index;
+
+    // What this session detects and plays with
+    private final GameElementDetection gameElementDetection;
+    private final Algorithms algorithmsManager;
+
+    /**
+     * Connects detection to the algorithms so they play the same game. The
+     * actions manager predicts the game speed with the detection's tick
+     * estimator, and the running algorithm is told about the game events.
+     *
+     * @param sessionIndex which game this is, 0 for the first
+     * @param detection    what detects this game's board
+     * @param algorithms   what plays this game
+     */
+    public GameSession(int sessionIndex, GameElementDetection detection, Algorithms algorithms) {
+        index = sessionIndex;
+        gameElementDetection = detection;
+        algorithmsManager = algorithms;
+
+        // Press keys early enough to land while the head is where the action
+        // wants it to be
+        algorithmsManager.getActionsManager().setTickEstimator(gameElementDetection.getTickEstimator());
+
+        // Tell the running algorithm what happens in the game as it happens
+        gameElementDetection.addGameEventListener(algorithmsManager);
+    }
+
+    /**
+     * @return which game this is, 0 for the first
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return what detects this game's board
+     */
+    public GameElementDetection getGameElementDetection() {
+        return gameElementDetection;
+    }
+
+    /**
+     * @return what plays this game
+     */
+    public Algorithms getAlgorithms() {
+        return algorithmsManager;
+    }
+
+    /**
+     * @return what presses the keys in this game
+     */
+    public ActionsManager getActionsManager() {
+        return algorithmsManager.getActionsManager();
+    }
+
+    @Override
+    public String toString() {
+        return "game " + index + ", " + gameElementDetection.getBoardGeometry();
+    }
+}
@@ -4,11 +4,13 @@ import java.awt.Point;
 import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.ArrayList;
 import javax.imageio.ImageIO;
 
 import org.leonitousconforti.basilisk.Basilisk;
 import org.leonitousconforti.basilisk.Config;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.capture.BoardGeometry;
 
 import processing.core.PApplet;
 import processing.core.PImage;
@@ -24,8 +26,14 @@ public class Gui extends PApplet {
     // References for everything that is going to be drawn onto the screen
     private Point snakeHead;
     private Point applePos;
-    private ArrayList<Point> snakeParts;
+    private BitBoard snakeParts;
     private BufferedImage gameImg;
+    private BoardGeometry boardGeometry;
+
+    // The copy of the screen shot that is drawn, and the fingerprint of the board
+    // it was copied at
+    private PImage gameImgCopy;
+    private long gameImgFingerprint;
 
     // Images to be used
     private PImage settingsIcon;
@@ -50,10 +58,12 @@ public class Gui extends PApplet {
      * Updates the elements on the screen to their new positions.
      */
     public void update() {
-        applePos = basilisk.getGameElementDetection().getApplePos();
-        snakeHead = basilisk.getGameElementDetection().getSnakeHead();
-        snakeParts = basilisk.getGameElementDetection().getSnakeParts();
+        GameState state = basilisk.getGameElementDetection().getGameState();
+        applePos = state.getApplePos();
+        snakeHead = state.getSnakeHead();
+        snakeParts = state.getBody();
         gameImg = basilisk.getProcessedGameImage();
+        boardGeometry = basilisk.getGameElementDetection().getBoardGeometry();
     }
 
     // Processing settings method
@@ -82,9 +92,15 @@ public class Gui extends PApplet {
         // Update
         this.update();
 
-        // Draw the current screen shot
-        if (gameImg != null) {
-            image(new PImage(gameImg), 0, 0);
+        // Draw the current screen shot, only copying it again when the board has
+        // changed since the last one
+        long fingerprint = basilisk.getGameElementDetection().getFingerprint();
+        if ((gameImg != null) && ((gameImgCopy == null) || (fingerprint != gameImgFingerprint))) {
+            gameImgCopy = new PImage(gameImg);
+            gameImgFingerprint = fingerprint;
+        }
+        if (gameImgCopy != null) {
+            image(gameImgCopy, 0, 0);
         }
 
         // Draw settings icon
@@ -100,21 +116,25 @@ public class Gui extends PApplet {
         strokeWeight(6);
         fill(255);
         stroke(200, 100, 200);
-        ellipse(applePos.x * 32 + 28 + 16, applePos.y * 32 + 95 + 16, 32, 32);
+        float tileWidth = (float) boardGeometry.getTileWidth();
+        float tileHeight = (float) boardGeometry.getTileHeight();
+        ellipse(boardGeometry.getTileLeft(applePos.x) + tileWidth / 2,
+                boardGeometry.getTileTop(applePos.y) + tileHeight / 2, tileWidth, tileHeight);
 
         // Draw all the snake parts we found
         strokeWeight(6);
         fill(255);
         stroke(100, 100, 200);
 
-        for (Point p : snakeParts) {
-            rect(p.x * 32 + 28, p.y * 32 + 95, 32, 32);
+        for (int cell = snakeParts.nextSetCell(0); cell != -1; cell = snakeParts.nextSetCell(cell + 1)) {
+            rect(boardGeometry.getTileLeft(BitBoard.xOf(cell)), boardGeometry.getTileTop(BitBoard.yOf(cell)),
+                    tileWidth, tileHeight);
         }
 
         // Draw where we think the snake head is
         fill(0);
         noStroke();
-        rect(28 + snakeHead.x * 32, 95 + snakeHead.y * 32, 32, 32);
+        rect(boardGeometry.getTileLeft(snakeHead.x), boardGeometry.getTileTop(snakeHead.y), tileWidth, tileHeight);
     }
 
     // Processing mouse clicked
@@ -3,35 +3,41 @@ package org.leonitousconforti.basilisk.core;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Rectangle;
-import java.awt.Robot;
-import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import org.leonitousconforti.basilisk.capture.FrameArchiveWriter;
+import org.leonitousconforti.basilisk.capture.FrameSource;
+import org.leonitousconforti.basilisk.capture.RobotFrameSource;
 
 /**
  * Handles everything about recording the screen and resizing images.
  */
 public class ScreenCapture {
-    // Java robot handles interactions with user's screen
-    private Robot screenCapture;
-
-    // Rectangle where to record the screen
-    private Rectangle screenRect;
+    // Where the frames come from
+    private FrameSource frameSource;
 
     // BufferedImage for the screenshot of the user's screen.
     private BufferedImage captureFrame;
 
+    // Writes every frame to an archive while recording
+    private FrameArchiveWriter archiveWriter;
+
     /**
-     * Captures the screen.
+     * Captures the screen with the java Robot.
      */
     public ScreenCapture() {
-        // Attempt to initialize the java Robot
-        try {
-            screenCapture = new Robot();
-            screenRect = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
-        } catch (java.awt.AWTException e) {
-            System.out.println("critical error when initializing screen capture");
-            e.printStackTrace();
-        }
+        this(new RobotFrameSource());
+    }
+
+    /**
+     * Captures frames from any frame source.
+     *
+     * @param source where to get frames from
+     */
+    public ScreenCapture(FrameSource source) {
+        frameSource = source;
     }
 
     /**
@@ -39,15 +45,38 @@ public class ScreenCapture {
      * {@link #setPositionFromCords(int, int, int, int) setPositionFromCords} method
      * to set where to record the screen at
      *
-     * @return captureFrame
+     * @return captureFrame, or null if the frame source has run out of frames
      *
      * @see https://stackoverflow.com/questions/11514929/current-state-of-bufferedimage-vs-volatileimage
      */
-    public BufferedImage getFrame() {
-        captureFrame = screenCapture.createScreenCapture(screenRect);
+    public synchronized BufferedImage getFrame() {
+        captureFrame = frameSource.getFrame();
+
+        // Save the frame if recording
+        if ((archiveWriter != null) && (captureFrame != null)) {
+            try {
+                archiveWriter.write(captureFrame, System.nanoTime());
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+                stopRecording();
+            }
+        }
+
         return captureFrame;
     }
 
+    /**
+     * Hands a frame from {@link #getFrame() getFrame} back to the frame source
+     * once it is not used anymore, so the source can capture into it again.
+     *
+     * @param frame the frame to hand back, may be null
+     */
+    public void release(BufferedImage frame) {
+        if (frame != null) {
+            frameSource.release(frame);
+        }
+    }
+
     /**
      * Resizes an image to the desired width and height.
      *
@@ -78,8 +107,57 @@ public class ScreenCapture {
      * @param newHeight the height of the area to record
      */
     public void setPositionFromCords(int x1, int y1, int newLength, int newHeight) {
-        screenRect = new Rectangle(x1, y1, newLength, newHeight);
+        frameSource.setCaptureArea(new Rectangle(x1, y1, newLength, newHeight));
         System.out.println("changing screen recording location to: x1 - > " + x1 + ", y1 -> " + y1 + ", x2 -> "
                 + (x1 + newLength) + ", y2 -> " + (y1 + newHeight));
     }
+
+    /**
+     * Switches where frames come from, closing the old frame source.
+     *
+     * @param source the new frame source
+     */
+    public void setFrameSource(FrameSource source) {
+        FrameSource old = frameSource;
+        frameSource = source;
+        old.close();
+    }
+
+    /**
+     * @return where frames come from
+     */
+    public FrameSource getFrameSource() {
+        return frameSource;
+    }
+
+    /**
+     * Starts saving every captured frame to a frame archive that can be played
+     * back later with a {@link org.leonitousconforti.basilisk.capture.ReplayFrameSource
+     * ReplayFrameSource}. Frames are written as they are captured, which slows
+     * down the main loop.
+     *
+     * @param archive the file to save the frames to
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void startRecording(File archive) throws IOException {
+        stopRecording();
+        Rectangle area = frameSource.getCaptureArea();
+        archiveWriter = new FrameArchiveWriter(archive, area.width, area.height);
+    }
+
+    /**
+     * Stops saving captured frames.
+     */
+    public synchronized void stopRecording() {
+        if (archiveWriter == null) {
+            return;
+        }
+
+        try {
+            archiveWriter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        archiveWriter = null;
+    }
 }
@@ -0,0 +1,301 @@
+package org.leonitousconforti.basilisk.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+
+/**
+ * Records the last few thousand frames of a session into a fixed size memory
+ * mapped ring file, so whatever happened right before the snake died is always
+ * on disk. The capture loop only copies the frame's data into a preallocated
+ * staging slot and never waits, a background thread writes the slots into the
+ * file. If the background thread falls behind, frames are dropped instead of
+ * slowing down the capture loop.
+ *
+ * <p>
+ * The file starts with a header of {@link #HEADER_BYTES} bytes: the magic
+ * number, the version, the size of a slot, the number of slots, the frame width
+ * and the frame height as ints, then the sequence number of the next record as
+ * a long. Each slot holds one record: its sequence number and timestamp as
+ * longs, the head cell, the apple cell, and the issued action as ints (0 for
+ * none, then left, right, up, down), the sampled color of every tile as ints,
+ * the tile classes as bytes, and, if frames are being recorded, the frame's
+ * packed rgb pixels as ints. Record n is in slot n % slots. Everything is big
+ * endian.
+ * </p>
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public class SessionRecorder {
+    /**
+     * The first four bytes of every session file, "BSLR".
+     */
+    public static final int MAGIC = 0x42534C52;
+
+    /**
+     * The version of the session file layout.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header in bytes.
+     */
+    public static final int HEADER_BYTES = 32;
+
+    // Where in the header the next sequence number is
+    private static final int NEXT_SEQUENCE_OFFSET = 24;
+
+    // The fixed part of every slot, before the frame pixels
+    private static final int RECORD_FIXED_BYTES = 8 + 8 + 4 + 4 + 4 + 4 * BitBoard.CELLS + BitBoard.CELLS;
+
+    // How many frames can be waiting for the background thread
+    private static final int STAGING_SLOTS = 8;
+
+    // The ring file
+    private final RandomAccessFile file;
+    private final MappedByteBuffer ring;
+    private final int slotBytes;
+    private final int slots;
+    private final int frameWidth;
+    private final int frameHeight;
+
+    // Frames waiting to be written. The capture loop is the only one that moves
+    // the write index and the background thread is the only one that moves the
+    // read index
+    private final Staged[] staging;
+    private final AtomicLong stagingWriteIndex;
+    private final AtomicLong stagingReadIndex;
+
+    // Writes the staged frames into the ring file
+    private final Thread writer;
+    private volatile boolean running;
+
+    // The sequence number of the next record written to the ring
+    private long nextSequence;
+
+    // For statistics
+    private final AtomicLong droppedRecords;
+
+    /**
+     * A frame's worth of data waiting to be written.
+     */
+    private static final class Staged {
+        private long timestamp;
+        private int headCell;
+        private int appleCell;
+        private int action;
+        private final int[] tilePixels = new int[BitBoard.CELLS];
+        private final byte[] tileClasses = new byte[BitBoard.CELLS];
+        private final int[] framePixels;
+
+        private Staged(int framePixelCount) {
+            framePixels = new int[framePixelCount];
+        }
+    }
+
+    /**
+     * Creates or reuses a ring file and starts the background writer.
+     *
+     * @param ringFile  the file to record to, it is resized to fit the ring
+     * @param ringSlots how many frames to keep
+     * @param width     the width of the frames to record, or 0 to only record
+     *                  the tiles
+     * @param height    the height of the frames to record, or 0 to only record
+     *                  the tiles
+     * @throws IOException if the file can not be mapped
+     */
+    public SessionRecorder(File ringFile, int ringSlots, int width, int height) throws IOException {
+        slots = ringSlots;
+        frameWidth = width;
+        frameHeight = height;
+        slotBytes = RECORD_FIXED_BYTES + 4 * width * height;
+        long fileBytes = HEADER_BYTES + (long) slotBytes * slots;
+        if (fileBytes > Integer.MAX_VALUE) {
+            throw new IOException("a ring of " + slots + " slots of " + slotBytes + " bytes is too big to map");
+        }
+
+        // Map the ring and write the header
+        file = new RandomAccessFile(ringFile, "rw");
+        file.setLength(fileBytes);
+        ring = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+        ring.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slotBytes).putInt(12, slots).putInt(16, frameWidth)
+                .putInt(20, frameHeight).putLong(NEXT_SEQUENCE_OFFSET, 0);
+        nextSequence = 0;
+
+        // Preallocate the staging slots
+        staging = new Staged[STAGING_SLOTS];
+        for (int i = 0; i < STAGING_SLOTS; i++) {
+            staging[i] = new Staged(width * height);
+        }
+        stagingWriteIndex = new AtomicLong();
+        stagingReadIndex = new AtomicLong();
+        droppedRecords = new AtomicLong();
+
+        // Start writing
+        running = true;
+        writer = new Thread(this::drain, "Session Recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stages a frame to be recorded. This never blocks, if the background thread
+     * is behind the frame is dropped.
+     *
+     * @param timestampNanos when the frame was captured, from
+     *                       {@link System#nanoTime()}
+     * @param tilePixels     the sampled color of every tile
+     * @param tileClasses    what every tile was classified as
+     * @param state          what was detected in the frame
+     * @param action         the action issued this frame, or null if none was
+     * @param frame          the captured frame, only used when recording frames
+     */
+    public void record(long timestampNanos, int[] tilePixels, byte[] tileClasses, GameState state, Action action,
+            BufferedImage frame) {
+        long write = stagingWriteIndex.get();
+        if (write - stagingReadIndex.get() >= STAGING_SLOTS) {
+            droppedRecords.incrementAndGet();
+            return;
+        }
+
+        // Copy everything into the staging slot
+        Staged staged = staging[(int) (write % STAGING_SLOTS)];
+        staged.timestamp = timestampNanos;
+        staged.headCell = state.getHeadCell();
+        staged.appleCell = state.getAppleCell();
+        staged.action = encodeAction(action);
+        System.arraycopy(tilePixels, 0, staged.tilePixels, 0, BitBoard.CELLS);
+        System.arraycopy(tileClasses, 0, staged.tileClasses, 0, BitBoard.CELLS);
+        if ((staged.framePixels.length > 0) && (frame != null)) {
+            copyFrame(frame, staged.framePixels);
+        }
+
+        // Hand it to the background thread
+        stagingWriteIndex.lazySet(write + 1);
+    }
+
+    /**
+     * Copies the pixels of a frame, straight out of the raster when it stores
+     * packed ints and is as wide as the recorded frames.
+     */
+    private void copyFrame(BufferedImage frame, int[] destination) {
+        int w = Math.min(frameWidth, frame.getWidth());
+        int h = Math.min(frameHeight, frame.getHeight());
+        if ((w == frameWidth) && (frame.getRaster().getDataBuffer().getDataType() == DataBuffer.TYPE_INT)) {
+            frame.getRaster().getDataElements(0, 0, w, h, destination);
+        } else {
+            frame.getRGB(0, 0, w, h, destination, 0, frameWidth);
+        }
+    }
+
+    /**
+     * Runs on the background thread, writing staged frames into the ring.
+     */
+    private void drain() {
+        while (running) {
+            long read = stagingReadIndex.get();
+            if (read == stagingWriteIndex.get()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+
+            writeSlot(staging[(int) (read % STAGING_SLOTS)]);
+            stagingReadIndex.lazySet(read + 1);
+        }
+    }
+
+    /**
+     * Writes one record into the ring and moves the next sequence number along.
+     */
+    private void writeSlot(Staged staged) {
+        int offset = (int) (HEADER_BYTES + (nextSequence % slots) * slotBytes);
+        ring.putLong(offset, nextSequence);
+        ring.putLong(offset + 8, staged.timestamp);
+        ring.putInt(offset + 16, staged.headCell);
+        ring.putInt(offset + 20, staged.appleCell);
+        ring.putInt(offset + 24, staged.action);
+        offset += 28;
+
+        for (int pixel : staged.tilePixels) {
+            ring.putInt(offset, pixel);
+            offset += 4;
+        }
+        for (byte tileClass : staged.tileClasses) {
+            ring.put(offset++, tileClass);
+        }
+        for (int pixel : staged.framePixels) {
+            ring.putInt(offset, pixel);
+            offset += 4;
+        }
+
+        nextSequence++;
+        ring.putLong(NEXT_SEQUENCE_OFFSET, nextSequence);
+    }
+
+    /**
+     * Turns an action into the number stored in the ring.
+     */
+    private static int encodeAction(Action action) {
+        if (action == null) {
+            return 0;
+        }
+
+        switch (action.getDir()) {
+            case "left":
+                return 1;
+            case "right":
+                return 2;
+            case "up":
+                return 3;
+            case "down":
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Stops the background thread, writes whatever is still staged, and flushes
+     * the ring to disk.
+     */
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Write what is left
+        while (stagingReadIndex.get() != stagingWriteIndex.get()) {
+            long read = stagingReadIndex.get();
+            writeSlot(staging[(int) (read % STAGING_SLOTS)]);
+            stagingReadIndex.set(read + 1);
+        }
+
+        ring.force();
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return how many frames were dropped because the background thread was
+     *         behind
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+}
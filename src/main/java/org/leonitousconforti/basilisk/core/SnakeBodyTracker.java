@@ -0,0 +1,321 @@
+package org.leonitousconforti.basilisk.core;
+
+import java.util.Arrays;
+
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+
+/**
+ * Keeps track of the snake's body in order from head to tail. The body is
+ * stored as a ring buffer of cell indexes, so when the snake moves one cell the
+ * new head is pushed on the front and the vacated tail is popped off the back
+ * no matter how long the snake is. When frames are missed and the head moves
+ * more than one cell between two frames, the new cells are followed from the
+ * old head in the order the head went through them. The whole body is only
+ * walked again when the change between two frames can not be explained by the
+ * snake moving.
+ */
+public class SnakeBodyTracker {
+    // The shortest snake that can go around in a loop and move onto its own tail
+    private static final int MIN_LOOP_LENGTH = 4;
+
+    // The ring buffer of cells, big enough to hold every cell on the board. The
+    // capacity is a power of two so wrapping around is a mask
+    private static final int CAPACITY = Integer.highestOneBit(BitBoard.CELLS - 1) << 1;
+    private static final int MASK = CAPACITY - 1;
+    private final int[] ring;
+
+    // Where the head is in the ring and how many cells come after it
+    private int headIndex;
+    private int length;
+
+    // Every cell in the ring, used to work out what changed
+    private final BitBoard tracked;
+
+    // Scratch space for working out what changed and for rescanning
+    private final BitBoard added;
+    private final BitBoard removed;
+    private final int[] previousNext;
+    private final BitBoard visited;
+    private final BitBoard walkFrom;
+    private final BitBoard walkTo;
+    private final int[] path;
+
+    // For statistics
+    private long rescans;
+
+    /**
+     * Keeps track of the snake's body in order from head to tail.
+     */
+    public SnakeBodyTracker() {
+        ring = new int[CAPACITY];
+        headIndex = 0;
+        length = 0;
+        tracked = new BitBoard();
+        added = new BitBoard();
+        removed = new BitBoard();
+        previousNext = new int[BitBoard.CELLS];
+        visited = new BitBoard();
+        walkFrom = new BitBoard();
+        walkTo = new BitBoard();
+        path = new int[BitBoard.CELLS];
+        rescans = 0;
+    }
+
+    /**
+     * Updates the body with the snake parts found in a new frame. If the new
+     * cells make a path starting next to the head, and the only cells that went
+     * away are at most as many cells off the tail, the snake moved that many
+     * cells and the update only touches the cells that changed. Otherwise the
+     * body is rebuilt by walking it from the head.
+     *
+     * @param body     every cell with a snake part on it this frame
+     * @param headHint where the game element detection thinks the head is, used
+     *                 when the head can not be worked out from the change
+     * @return if the body changed
+     */
+    public boolean update(BitBoard body, int headHint) {
+        // Work out what changed
+        added.copyFrom(body).andNot(tracked);
+        removed.copyFrom(tracked).andNot(body);
+        int numberAdded = added.popCount();
+        int numberRemoved = removed.popCount();
+
+        // The snake has not moved since the last frame
+        if ((numberAdded == 0) && (numberRemoved == 0)) {
+            return false;
+        }
+
+        // The snake moved, one cell per new cell, and grew if the tail did not move
+        // as far as the head did
+        if ((length > 0) && (numberAdded > 0) && (numberRemoved <= numberAdded) && isTail(removed, numberRemoved)
+                && followPath(numberAdded)) {
+            for (int i = 0; i < numberRemoved; i++) {
+                tracked.clear(getTailCell());
+                length--;
+            }
+            for (int i = 0; i < numberAdded; i++) {
+                pushHead(path[i]);
+            }
+            return true;
+        }
+
+        // Anything else means we lost track, start over
+        rescan(body, numberAdded == 1 ? added.nextSetCell(0) : pickHead(body, headHint));
+        return true;
+    }
+
+    /**
+     * Checks if some cells are exactly the last few cells of the body.
+     */
+    private boolean isTail(BitBoard cells, int count) {
+        if (count > length) {
+            return false;
+        }
+        for (int i = 1; i <= count; i++) {
+            if (!cells.get(getCell(length - i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Follows the new cells from the head, one neighbor at a time, into the path.
+     * Fails if at any point there is not exactly one way to go.
+     */
+    private boolean followPath(int count) {
+        visited.clear();
+        int cell = getHeadCell();
+        for (int i = 0; i < count; i++) {
+            walkFrom.clear();
+            walkFrom.set(cell);
+            walkFrom.neighborsInto(walkTo).and(added).andNot(visited);
+            if (walkTo.popCount() != 1) {
+                return false;
+            }
+            cell = walkTo.nextSetCell(0);
+            visited.set(cell);
+            path[i] = cell;
+        }
+        return true;
+    }
+
+    /**
+     * Picks the head from several new cells when rescanning. The head is at an end
+     * of the body, so if only one of the new cells has just one snake part next
+     * to it, that is the head. Otherwise, like when the whole body is new, both
+     * ends look the same and the hint decides.
+     */
+    private int pickHead(BitBoard body, int headHint) {
+        int head = -1;
+        for (int cell = added.nextSetCell(0); cell != -1; cell = added.nextSetCell(cell + 1)) {
+            walkFrom.clear();
+            walkFrom.set(cell);
+            if (walkFrom.neighborsInto(walkTo).and(body).popCount() != 1) {
+                continue;
+            }
+            if (head != -1) {
+                return headHint;
+            }
+            head = cell;
+        }
+        return head != -1 ? head : headHint;
+    }
+
+    /**
+     * Rebuilds the body by walking from the head through neighboring snake parts.
+     * Where the walk could go more than one way, it follows the order from before
+     * if it can.
+     *
+     * @param body every cell with a snake part on it
+     * @param head the cell to start walking from
+     */
+    private void rescan(BitBoard body, int head) {
+        rescans++;
+
+        // Remember what came after each cell last time
+        Arrays.fill(previousNext, -1);
+        for (int i = 0; i < length - 1; i++) {
+            previousNext[getCell(i)] = getCell(i + 1);
+        }
+
+        // Start over
+        headIndex = 0;
+        length = 0;
+        visited.clear();
+
+        // Walk the body until we run out of unvisited neighbors
+        int cell = body.get(head) ? head : body.nextSetCell(0);
+        while (cell != -1) {
+            ring[length++] = cell;
+            visited.set(cell);
+            cell = nextUnvisitedNeighbor(body, cell);
+        }
+
+        // Track every snake part, even ones the walk could not reach, so they do not
+        // look new again next frame
+        tracked.copyFrom(body);
+    }
+
+    /**
+     * Picks which snake part comes after a cell while walking the body.
+     */
+    private int nextUnvisitedNeighbor(BitBoard body, int cell) {
+        // Prefer the cell that came after this one last time
+        int preferred = previousNext[cell];
+        if ((preferred != -1) && body.get(preferred) && !visited.get(preferred)) {
+            return preferred;
+        }
+
+        // Otherwise take any neighboring snake part that has not been visited yet
+        walkFrom.clear();
+        walkFrom.set(cell);
+        return walkFrom.neighborsInto(walkTo).and(body).andNot(visited).nextSetCell(0);
+    }
+
+    /**
+     * Checks if the head is right next to the tail, so the snake can move onto
+     * the cell its tail is moving off of. A snake doing that is on exactly the
+     * same cells after it moves, so {@link #update(BitBoard, int) update} can not
+     * see it move.
+     *
+     * @return if the snake is long enough to go around in a loop and the tail is
+     *         next to the head
+     */
+    public boolean isChasingTail() {
+        if (length < MIN_LOOP_LENGTH) {
+            return false;
+        }
+        int head = getHeadCell();
+        int tail = getTailCell();
+        int dx = Math.abs(BitBoard.xOf(head) - BitBoard.xOf(tail));
+        int dy = Math.abs(BitBoard.yOf(head) - BitBoard.yOf(tail));
+        return dx + dy == 1;
+    }
+
+    /**
+     * Moves the head onto the tail's cell, for when the snake is known to have
+     * moved without the cells it is on changing. The caller has to work out that
+     * it moved, from how long it has been since it last moved.
+     *
+     * @return if the snake was {@link #isChasingTail() chasing its tail} and
+     *         moved, otherwise nothing changes
+     */
+    public boolean chaseTail() {
+        if (!isChasingTail()) {
+            return false;
+        }
+        int tail = getTailCell();
+        length--;
+        pushHead(tail);
+        return true;
+    }
+
+    /**
+     * Pushes a new head on the front of the ring.
+     */
+    private void pushHead(int cell) {
+        headIndex = (headIndex - 1) & MASK;
+        ring[headIndex] = cell;
+        tracked.set(cell);
+        length++;
+    }
+
+    /**
+     * Forgets the body, the next update will rescan.
+     */
+    public void reset() {
+        headIndex = 0;
+        length = 0;
+        tracked.clear();
+    }
+
+    /**
+     * @return the cell index of the head, or -1 if there is no body
+     */
+    public int getHeadCell() {
+        return length == 0 ? -1 : ring[headIndex];
+    }
+
+    /**
+     * @return the cell index of the tail, or -1 if there is no body
+     */
+    public int getTailCell() {
+        return length == 0 ? -1 : getCell(length - 1);
+    }
+
+    /**
+     * @return the number of cells in the body, including the head
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets a cell of the body in order.
+     *
+     * @param i how many cells back from the head, 0 is the head
+     * @return the cell index
+     */
+    public int getCell(int i) {
+        return ring[(headIndex + i) & MASK];
+    }
+
+    /**
+     * @return a new array of the body's cells in order from head to tail
+     */
+    public int[] toArray() {
+        int[] cells = new int[length];
+        for (int i = 0; i < length; i++) {
+            cells[i] = getCell(i);
+        }
+        return cells;
+    }
+
+    /**
+     * @return how many times the body had to be rebuilt from scratch
+     */
+    public long getRescans() {
+        return rescans;
+    }
+}
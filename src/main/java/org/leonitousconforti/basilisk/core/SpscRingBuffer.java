@@ -0,0 +1,237 @@
+package org.leonitousconforti.basilisk.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue between exactly one producer thread and exactly one consumer
+ * thread. Neither side ever takes a lock, the producer moves the tail and the
+ * consumer moves the head. Consumers that only care about the newest item can
+ * {@link #pollLatest() pollLatest} to skip everything older, and producers can
+ * {@link #offerReplacing(Object, Consumer) offerReplacing} so a full queue
+ * throws away its oldest item instead of the newest. The producer only ever
+ * moves the head to throw away the oldest item, and whichever side moves the
+ * head past an item first is the one that gets it.
+ *
+ * @param <T> the type of the items in the queue
+ */
+public class SpscRingBuffer<T> {
+    // How many times a waiting consumer yields before it starts parking
+    private static final int YIELDS_BEFORE_PARKING = 64;
+
+    // How long a waiting consumer parks for at a time
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    // The items, the capacity is a power of two so wrapping around is a mask. A
+    // slot keeps its item until it is written over, clearing it once it is taken
+    // could clear the item the producer just wrote over it
+    private final AtomicReferenceArray<T> items;
+    private final int mask;
+
+    // The next slot to read and the next slot to write
+    private final AtomicLong head;
+    private final AtomicLong tail;
+
+    // For statistics
+    private final AtomicLong dropped;
+    private final AtomicLong skipped;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param minimumCapacity how many items the queue should hold at least, it
+     *                        is rounded up to a power of two
+     */
+    public SpscRingBuffer(int minimumCapacity) {
+        int capacity = minimumCapacity <= 1 ? 1 : Integer.highestOneBit(minimumCapacity - 1) << 1;
+        items = new AtomicReferenceArray<T>(capacity);
+        mask = capacity - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+        dropped = new AtomicLong();
+        skipped = new AtomicLong();
+    }
+
+    /**
+     * Adds an item to the queue, only call this from the producer thread.
+     *
+     * @param item the item to add, may not be null
+     * @return if it was added, false if the queue was full and the item was
+     *         dropped
+     */
+    public boolean offer(T item) {
+        long t = tail.get();
+        if (t - head.get() >= items.length()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        // Write the item before publishing the new tail
+        items.lazySet((int) t & mask, item);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Adds an item to the queue, throwing away the oldest item to make room if the
+     * queue is full, only call this from the producer thread. A consumer that
+     * {@link #pollLatest() takes the newest item} always gets the item offered
+     * last, however far behind it is.
+     *
+     * @param item       the item to add, may not be null
+     * @param onReplaced gets the item thrown away to make room, may be null
+     */
+    public void offerReplacing(T item, Consumer<? super T> onReplaced) {
+        long t = tail.get();
+        for (long h = head.get(); t - h >= items.length(); h = head.get()) {
+            // The consumer may take the oldest item first, then there is room
+            T oldest = items.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1)) {
+                dropped.incrementAndGet();
+                if (onReplaced != null) {
+                    onReplaced.accept(oldest);
+                }
+            }
+        }
+
+        items.lazySet((int) t & mask, item);
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Takes the oldest item in the queue, only call this from the consumer
+     * thread.
+     *
+     * @return the oldest item, or null if the queue is empty
+     */
+    public T poll() {
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) {
+                return null;
+            }
+
+            // The producer may have thrown the item away to make room, then try the
+            // next one
+            T item = items.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1)) {
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Takes the newest item in the queue and throws away everything older, only
+     * call this from the consumer thread.
+     *
+     * @return the newest item, or null if the queue is empty
+     */
+    public T pollLatest() {
+        return pollLatest(null);
+    }
+
+    /**
+     * Takes the newest item in the queue and hands everything older to a
+     * callback before throwing it away, only call this from the consumer thread.
+     *
+     * @param onSkipped gets every item that is thrown away, oldest first, may be
+     *                  null
+     * @return the newest item, or null if the queue is empty
+     */
+    public T pollLatest(Consumer<? super T> onSkipped) {
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) {
+                return null;
+            }
+
+            // Take the items one at a time from the oldest, the producer may throw
+            // the oldest away to make room first, then try the next one. The
+            // producer never throws away the last item, so once there is a newer
+            // item this one can be skipped
+            T item = items.get((int) h & mask);
+            if (!head.compareAndSet(h, h + 1)) {
+                continue;
+            }
+            if (tail.get() == h + 1) {
+                return item;
+            }
+            skipped.incrementAndGet();
+            if (onSkipped != null) {
+                onSkipped.accept(item);
+            }
+        }
+    }
+
+    /**
+     * Waits until there is an item in the queue, then takes it. Waiting spins
+     * for a bit before parking, so a hand-off right away is fast.
+     *
+     * @param latest if only the newest item should be taken, see
+     *               {@link #pollLatest() pollLatest}
+     * @return the item, or null if the thread was interrupted while waiting
+     */
+    public T take(boolean latest) {
+        return take(latest, null);
+    }
+
+    /**
+     * Waits until there is an item in the queue, then takes it, the same as
+     * {@link #take(boolean) take} but handing the items that were skipped to a
+     * callback.
+     *
+     * @param latest    if only the newest item should be taken, see
+     *                  {@link #pollLatest(Consumer) pollLatest}
+     * @param onSkipped gets every item that is skipped, may be null
+     * @return the item, or null if the thread was interrupted while waiting
+     */
+    public T take(boolean latest, Consumer<? super T> onSkipped) {
+        int idle = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            T item = latest ? pollLatest(onSkipped) : poll();
+            if (item != null) {
+                return item;
+            }
+
+            if (idle++ < YIELDS_BEFORE_PARKING) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return how many items are waiting in the queue right now
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return the most items the queue can hold
+     */
+    public int capacity() {
+        return items.length();
+    }
+
+    /**
+     * @return how many items were dropped because the queue was full, either the
+     *         item offered or the oldest item it replaced
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return how many items were thrown away by {@link #pollLatest()
+     *         pollLatest} because a newer item was there
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+}
@@ -0,0 +1,164 @@
+package org.leonitousconforti.basilisk.core;
+
+/**
+ * Learns how often the game moves the snake and when the next move is due,
+ * from the times the head was seen to move. The period is a moving average of
+ * the time between moves, and the phase is the time of the last move. Frames
+ * are only captured every so often, so a move is seen a little after it really
+ * happened, the estimate is only as good as the capture rate. Once the
+ * estimate is trusted, moves that do not fit a whole number of periods, or
+ * that keep taking more periods than the head moved cells, mean the game
+ * changed speed, and the period is learned again.
+ */
+public class TickEstimator {
+    // How much of each new measurement goes into the moving averages
+    private static final double SMOOTHING = 0.2;
+
+    // How many moves have to be seen before the estimate is trusted
+    private static final int MIN_SAMPLES = 8;
+
+    // How much jitter, as a fraction of the period, is too much to trust
+    private static final double MAX_JITTER = 0.25;
+
+    // How many moves in a row can take longer than the cells the head moved
+    // before the game is taken to have slowed down instead of paused
+    private static final int MAX_STRETCHED_MOVES = 3;
+
+    // The moving averages, in nanoseconds
+    private double periodNanos;
+    private double jitterNanos;
+
+    // When the head was last seen to move, how many moves have been seen, and
+    // how many moves in a row took longer than the cells the head moved
+    private long lastMoveNanos;
+    private int samples;
+    private int stretchedMoves;
+
+    /**
+     * Starts with no estimate.
+     */
+    public TickEstimator() {
+        reset();
+    }
+
+    /**
+     * Forgets everything, for when the game restarts or changes speed.
+     */
+    public synchronized void reset() {
+        periodNanos = 0;
+        jitterNanos = 0;
+        lastMoveNanos = -1;
+        samples = 0;
+        stretchedMoves = 0;
+    }
+
+    /**
+     * Tells the estimator the head moved.
+     *
+     * @param timestampNanos when the frame the move was seen in was captured,
+     *                       from {@link System#nanoTime()}
+     * @param cellsMoved     how many cells the head moved since it was last seen,
+     *                       more than one when frames were missed
+     */
+    public synchronized void onHeadMoved(long timestampNanos, int cellsMoved) {
+        if ((lastMoveNanos == -1) || (cellsMoved <= 0)) {
+            lastMoveNanos = timestampNanos;
+            return;
+        }
+
+        long elapsed = timestampNanos - lastMoveNanos;
+        lastMoveNanos = timestampNanos;
+
+        // A gap much longer than one period was a pause, not a slow move. Count
+        // how many periods fit so the average does not get dragged up. A gap that
+        // is not about a whole number of periods, or gaps that keep being longer
+        // than the head moved, are a new game speed, so start learning it again
+        int ticks = cellsMoved;
+        if (samples >= MIN_SAMPLES) {
+            double periods = elapsed / periodNanos;
+            long wholePeriods = Math.round(periods);
+            stretchedMoves = wholePeriods > cellsMoved ? stretchedMoves + 1 : 0;
+            if ((Math.abs(periods - wholePeriods) > MAX_JITTER) || (stretchedMoves > MAX_STRETCHED_MOVES)) {
+                samples = 0;
+                stretchedMoves = 0;
+            } else {
+                ticks = (int) Math.max(ticks, wholePeriods);
+            }
+        }
+        double measured = (double) elapsed / ticks;
+
+        // Update the moving averages, the first measurement is taken as is
+        if (samples == 0) {
+            periodNanos = measured;
+            jitterNanos = 0;
+        } else {
+            jitterNanos += SMOOTHING * (Math.abs(measured - periodNanos) - jitterNanos);
+            periodNanos += SMOOTHING * (measured - periodNanos);
+        }
+        samples++;
+    }
+
+    /**
+     * @return if enough moves have been seen, regularly enough, to trust the
+     *         predictions
+     */
+    public synchronized boolean isLocked() {
+        return (samples >= MIN_SAMPLES) && (jitterNanos <= periodNanos * MAX_JITTER);
+    }
+
+    /**
+     * Predicts how many times the snake moves between two times, the first of
+     * which should be when the last move or a later frame was seen.
+     *
+     * @param fromNanos the first time, from {@link System#nanoTime()}
+     * @param toNanos   the second time, from {@link System#nanoTime()}
+     * @return how many moves happen in between, or 0 if there is no estimate yet
+     */
+    public synchronized int movesBetween(long fromNanos, long toNanos) {
+        if ((samples == 0) || (toNanos <= fromNanos)) {
+            return 0;
+        }
+
+        long from = (long) Math.floor((fromNanos - lastMoveNanos) / periodNanos);
+        long to = (long) Math.floor((toNanos - lastMoveNanos) / periodNanos);
+        return (int) (to - from);
+    }
+
+    /**
+     * Predicts when the next move after a time happens.
+     *
+     * @param afterNanos the time, from {@link System#nanoTime()}
+     * @return when the next move is due, or -1 if there is no estimate yet
+     */
+    public synchronized long nextMoveAfter(long afterNanos) {
+        if (samples == 0) {
+            return -1;
+        }
+
+        long ticks = (long) Math.floor((afterNanos - lastMoveNanos) / periodNanos) + 1;
+        return lastMoveNanos + (long) Math.ceil(ticks * periodNanos);
+    }
+
+    /**
+     * @return the time between moves in nanoseconds, or 0 if there is no estimate
+     *         yet
+     */
+    public synchronized double getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * @return how far off from the period moves usually are, in nanoseconds
+     */
+    public synchronized double getJitterNanos() {
+        return jitterNanos;
+    }
+
+    /**
+     * @return when the head was last seen to move, or -1 if it has not been seen
+     *         to move yet
+     */
+    public synchronized long getLastMoveNanos() {
+        return lastMoveNanos;
+    }
+}
@@ -1,6 +1,7 @@
 package org.leonitousconforti.basilisk.core;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.Arrays;
 import java.util.List;
@@ -9,6 +10,7 @@ import java.util.stream.Collectors;
 import org.leonitousconforti.basilisk.Basilisk;
 import org.leonitousconforti.basilisk.Config;
 import org.leonitousconforti.basilisk.detectors.Detector;
+import org.leonitousconforti.basilisk.detectors.ProbePattern;
 
 import de.milchreis.uibooster.UiBooster;
 import de.milchreis.uibooster.components.Form;
@@ -32,6 +34,9 @@ public class UiSettingsForms {
     private final Form algorithmSettings;
     private FilledForm profileCreationWizard;
 
+    // The frame archive being recorded to, null when not recording
+    private File recordingArchive;
+
     /**
      * Creates the UI settings forms.
      *
@@ -68,7 +73,47 @@ public class UiSettingsForms {
                 // Algorithm form
                 .addButton("Algorithm Settings", "additional algorithm settings", () -> getAlgorithmSettings().run())
                 // Open play snake page button
-                .addButton("Google Snake", "open the play snake page", () -> basilisk.openGoogleSnakeWindow());
+                .addButton("Google Snake", "open the play snake page", () -> basilisk.openGoogleSnakeWindow())
+                // Find the board on the screen again
+                .addButton("Calibrate Board", "find the game board on the screen", () -> calibrateBoard())
+                // Record frames to replay later
+                .addButton("Start / Stop Frame Recording", "record frames to replay later", () -> toggleRecording());
+    }
+
+    /**
+     * Finds the game board on the screen again, for when the game window moved.
+     */
+    private void calibrateBoard() {
+        boolean wasPaused = Config.paused;
+        Config.paused = true;
+        basilisk.useBoardGeometry(basilisk.calibrateBoard());
+        Config.paused = wasPaused;
+        uiBooster.showInfoDialog("Board is at " + gameElmDetection.getBoardGeometry().getCaptureArea());
+    }
+
+    /**
+     * Starts recording captured frames to a new frame archive in the working
+     * directory, or stops the recording in progress.
+     */
+    private void toggleRecording() {
+        ScreenCapture screenCapture = basilisk.getScreenCapture();
+
+        // Stop the recording in progress
+        if (recordingArchive != null) {
+            screenCapture.stopRecording();
+            uiBooster.showInfoDialog("Saved frame recording to " + recordingArchive.getAbsolutePath());
+            recordingArchive = null;
+            return;
+        }
+
+        // Start a new one
+        File archive = new File("basilisk-" + System.currentTimeMillis() + ".frames");
+        try {
+            screenCapture.startRecording(archive);
+            recordingArchive = archive;
+        } catch (IOException e) {
+            uiBooster.showErrorDialog("Could not start recording.\n" + e.getMessage(), "Error!");
+        }
     }
 
     /**
@@ -137,6 +182,20 @@ public class UiSettingsForms {
                         gameElmDetection.setSelectedThingToEatDetector(selection);
                     }
                 })
+                // Button for using every loaded profile at once
+                .addButton("Toggle palette classification", "use all loaded profiles at once", () -> {
+                    gameElmDetection.setPaletteClassification(!gameElmDetection.isPaletteClassification());
+                    uiBooster.showInfoDialog("Palette classification is now "
+                            + (gameElmDetection.isPaletteClassification() ? "on" : "off"));
+                })
+                // Button for sampling more of every tile
+                .addButton("Select probe pattern", "how many pixels of every tile vote", () -> {
+                    String selection = uiBooster.showSelectionDialog("Select how many pixels to sample per tile",
+                            "Probe Pattern", Arrays.asList("1", "5", "9"));
+                    if (selection != null) {
+                        gameElmDetection.setProbePattern(ProbePattern.withProbes(Integer.parseInt(selection)));
+                    }
+                })
                 // Add some spacing
                 .addLabel("")
                 // Make new configuration profile button
@@ -0,0 +1,223 @@
+package org.leonitousconforti.basilisk.detectors;
+
+import java.util.Arrays;
+
+/**
+ * Maps every color to a {@link TileClass tile class} and a confidence with a
+ * single array load. Colors are quantized to 5 bits per channel, so the whole
+ * table is 32768 entries and small enough to stay in cache while a frame is
+ * being classified. Each entry packs the tile class into the low byte and the
+ * confidence into the byte above it, so a {@link TileKernel} can look up whole
+ * vectors of pixels at once.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public class ColorLookupTable {
+    /**
+     * The number of bits in a quantized color key.
+     */
+    public static final int KEY_BITS = 15;
+
+    /**
+     * The number of quantized color keys.
+     */
+    public static final int NUMBER_OF_KEYS = 1 << KEY_BITS;
+
+    /**
+     * The highest confidence a classification can have.
+     */
+    public static final int MAX_CONFIDENCE = 255;
+
+    /**
+     * How far away, in rgb space, a color can be from the closest palette color
+     * and still be classified as that palette color.
+     */
+    public static final int MAX_PALETTE_DISTANCE = 64;
+
+    // The tile class and confidence for every quantized color, packed together
+    private final int[] entries;
+
+    /**
+     * Creates a lookup table where every color is classified as
+     * {@link TileClass#EMPTY empty} with full confidence.
+     */
+    public ColorLookupTable() {
+        entries = new int[NUMBER_OF_KEYS];
+        Arrays.fill(entries, entryOf(TileClass.EMPTY, MAX_CONFIDENCE));
+    }
+
+    /**
+     * Creates a lookup table that classifies every color as the class of the
+     * closest detector color in the palette. The confidence is how much closer
+     * the best detector is than the closest detector of a different class, and
+     * colors too far away from every detector are classified as
+     * {@link TileClass#EMPTY empty} with no confidence.
+     *
+     * @param palette        the detectors to classify with
+     * @param paletteClasses the tile class of each detector in the palette
+     * @return the compiled lookup table
+     */
+    public static ColorLookupTable palette(Detector[] palette, byte[] paletteClasses) {
+        ColorLookupTable table = new ColorLookupTable();
+
+        // Unpack the palette colors once
+        int[] paletteRgb = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            paletteRgb[i] = palette[i].getColor().getRGB();
+        }
+
+        for (int key = 0; key < NUMBER_OF_KEYS; key++) {
+            int rgb = colorOfKey(key);
+
+            // Find the closest detector
+            int best = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < palette.length; i++) {
+                int distance = distanceSquared(rgb, paletteRgb[i]);
+                if (distance < bestDistance) {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+
+            // Nothing in the palette is close enough
+            if ((best == -1) || (bestDistance > MAX_PALETTE_DISTANCE * MAX_PALETTE_DISTANCE)) {
+                table.entries[key] = entryOf(TileClass.EMPTY, 0);
+                continue;
+            }
+
+            // Find the closest detector that would give a different answer
+            int runnerUpDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < palette.length; i++) {
+                if (paletteClasses[i] != paletteClasses[best]) {
+                    runnerUpDistance = Math.min(runnerUpDistance, distanceSquared(rgb, paletteRgb[i]));
+                }
+            }
+
+            table.entries[key] = entryOf(paletteClasses[best], confidenceFromDistances(bestDistance, runnerUpDistance));
+        }
+
+        return table;
+    }
+
+    /**
+     * The squared euclidean distance between two packed rgb colors.
+     */
+    private static int distanceSquared(int rgb1, int rgb2) {
+        int dr = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+        int dg = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+        int db = (rgb1 & 0xFF) - (rgb2 & 0xFF);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    /**
+     * Turns the distance to the best and runner up detectors into a confidence.
+     * Right on top of the best detector is full confidence and half way between
+     * the two is no confidence.
+     */
+    private static int confidenceFromDistances(int bestDistanceSquared, int runnerUpDistanceSquared) {
+        if (runnerUpDistanceSquared == Integer.MAX_VALUE) {
+            return MAX_CONFIDENCE;
+        }
+
+        double best = Math.sqrt(bestDistanceSquared);
+        double runnerUp = Math.sqrt(runnerUpDistanceSquared);
+        return (int) Math.round(MAX_CONFIDENCE * (runnerUp - best) / (runnerUp + best));
+    }
+
+    /**
+     * Quantizes a packed rgb color into its lookup key by keeping the top 5 bits
+     * of each channel.
+     *
+     * @param rgb the packed rgb color, the alpha channel is ignored
+     * @return the key for the color
+     */
+    public static int keyOf(int rgb) {
+        return ((rgb >> 9) & 0x7C00) | ((rgb >> 6) & 0x03E0) | ((rgb >> 3) & 0x001F);
+    }
+
+    /**
+     * Converts a lookup key back into the packed rgb color at the center of the
+     * range of colors that share that key.
+     *
+     * @param key the lookup key
+     * @return the packed rgb color
+     */
+    public static int colorOfKey(int key) {
+        return ((key & 0x7C00) << 9) | ((key & 0x03E0) << 6) | ((key & 0x001F) << 3) | 0x040404;
+    }
+
+    /**
+     * Classifies a color.
+     *
+     * @param rgb the packed rgb color
+     * @return the tile class for the color
+     */
+    public byte classify(int rgb) {
+        return classOfEntry(entries[keyOf(rgb)]);
+    }
+
+    /**
+     * How confident the classification of a color is.
+     *
+     * @param rgb the packed rgb color
+     * @return the confidence, from 0 to {@link #MAX_CONFIDENCE}
+     */
+    public int confidence(int rgb) {
+        return confidenceOfEntry(entries[keyOf(rgb)]);
+    }
+
+    /**
+     * @return the packed entry for every key, see {@link #classOfEntry(int)
+     *         classOfEntry} and {@link #confidenceOfEntry(int)
+     *         confidenceOfEntry}. This is the live table, do not modify it
+     */
+    public int[] getEntries() {
+        return entries;
+    }
+
+    /**
+     * Packs a tile class and a confidence into a table entry.
+     *
+     * @param tileClass  the tile class
+     * @param confidence the confidence, from 0 to {@link #MAX_CONFIDENCE}
+     * @return the packed entry
+     */
+    public static int entryOf(byte tileClass, int confidence) {
+        return (tileClass & 0xFF) | (confidence << 8);
+    }
+
+    /**
+     * @param entry a packed table entry
+     * @return the tile class in the entry
+     */
+    public static byte classOfEntry(int entry) {
+        return (byte) entry;
+    }
+
+    /**
+     * @param entry a packed table entry
+     * @return the confidence in the entry, from 0 to {@link #MAX_CONFIDENCE}
+     */
+    public static int confidenceOfEntry(int entry) {
+        return (entry >>> 8) & MAX_CONFIDENCE;
+    }
+
+    /**
+     * Sets the tile class of every key in a compiled detector key set.
+     *
+     * @param keys      the key set, from {@link Detector#getHueKeys()
+     *                  getHueKeys} or {@link Detector#getColorKeys()
+     *                  getColorKeys}
+     * @param tileClass the tile class to give those keys
+     */
+    public void mark(long[] keys, byte tileClass) {
+        for (int word = 0; word < keys.length; word++) {
+            long bits = keys[word];
+            while (bits != 0) {
+                int key = (word << 6) + Long.numberOfTrailingZeros(bits);
+                entries[key] = entryOf(tileClass, confidenceOfEntry(entries[key]));
+                bits &= bits - 1;
+            }
+        }
+    }
+}
@@ -8,10 +8,20 @@ import java.awt.image.BufferedImage;
  * A detector profile to be used by the game element detection.
  */
 public class Detector {
+    /**
+     * How far away a hue can be from this detector's hue and still be detected.
+     */
+    public static final float HUE_TOLERANCE = 2;
+
     private final Color color;
     private final float hue;
     private final String name;
 
+    // Compiled sets of quantized color keys this detector matches, built the
+    // first time they are asked for
+    private long[] hueKeys;
+    private long[] colorKeys;
+
     /**
      * Creates a new Detector profile to be used by the game element detection.
      *
@@ -64,6 +74,55 @@ public class Detector {
         return this.hue;
     }
 
+    /**
+     * Compiles this detector into the set of quantized colors whose hue is within
+     * {@link #HUE_TOLERANCE} of this detector's hue, plus the quantized version of
+     * this detector's color. The set is only built once.
+     *
+     * @return a bit set of {@link ColorLookupTable} keys
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public synchronized long[] getHueKeys() {
+        if (hueKeys == null) {
+            long[] keys = new long[ColorLookupTable.NUMBER_OF_KEYS >> 6];
+            float[] hsb = new float[3];
+
+            // Check the color at the center of every key
+            for (int key = 0; key < ColorLookupTable.NUMBER_OF_KEYS; key++) {
+                int rgb = ColorLookupTable.colorOfKey(key);
+                Color.RGBtoHSB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, hsb);
+                if (Math.abs(hsb[0] * 255 - hue) < HUE_TOLERANCE) {
+                    keys[key >> 6] |= 1L << key;
+                }
+            }
+
+            // The center of a key can have a very different hue than the colors in
+            // it when they are nearly gray, so always match this detector's own color
+            int own = ColorLookupTable.keyOf(color.getRGB());
+            keys[own >> 6] |= 1L << own;
+            hueKeys = keys;
+        }
+
+        return hueKeys;
+    }
+
+    /**
+     * Compiles this detector into the set containing just the quantized version
+     * of this detector's color. The set is only built once.
+     *
+     * @return a bit set of {@link ColorLookupTable} keys
+     */
+    public synchronized long[] getColorKeys() {
+        if (colorKeys == null) {
+            long[] keys = new long[ColorLookupTable.NUMBER_OF_KEYS >> 6];
+            int key = ColorLookupTable.keyOf(color.getRGB());
+            keys[key >> 6] |= 1L << key;
+            colorKeys = keys;
+        }
+
+        return colorKeys;
+    }
+
     /**
      * Creates a new detector profile by looking at an image of the game.
      *
@@ -0,0 +1,96 @@
+package org.leonitousconforti.basilisk.detectors;
+
+/**
+ * Where in a tile to sample pixels from. Google snake animates the snake
+ * sliding between tiles and draws eyes and a tongue on the head, so a single
+ * pixel in the middle of a tile sometimes lands on something that is not the
+ * color of what is really on the tile. Sampling a few more points and letting
+ * them vote fixes that. The probes are given as offsets from the middle of the
+ * tile, as fractions of the tile size, and the first probe is always the
+ * middle of the tile.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public final class ProbePattern {
+    /**
+     * Just the middle of the tile, what basilisk has always done.
+     */
+    public static final ProbePattern CENTER = new ProbePattern(new double[] {0}, new double[] {0});
+
+    /**
+     * The middle of the tile and the middle of each quarter of the tile.
+     */
+    public static final ProbePattern FIVE_POINT = new ProbePattern(new double[] {0, -0.25, 0.25, -0.25, 0.25},
+            new double[] {0, -0.25, -0.25, 0.25, 0.25});
+
+    /**
+     * A three by three grid over the middle half of the tile.
+     */
+    public static final ProbePattern NINE_POINT = new ProbePattern(
+            new double[] {0, -0.25, 0, 0.25, -0.25, 0.25, -0.25, 0, 0.25},
+            new double[] {0, -0.25, -0.25, -0.25, 0, 0, 0.25, 0.25, 0.25});
+
+    /**
+     * The most probes any pattern has.
+     */
+    public static final int MAX_PROBES = 9;
+
+    // The offset of every probe from the middle of the tile, as a fraction of
+    // the tile size
+    private final double[] offsetX;
+    private final double[] offsetY;
+
+    private ProbePattern(double[] xs, double[] ys) {
+        offsetX = xs;
+        offsetY = ys;
+    }
+
+    /**
+     * Finds the pattern with a number of probes.
+     *
+     * @param probes how many probes per tile, 1, 5, or 9
+     * @return the pattern, or null if there is no pattern with that many probes
+     */
+    public static ProbePattern withProbes(int probes) {
+        switch (probes) {
+            case 1:
+                return CENTER;
+            case 5:
+                return FIVE_POINT;
+            case 9:
+                return NINE_POINT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return how many pixels are sampled from every tile
+     */
+    public int getProbes() {
+        return offsetX.length;
+    }
+
+    /**
+     * @param probe     which probe
+     * @param tileWidth the width of a tile in pixels
+     * @return how far to the right of the middle of the tile the probe is, in
+     *         pixels
+     */
+    public int getOffsetX(int probe, double tileWidth) {
+        return (int) Math.round(offsetX[probe] * tileWidth);
+    }
+
+    /**
+     * @param probe      which probe
+     * @param tileHeight the height of a tile in pixels
+     * @return how far below the middle of the tile the probe is, in pixels
+     */
+    public int getOffsetY(int probe, double tileHeight) {
+        return (int) Math.round(offsetY[probe] * tileHeight);
+    }
+
+    @Override
+    public String toString() {
+        return getProbes() + " point";
+    }
+}
@@ -0,0 +1,18 @@
+package org.leonitousconforti.basilisk.detectors;
+
+/**
+ * Looks up pixels one at a time, works on every version of java.
+ */
+public class ScalarTileKernel implements TileKernel {
+    @Override
+    public void lookup(int[] pixels, int count, int[] table, int[] results) {
+        for (int i = 0; i < count; i++) {
+            results[i] = table[ColorLookupTable.keyOf(pixels[i])];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
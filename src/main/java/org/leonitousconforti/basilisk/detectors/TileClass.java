@@ -0,0 +1,26 @@
+package org.leonitousconforti.basilisk.detectors;
+
+/**
+ * The labels that the game element detection can give to a tile on the game
+ * board. They are stored as bytes so a whole board of them fits in a small
+ * primitive array that can be reused every frame.
+ */
+public final class TileClass {
+    /**
+     * A tile with nothing on it.
+     */
+    public static final byte EMPTY = 0;
+
+    /**
+     * A tile with part of the snake on it.
+     */
+    public static final byte SNAKE = 1;
+
+    /**
+     * A tile with the thing the snake is trying to eat on it.
+     */
+    public static final byte THING_TO_EAT = 2;
+
+    private TileClass() {
+    }
+}
@@ -0,0 +1,45 @@
+package org.leonitousconforti.basilisk.detectors;
+
+/**
+ * Looks up the {@link ColorLookupTable lookup table} entry of a batch of
+ * pixels. This is the inner loop of tile classification, so it comes in a
+ * plain java version and, on java 17 and newer, a version that works on whole
+ * vectors of pixels at once. Use {@link #create()} to get the vector one when
+ * the running java supports it. Kernels keep scratch space, so each thread
+ * needs its own.
+ */
+public interface TileKernel {
+    /**
+     * Looks up the lookup table entry of every pixel.
+     *
+     * @param pixels  packed rgb pixels
+     * @param count   how many pixels to look up, from the start of the array
+     * @param table   the packed entries of a lookup table, from
+     *                {@link ColorLookupTable#getEntries() getEntries}
+     * @param results where to write the entry of every pixel
+     */
+    void lookup(int[] pixels, int count, int[] table, int[] results);
+
+    /**
+     * @return a short name for the kernel, for logging
+     */
+    String getName();
+
+    /**
+     * Creates the vector kernel if the running java supports it. It is only in
+     * the java 17 part of the multi-release jar and needs the
+     * {@code jdk.incubator.vector} module, run with
+     * {@code --add-modules jdk.incubator.vector} to use it. Otherwise this falls
+     * back to the plain java kernel.
+     *
+     * @return a new kernel
+     */
+    static TileKernel create() {
+        try {
+            return (TileKernel) Class.forName("org.leonitousconforti.basilisk.detectors.VectorTileKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarTileKernel();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.leonitousconforti.basilisk.detectors;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Quantizes whole vectors of pixels into lookup keys at once with the java 17
+ * vector api, using lane-wise shifts and masks. Only the keys are vectorized,
+ * the entries for the keys are loaded one at a time in a plain loop, and any
+ * pixels left over at the end that do not fill a whole vector are quantized one
+ * at a time. This class is only compiled into the java 17 part of the
+ * multi-release jar, see {@link TileKernel#create()}.
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public class VectorTileKernel implements TileKernel {
+    // The widest vector of ints the cpu supports
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    // The lookup keys of the pixels
+    private int[] keys;
+
+    /**
+     * Looks up whole vectors of pixels at once.
+     */
+    public VectorTileKernel() {
+        keys = new int[0];
+    }
+
+    @Override
+    public void lookup(int[] pixels, int count, int[] table, int[] results) {
+        if (keys.length < count) {
+            keys = new int[count];
+        }
+
+        int i = 0;
+        int upperBound = SPECIES.loopBound(count);
+        for (; i < upperBound; i += SPECIES.length()) {
+            // Keep the top 5 bits of each channel, the same as ColorLookupTable.keyOf
+            IntVector rgb = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector red = rgb.lanewise(VectorOperators.ASHR, 9).and(0x7C00);
+            IntVector green = rgb.lanewise(VectorOperators.ASHR, 6).and(0x03E0);
+            IntVector blue = rgb.lanewise(VectorOperators.ASHR, 3).and(0x001F);
+            red.or(green).or(blue).intoArray(keys, i);
+        }
+
+        // The tail that does not fill a whole vector
+        for (; i < count; i++) {
+            keys[i] = ColorLookupTable.keyOf(pixels[i]);
+        }
+
+        // Load the entries
+        for (int j = 0; j < count; j++) {
+            results[j] = table[keys[j]];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + SPECIES.vectorBitSize() + " bit";
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Native half of org.leonitousconforti.basilisk.capture.XShmFrameSource.
+ * Captures areas of the X11 root window into shared memory images with the
+ * MIT-SHM extension. Built by the xshm maven profile.
+ */
+
+#include <jni.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <sys/ipc.h>
+#include <sys/shm.h>
+#include <X11/Xlib.h>
+#include <X11/Xutil.h>
+#include <X11/extensions/XShm.h>
+
+/* A shared memory image and the segment behind it */
+typedef struct {
+    XImage *image;
+    XShmSegmentInfo segment;
+} shm_image;
+
+/*
+ * X errors are reported through a process wide handler, and the default one
+ * exits the process. AWT has its own handler, so only errors on a display that
+ * is in the middle of a request here are caught, everything else goes to the
+ * handler that was there before.
+ */
+static XErrorHandler previous_handler = NULL;
+static int handler_installed = 0;
+static Display *checked_display = NULL;
+static volatile int request_failed = 0;
+
+static int error_handler(Display *display, XErrorEvent *event)
+{
+    if (display == checked_display) {
+        request_failed = 1;
+        return 0;
+    }
+    return previous_handler != NULL ? previous_handler(display, event) : 0;
+}
+
+static void begin_checked(Display *display)
+{
+    XSync(display, False);
+    checked_display = display;
+    request_failed = 0;
+}
+
+static int end_checked(Display *display)
+{
+    XSync(display, False);
+    checked_display = NULL;
+    return !request_failed;
+}
+
+static int host_byte_order(void)
+{
+    uint32_t one = 1;
+    return *(uint8_t *) &one == 1 ? LSBFirst : MSBFirst;
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeOpen(JNIEnv *env, jclass cls, jstring name)
+{
+    const char *display_name = name != NULL ? (*env)->GetStringUTFChars(env, name, NULL) : NULL;
+    Display *display = XOpenDisplay(display_name);
+    if (name != NULL) {
+        (*env)->ReleaseStringUTFChars(env, name, display_name);
+    }
+    if (display == NULL) {
+        return 0;
+    }
+
+    if (!XShmQueryExtension(display)) {
+        XCloseDisplay(display);
+        return 0;
+    }
+
+    if (!handler_installed) {
+        previous_handler = XSetErrorHandler(error_handler);
+        handler_installed = 1;
+    }
+    return (jlong) (intptr_t) display;
+}
+
+JNIEXPORT jint JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeScreenWidth(JNIEnv *env, jclass cls,
+        jlong connection)
+{
+    Display *display = (Display *) (intptr_t) connection;
+    return DisplayWidth(display, DefaultScreen(display));
+}
+
+JNIEXPORT jint JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeScreenHeight(JNIEnv *env, jclass cls,
+        jlong connection)
+{
+    Display *display = (Display *) (intptr_t) connection;
+    return DisplayHeight(display, DefaultScreen(display));
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeCreateImage(JNIEnv *env, jclass cls,
+        jlong connection, jint width, jint height)
+{
+    Display *display = (Display *) (intptr_t) connection;
+    int screen = DefaultScreen(display);
+    shm_image *shm = calloc(1, sizeof(shm_image));
+    if (shm == NULL) {
+        return 0;
+    }
+
+    shm->image = XShmCreateImage(display, DefaultVisual(display, screen), DefaultDepth(display, screen), ZPixmap,
+            NULL, &shm->segment, width, height);
+    if (shm->image == NULL) {
+        free(shm);
+        return 0;
+    }
+
+    /* The java side reads the pixels as packed rgb ints with no row padding */
+    if ((shm->image->bits_per_pixel != 32) || (shm->image->bytes_per_line != width * 4)
+            || (shm->image->red_mask != 0xFF0000) || (shm->image->green_mask != 0xFF00)
+            || (shm->image->blue_mask != 0xFF) || (shm->image->byte_order != host_byte_order())) {
+        XDestroyImage(shm->image);
+        free(shm);
+        return 0;
+    }
+
+    shm->segment.shmid = shmget(IPC_PRIVATE, (size_t) shm->image->bytes_per_line * height, IPC_CREAT | 0600);
+    if (shm->segment.shmid == -1) {
+        XDestroyImage(shm->image);
+        free(shm);
+        return 0;
+    }
+
+    shm->segment.shmaddr = shmat(shm->segment.shmid, NULL, 0);
+    if (shm->segment.shmaddr == (char *) -1) {
+        shmctl(shm->segment.shmid, IPC_RMID, NULL);
+        XDestroyImage(shm->image);
+        free(shm);
+        return 0;
+    }
+    shm->image->data = shm->segment.shmaddr;
+    shm->segment.readOnly = False;
+
+    /* Marking the segment for removal now means it goes away even if the
+       process dies, it stays around until both sides detach */
+    begin_checked(display);
+    XShmAttach(display, &shm->segment);
+    int attached = end_checked(display);
+    shmctl(shm->segment.shmid, IPC_RMID, NULL);
+    if (!attached) {
+        shmdt(shm->segment.shmaddr);
+        shm->image->data = NULL;
+        XDestroyImage(shm->image);
+        free(shm);
+        return 0;
+    }
+
+    return (jlong) (intptr_t) shm;
+}
+
+JNIEXPORT jobject JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeImageBuffer(JNIEnv *env, jclass cls,
+        jlong image)
+{
+    shm_image *shm = (shm_image *) (intptr_t) image;
+    return (*env)->NewDirectByteBuffer(env, shm->image->data,
+            (jlong) shm->image->bytes_per_line * shm->image->height);
+}
+
+JNIEXPORT jboolean JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeCapture(JNIEnv *env, jclass cls,
+        jlong connection, jlong image, jint x, jint y)
+{
+    Display *display = (Display *) (intptr_t) connection;
+    shm_image *shm = (shm_image *) (intptr_t) image;
+
+    begin_checked(display);
+    Status status = XShmGetImage(display, DefaultRootWindow(display), shm->image, x, y, AllPlanes);
+    int ok = end_checked(display);
+    return (status && ok) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeDestroyImage(JNIEnv *env, jclass cls,
+        jlong connection, jlong image)
+{
+    Display *display = (Display *) (intptr_t) connection;
+    shm_image *shm = (shm_image *) (intptr_t) image;
+
+    XShmDetach(display, &shm->segment);
+    XSync(display, False);
+    shmdt(shm->segment.shmaddr);
+    shm->image->data = NULL;
+    XDestroyImage(shm->image);
+    free(shm);
+}
+
+JNIEXPORT void JNICALL
+Java_org_leonitousconforti_basilisk_capture_XShmFrameSource_nativeClose(JNIEnv *env, jclass cls,
+        jlong connection)
+{
+    XCloseDisplay((Display *) (intptr_t) connection);
+}
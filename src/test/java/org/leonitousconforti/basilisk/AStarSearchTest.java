@@ -0,0 +1,59 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.A_StarSearch;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+
+/**
+ * Unit tests for the A* search.
+ */
+class AStarSearchTest {
+    // Test object
+    private final A_StarSearch search = new A_StarSearch();
+
+    /**
+     * The path goes around a wall the shortest way, one neighboring cell at a
+     * time, and ends on the goal.
+     */
+    @Test
+    void testFindsShortestPathAroundWall() {
+        // A wall down column 8 from the top, with a gap only in the bottom row
+        BitBoard blocked = new BitBoard();
+        for (int y = 0; y < Config.NumberOfRowsOnGameBoard - 1; y++) {
+            blocked.set(BitBoard.cellOf(8, y));
+        }
+
+        int start = BitBoard.cellOf(2, 3);
+        int goal = BitBoard.cellOf(14, 3);
+        int moves = search.findPath(start, goal, blocked);
+        assertEquals(6 + 11 + 6 + 11, moves);
+        assertEquals(moves, search.getPathLength());
+
+        int[] path = search.getPath();
+        int from = start;
+        for (int i = 0; i < moves; i++) {
+            assertEquals(1, Math.abs(BitBoard.xOf(path[i]) - BitBoard.xOf(from))
+                    + Math.abs(BitBoard.yOf(path[i]) - BitBoard.yOf(from)));
+            assertFalse(blocked.get(path[i]));
+            from = path[i];
+        }
+        assertEquals(goal, path[moves - 1]);
+    }
+
+    /**
+     * A goal that is walled off has no path.
+     */
+    @Test
+    void testNoPath() {
+        BitBoard blocked = new BitBoard();
+        for (int y = 0; y < Config.NumberOfRowsOnGameBoard; y++) {
+            blocked.set(BitBoard.cellOf(8, y));
+        }
+
+        assertEquals(-1, search.findPath(BitBoard.cellOf(0, 0), BitBoard.cellOf(16, 14), blocked));
+        assertEquals(0, search.findPath(BitBoard.cellOf(0, 0), BitBoard.cellOf(0, 0), blocked));
+    }
+}
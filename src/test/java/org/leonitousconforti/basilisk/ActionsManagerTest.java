@@ -0,0 +1,59 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Point;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.core.ActionsManager;
+import org.leonitousconforti.basilisk.core.TickEstimator;
+
+/**
+ * Unit tests for the actions manager deciding when actions are ready, with the
+ * websocket server on any free port.
+ */
+class ActionsManagerTest {
+    // How often the game moves the snake in these tests
+    private static final long TICK_NANOS = 100_000_000L;
+
+    // Test object
+    private final ActionsManager actionsManager = new ActionsManager(0);
+
+    /**
+     * With the game speed known and two moves due before a key lands, an action
+     * one or two cells straight ahead of the head is ready, and one three cells
+     * ahead or off to the side is not.
+     */
+    @Test
+    void testReadyWhenTheHeadGetsThereBeforeTheKey() {
+        // The last move was two and a half moves ago
+        long lastMove = System.nanoTime() - 5 * TICK_NANOS / 2;
+        TickEstimator estimator = new TickEstimator();
+        for (int i = 12; i >= 0; i--) {
+            estimator.onHeadMoved(lastMove - i * TICK_NANOS, 1);
+        }
+        actionsManager.setTickEstimator(estimator);
+
+        GameState state = goingRight(5, 7);
+        assertTrue(actionsManager.checkAction(new Action("up", new Point(6, 7)), state, lastMove));
+        assertTrue(actionsManager.checkAction(new Action("up", new Point(7, 7)), state, lastMove));
+        assertFalse(actionsManager.checkAction(new Action("up", new Point(8, 7)), state, lastMove));
+        assertFalse(actionsManager.checkAction(new Action("up", new Point(6, 6)), state, lastMove));
+    }
+
+    /**
+     * A snake three cells long with its head at a cell, going right.
+     */
+    private static GameState goingRight(int x, int y) {
+        int[] body = {BitBoard.cellOf(x, y), BitBoard.cellOf(x - 1, y), BitBoard.cellOf(x - 2, y)};
+        BitBoard occupied = new BitBoard();
+        for (int cell : body) {
+            occupied.set(cell);
+        }
+        return new GameState(body[0], -1, occupied, body);
+    }
+}
@@ -0,0 +1,79 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+
+/**
+ * Unit tests for the bit board.
+ */
+class BitBoardTest {
+    /**
+     * Setting, clearing, and counting cells.
+     */
+    @Test
+    void testSetAndCount() {
+        BitBoard board = new BitBoard();
+        board.set(BitBoard.cellOf(0, 0));
+        board.set(BitBoard.cellOf(16, 14));
+        board.set(BitBoard.cellOf(12, 3));
+
+        assertEquals(3, board.popCount());
+        assertTrue(board.get(16, 14));
+        assertFalse(board.get(17, 14), "Cells off the board are never set");
+
+        board.clear(BitBoard.cellOf(12, 3));
+        assertEquals(2, board.popCount());
+        assertEquals(BitBoard.cellOf(16, 14), board.nextSetCell(1));
+        assertEquals(BitBoard.CELLS, BitBoard.full().popCount());
+    }
+
+    /**
+     * Counting set cells in scan order, across the words they are stored in.
+     */
+    @Test
+    void testNthSetCell() {
+        BitBoard board = new BitBoard();
+        int[] cells = {BitBoard.cellOf(3, 0), BitBoard.cellOf(12, 3), BitBoard.cellOf(13, 3), BitBoard.cellOf(16, 14)};
+        for (int cell : cells) {
+            board.set(cell);
+        }
+
+        for (int n = 0; n < cells.length; n++) {
+            assertEquals(cells[n], board.nthSetCell(n));
+        }
+        assertEquals(-1, board.nthSetCell(cells.length));
+        assertEquals(-1, board.nthSetCell(-1));
+        assertEquals(BitBoard.CELLS - 1, BitBoard.full().nthSetCell(BitBoard.CELLS - 1));
+    }
+
+    /**
+     * Neighbors of cells on the edges of the board must not wrap around onto the
+     * other side of the board.
+     */
+    @Test
+    void testNeighborsDoNotWrap() {
+        BitBoard board = new BitBoard();
+        board.set(BitBoard.cellOf(16, 3));
+        BitBoard neighbors = board.neighbors();
+
+        assertEquals(3, neighbors.popCount());
+        assertTrue(neighbors.get(15, 3));
+        assertTrue(neighbors.get(16, 2));
+        assertTrue(neighbors.get(16, 4));
+        assertFalse(neighbors.get(0, 4), "Neighbor wrapped onto the next row");
+
+        // A cell that crosses the boundary between two words
+        board.clear();
+        board.set(BitBoard.cellOf(12, 3));
+        neighbors = board.neighbors();
+        assertEquals(4, neighbors.popCount());
+        assertTrue(neighbors.get(13, 3));
+        assertTrue(neighbors.get(12, 4));
+        assertTrue(neighbors.get(11, 3));
+        assertTrue(neighbors.get(12, 2));
+    }
+}
@@ -0,0 +1,129 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.capture.BoardCalibration;
+import org.leonitousconforti.basilisk.capture.BoardGeometry;
+
+/**
+ * Unit tests for finding game boards on the screen.
+ */
+class BoardCalibrationTest {
+    // How big the tiles of the drawn boards are
+    private static final int TILE = 24;
+
+    /**
+     * Draws a google snake board with a snake and apple on it.
+     */
+    private static void drawBoard(Graphics2D g, int left, int top) {
+        for (int row = 0; row < Config.NumberOfRowsOnGameBoard; row++) {
+            for (int col = 0; col < Config.NumberOfColsOnGameBoard; col++) {
+                g.setColor((row + col) % 2 == 0 ? BoardCalibration.GOOGLE_SNAKE_LIGHT_TILE
+                        : BoardCalibration.GOOGLE_SNAKE_DARK_TILE);
+                g.fillRect(left + col * TILE, top + row * TILE, TILE, TILE);
+            }
+        }
+        g.setColor(new Color(78, 124, 246));
+        g.fillRect(left + 2 * TILE, top + 7 * TILE, 4 * TILE, TILE);
+        g.setColor(Color.RED);
+        g.fillOval(left + 12 * TILE + 3, top + 7 * TILE + 3, TILE - 6, TILE - 6);
+    }
+
+    /**
+     * Four boards, two of them side by side with their tops a little apart, are
+     * all found in reading order and share one capture area around all of them.
+     */
+    @Test
+    void testFindsEveryBoard() {
+        BufferedImage screen = new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = screen.createGraphics();
+        g.setColor(new Color(87, 138, 52));
+        g.fillRect(0, 0, screen.getWidth(), screen.getHeight());
+        Point[] corners = {new Point(40, 30), new Point(500, 45), new Point(40, 460), new Point(600, 470)};
+        for (Point corner : corners) {
+            drawBoard(g, corner.x, corner.y);
+        }
+        g.dispose();
+
+        List<BoardGeometry> boards = BoardCalibration.calibrateAll(screen, new Point(5, 7));
+        assertEquals(corners.length, boards.size());
+
+        Rectangle union = new Rectangle(5 + 40, 7 + 30, 600 + 17 * TILE - 40, 470 + 15 * TILE - 30);
+        for (int i = 0; i < corners.length; i++) {
+            BoardGeometry board = boards.get(i);
+            assertEquals(union, board.getCaptureArea());
+            assertEquals(TILE, board.getTileWidth(), 0.5);
+            assertEquals(TILE, board.getTileHeight(), 0.5);
+
+            // The tiles are sampled on the right board
+            int first = board.getSampleX()[0];
+            assertTrue(Math.abs(union.x + first - (5 + corners[i].x + TILE / 2)) <= 1);
+            assertTrue(Math.abs(union.y + board.getSampleY()[0] - (7 + corners[i].y + TILE / 2)) <= 1);
+        }
+    }
+
+    /**
+     * One board is found exactly, even with the snake lying along the top and
+     * bottom rows from the left edge, which makes those rows shorter.
+     */
+    @Test
+    void testSnakeAlongTheEdges() {
+        BufferedImage screen = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = screen.createGraphics();
+        g.setColor(new Color(87, 138, 52));
+        g.fillRect(0, 0, screen.getWidth(), screen.getHeight());
+        drawBoard(g, 100, 80);
+        g.setColor(new Color(78, 124, 246));
+        g.fillRect(100, 80, 6 * TILE, TILE);
+        g.fillRect(100, 80 + 14 * TILE, 3 * TILE, TILE);
+        g.dispose();
+
+        BoardGeometry board = BoardCalibration.calibrate(screen, new Point(10, 20));
+        assertNotNull(board, "The board was not found");
+        assertEquals(new Rectangle(110, 100, 17 * TILE, 15 * TILE), board.getCaptureArea());
+        assertEquals(TILE, board.getTileWidth(), 0.5);
+        assertEquals(TILE, board.getTileHeight(), 0.5);
+    }
+
+    /**
+     * Specks of tile color that are not a board are not boards, and do not get in
+     * the way of finding the real one.
+     */
+    @Test
+    void testSpecksAreNotBoards() {
+        BufferedImage screen = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        screen.setRGB(300, 200, BoardCalibration.GOOGLE_SNAKE_LIGHT_TILE.getRGB());
+        assertNull(BoardCalibration.calibrate(screen, new Point(0, 0)));
+        assertTrue(BoardCalibration.calibrateAll(screen, new Point(0, 0)).isEmpty());
+
+        Graphics2D g = screen.createGraphics();
+        drawBoard(g, 100, 80);
+        g.setColor(BoardCalibration.GOOGLE_SNAKE_DARK_TILE);
+        g.fillRect(700, 500, 2, 2);
+        g.dispose();
+
+        List<BoardGeometry> boards = BoardCalibration.calibrateAll(screen, new Point(0, 0));
+        assertEquals(1, boards.size());
+        assertEquals(new Rectangle(100, 80, 17 * TILE, 15 * TILE), boards.get(0).getCaptureArea());
+    }
+
+    /**
+     * A screen without a board has no boards on it.
+     */
+    @Test
+    void testNoBoards() {
+        BufferedImage screen = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        assertTrue(BoardCalibration.calibrateAll(screen, new Point(0, 0)).isEmpty());
+    }
+}
@@ -0,0 +1,82 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.core.CaptureScheduler;
+import org.leonitousconforti.basilisk.core.TickEstimator;
+
+/**
+ * Unit tests for the capture scheduler, with a tick estimator fed made up move
+ * times.
+ */
+class CaptureSchedulerTest {
+    // How often the game moves the snake in these tests, and a millisecond
+    private static final long TICK_NANOS = 100_000_000L;
+    private static final long MILLIS = 1_000_000L;
+
+    // Test objects
+    private final TickEstimator estimator = new TickEstimator();
+    private final CaptureScheduler scheduler = new CaptureScheduler(estimator);
+
+    /**
+     * Until the estimator has locked on, and while scheduling is turned off,
+     * every frame is captured right away.
+     */
+    @Test
+    void testBackToBackUntilLocked() {
+        long start = 5_000 * MILLIS;
+        for (int i = 0; i < 4; i++) {
+            estimator.onHeadMoved(start + i * TICK_NANOS, 1);
+        }
+        assertFalse(estimator.isLocked());
+        for (long now = start; now < start + 5 * TICK_NANOS; now += 7 * MILLIS) {
+            assertEquals(now, scheduler.nextCaptureAfter(now));
+        }
+
+        lockOn(start + 4 * TICK_NANOS);
+        assertTrue(estimator.isLocked());
+        long between = estimator.getLastMoveNanos() + TICK_NANOS / 2;
+        assertTrue(scheduler.nextCaptureAfter(between) > between);
+        scheduler.setEnabled(false);
+        assertEquals(between, scheduler.nextCaptureAfter(between));
+    }
+
+    /**
+     * Once locked on, frames are captured from a tenth of a period before every
+     * predicted move until three tenths after it, and in between the capture
+     * waits for the start of the next burst.
+     */
+    @Test
+    void testBurstsAroundPredictedMoves() {
+        lockOn(5_000 * MILLIS);
+        long last = estimator.getLastMoveNanos();
+
+        // In the burst after the last move, up to and including its end
+        assertEquals(last + 5 * MILLIS, scheduler.nextCaptureAfter(last + 5 * MILLIS));
+        assertEquals(last + 30 * MILLIS, scheduler.nextCaptureAfter(last + 30 * MILLIS));
+
+        // Between bursts, wait for the next one
+        assertEquals(last + 90 * MILLIS, scheduler.nextCaptureAfter(last + 31 * MILLIS));
+        assertEquals(last + 90 * MILLIS, scheduler.nextCaptureAfter(last + 60 * MILLIS));
+
+        // In the burst before the next move
+        assertEquals(last + 90 * MILLIS, scheduler.nextCaptureAfter(last + 90 * MILLIS));
+        assertEquals(last + 99 * MILLIS, scheduler.nextCaptureAfter(last + 99 * MILLIS));
+
+        // Moves further ahead are predicted the same way
+        assertEquals(last + 220 * MILLIS, scheduler.nextCaptureAfter(last + 220 * MILLIS));
+        assertEquals(last + 290 * MILLIS, scheduler.nextCaptureAfter(last + 250 * MILLIS));
+    }
+
+    /**
+     * Feeds the estimator a dozen moves exactly one period apart from a time.
+     */
+    private void lockOn(long start) {
+        for (int i = 0; i < 12; i++) {
+            estimator.onHeadMoved(start + i * TICK_NANOS, 1);
+        }
+    }
+}
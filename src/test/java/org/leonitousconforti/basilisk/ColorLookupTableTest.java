@@ -0,0 +1,97 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.capture.BoardCalibration;
+import org.leonitousconforti.basilisk.detectors.ColorLookupTable;
+import org.leonitousconforti.basilisk.detectors.Detector;
+import org.leonitousconforti.basilisk.detectors.TileClass;
+
+/**
+ * Unit tests for the color lookup table and compiling detectors into it.
+ */
+class ColorLookupTableTest {
+    // The colors of the google snake, and a snake so gray the center of its key
+    // has a different hue
+    private static final Detector BLUE_SNAKE = new Detector("Blue Snake", new Color(78, 124, 246));
+    private static final Detector GRAY_SNAKE = new Detector("Gray Snake", new Color(100, 103, 100));
+    private static final Detector BLACK_SNAKE = new Detector("Black Snake", new Color(0, 0, 0));
+    private static final Detector RED_APPLE = new Detector("Red Apple", new Color(231, 71, 29));
+    private static final Detector WHITE_APPLE = new Detector("White Apple", new Color(255, 255, 255));
+    private static final Detector LIGHT_TILE = new Detector("Light Tile", BoardCalibration.GOOGLE_SNAKE_LIGHT_TILE);
+    private static final Detector DARK_TILE = new Detector("Dark Tile", BoardCalibration.GOOGLE_SNAKE_DARK_TILE);
+
+    /**
+     * A snake detector matched by hue and a thing to eat detector matched by
+     * color both classify their own color as their own class.
+     */
+    @Test
+    void testDetectorsClassifyTheirOwnColor() {
+        Detector[] snakes = {BLUE_SNAKE, GRAY_SNAKE, BLACK_SNAKE};
+        Detector[] apples = {RED_APPLE, WHITE_APPLE};
+        for (Detector snake : snakes) {
+            for (Detector apple : apples) {
+                ColorLookupTable table = new ColorLookupTable();
+                table.mark(snake.getHueKeys(), TileClass.SNAKE);
+                table.mark(apple.getColorKeys(), TileClass.THING_TO_EAT);
+
+                assertEquals(TileClass.SNAKE, table.classify(snake.getColor().getRGB()), snake.getName());
+                assertEquals(TileClass.THING_TO_EAT, table.classify(apple.getColor().getRGB()), apple.getName());
+                assertEquals(TileClass.EMPTY, table.classify(LIGHT_TILE.getColor().getRGB()));
+            }
+        }
+    }
+
+    /**
+     * Every color in a palette classifies as its own class with about full
+     * confidence.
+     */
+    @Test
+    void testPaletteClassifiesItsOwnColors() {
+        Detector[] palette = {BLUE_SNAKE, GRAY_SNAKE, RED_APPLE, LIGHT_TILE, DARK_TILE};
+        byte[] classes = {TileClass.SNAKE, TileClass.SNAKE, TileClass.THING_TO_EAT, TileClass.EMPTY, TileClass.EMPTY};
+        ColorLookupTable table = ColorLookupTable.palette(palette, classes);
+
+        for (int i = 0; i < palette.length; i++) {
+            int rgb = palette[i].getColor().getRGB();
+            assertEquals(classes[i], table.classify(rgb), palette[i].getName());
+            assertTrue(table.confidence(rgb) > ColorLookupTable.MAX_CONFIDENCE * 3 / 4, palette[i].getName());
+        }
+    }
+
+    /**
+     * Confidence is full with nothing else in the palette to mix a color up
+     * with, none half way between two classes, and colors too far from the
+     * palette are empty with no confidence.
+     */
+    @Test
+    void testPaletteConfidenceBoundaries() {
+        Detector[] palette = {new Detector("Black", new Color(0, 0, 0)), new Detector("Gray", new Color(72, 72, 72))};
+        byte[] classes = {TileClass.SNAKE, TileClass.THING_TO_EAT};
+        ColorLookupTable table = ColorLookupTable.palette(palette, classes);
+
+        // Exactly half way, which is also the center of its key, goes to the first
+        // detector with no confidence
+        int halfWay = new Color(36, 36, 36).getRGB();
+        assertEquals(TileClass.SNAKE, table.classify(halfWay));
+        assertEquals(0, table.confidence(halfWay));
+
+        // Further away than the palette reaches
+        int farAway = new Color(200, 200, 200).getRGB();
+        assertEquals(TileClass.EMPTY, table.classify(farAway));
+        assertEquals(0, table.confidence(farAway));
+
+        // One class only, so there is nothing to be less sure about
+        ColorLookupTable single = ColorLookupTable.palette(palette, new byte[] {TileClass.SNAKE, TileClass.SNAKE});
+        assertEquals(TileClass.SNAKE, single.classify(halfWay));
+        assertEquals(ColorLookupTable.MAX_CONFIDENCE, single.confidence(halfWay));
+
+        // The default table is empty with full confidence
+        assertEquals(TileClass.EMPTY, new ColorLookupTable().classify(farAway));
+        assertEquals(ColorLookupTable.MAX_CONFIDENCE, new ColorLookupTable().confidence(farAway));
+    }
+}
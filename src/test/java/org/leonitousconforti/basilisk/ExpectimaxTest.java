@@ -0,0 +1,62 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.Expectimax;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.SnakeSimulation;
+
+/**
+ * Unit tests for the expectimax search over where the apple spawns.
+ */
+class ExpectimaxTest {
+    // Test object
+    private final Expectimax search = new Expectimax(new ForkJoinPool(2));
+
+    /**
+     * The apple is at the end of the three cells left of the body's wall, but
+     * eating it traps the snake, so the search goes down into the rest of the
+     * board.
+     */
+    @Test
+    void testStaysOutOfPocket() {
+        GameState state = pocket();
+
+        assertEquals(SnakeSimulation.DOWN, search.search(state, 6, 1_000_000_000L));
+        assertEquals(6, search.getLastDepth());
+    }
+
+    /**
+     * Searching the same position again finds what it searched before in the
+     * memo.
+     */
+    @Test
+    void testRemembersPositions() {
+        GameState state = pocket();
+        search.search(state, 4, 1_000_000_000L);
+        long hits = search.getMemoHits();
+        search.search(state, 4, 1_000_000_000L);
+
+        assertTrue(search.getMemoHits() > hits);
+    }
+
+    /**
+     * A snake at the left edge with a wall of its body to its right, and the
+     * apple in the corner above it.
+     */
+    private static GameState pocket() {
+        int[][] parts = {{0, 4}, {1, 4}, {1, 3}, {1, 2}, {1, 1}, {1, 0}, {2, 0}, {3, 0}, {4, 0}, {5, 0}};
+        BitBoard body = new BitBoard();
+        int[] ordered = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ordered[i] = BitBoard.cellOf(parts[i][0], parts[i][1]);
+            body.set(ordered[i]);
+        }
+        return new GameState(ordered[0], BitBoard.cellOf(0, 0), body, ordered);
+    }
+}
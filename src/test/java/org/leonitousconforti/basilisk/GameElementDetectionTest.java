@@ -0,0 +1,339 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameEvent;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.capture.BoardCalibration;
+import org.leonitousconforti.basilisk.capture.BoardGeometry;
+import org.leonitousconforti.basilisk.core.ActionsManager;
+import org.leonitousconforti.basilisk.core.GameElementDetection;
+import org.leonitousconforti.basilisk.detectors.ProbePattern;
+
+/**
+ * Unit tests for the game element detection, with screen shots of the default
+ * 600x600 game window drawn tile by tile.
+ */
+class GameElementDetectionTest {
+    // How often the game moves the snake in these tests
+    private static final long TICK_NANOS = 100_000_000L;
+
+    // Test object, with the default black snake and white thing to eat detectors
+    private final GameElementDetection detection = new GameElementDetection();
+    private final BoardGeometry geometry = BoardGeometry.defaultWindow(0, 0);
+    private final List<GameEvent> events = new ArrayList<GameEvent>();
+
+    GameElementDetectionTest() {
+        detection.addGameEventListener(events::add);
+    }
+
+    /**
+     * A snake going around a 2x2 loop is on the same cells after every move, so
+     * only the tick estimator can tell it moved. The head still follows it around
+     * and the game is not over.
+     */
+    @Test
+    void testChasingTailStillMoves() {
+        // Along the top of the board to learn the game speed, then around and
+        // around the square at (11, 2) to (12, 3)
+        List<Integer> path = new ArrayList<Integer>();
+        for (int x = 0; x <= 12; x++) {
+            path.add(BitBoard.cellOf(x, 2));
+        }
+        int[] loop = {BitBoard.cellOf(12, 3), BitBoard.cellOf(11, 3), BitBoard.cellOf(11, 2), BitBoard.cellOf(12, 2)};
+        for (int i = 0; i < 3 * loop.length; i++) {
+            path.add(loop[i % loop.length]);
+        }
+
+        // Two frames every tick, after the snake moves and half way to the next move
+        int length = 4;
+        for (int tick = 0; tick + length <= path.size(); tick++) {
+            int[] body = new int[length];
+            for (int i = 0; i < length; i++) {
+                body[i] = path.get(tick + length - 1 - i);
+            }
+            long movedAt = tick * TICK_NANOS;
+            frame(body, -1, movedAt + TICK_NANOS / 10);
+            frame(body, -1, movedAt + TICK_NANOS / 2);
+
+            // Both ends of a snake that just showed up look the same
+            if (tick > 0) {
+                assertEquals(body[0], detection.getGameState().getHeadCell(), "Head at tick " + tick);
+                assertArrayEquals(body, detection.getGameState().getOrderedBody(), "Body at tick " + tick);
+            }
+        }
+
+        assertTrue(detection.getTickEstimator().isLocked());
+        for (GameEvent event : events) {
+            assertTrue(event.getType() != GameEvent.GAME_OVER, "Chasing the tail is not a game over");
+        }
+    }
+
+    /**
+     * A snake going right along a row eats the apple, grows, and a new apple
+     * shows up. The apple is gone while the head is on it, and while it can not
+     * be seen, and comes back as a new apple. Then the snake disappears, and the
+     * game speed is forgotten.
+     */
+    @Test
+    void testEventSequence() {
+        int eaten = BitBoard.cellOf(9, 7);
+        int spawned = BitBoard.cellOf(5, 3);
+        List<Integer> types = new ArrayList<Integer>();
+        detection.addGameEventListener(event -> types.add(event.getType()));
+
+        // The head starts at (4, 7), the snake is 3 long and grows by one after
+        // eating. Only what happens after the first two moves is checked, a snake
+        // that just showed up looks the same from both ends
+        int[] apples = {eaten, eaten, eaten, eaten, eaten, -1, spawned, -1, spawned};
+        for (int tick = 0; tick < apples.length; tick++) {
+            int length = 4 + tick > BitBoard.xOf(eaten) ? 4 : 3;
+            int[] body = new int[length];
+            for (int i = 0; i < length; i++) {
+                body[i] = BitBoard.cellOf(4 + tick - i, 7);
+            }
+            frame(body, apples[tick], tick * TICK_NANOS + TICK_NANOS / 10);
+            frame(body, apples[tick], tick * TICK_NANOS + TICK_NANOS / 2);
+            assertEquals(apples[tick], detection.getGameState().getAppleCell(), "Apple at tick " + tick);
+            if (tick == 1) {
+                types.clear();
+            }
+        }
+        frame(new int[0], spawned, apples.length * TICK_NANOS);
+
+        List<Integer> expected = Arrays.asList(
+            GameEvent.MOVED, GameEvent.MOVED, GameEvent.MOVED,
+            GameEvent.MOVED, GameEvent.APPLE_EATEN,
+            GameEvent.MOVED, GameEvent.APPLE_SPAWNED, GameEvent.LENGTH_CHANGED,
+            GameEvent.MOVED,
+            GameEvent.MOVED, GameEvent.APPLE_SPAWNED,
+            GameEvent.GAME_OVER);
+        assertEquals(expected, types);
+        assertEquals(-1, detection.getTickEstimator().getLastMoveNanos(), "The next game learns its speed again");
+    }
+
+    /**
+     * A frame missed as the snake turned the corner has the head jump two cells,
+     * with the corner as the cell it passed. An action waiting for the head on
+     * the corner is caught up with and taken off the queue, and it was missed if
+     * the snake went the other way.
+     */
+    @Test
+    void testJumpPassesTheCorner() {
+        // Right along the row to (6, 7), then a frame is missed at the corner at
+        // (7, 7) and the head is next seen at (7, 8)
+        int[][][] bodies = {
+            {{4, 7}, {3, 7}, {2, 7}},
+            {{5, 7}, {4, 7}, {3, 7}},
+            {{6, 7}, {5, 7}, {4, 7}},
+            {{7, 8}, {7, 7}, {6, 7}}};
+        int[] ticks = {0, 1, 2, 4};
+        for (int i = 0; i < bodies.length; i++) {
+            int[] body = new int[bodies[i].length];
+            for (int j = 0; j < body.length; j++) {
+                body[j] = BitBoard.cellOf(bodies[i][j][0], bodies[i][j][1]);
+            }
+            frame(body, -1, ticks[i] * TICK_NANOS + TICK_NANOS / 10);
+        }
+        GameState state = detection.getGameState();
+        assertEquals(BitBoard.cellOf(7, 8), state.getHeadCell());
+        assertArrayEquals(new int[] {BitBoard.cellOf(7, 7)}, state.getPassedCells());
+
+        // Wanting to go up at the corner was missed, the snake went down
+        ActionsManager actionsManager = new ActionsManager(0);
+        actionsManager.addAction(new Action("up", new Point(7, 7)));
+        assertEquals(1, actionsManager.reconcile(state));
+        assertNull(actionsManager.getNextAction());
+        assertEquals(1, actionsManager.getMissedActions());
+
+        // The same snapshot is only caught up with once, a copy of it is new and
+        // going down at the corner is what the snake did
+        actionsManager.addAction(new Action("down", new Point(7, 7)));
+        assertEquals(0, actionsManager.reconcile(state));
+        GameState copy = new GameState(state.getHeadCell(), state.getAppleCell(), state.getBody(),
+                state.getOrderedBody(), state.getPassedCells());
+        assertEquals(1, actionsManager.reconcile(copy));
+        assertNull(actionsManager.getNextAction());
+        assertEquals(1, actionsManager.getMissedActions());
+    }
+
+    /**
+     * A frame too small for the board geometry is skipped, keeping the tiles and
+     * the fingerprint of the frame before it, so the next full frame of the same
+     * board is still unchanged.
+     */
+    @Test
+    void testTooSmallFrameIsSkipped() {
+        int[] snake = {BitBoard.cellOf(3, 7), BitBoard.cellOf(2, 7)};
+        BufferedImage board = draw(snake, BitBoard.cellOf(9, 7));
+        detection.sample(board);
+        assertFalse(detection.isSkipped());
+        int[] tiles = detection.getTilePixels().clone();
+        long fingerprint = detection.getFingerprint();
+
+        detection.sample(new BufferedImage(Config.GameBoardSizePixels / 2, Config.GameBoardSizePixels,
+                BufferedImage.TYPE_INT_RGB));
+        assertTrue(detection.isSkipped());
+        assertFalse(detection.isUnchanged());
+        assertArrayEquals(tiles, detection.getTilePixels());
+        assertEquals(fingerprint, detection.getFingerprint());
+
+        detection.sample(board);
+        assertFalse(detection.isSkipped());
+        assertTrue(detection.isUnchanged());
+    }
+
+    /**
+     * The same frame sampled again is unchanged, until something that changes how
+     * it is classified changes. Then it has to be detected again.
+     */
+    @Test
+    void testClassificationChangesAreNotUnchanged() {
+        BufferedImage board = draw(new int[] {BitBoard.cellOf(3, 7), BitBoard.cellOf(2, 7)}, BitBoard.cellOf(9, 7));
+        detection.sample(board);
+        assertFalse(detection.isUnchanged(), "The first frame");
+        detection.sample(board);
+        assertTrue(detection.isUnchanged());
+
+        detection.setPaletteClassification(true);
+        detection.sample(board);
+        assertFalse(detection.isUnchanged(), "New detectors");
+        detection.sample(board);
+        assertTrue(detection.isUnchanged());
+
+        detection.setBoardGeometry(geometry);
+        detection.sample(board);
+        assertFalse(detection.isUnchanged(), "New board geometry");
+        detection.sample(board);
+        assertTrue(detection.isUnchanged());
+
+        detection.setProbePattern(ProbePattern.CENTER);
+        detection.sample(board);
+        assertFalse(detection.isUnchanged(), "New probe pattern");
+        detection.sample(board);
+        assertTrue(detection.isUnchanged());
+    }
+
+    /**
+     * Reading the probes straight out of the pixel array, of an image of its own
+     * or of part of a bigger one, classifies every tile the same as reading them
+     * one pixel at a time out of an image laid out some other way, with one probe
+     * or many. Detecting the shrunk image classifies them the same too.
+     */
+    @Test
+    void testSamplingPathsAgree() {
+        int[] snake = {BitBoard.cellOf(6, 4), BitBoard.cellOf(5, 4), BitBoard.cellOf(5, 5), BitBoard.cellOf(5, 6)};
+        BufferedImage packed = draw(snake, BitBoard.cellOf(12, 9));
+        Random random = new Random(1);
+        for (int i = 0; i < packed.getWidth() * packed.getHeight() / 20; i++) {
+            packed.setRGB(random.nextInt(packed.getWidth()), random.nextInt(packed.getHeight()), random.nextInt());
+        }
+
+        // The same pixels as three bytes, and in the middle of a bigger image
+        BufferedImage bytes = new BufferedImage(packed.getWidth(), packed.getHeight(),
+                BufferedImage.TYPE_3BYTE_BGR);
+        bytes.createGraphics().drawImage(packed, 0, 0, null);
+        BufferedImage bigger = new BufferedImage(packed.getWidth() + 7, packed.getHeight() + 5,
+                BufferedImage.TYPE_INT_RGB);
+        bigger.createGraphics().drawImage(packed, 7, 5, null);
+        BufferedImage part = bigger.getSubimage(7, 5, packed.getWidth(), packed.getHeight());
+
+        GameElementDetection shrunk = new GameElementDetection();
+        shrunk.detect(shrunk.shrinkProcess(packed));
+        for (ProbePattern pattern : new ProbePattern[] {ProbePattern.CENTER, ProbePattern.FIVE_POINT}) {
+            GameElementDetection expected = sampled(pattern, bytes);
+            assertTrue(expected.getGameState().getBody().get(snake[0]), "The snake was not found");
+            for (BufferedImage img : new BufferedImage[] {packed, part}) {
+                GameElementDetection actual = sampled(pattern, img);
+                for (int tile = 0; tile < BitBoard.CELLS; tile++) {
+                    assertEquals(expected.getTilePixels()[tile] & 0xFFFFFF, actual.getTilePixels()[tile] & 0xFFFFFF,
+                            "Pixel of tile " + tile);
+                }
+                assertArrayEquals(expected.getTileClasses(), actual.getTileClasses());
+                assertEquals(expected.getGameState().getBody(), actual.getGameState().getBody());
+                assertEquals(expected.getGameState().getAppleCell(), actual.getGameState().getAppleCell());
+            }
+            if (pattern == ProbePattern.CENTER) {
+                assertArrayEquals(expected.getTileClasses(), shrunk.getTileClasses());
+            }
+        }
+    }
+
+    /**
+     * Samples and detects a frame with a detection of its own, the way the frame
+     * pipeline does.
+     */
+    private static GameElementDetection sampled(ProbePattern pattern, BufferedImage img) {
+        GameElementDetection sampled = new GameElementDetection();
+        sampled.setProbePattern(pattern);
+        sampled.sample(img);
+        sampled.detect();
+        return sampled;
+    }
+
+    /**
+     * Draws a frame, samples it, and detects it, the same way the frame pipeline
+     * does.
+     */
+    private void frame(int[] snake, int apple, long capturedAt) {
+        BufferedImage img = draw(snake, apple);
+        detection.sample(img);
+        if (detection.isSkipped()) {
+            return;
+        }
+        if (detection.isUnchanged()) {
+            detection.detectUnchanged(capturedAt);
+        } else {
+            detection.detect(capturedAt);
+        }
+    }
+
+    /**
+     * Draws the board, a checkered background with black snake parts and a white
+     * thing to eat.
+     */
+    private BufferedImage draw(int[] snake, int apple) {
+        BufferedImage img = new BufferedImage(Config.GameBoardSizePixels, Config.GameBoardSizePixels,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            boolean light = ((BitBoard.xOf(cell) + BitBoard.yOf(cell)) & 1) == 0;
+            fill(g, cell, light ? BoardCalibration.GOOGLE_SNAKE_LIGHT_TILE : BoardCalibration.GOOGLE_SNAKE_DARK_TILE);
+        }
+        for (int cell : snake) {
+            fill(g, cell, Color.BLACK);
+        }
+        if (apple != -1) {
+            fill(g, apple, Color.WHITE);
+        }
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Fills one tile with a color.
+     */
+    private void fill(Graphics2D g, int cell, Color color) {
+        int left = geometry.getTileLeft(BitBoard.xOf(cell));
+        int top = geometry.getTileTop(BitBoard.yOf(cell));
+        g.setColor(color);
+        g.fillRect(left, top, geometry.getTileLeft(BitBoard.xOf(cell) + 1) - left,
+                geometry.getTileTop(BitBoard.yOf(cell) + 1) - top);
+    }
+}
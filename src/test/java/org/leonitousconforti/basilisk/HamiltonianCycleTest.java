@@ -0,0 +1,95 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.HamiltonianCycle;
+import org.leonitousconforti.basilisk.algorithms.shared.HamiltonianCycles;
+
+/**
+ * Unit tests for generating and caching Hamiltonian cycles.
+ */
+class HamiltonianCycleTest {
+    /**
+     * A board with an even number of cells gets cycles through every cell, all
+     * of them different.
+     */
+    @Test
+    void testFullCycles() {
+        assertTrue(HamiltonianCycles.hasFullCycle(16, 15));
+        List<HamiltonianCycle> cycles = HamiltonianCycles.generate(16, 15, 4, 1);
+        assertEquals(4, cycles.size());
+        for (HamiltonianCycle cycle : cycles) {
+            assertEquals(16 * 15, cycle.size());
+            for (int y = 0; y < 15; y++) {
+                for (int x = 0; x < 16; x++) {
+                    assertTrue(cycle.contains(BitBoard.cellOf(x, y)));
+                }
+            }
+        }
+
+        // The first two go different ways somewhere
+        int differences = 0;
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            if (cycles.get(0).contains(cell) && (cycles.get(0).getNext(cell) != cycles.get(1).getNext(cell))) {
+                differences++;
+            }
+        }
+        assertTrue(differences > 0);
+    }
+
+    /**
+     * The whole game board has an odd number of cells, so its cycles go through
+     * every cell but the bottom right corner.
+     */
+    @Test
+    void testOddBoardLeavesOutCorner() {
+        int cols = Config.NumberOfColsOnGameBoard;
+        int rows = Config.NumberOfRowsOnGameBoard;
+        assertFalse(HamiltonianCycles.hasFullCycle(cols, rows));
+
+        HamiltonianCycle cycle = HamiltonianCycles.generate(cols, rows, 1, 1).get(0);
+        assertEquals(cols * rows - 1, cycle.size());
+        assertFalse(cycle.contains(BitBoard.cellOf(cols - 1, rows - 1)));
+        for (int i = 0; i < cycle.size(); i++) {
+            assertEquals(cycle.getCell((i + 1) % cycle.size()), cycle.getNext(cycle.getCell(i)));
+        }
+    }
+
+    /**
+     * Saved cycles load back the same, and only for the size they were saved for.
+     */
+    @Test
+    void testSaveAndLoad() throws IOException {
+        File file = File.createTempFile("hamiltonian-cycles", ".bin");
+        try {
+            List<HamiltonianCycle> cycles = HamiltonianCycles.generate(6, 4, 3, 1);
+            HamiltonianCycles.save(file, 6, 4, cycles);
+            assertEquals(5 * 4 + 6 * 4 * 3, file.length());
+
+            List<HamiltonianCycle> loaded = HamiltonianCycles.load(file, 6, 4);
+            assertNotNull(loaded);
+            assertEquals(cycles.size(), loaded.size());
+            for (int i = 0; i < cycles.size(); i++) {
+                for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+                    if (cycles.get(i).contains(cell)) {
+                        assertEquals(cycles.get(i).getNext(cell), loaded.get(i).getNext(cell));
+                    }
+                }
+            }
+
+            assertNull(HamiltonianCycles.load(file, 4, 6));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.MonteCarloTreeSearch;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.SnakeSimulation;
+
+/**
+ * Unit tests for the Monte Carlo tree search and the game it plays forward.
+ */
+class MonteCarloTreeSearchTest {
+    // Test object
+    private final MonteCarloTreeSearch search = new MonteCarloTreeSearch(new ForkJoinPool(2));
+
+    /**
+     * The simulated snake can move onto where its tail was, grows when it eats,
+     * and dies running into itself.
+     */
+    @Test
+    void testSimulationMoves() {
+        SnakeSimulation game = new SnakeSimulation()
+                .reset(snake(BitBoard.cellOf(2, 0), new int[][] {{1, 0}, {1, 1}, {0, 1}, {0, 0}}));
+        SnakeSimulation copy = new SnakeSimulation().copyFrom(game);
+
+        assertTrue(game.move(SnakeSimulation.LEFT));
+        assertEquals(BitBoard.cellOf(0, 0), game.getHeadCell());
+        assertEquals(BitBoard.cellOf(0, 1), game.getTailCell());
+
+        assertTrue(copy.move(SnakeSimulation.RIGHT));
+        assertTrue(copy.justAte());
+        assertEquals(5, copy.getLength());
+        assertEquals(-1, copy.getApple());
+        assertEquals(BitBoard.cellOf(0, 0), copy.getTailCell());
+        assertFalse(copy.move(SnakeSimulation.LEFT));
+        assertFalse(copy.isAlive());
+    }
+
+    /**
+     * Going up into the three cells left of the body's wall traps the snake, so
+     * the search goes down into the rest of the board.
+     */
+    @Test
+    void testStaysOutOfPocket() {
+        GameState state = snake(BitBoard.cellOf(0, 0), new int[][] {{0, 4}, {1, 4}, {1, 3}, {1, 2}, {1, 1}, {1, 0},
+            {2, 0}, {3, 0}, {4, 0}, {5, 0}});
+
+        assertEquals(SnakeSimulation.DOWN, search.search(state, 50_000_000L));
+        assertTrue(search.getLastPlayouts() > 0);
+    }
+
+    /**
+     * Makes a snapshot of a snake from its body in order from head to tail.
+     */
+    private static GameState snake(int apple, int[][] parts) {
+        BitBoard body = new BitBoard();
+        int[] ordered = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ordered[i] = BitBoard.cellOf(parts[i][0], parts[i][1]);
+            body.set(ordered[i]);
+        }
+        return new GameState(ordered[0], apple, body, ordered);
+    }
+}
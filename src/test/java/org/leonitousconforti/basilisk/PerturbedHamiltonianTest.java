@@ -0,0 +1,55 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.PerturbedHamiltonian;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.HamiltonianCycle;
+
+/**
+ * Unit tests for the perturbed Hamiltonian cycle planner.
+ */
+class PerturbedHamiltonianTest {
+    // Test object
+    private final PerturbedHamiltonian planner = new PerturbedHamiltonian(
+            HamiltonianCycle.columns(Config.NumberOfColsOnGameBoard, Config.NumberOfRowsOnGameBoard));
+
+    /**
+     * A short snake following the cycle down the first column cuts across to the
+     * next column instead of going all the way around.
+     */
+    @Test
+    void testTakesShortcutToApple() {
+        HamiltonianCycle cycle = planner.getCycle();
+        GameState state = snakeOnCycle(cycle, cycle.getRank(BitBoard.cellOf(0, 2)), 3, BitBoard.cellOf(5, 2));
+
+        assertEquals(BitBoard.cellOf(1, 2), planner.chooseMove(state));
+    }
+
+    /**
+     * A snake that fills half the cycle only follows it.
+     */
+    @Test
+    void testLongSnakeFollowsCycle() {
+        HamiltonianCycle cycle = planner.getCycle();
+        int head = BitBoard.cellOf(0, 2);
+        GameState state = snakeOnCycle(cycle, cycle.getRank(head), cycle.size() / 2, BitBoard.cellOf(5, 2));
+
+        assertEquals(cycle.getNext(head), planner.chooseMove(state));
+    }
+
+    /**
+     * Lays a snake along the cycle with its head at a rank and its body behind it.
+     */
+    private static GameState snakeOnCycle(HamiltonianCycle cycle, int headRank, int length, int apple) {
+        BitBoard body = new BitBoard();
+        int[] ordered = new int[length];
+        for (int i = 0; i < length; i++) {
+            ordered[i] = cycle.getCell((headRank - i + cycle.size()) % cycle.size());
+            body.set(ordered[i]);
+        }
+        return new GameState(ordered[0], apple, body, ordered);
+    }
+}
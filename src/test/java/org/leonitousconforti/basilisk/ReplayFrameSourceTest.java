@@ -0,0 +1,177 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.capture.FrameArchive;
+import org.leonitousconforti.basilisk.capture.FrameArchiveWriter;
+import org.leonitousconforti.basilisk.capture.ReplayFrameSource;
+
+/**
+ * Unit tests for recording frames into a frame archive and playing them back.
+ */
+class ReplayFrameSourceTest {
+    // The size of the frames, and how many are recorded
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+    private static final int FRAMES = 5;
+
+    // How far apart the frames are recorded
+    private static final long FRAME_NANOS = 20_000_000L;
+
+    /**
+     * Every frame recorded plays back with the same pixels, in order, and the
+     * archive has the timestamps they were recorded with. Without looping the
+     * replay stops at the end, with looping it starts over.
+     */
+    @Test
+    void testRoundTrip() throws IOException {
+        File archive = record();
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(archive.toPath()));
+        long recordBytes = FrameArchive.recordBytes(WIDTH, HEIGHT);
+        assertEquals(FrameArchive.HEADER_BYTES + FRAMES * recordBytes, bytes.capacity());
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(i * FRAME_NANOS, bytes.getLong((int) (FrameArchive.HEADER_BYTES + i * recordBytes)));
+        }
+
+        ReplayFrameSource once = new ReplayFrameSource(archive, false, false);
+        assertEquals(FRAMES, once.getFrameCount());
+        assertEquals(WIDTH, once.getCaptureArea().width);
+        assertEquals(HEIGHT, once.getCaptureArea().height);
+        for (int i = 0; i < FRAMES; i++) {
+            assertFrame(i, once.getFrame());
+        }
+        assertNull(once.getFrame());
+        assertNull(once.getFrame(), "The end of the archive stays the end");
+        assertTrue(isOpen(archive));
+        once.close();
+        assertFalse(isOpen(archive));
+
+        ReplayFrameSource looping = new ReplayFrameSource(archive, false, true);
+        for (int i = 0; i < 3 * FRAMES; i++) {
+            assertFrame(i % FRAMES, looping.getFrame());
+        }
+        looping.close();
+    }
+
+    /**
+     * Playing back at the recorded pace takes at least as long as recording did.
+     */
+    @Test
+    void testRecordedPace() throws IOException {
+        ReplayFrameSource replay = new ReplayFrameSource(record(), true, false);
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            assertFrame(i, replay.getFrame());
+        }
+        assertTrue(System.nanoTime() - start >= (FRAMES - 1) * FRAME_NANOS);
+        replay.close();
+    }
+
+    /**
+     * Files that are not archives, or are archives of another version, are not
+     * played back, and are not left open.
+     */
+    @Test
+    void testRejectsOtherFiles() throws IOException {
+        File tooShort = header(FrameArchive.MAGIC, FrameArchive.VERSION, 0);
+        File wrongMagic = header(FrameArchive.MAGIC + 1, FrameArchive.VERSION, WIDTH);
+        File wrongVersion = header(FrameArchive.MAGIC, FrameArchive.VERSION + 1, WIDTH);
+
+        for (File file : new File[] {tooShort, wrongMagic, wrongVersion}) {
+            assertThrows(IOException.class, () -> new ReplayFrameSource(file, false, false));
+            assertFalse(isOpen(file), file + " was left open");
+        }
+    }
+
+    /**
+     * Records the test frames into a new archive, each one with its own pixels.
+     */
+    private static File record() throws IOException {
+        File archive = File.createTempFile("basilisk-frames", ".bin");
+        archive.deleteOnExit();
+
+        FrameArchiveWriter writer = new FrameArchiveWriter(archive, WIDTH, HEIGHT);
+        BufferedImage frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < FRAMES; i++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    frame.setRGB(x, y, pixel(i, x, y));
+                }
+            }
+            writer.write(frame, i * FRAME_NANOS);
+        }
+        writer.close();
+        return archive;
+    }
+
+    /**
+     * Writes a file with a header, and as many ints after it as are asked for.
+     */
+    private static File header(int magic, int version, int ints) throws IOException {
+        File file = File.createTempFile("basilisk-frames", ".bin");
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            for (int i = 0; i < ints; i++) {
+                out.writeInt(HEIGHT);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * The color of a pixel of a test frame.
+     */
+    private static int pixel(int frame, int x, int y) {
+        return (frame << 16) | (y << 8) | x;
+    }
+
+    /**
+     * Checks a frame played back is the test frame it was recorded from.
+     */
+    private static void assertFrame(int expected, BufferedImage frame) {
+        assertEquals(WIDTH, frame.getWidth());
+        assertEquals(HEIGHT, frame.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(pixel(expected, x, y), frame.getRGB(x, y) & 0xFFFFFF, "Pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    /**
+     * Checks if this process has a file open, where the open files can be listed.
+     */
+    private static boolean isOpen(File file) throws IOException {
+        File[] descriptors = new File("/proc/self/fd").listFiles();
+        assumeTrue(descriptors != null, "open files can not be listed here");
+
+        Path path = file.toPath().toRealPath();
+        for (File descriptor : descriptors) {
+            try {
+                if (Files.readSymbolicLink(descriptor.toPath()).equals(path)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                // Closed while it was being listed
+            }
+        }
+        return false;
+    }
+}
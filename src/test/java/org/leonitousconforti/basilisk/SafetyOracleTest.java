@@ -0,0 +1,110 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.SafetyOracle;
+
+/**
+ * Unit tests for the flood fill safety oracle.
+ */
+class SafetyOracleTest {
+    // Test object
+    private final SafetyOracle oracle = new SafetyOracle();
+
+    /**
+     * Going up into the three cells left of the body's wall traps the snake, going
+     * down into the rest of the board does not, and the other ways run into the
+     * wall or the neck.
+     */
+    @Test
+    void testPocketIsNotSafe() {
+        GameState state = snake(BitBoard.cellOf(8, 8), new int[][] {{0, 4}, {1, 4}, {1, 3}, {1, 2}, {1, 1}, {1, 0},
+            {2, 0}, {3, 0}, {4, 0}, {5, 0}});
+
+        assertEquals(3, oracle.freeArea(state, "up"));
+        assertFalse(oracle.canReachTail(state, "up"));
+        assertFalse(oracle.isSafe(state, "up"));
+
+        assertTrue(oracle.canReachTail(state, "down"));
+        assertTrue(oracle.isSafe(state, "down"));
+
+        assertEquals(SafetyOracle.DEAD, oracle.freeArea(state, "left"));
+        assertEquals(SafetyOracle.DEAD, oracle.freeArea(state, "right"));
+        assertEquals("down", oracle.safestDirection(state, "up"));
+    }
+
+    /**
+     * The tail moves out of the way as the head moves, so following it is safe.
+     * Eating the apple leaves the tail where it is, boxed in by the body, but
+     * there is still plenty of room.
+     */
+    @Test
+    void testFollowingTheTail() {
+        int[][] square = {{1, 0}, {1, 1}, {0, 1}, {0, 0}};
+        GameState state = snake(BitBoard.cellOf(8, 8), square);
+        assertTrue(oracle.isSafe(state, "left"));
+        assertTrue(oracle.canReachTail(state, "left"));
+
+        GameState eating = snake(BitBoard.cellOf(2, 0), square);
+        assertFalse(oracle.canReachTail(eating, "right"));
+        assertTrue(oracle.isSafe(eating, "right"));
+    }
+
+    /**
+     * Asking about the same snapshot again is answered from memory.
+     */
+    @Test
+    void testRemembersSnapshots() {
+        GameState state = snake(BitBoard.cellOf(8, 8), new int[][] {{5, 5}, {5, 6}, {5, 7}});
+        oracle.isSafe(state, "up");
+        oracle.isSafe(state, "left");
+        oracle.isSafe(snake(BitBoard.cellOf(8, 8), new int[][] {{5, 5}, {5, 6}, {5, 7}}), "right");
+
+        assertEquals(3, oracle.getLookups());
+        assertEquals(2, oracle.getHits());
+    }
+
+    /**
+     * Snapshots with the same body, head, tail, and apple are still different
+     * snapshots when the cell before the tail is different, or when only part of
+     * the body is known in order, and are not answered from each other's memory.
+     */
+    @Test
+    void testOrderOfTheBodyIsRemembered() {
+        // Both fill the square from (5, 5) to (7, 7), one row by row and the other
+        // column by column
+        GameState byRows = snake(BitBoard.cellOf(0, 0), new int[][] {{5, 5}, {6, 5}, {7, 5}, {7, 6}, {6, 6},
+            {5, 6}, {5, 7}, {6, 7}, {7, 7}});
+        GameState byColumns = snake(BitBoard.cellOf(0, 0), new int[][] {{5, 5}, {5, 6}, {5, 7}, {6, 7}, {6, 6},
+            {6, 5}, {7, 5}, {7, 6}, {7, 7}});
+        oracle.isSafe(byRows, "left");
+        oracle.isSafe(byColumns, "left");
+        assertEquals(0, oracle.getHits());
+
+        // An L whose middle is not known yet can not be followed to its tail
+        GameState known = snake(BitBoard.cellOf(0, 0), new int[][] {{5, 5}, {6, 5}, {6, 6}});
+        BitBoard body = known.getBody();
+        GameState partial = new GameState(known.getHeadCell(), known.getAppleCell(), body,
+                new int[] {BitBoard.cellOf(5, 5), BitBoard.cellOf(6, 6)});
+        assertTrue(oracle.canReachTail(known, "left"));
+        assertFalse(oracle.canReachTail(partial, "left"));
+    }
+
+    /**
+     * Makes a snapshot of a snake from its body in order from head to tail.
+     */
+    private static GameState snake(int apple, int[][] parts) {
+        BitBoard body = new BitBoard();
+        int[] ordered = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ordered[i] = BitBoard.cellOf(parts[i][0], parts[i][1]);
+            body.set(ordered[i]);
+        }
+        return new GameState(ordered[0], apple, body, ordered);
+    }
+}
@@ -0,0 +1,133 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.Action;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.core.SessionRecorder;
+
+/**
+ * Unit tests for the session recorder, reading the ring file back the way its
+ * layout is documented.
+ */
+class SessionRecorderTest {
+    // Where the fixed fields of a record are, and where the tiles start
+    private static final int HEAD_OFFSET = 16;
+    private static final int APPLE_OFFSET = 20;
+    private static final int ACTION_OFFSET = 24;
+    private static final int TILES_OFFSET = 28;
+
+    /**
+     * Recording more records than there are slots wraps around, keeping the
+     * newest ones, and every record reads back the same as it was recorded.
+     */
+    @Test
+    void testRingWrapsAroundAndReadsBack() throws IOException, InterruptedException {
+        File file = File.createTempFile("basilisk-session", ".bin");
+        file.deleteOnExit();
+        int slots = 10;
+        int records = 42;
+
+        // Slow enough that the background thread never falls behind
+        SessionRecorder recorder = new SessionRecorder(file, slots, 0, 0);
+        for (int i = 0; i < records; i++) {
+            record(recorder, i, null);
+            TimeUnit.MILLISECONDS.sleep(2);
+        }
+        recorder.close();
+        assertEquals(0, recorder.getDroppedRecords());
+
+        ByteBuffer ring = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(SessionRecorder.MAGIC, ring.getInt(0));
+        assertEquals(slots, ring.getInt(12));
+        assertEquals(records, ring.getLong(24), "The next sequence number");
+
+        // The last records, each in slot sequence % slots
+        int slotBytes = ring.getInt(8);
+        for (int sequence = records - slots; sequence < records; sequence++) {
+            int offset = SessionRecorder.HEADER_BYTES + (sequence % slots) * slotBytes;
+            assertEquals(sequence, ring.getLong(offset));
+            assertRecord(ring, offset, sequence, 0);
+        }
+    }
+
+    /**
+     * Recording faster than the background thread can write drops records
+     * instead of waiting, and counts them. Every record that was not dropped is
+     * in the ring, whole.
+     */
+    @Test
+    void testDroppedRecordsAreCounted() throws IOException {
+        File file = File.createTempFile("basilisk-session", ".bin");
+        file.deleteOnExit();
+        int size = Config.GameBoardSizePixels;
+        int records = 100;
+
+        // Copying big frames in is much faster than writing them out
+        SessionRecorder recorder = new SessionRecorder(file, records, size, size);
+        BufferedImage frame = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < records; i++) {
+            frame.setRGB(size - 1, size - 1, i);
+            record(recorder, i, frame);
+        }
+        recorder.close();
+
+        ByteBuffer ring = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        long written = ring.getLong(24);
+        assertTrue(recorder.getDroppedRecords() > 0, "Nothing was dropped");
+        assertEquals(records, written + recorder.getDroppedRecords());
+
+        // Records keep the order they were recorded in, with gaps where they were
+        // dropped
+        int slotBytes = ring.getInt(8);
+        long lastTimestamp = -1;
+        for (int sequence = 0; sequence < written; sequence++) {
+            int offset = SessionRecorder.HEADER_BYTES + sequence * slotBytes;
+            long timestamp = ring.getLong(offset + 8);
+            assertTrue(timestamp > lastTimestamp);
+            assertRecord(ring, offset, (int) timestamp, size * size);
+            lastTimestamp = timestamp;
+        }
+    }
+
+    /**
+     * Records a frame with everything in it made from a number, so it can be
+     * checked when read back.
+     */
+    private static void record(SessionRecorder recorder, int n, BufferedImage frame) {
+        int[] tilePixels = new int[BitBoard.CELLS];
+        byte[] tileClasses = new byte[BitBoard.CELLS];
+        tilePixels[n % BitBoard.CELLS] = n;
+        tileClasses[n % BitBoard.CELLS] = 1;
+        GameState state = new GameState(n % BitBoard.CELLS, (n + 1) % BitBoard.CELLS, new BitBoard(), new int[0]);
+        Action action = n % 2 == 0 ? null : new Action("up", new Point(0, 0));
+        recorder.record(n, tilePixels, tileClasses, state, action, frame);
+    }
+
+    /**
+     * Checks a record read back is the one made from a number.
+     */
+    private static void assertRecord(ByteBuffer ring, int offset, int n, int framePixels) {
+        assertEquals(n, ring.getLong(offset + 8), "Timestamp");
+        assertEquals(n % BitBoard.CELLS, ring.getInt(offset + HEAD_OFFSET), "Head");
+        assertEquals((n + 1) % BitBoard.CELLS, ring.getInt(offset + APPLE_OFFSET), "Apple");
+        assertEquals(n % 2 == 0 ? 0 : 3, ring.getInt(offset + ACTION_OFFSET), "Action");
+        assertEquals(n, ring.getInt(offset + TILES_OFFSET + 4 * (n % BitBoard.CELLS)), "Tile pixel");
+        assertEquals(1, ring.get(offset + TILES_OFFSET + 4 * BitBoard.CELLS + n % BitBoard.CELLS), "Tile class");
+        if (framePixels > 0) {
+            int lastPixel = offset + TILES_OFFSET + 5 * BitBoard.CELLS + 4 * (framePixels - 1);
+            assertEquals(n, ring.getInt(lastPixel) & 0xFFFFFF, "Frame pixel");
+        }
+    }
+}
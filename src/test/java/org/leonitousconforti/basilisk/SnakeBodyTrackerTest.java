@@ -0,0 +1,133 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.core.SnakeBodyTracker;
+
+/**
+ * Unit tests for the snake body tracker.
+ */
+class SnakeBodyTrackerTest {
+    // Test object
+    private final SnakeBodyTracker tracker = new SnakeBodyTracker();
+
+    /**
+     * Moving one cell at a time keeps the order without rescanning, and a body
+     * that jumps is rebuilt from the head.
+     */
+    @Test
+    void testMovingAndGrowing() {
+        // A snake lying along the top row with its head at (3, 0)
+        BitBoard body = new BitBoard();
+        for (int x = 0; x <= 3; x++) {
+            body.set(BitBoard.cellOf(x, 0));
+        }
+        tracker.update(body, BitBoard.cellOf(3, 0));
+        assertEquals(BitBoard.cellOf(0, 0), tracker.getTailCell());
+        assertEquals(1, tracker.getRescans());
+
+        // Turn down and move one cell
+        body.clear(BitBoard.cellOf(0, 0));
+        body.set(BitBoard.cellOf(3, 1));
+        tracker.update(body, -1);
+        assertEquals(BitBoard.cellOf(3, 1), tracker.getHeadCell());
+        assertEquals(BitBoard.cellOf(1, 0), tracker.getTailCell());
+
+        // Eat something and grow, the tail stays put
+        body.set(BitBoard.cellOf(3, 2));
+        tracker.update(body, -1);
+        assertEquals(5, tracker.getLength());
+        assertEquals(1, tracker.getRescans(), "Single step moves should not rescan");
+
+        int[] expected = {BitBoard.cellOf(3, 2), BitBoard.cellOf(3, 1), BitBoard.cellOf(3, 0),
+            BitBoard.cellOf(2, 0), BitBoard.cellOf(1, 0)};
+        assertArrayEquals(expected, tracker.toArray());
+
+        // Skip a frame, two new cells at once are followed from the old head
+        body.clear(BitBoard.cellOf(1, 0));
+        body.clear(BitBoard.cellOf(2, 0));
+        body.set(BitBoard.cellOf(3, 3));
+        body.set(BitBoard.cellOf(3, 4));
+        tracker.update(body, BitBoard.cellOf(3, 3));
+        assertEquals(1, tracker.getRescans(), "Moves that skipped a frame should not rescan");
+        assertEquals(BitBoard.cellOf(3, 4), tracker.getHeadCell());
+        assertEquals(BitBoard.cellOf(3, 0), tracker.getTailCell());
+    }
+
+    /**
+     * Skipping frames while turning keeps the order of the cells the head went
+     * through, even when the new cells come in a different order on the board.
+     */
+    @Test
+    void testSkippedFramesAroundACorner() {
+        // A snake lying along row 5 with its head at (6, 5), moving right
+        BitBoard body = new BitBoard();
+        for (int x = 3; x <= 6; x++) {
+            body.set(BitBoard.cellOf(x, 5));
+        }
+        tracker.update(body, BitBoard.cellOf(6, 5));
+
+        // Three ticks in one frame, right then up twice
+        body.clear(BitBoard.cellOf(3, 5));
+        body.clear(BitBoard.cellOf(4, 5));
+        body.clear(BitBoard.cellOf(5, 5));
+        body.set(BitBoard.cellOf(7, 5));
+        body.set(BitBoard.cellOf(7, 4));
+        body.set(BitBoard.cellOf(7, 3));
+        tracker.update(body, BitBoard.cellOf(7, 3));
+        assertEquals(1, tracker.getRescans());
+
+        int[] expected = {BitBoard.cellOf(7, 3), BitBoard.cellOf(7, 4), BitBoard.cellOf(7, 5),
+            BitBoard.cellOf(6, 5)};
+        assertArrayEquals(expected, tracker.toArray());
+
+        // Something snake colored showing up in the corner has to rescan, but the
+        // head is still the new cell at the end of the body and not the first new
+        // cell on the board
+        body.clear(BitBoard.cellOf(6, 5));
+        body.set(BitBoard.cellOf(7, 2));
+        body.set(BitBoard.cellOf(0, 0));
+        tracker.update(body, BitBoard.cellOf(0, 0));
+        assertEquals(2, tracker.getRescans());
+        assertEquals(BitBoard.cellOf(7, 2), tracker.getHeadCell());
+    }
+
+    /**
+     * A snake in a loop moving onto its own tail is on the same cells, which
+     * looks like no change until the tracker is told it moved.
+     */
+    @Test
+    void testChasingTail() {
+        // A 2x2 loop with its head at (1, 1) and its tail at (0, 1)
+        int[] loop = {BitBoard.cellOf(1, 1), BitBoard.cellOf(1, 0), BitBoard.cellOf(0, 0), BitBoard.cellOf(0, 1)};
+        BitBoard body = new BitBoard();
+        for (int cell : loop) {
+            body.set(cell);
+        }
+        tracker.update(body, loop[0]);
+        assertArrayEquals(loop, tracker.toArray());
+        assertTrue(tracker.isChasingTail());
+
+        // Nothing changed, the tracker can not see the move on its own
+        assertFalse(tracker.update(body, -1));
+        assertTrue(tracker.chaseTail());
+        int[] expected = {loop[3], loop[0], loop[1], loop[2]};
+        assertArrayEquals(expected, tracker.toArray());
+        assertEquals(1, tracker.getRescans());
+
+        // A straight snake can not move onto its tail
+        body.clear();
+        for (int x = 0; x < 4; x++) {
+            body.set(BitBoard.cellOf(x, 5));
+        }
+        tracker.update(body, BitBoard.cellOf(3, 5));
+        assertFalse(tracker.isChasingTail());
+        assertFalse(tracker.chaseTail());
+        assertEquals(BitBoard.cellOf(3, 5), tracker.getHeadCell());
+    }
+}
@@ -0,0 +1,106 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+import org.leonitousconforti.basilisk.algorithms.shared.GameState;
+import org.leonitousconforti.basilisk.algorithms.shared.SnakeSimulation;
+
+/**
+ * Unit tests for the simulated game the search algorithms play forward.
+ */
+class SnakeSimulationTest {
+    // How many apples are spawned when checking where they go
+    private static final int SPAWNS = 200_000;
+
+    /**
+     * Apples spawn on every free cell about as often, even the free cells right
+     * after a long run of body cells.
+     */
+    @Test
+    void testApplesSpawnUniformly() {
+        // A snake along all of the top three rows, leaving the rest of the board
+        int length = 3 * Config.NumberOfColsOnGameBoard;
+        SnakeSimulation game = windingSnake(length);
+
+        int[] counts = new int[BitBoard.CELLS];
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < SPAWNS; i++) {
+            counts[game.spawnApple(random)]++;
+        }
+
+        // Every free cell within a fifth of the average, none on the body
+        double expected = (double) SPAWNS / (BitBoard.CELLS - length);
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            if (cell < length) {
+                assertEquals(0, counts[cell], "An apple spawned on the body");
+            } else {
+                assertTrue(Math.abs(counts[cell] - expected) < expected / 5, "Cell " + cell + ": " + counts[cell]);
+            }
+        }
+    }
+
+    /**
+     * A full board has nowhere for an apple to go.
+     */
+    @Test
+    void testNoAppleOnAFullBoard() {
+        SnakeSimulation game = windingSnake(BitBoard.CELLS);
+        assertEquals(-1, game.spawnApple(new SplittableRandom(1)));
+        assertEquals(-1, game.getApple());
+    }
+
+    /**
+     * Two snakes on the same cells, with the same head, tail, and apple, but
+     * winding through the cells differently are different positions, both by
+     * fingerprint and written down exactly. A copy is the same position.
+     */
+    @Test
+    void testFingerprintFollowsTheBody() {
+        // Both fill the top left 3x3 square from (0, 0) to (2, 2), one row by row
+        // and the other column by column
+        int[] rows = new int[9];
+        int[] columns = new int[9];
+        BitBoard occupied = new BitBoard();
+        for (int i = 0; i < rows.length; i++) {
+            int across = i % 2 == 0 ? i % 3 : 2 - i % 3;
+            rows[i] = BitBoard.cellOf(across, i / 3);
+            columns[i] = BitBoard.cellOf(i / 3, across);
+            occupied.set(rows[i]);
+        }
+        int apple = BitBoard.cellOf(9, 7);
+        SnakeSimulation byRows = new SnakeSimulation().reset(new GameState(rows[0], apple, occupied, rows));
+        SnakeSimulation byColumns = new SnakeSimulation().reset(new GameState(columns[0], apple, occupied, columns));
+
+        assertEquals(byRows.getTailCell(), byColumns.getTailCell());
+        assertTrue(byRows.fingerprint() != byColumns.fingerprint());
+        assertFalse(Arrays.equals(byRows.position(), byColumns.position()));
+
+        SnakeSimulation copy = new SnakeSimulation().copyFrom(byRows);
+        assertEquals(byRows.fingerprint(), copy.fingerprint());
+        assertTrue(Arrays.equals(byRows.position(), copy.position()));
+    }
+
+    /**
+     * Sets a game up with a snake winding back and forth across the rows from
+     * the top left corner, the head at the end of it.
+     */
+    private static SnakeSimulation windingSnake(int length) {
+        int columns = Config.NumberOfColsOnGameBoard;
+        int[] body = new int[length];
+        BitBoard occupied = new BitBoard();
+        for (int i = 0; i < length; i++) {
+            int row = i / columns;
+            int x = row % 2 == 0 ? i % columns : columns - 1 - i % columns;
+            body[length - 1 - i] = BitBoard.cellOf(x, row);
+            occupied.set(body[length - 1 - i]);
+        }
+        return new SnakeSimulation().reset(new GameState(body[0], -1, occupied, body));
+    }
+}
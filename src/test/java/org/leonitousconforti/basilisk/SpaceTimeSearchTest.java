@@ -0,0 +1,74 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.algorithms.A_StarSearch;
+import org.leonitousconforti.basilisk.algorithms.SpaceTimeSearch;
+import org.leonitousconforti.basilisk.algorithms.shared.BitBoard;
+
+/**
+ * Unit tests for the space time search.
+ */
+class SpaceTimeSearchTest {
+    // Test object
+    private final SpaceTimeSearch search = new SpaceTimeSearch();
+
+    /**
+     * A snake walling off the apple with its own body gets through the wall
+     * where the tail has moved out of the way, long before the tail itself is
+     * the only way around.
+     */
+    @Test
+    void testGoesThroughWhereTheTailWas() {
+        // The head at (7, 7), down column 7, then up the whole of column 8 to the
+        // tail at (8, 0)
+        int[] body = new int[1 + 7 + 15];
+        int length = 0;
+        for (int y = 7; y < 15; y++) {
+            body[length++] = BitBoard.cellOf(7, y);
+        }
+        for (int y = 14; y >= 0; y--) {
+            body[length++] = BitBoard.cellOf(8, y);
+        }
+        int apple = BitBoard.cellOf(9, 7);
+
+        int moves = search.findPath(body, apple);
+        assertEquals(10, moves);
+
+        // A search over the snapshot has to go around through the tail
+        BitBoard blocked = new BitBoard();
+        for (int i = 0; i < body.length - 1; i++) {
+            blocked.set(body[i]);
+        }
+        assertEquals(16, new A_StarSearch().findPath(body[0], apple, blocked));
+
+        // Every move is to a cell next to the last one that nothing is on anymore
+        int[] path = search.getPath();
+        int from = body[0];
+        for (int t = 1; t <= moves; t++) {
+            int cell = path[t - 1];
+            assertEquals(1, Math.abs(BitBoard.xOf(cell) - BitBoard.xOf(from))
+                    + Math.abs(BitBoard.yOf(cell) - BitBoard.yOf(from)));
+            for (int i = 0; i < body.length; i++) {
+                if (body[i] == cell) {
+                    assertTrue(t >= body.length - i, "moved onto the body before it moved away");
+                }
+            }
+            from = cell;
+        }
+        assertEquals(apple, path[moves - 1]);
+    }
+
+    /**
+     * With nowhere to go there is no path.
+     */
+    @Test
+    void testNoPath() {
+        // A short snake in the corner facing the wall with its neck beside it
+        int[] body = {BitBoard.cellOf(0, 0), BitBoard.cellOf(1, 0), BitBoard.cellOf(1, 1), BitBoard.cellOf(0, 1),
+            BitBoard.cellOf(0, 2)};
+        assertEquals(-1, search.findPath(body, BitBoard.cellOf(16, 14)));
+    }
+}
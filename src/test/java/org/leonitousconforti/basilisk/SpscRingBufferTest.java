@@ -0,0 +1,196 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.core.SpscRingBuffer;
+
+/**
+ * Unit tests for the single producer single consumer ring buffer.
+ */
+class SpscRingBufferTest {
+    // How many items the stress tests pass from one thread to the other
+    private static final int ITEMS = 1_000_000;
+
+    /**
+     * The capacity rounds up to a power of two, a full queue drops what is
+     * offered, and items come out in the order they went in.
+     */
+    @Test
+    void testCapacityAndOrder() {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<Integer>(3);
+        assertEquals(4, queue.capacity());
+        assertEquals(1, new SpscRingBuffer<Integer>(1).capacity());
+        assertEquals(8, new SpscRingBuffer<Integer>(8).capacity());
+
+        for (int i = 0; i < queue.capacity(); i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(99), "A full queue drops the item");
+        assertEquals(1, queue.getDropped());
+        assertEquals(4, queue.size());
+
+        // Wrap around a few times, the queue never holds more than its capacity
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, queue.poll().intValue());
+            assertTrue(queue.offer(i + 4));
+            assertEquals(4, queue.size());
+        }
+        assertEquals(10, queue.poll().intValue());
+
+        // Only the newest is taken, everything older is counted as skipped
+        assertEquals(13, queue.pollLatest().intValue());
+        assertEquals(2, queue.getSkipped());
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+        assertNull(queue.pollLatest());
+    }
+
+    /**
+     * Everything older than the newest item is handed to the callback before it
+     * is thrown away, oldest first, so items that hold on to something can give
+     * it back.
+     */
+    @Test
+    void testSkippedItemsAreHandedBack() {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<Integer>(4);
+        List<Integer> skipped = new ArrayList<Integer>();
+        for (int i = 0; i < 3; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(2, queue.take(true, skipped::add).intValue());
+        assertEquals(Arrays.asList(0, 1), skipped);
+        assertEquals(2, queue.getSkipped());
+
+        queue.offer(3);
+        assertEquals(3, queue.pollLatest(skipped::add).intValue());
+        assertEquals(Arrays.asList(0, 1), skipped);
+        assertNull(queue.pollLatest(skipped::add));
+    }
+
+    /**
+     * Offering to a full queue while replacing throws away the oldest item, hands
+     * it back, and keeps the newest, so the next item taken is the last one
+     * offered.
+     */
+    @Test
+    void testFullQueueReplacesTheOldest() {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<Integer>(4);
+        List<Integer> replaced = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            queue.offerReplacing(i, replaced::add);
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), replaced);
+        assertEquals(6, queue.getDropped());
+        assertEquals(4, queue.size());
+        assertEquals(9, queue.pollLatest().intValue());
+        assertEquals(3, queue.getSkipped());
+        assertNull(queue.poll());
+    }
+
+    /**
+     * A consumer slower than the producer always gets an item at least as new as
+     * the last one offered before it started taking, and every item is taken,
+     * skipped, or replaced exactly once.
+     */
+    @Test
+    void testSlowConsumerGetsTheNewest() throws InterruptedException {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<Integer>(4);
+        AtomicInteger lastOffered = new AtomicInteger(-1);
+        AtomicLong handedBack = new AtomicLong();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                queue.offerReplacing(i, item -> handedBack.incrementAndGet());
+                lastOffered.set(i);
+            }
+        });
+        producer.start();
+
+        long taken = 0;
+        int last = -1;
+        while (last != ITEMS - 1) {
+            int offered = lastOffered.get();
+            int item = queue.take(true, skipped -> handedBack.incrementAndGet());
+            assertTrue(item >= offered, item + " was taken after " + offered + " was offered");
+            assertTrue(item > last, item + " came after " + last);
+            last = item;
+            taken++;
+
+            // Fall behind, so the queue fills up
+            for (int spin = 0; spin < 10; spin++) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertEquals(ITEMS, taken + queue.getSkipped() + queue.getDropped());
+        assertTrue(queue.getDropped() > 0, "The queue never filled up");
+        assertEquals(queue.getSkipped() + queue.getDropped(), handedBack.get());
+    }
+
+    /**
+     * A producer that waits for room when the queue is full gets every item to
+     * the consumer exactly once, in order.
+     */
+    @Test
+    void testNothingLostOrDuplicated() throws InterruptedException {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<Integer>(4);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                while (!queue.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        for (int expected = 0; expected < ITEMS; expected++) {
+            Integer item = queue.take(false);
+            assertEquals(expected, item.intValue());
+        }
+        producer.join();
+        assertNull(queue.poll());
+    }
+
+    /**
+     * A consumer that only takes the newest item sees items in order, and every
+     * item is taken, skipped, or dropped exactly once.
+     */
+    @Test
+    void testLatestNeverGoesBackwards() throws InterruptedException {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<Integer>(4);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                queue.offer(i);
+            }
+
+            // The last item always gets through, only the consumer makes room
+            while (queue.size() >= queue.capacity()) {
+                Thread.yield();
+            }
+            queue.offer(ITEMS);
+        });
+        producer.start();
+
+        long taken = 0;
+        int last = -1;
+        while (last != ITEMS) {
+            int item = queue.take(true);
+            assertTrue(item > last, item + " came after " + last);
+            last = item;
+            taken++;
+        }
+        producer.join();
+        assertEquals(ITEMS + 1, taken + queue.getSkipped() + queue.getDropped());
+    }
+}
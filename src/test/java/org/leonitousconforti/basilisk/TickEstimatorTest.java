@@ -0,0 +1,80 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.core.TickEstimator;
+
+/**
+ * Unit tests for the tick estimator.
+ */
+class TickEstimatorTest {
+    // Test object
+    private final TickEstimator estimator = new TickEstimator();
+
+    /**
+     * Moves seen every 100ms, give or take a few milliseconds of capture jitter,
+     * lock on to a 100ms period and predict the moves after the last one.
+     */
+    @Test
+    void testLocksOnToRegularMoves() {
+        long millis = 1000000L;
+        long[] jitter = {0, 3, -2, 4, -3, 1, 2, -4, 0, 3, -1, 2};
+
+        assertFalse(estimator.isLocked());
+        for (int i = 0; i < jitter.length; i++) {
+            estimator.onHeadMoved(i * 100 * millis + jitter[i] * millis, 1);
+        }
+        assertTrue(estimator.isLocked());
+        assertEquals(100 * millis, estimator.getPeriodNanos(), 5 * millis);
+
+        // A pause that skipped moves does not drag the period up
+        long last = estimator.getLastMoveNanos();
+        estimator.onHeadMoved(last + 300 * millis, 1);
+        assertEquals(100 * millis, estimator.getPeriodNanos(), 5 * millis);
+
+        // Predict from just after the last move
+        last = estimator.getLastMoveNanos();
+        assertEquals(0, estimator.movesBetween(last + 10 * millis, last + 50 * millis));
+        assertEquals(1, estimator.movesBetween(last + 10 * millis, last + 120 * millis));
+        assertEquals(2, estimator.movesBetween(last + 10 * millis, last + 220 * millis));
+    }
+
+    /**
+     * A locked estimator that sees the game slow down to half speed, or change to
+     * a speed whose moves are not a whole number of periods apart, learns the new
+     * period instead of staying locked on to the old one.
+     */
+    @Test
+    void testFollowsSpeedChanges() {
+        long millis = 1000000L;
+        long now = 0;
+        for (int i = 0; i < 12; i++) {
+            estimator.onHeadMoved(now, 1);
+            now += 100 * millis;
+        }
+        assertTrue(estimator.isLocked());
+
+        // Every move now takes two of the old periods
+        for (int i = 0; i < 20; i++) {
+            estimator.onHeadMoved(now, 1);
+            now += 200 * millis;
+        }
+        assertTrue(estimator.isLocked());
+        assertEquals(200 * millis, estimator.getPeriodNanos(), millis);
+
+        // Moves that are not a whole number of periods apart unlock straight away
+        estimator.onHeadMoved(now, 1);
+        now += 130 * millis;
+        estimator.onHeadMoved(now, 1);
+        assertFalse(estimator.isLocked());
+        for (int i = 0; i < 20; i++) {
+            now += 130 * millis;
+            estimator.onHeadMoved(now, 1);
+        }
+        assertTrue(estimator.isLocked());
+        assertEquals(130 * millis, estimator.getPeriodNanos(), millis);
+    }
+}
@@ -0,0 +1,53 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.detectors.ColorLookupTable;
+import org.leonitousconforti.basilisk.detectors.ScalarTileKernel;
+import org.leonitousconforti.basilisk.detectors.TileKernel;
+
+/**
+ * Unit tests for the tile kernels, which all have to look up the same entries
+ * as the plain java one.
+ */
+class TileKernelTest {
+    // The most pixels looked up at once
+    private static final int MAX_COUNT = 1000;
+
+    /**
+     * The vector kernel looks up the same entry as the plain java kernel for
+     * every pixel, however many pixels there are, including the ones left over
+     * after the last whole vector. Only runs where the vector kernel loads.
+     */
+    @Test
+    void testVectorKernelMatchesScalar() {
+        TileKernel vector = TileKernel.create();
+        assumeTrue(!(vector instanceof ScalarTileKernel), "the vector kernel is not available");
+        TileKernel scalar = new ScalarTileKernel();
+
+        // Every entry different, so a wrong key always looks up a wrong entry
+        Random random = new Random(1);
+        int[] table = new int[ColorLookupTable.NUMBER_OF_KEYS];
+        for (int key = 0; key < table.length; key++) {
+            table[key] = key * 31 + 7;
+        }
+
+        int[] pixels = new int[MAX_COUNT];
+        int[] expected = new int[MAX_COUNT];
+        int[] actual = new int[MAX_COUNT];
+        for (int count = 0; count <= MAX_COUNT; count += 1 + random.nextInt(37)) {
+            for (int i = 0; i < count; i++) {
+                pixels[i] = random.nextInt();
+            }
+            scalar.lookup(pixels, count, table, expected);
+            vector.lookup(pixels, count, table, actual);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected[i], actual[i], vector.getName() + ", pixel " + i + " of " + count);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.leonitousconforti.basilisk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.AWTException;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.leonitousconforti.basilisk.capture.XShmFrameSource;
+
+/**
+ * Unit tests for the X11 shared memory frame source. These only run on Linux
+ * with a display, like Xvfb, and the native library built with -Pxshm.
+ */
+class XShmFrameSourceTest {
+    /**
+     * Frames are the size of the capture area, cycle through the shared images
+     * that have been released without making new ones, and match what the java
+     * Robot sees. A frame that is still held is never captured into.
+     */
+    @Test
+    @SuppressWarnings("checkstyle:MagicNumber")
+    void testCapturesIntoReusedImages() throws IOException, AWTException {
+        assumeTrue(XShmFrameSource.isAvailable(), "the xshm native library is not available");
+
+        XShmFrameSource source = new XShmFrameSource(2);
+        try {
+            Rectangle area = new Rectangle(0, 0, 64, 48);
+            source.setCaptureArea(area);
+
+            BufferedImage first = source.getFrame();
+            BufferedImage second = source.getFrame();
+            assertEquals(64, first.getWidth());
+            assertEquals(48, first.getHeight());
+            assertNotSame(first, second);
+
+            // Both are held, so there has to be another one
+            BufferedImage third = source.getFrame();
+            assertNotSame(first, third);
+            assertNotSame(second, third);
+
+            // Released ones are captured into again, in turn
+            source.release(first);
+            source.release(second);
+            source.release(third);
+            assertSame(first, source.getFrame());
+            assertSame(second, source.getFrame());
+
+            if (!GraphicsEnvironment.isHeadless()) {
+                BufferedImage expected = new Robot().createScreenCapture(area);
+                assertArrayEquals(expected.getRGB(0, 0, 64, 48, null, 0, 64),
+                        source.getFrame().getRGB(0, 0, 64, 48, null, 0, 64));
+            }
+        } finally {
+            source.close();
+        }
+    }
+}